@@ -0,0 +1,41 @@
+package com.omnexus.config;
+
+import com.omnexus.util.CgroupManager;
+import com.omnexus.util.ProcessManager;
+import com.omnexus.util.ProcessOutput;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hands the process settings from the application properties to the static process
+ * utilities once at startup. Nodes are only started by requests or after
+ * ApplicationReadyEvent, so every launch sees them.
+ */
+@Configuration
+public class ProcessSettingsConfig {
+    @Value("${omnexus.process.output.buffer-lines:1000}")
+    private int bufferLines;
+
+    @Value("${omnexus.process.output.echo:false}")
+    private boolean echo;
+
+    @Value("${omnexus.cgroup.enabled:true}")
+    private boolean cgroupEnabled;
+
+    @Value("${omnexus.cgroup.root:/sys/fs/cgroup/omnexus}")
+    private String cgroupRoot;
+
+    @Value("${omnexus.process.shutdown.timeout-secs:30}")
+    private int shutdownTimeoutSecs;
+
+    @Value("${omnexus.process.shutdown.exit-wait-secs:300}")
+    private int shutdownExitWaitSecs;
+
+    @PostConstruct
+    public void apply() {
+        ProcessOutput.configure(bufferLines, echo);
+        CgroupManager.configure(cgroupEnabled, cgroupRoot);
+        ProcessManager.configureShutdown(shutdownTimeoutSecs, shutdownExitWaitSecs);
+    }
+}
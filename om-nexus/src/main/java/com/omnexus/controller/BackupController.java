@@ -1,12 +1,26 @@
 package com.omnexus.controller;
 
+import com.omnexus.model.BackupCatalogEntry;
+import com.omnexus.service.BackupBrowserService;
+import com.omnexus.service.BackupCatalogService;
+import com.omnexus.service.BackupDownloadService;
+import com.omnexus.service.BackupIntegrityService;
+import com.omnexus.service.BackupOffloadService;
 import com.omnexus.service.BackupProgressService;
+import com.omnexus.service.BackupRetentionService;
 import com.omnexus.service.BackupService;
 import com.omnexus.service.ConfigServerService;
 import com.omnexus.service.ScheduledBackupService;
+import com.omnexus.service.SnapshotBackupService;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bson.Document;
+import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -18,18 +32,39 @@ public class BackupController {
     private final ConfigServerService configServerService;
     private final ScheduledBackupService scheduledBackupService;
     private final BackupProgressService backupProgressService;
+    private final BackupDownloadService backupDownloadService;
+    private final BackupCatalogService backupCatalogService;
+    private final BackupIntegrityService backupIntegrityService;
+    private final SnapshotBackupService snapshotBackupService;
+    private final BackupBrowserService backupBrowserService;
+    private final BackupOffloadService backupOffloadService;
+    private final BackupRetentionService backupRetentionService;
 
-    public BackupController(BackupService backupService, ConfigServerService configServerService, ScheduledBackupService scheduledBackupService, BackupProgressService backupProgressService) {
+    public BackupController(BackupService backupService, ConfigServerService configServerService, ScheduledBackupService scheduledBackupService, BackupProgressService backupProgressService, BackupDownloadService backupDownloadService, BackupCatalogService backupCatalogService, BackupIntegrityService backupIntegrityService, SnapshotBackupService snapshotBackupService, BackupBrowserService backupBrowserService, BackupOffloadService backupOffloadService, BackupRetentionService backupRetentionService) {
         this.backupService = backupService;
         this.configServerService = configServerService;
         this.scheduledBackupService = scheduledBackupService;
         this.backupProgressService = backupProgressService;
+        this.backupDownloadService = backupDownloadService;
+        this.backupCatalogService = backupCatalogService;
+        this.backupIntegrityService = backupIntegrityService;
+        this.snapshotBackupService = snapshotBackupService;
+        this.backupBrowserService = backupBrowserService;
+        this.backupOffloadService = backupOffloadService;
+        this.backupRetentionService = backupRetentionService;
     }
 
     @PostMapping("/{clusterId}")
     public Map<String, Object> createBackup(@PathVariable String clusterId, @RequestBody(required = false) Map<String,Object> body){
         boolean compress = body != null && Boolean.TRUE.equals(body.get("compress"));
-        return backupService.backupCluster(clusterId, compress);
+        boolean dedup = body != null && Boolean.TRUE.equals(body.get("dedup"));
+        return backupService.backupCluster(clusterId, compress, dedup);
+    }
+
+    // Physical backup: fsyncLock one member per replica set and copy its dbPath
+    @PostMapping("/{clusterId}/snapshot")
+    public Map<String, Object> createSnapshot(@PathVariable String clusterId){
+        return snapshotBackupService.snapshotCluster(clusterId);
     }
 
     @GetMapping("/{clusterId}")
@@ -38,6 +73,113 @@ public class BackupController {
         return Map.of("clusterId", clusterId, "backups", backups);
     }
 
+    // Query the backup catalog by time range (ISO instants) and verification status
+    @GetMapping("/{clusterId}/catalog")
+    public Map<String,Object> queryCatalog(@PathVariable String clusterId,
+                                           @RequestParam(required = false) String from,
+                                           @RequestParam(required = false) String to,
+                                           @RequestParam(required = false) String status){
+        try {
+            Instant fromInstant = from != null ? Instant.parse(from) : null;
+            Instant toInstant = to != null ? Instant.parse(to) : null;
+            List<BackupCatalogEntry> entries = backupCatalogService.query(clusterId, fromInstant, toInstant, status);
+            return Map.of("clusterId", clusterId, "count", entries.size(), "backups", entries);
+        } catch (DateTimeParseException e) {
+            return Map.of("success", false, "error", "from/to must be ISO-8601 instants, e.g. 2025-01-01T00:00:00Z");
+        }
+    }
+
+    // Re-hash a backup against its integrity manifest and record the result in the catalog
+    @PostMapping("/{clusterId}/{timestamp}/verify")
+    public Map<String,Object> verifyBackup(@PathVariable String clusterId, @PathVariable String timestamp){
+        return backupIntegrityService.verify(clusterId, timestamp);
+    }
+
+    @PostMapping("/{clusterId}/verify")
+    public Map<String,Object> verifyBackups(@PathVariable String clusterId,
+                                            @RequestParam(defaultValue = "true") boolean onlyUnverified){
+        List<Map<String,Object>> results = backupIntegrityService.verifyCluster(clusterId, onlyUnverified);
+        long damaged = results.stream().filter(r -> "damaged".equals(r.get("status"))).count();
+        long verified = results.stream().filter(r -> "verified".equals(r.get("status"))).count();
+        return Map.of("clusterId", clusterId, "verified", verified, "damaged", damaged, "results", results);
+    }
+
+    // Collections of a backup with document counts and sizes, read from the dump files without restoring
+    @GetMapping("/{clusterId}/{timestamp}/browse")
+    public Map<String,Object> browseBackup(@PathVariable String clusterId, @PathVariable String timestamp){
+        try {
+            return backupBrowserService.listCollections(clusterId, timestamp);
+        } catch (Exception e) {
+            return Map.of("success", false, "error", String.valueOf(e.getMessage()));
+        }
+    }
+
+    // Page, filter (MongoDB query JSON) or sample the documents of one collection in a backup
+    @GetMapping("/{clusterId}/{timestamp}/browse/{namespace}")
+    public Map<String,Object> browseCollection(@PathVariable String clusterId, @PathVariable String timestamp,
+                                               @PathVariable String namespace,
+                                               @RequestParam(defaultValue = "0") long skip,
+                                               @RequestParam(defaultValue = "20") int limit,
+                                               @RequestParam(required = false) String filter,
+                                               @RequestParam(defaultValue = "false") boolean sample,
+                                               @RequestParam(defaultValue = "0") long maxScan){
+        try {
+            return backupBrowserService.browse(clusterId, timestamp, namespace, skip, limit, filter, sample, maxScan);
+        } catch (Exception e) {
+            return Map.of("success", false, "error", String.valueOf(e.getMessage()));
+        }
+    }
+
+    // Stream a backup archive (supports Range) or tar-stream an uncompressed dump
+    @GetMapping("/{clusterId}/{timestamp}/download")
+    public void downloadBackup(@PathVariable String clusterId, @PathVariable String timestamp,
+                               @RequestHeader(value = "Range", required = false) String range,
+                               HttpServletResponse response) throws IOException {
+        backupDownloadService.download(clusterId, timestamp, range, response);
+    }
+
+    // Which backups the retention policy keeps (and why) and which it would delete
+    @GetMapping("/{clusterId}/retention")
+    public Map<String,Object> retentionPlan(@PathVariable String clusterId){
+        return backupRetentionService.plan(clusterId);
+    }
+
+    // Delete expired backups now and report the reclaimed bytes
+    @PostMapping("/{clusterId}/retention")
+    public Map<String,Object> applyRetention(@PathVariable String clusterId){
+        return backupRetentionService.apply(clusterId);
+    }
+
+    // Upload a backup to the object store now instead of waiting for the offload schedule
+    @PostMapping("/{clusterId}/{timestamp}/offload")
+    public Map<String,Object> offloadBackup(@PathVariable String clusterId, @PathVariable String timestamp){
+        return backupOffloadService.offload(clusterId, timestamp);
+    }
+
+    // Download an offloaded backup back into the local backup directory
+    @PostMapping("/{clusterId}/{timestamp}/fetch")
+    public Map<String,Object> fetchBackup(@PathVariable String clusterId, @PathVariable String timestamp){
+        return backupOffloadService.fetch(clusterId, timestamp, false);
+    }
+
+    @GetMapping("/{clusterId}/offsite")
+    public Map<String,Object> listOffsite(@PathVariable String clusterId){
+        try {
+            return Map.of("clusterId", clusterId, "backups", backupOffloadService.listOffloaded(clusterId));
+        } catch (Exception e) {
+            return Map.of("success", false, "error", String.valueOf(e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{clusterId}/offsite/retention")
+    public Map<String,Object> applyOffsiteRetention(@PathVariable String clusterId){
+        try {
+            return backupOffloadService.applyRetention(clusterId);
+        } catch (Exception e) {
+            return Map.of("success", false, "error", String.valueOf(e.getMessage()));
+        }
+    }
+
     @PostMapping("/{clusterId}/restore")
     public Map<String,Object> restoreShard(@PathVariable String clusterId, @RequestBody(required = false) Map<String,Object> body){
         if (body == null || body.get("timestamp") == null || body.get("shard") == null) {
@@ -80,6 +222,54 @@ public class BackupController {
         }
         return config;
     }
+    // Restore chosen collections, optionally filtered by a query and renamed
+    @PostMapping("/{clusterId}/restore-collections")
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<Map<String,Object>> restoreCollections(@PathVariable String clusterId, @RequestBody(required = false) Map<String,Object> body){
+        if (body == null || body.get("timestamp") == null || !(body.get("namespaces") instanceof List<?>)) {
+            return ResponseEntity.ok(Map.of(
+                "success", false,
+                "error", "Request body required with 'timestamp' and 'namespaces' fields",
+                "example", Map.of("timestamp", "2025-01-01T00-00-00Z", "namespaces", List.of("shop.orders"),
+                        "filter", Map.of("status", "paid"), "rename", Map.of("shop.orders", "shop.orders_recovered"))
+            ));
+        }
+        String invalid = invalidRestoreField(body);
+        if (invalid != null) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "error", invalid));
+        }
+        Object filter = body.get("filter");
+        String filterJson = filter instanceof Map<?, ?> map ? new Document((Map<String, Object>) map).toJson() : (String) filter;
+        return ResponseEntity.ok(backupService.restoreCollections(clusterId, (String) body.get("timestamp"), (List<String>) body.get("namespaces"),
+                filterJson, (Map<String, String>) body.get("rename"), (String) body.get("shard"), Boolean.TRUE.equals(body.get("drop"))));
+    }
+
+    // Which field of a restore-collections body has the wrong JSON type, or null if none
+    private static String invalidRestoreField(Map<String,Object> body) {
+        if (!(body.get("timestamp") instanceof String)) {
+            return "'timestamp' must be a string";
+        }
+        if (!((List<?>) body.get("namespaces")).stream().allMatch(String.class::isInstance)) {
+            return "'namespaces' must be a list of strings";
+        }
+        Object filter = body.get("filter");
+        if (filter != null && !(filter instanceof Map<?, ?>) && !(filter instanceof String)) {
+            return "'filter' must be a query document or a string of extended JSON, not " + jsonType(filter);
+        }
+        Object rename = body.get("rename");
+        if (rename != null && !(rename instanceof Map<?, ?> map && map.values().stream().allMatch(String.class::isInstance))) {
+            return "'rename' must map source namespaces to target namespaces";
+        }
+        if (body.get("shard") != null && !(body.get("shard") instanceof String)) {
+            return "'shard' must be a string";
+        }
+        return null;
+    }
+
+    private static String jsonType(Object value) {
+        return value instanceof List<?> ? "an array" : value instanceof Number ? "a number" : value instanceof Boolean ? "a boolean" : "this value";
+    }
+
     @PostMapping("/{clusterId}/restore-cluster")
     public Map<String,Object> restoreCluster(@PathVariable String clusterId,@RequestBody(required = false) Map<String,Object> body){
         if(body == null || body.get("timestamp") == null){
@@ -99,14 +289,24 @@ public class BackupController {
     public Map<String,Object> scheduleBackup(@PathVariable String clusterId,@RequestBody Map<String,Object> scheduleConfig){
         return scheduledBackupService.scheduledBackup(clusterId, scheduleConfig);
     }
+    // Queued and running scheduled backups with the scheduler limits
+    @GetMapping("/scheduler/queue")
+    public Map<String,Object> getSchedulerQueue(){
+        return scheduledBackupService.getSchedulerStatus();
+    }
     @GetMapping("/{clusterId}/progress")
     public Map<String,Object> getBackupProgress(@PathVariable String clusterId){
         return backupProgressService.getBackupProgress(clusterId);
     }
+    @GetMapping("/{clusterId}/restore/progress")
+    public Map<String,Object> getRestoreProgress(@PathVariable String clusterId){
+        return backupProgressService.getRestoreProgress(clusterId);
+    }
     @PostMapping("/{clusterId}/async")
     public Map<String,Object> createBackupAsync(@PathVariable String clusterId,@RequestBody(required = false) Map<String,Object> body){
         boolean compress = body != null && Boolean.TRUE.equals(body.get("compress"));
-        backupService.backupClusterAsync(clusterId, compress);
+        boolean dedup = body != null && Boolean.TRUE.equals(body.get("dedup"));
+        backupService.backupClusterAsync(clusterId, compress, dedup);
         return Map.of(
                 "success",true,
                 "message","Backup started in background",
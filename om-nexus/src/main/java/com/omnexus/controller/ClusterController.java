@@ -1,8 +1,10 @@
 package com.omnexus.controller;
 
 import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.ClusterTuning;
 import com.omnexus.service.ClusterService;
 import com.omnexus.service.ConfigServerService;
+import com.omnexus.service.PortAllocatorService;
 import com.omnexus.util.ProcessManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -22,6 +24,9 @@ public class ClusterController {
     @Autowired
     private ConfigServerService configurationService;
 
+    @Autowired
+    private PortAllocatorService portAllocatorService;
+
     @PostMapping("/create")
     public ResponseEntity<?> createCluster(
             @RequestParam String clusterId,
@@ -38,7 +43,11 @@ public class ClusterController {
             }
 
             ClusterConfig config = clusterService.createCluster(clusterId, shards, configServers, replicasPerShard);
-            configurationService.saveClusterConfig(config);
+            if (!configurationService.saveClusterConfig(config)) {
+                portAllocatorService.releaseCluster(clusterId);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body(Map.of("error", "Failed to save cluster configuration: " + clusterId));
+            }
 
             return ResponseEntity.ok(config);
 
@@ -182,6 +191,7 @@ public class ClusterController {
             boolean deleted = configurationService.deleteClusterConfig(clusterId);
 
             if (deleted || config == null) {
+                portAllocatorService.releaseCluster(clusterId);
                 return ResponseEntity.ok(Map.of(
                         "message", "Cluster deleted successfully"
                 ));
@@ -195,14 +205,50 @@ public class ClusterController {
                     .body(Map.of("error", "Error deleting cluster: " + e.getMessage()));
         }
     }
+    // Tuning profiles and the mongod options each node will start with
+    @GetMapping("/{clusterId}/tuning")
+    public ResponseEntity<?> getTuning(@PathVariable String clusterId) {
+        ClusterConfig config = configurationService.loadClusterConfig(clusterId);
+        if (config == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Cluster configuration not found: " + clusterId));
+        }
+        return ResponseEntity.ok(clusterService.getTuning(config));
+    }
+
+    // Body: {"tuning": {...ClusterTuning...}, "nodeProfiles": {"shard-1-0": "heavy"}}; applies on the next node start
+    @PutMapping("/{clusterId}/tuning")
+    public ResponseEntity<?> updateTuning(@PathVariable String clusterId, @RequestBody TuningUpdate request) {
+        ClusterConfig config = configurationService.loadClusterConfig(clusterId);
+        if (config == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Cluster configuration not found: " + clusterId));
+        }
+        String error = clusterService.updateTuning(config, request.tuning(), request.nodeProfiles());
+        if (error != null) {
+            return ResponseEntity.badRequest().body(Map.of("error", error));
+        }
+        configurationService.saveClusterConfig(config);
+        return ResponseEntity.ok(clusterService.getTuning(config));
+    }
+
+    public record TuningUpdate(ClusterTuning tuning, Map<String, String> nodeProfiles) {}
+
+    @GetMapping("/ports")
+    public ResponseEntity<?> getPorts() {
+        return ResponseEntity.ok(portAllocatorService.status());
+    }
+
     @PostMapping("/cleanup")
     public ResponseEntity<?> cleanupPorts() {
         try {
-            ProcessManager.killProcessesOnPortRange(28000, 28010);
-            ProcessManager.killProcessesOnPort(27999); // Also cleanup mongos port
+            int start = portAllocatorService.getRangeStart();
+            int end = portAllocatorService.getRangeEnd();
+            ProcessManager.killProcessesOnPortRange(start, end);
+            ProcessManager.killProcessesOnPort(27999); // mongos of clusters created before the port range
 
             return ResponseEntity.ok(Map.of(
-                    "message", "Cleaned up processes on port range 28000-28010 and 27999"
+                    "message", "Cleaned up processes on port range " + start + "-" + end + " and 27999"
             ));
 
         } catch (Exception e) {
@@ -5,6 +5,7 @@ import com.omnexus.model.NodeInfo;
 import com.omnexus.service.ConfigServerService;
 import com.omnexus.service.HealthMonitorService;
 import com.omnexus.service.NodeRecoveryService;
+import com.omnexus.util.MongodTuning;
 import com.omnexus.util.ProcessManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -140,7 +141,9 @@ public class FailureController {
                         node.getType(),
                         node.getPort(),
                         node.getDataPath(),
-                        node.getReplicaSet()
+                        node.getReplicaSet(),
+                        node.getResources(),
+                        MongodTuning.args(config, node)
                 );
             }
 
@@ -6,6 +6,8 @@ import com.omnexus.model.NodeStatus;
 import com.omnexus.service.ConfigServerService;
 import com.omnexus.service.MonitoringService;
 import com.omnexus.service.NodeService;
+import com.omnexus.service.ProcessMetricsService;
+import com.omnexus.service.SlowOpAnalyticsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -25,6 +27,12 @@ public class MonitoringController {
     @Autowired
     private ConfigServerService configurationService;
 
+    @Autowired
+    private SlowOpAnalyticsService slowOpAnalyticsService;
+
+    @Autowired
+    private ProcessMetricsService processMetricsService;
+
     @GetMapping("/cluster/{clusterId}")
     public ClusterStatus getClusterHealth(@PathVariable String clusterId) {
         ClusterConfig config = configurationService.loadClusterConfig(clusterId);
@@ -50,6 +58,34 @@ public class MonitoringController {
         return monitoringService.getClusterMetrics(config);
     }
     
+    // CPU, memory and I/O of each node's process from the last sample
+    @GetMapping("/cluster/{clusterId}/processes")
+    public Map<String, Object> getProcessMetrics(@PathVariable String clusterId) {
+        ClusterConfig config = configurationService.loadClusterConfig(clusterId);
+        if (config == null) {
+            throw new RuntimeException("Cluster configuration not found: " + clusterId);
+        }
+        return processMetricsService.clusterProcesses(config);
+    }
+
+    // Slow-operation dashboard built from the nodes' mongod logs
+    @GetMapping("/cluster/{clusterId}/slow-ops")
+    public Map<String, Object> getSlowOps(@PathVariable String clusterId,
+                                          @RequestParam(required = false) String ns,
+                                          @RequestParam(defaultValue = "20") int top) {
+        return slowOpAnalyticsService.report(clusterId, ns, Math.max(1, top));
+    }
+
+    @PostMapping("/cluster/{clusterId}/slow-ops/scan")
+    public Map<String, Object> scanSlowOps(@PathVariable String clusterId) {
+        return slowOpAnalyticsService.scan(clusterId);
+    }
+
+    @DeleteMapping("/cluster/{clusterId}/slow-ops")
+    public Map<String, Object> resetSlowOps(@PathVariable String clusterId) {
+        return slowOpAnalyticsService.reset(clusterId);
+    }
+
     @GetMapping("/status/realtime/{clusterId}")
     public Map<String, Object> getRealtimeStatus(@PathVariable String clusterId) {
         ClusterConfig config = configurationService.loadClusterConfig(clusterId);
@@ -3,14 +3,20 @@ package com.omnexus.controller;
 import com.omnexus.model.ClusterConfig;
 import com.omnexus.model.NodeInfo;
 import com.omnexus.model.NodeStatus;
+import com.omnexus.model.ResourceProfile;
 
 import com.omnexus.service.ConfigServerService;
+import com.omnexus.service.NodeLogService;
 import com.omnexus.service.NodeService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/clusters/{clusterId}/nodes")
@@ -21,6 +27,9 @@ public class NodeController {
     
     @Autowired
     private ConfigServerService configurationService;
+
+    @Autowired
+    private NodeLogService nodeLogService;
     
     @GetMapping
     public List<NodeInfo> getAllNodes(@PathVariable String clusterId) {
@@ -46,6 +55,79 @@ public class NodeController {
         }
         return nodeService.getNodeStatus(nodeId, config);
     }
+    @GetMapping("/{nodeId}/output")
+    public Map<String, Object> getNodeOutput(@PathVariable String clusterId, @PathVariable String nodeId,
+                                             @RequestParam(defaultValue = "-1") long after,
+                                             @RequestParam(defaultValue = "200") int limit) {
+        return nodeService.getNodeOutput(nodeId, after, Math.min(limit, 5000));
+    }
+    // Lines of the node's log file from a byte offset (negative = tail), optionally filtered
+    @GetMapping("/{nodeId}/log")
+    public Map<String, Object> getNodeLog(@PathVariable String clusterId, @PathVariable String nodeId,
+                                          @RequestParam(defaultValue = "-1") long offset,
+                                          @RequestParam(required = false) String fileId,
+                                          @RequestParam(defaultValue = "1048576") long maxBytes,
+                                          @RequestParam(defaultValue = "1000") int limit,
+                                          @RequestParam(required = false) String severity,
+                                          @RequestParam(required = false) String component,
+                                          @RequestParam(required = false) String ns,
+                                          @RequestParam(required = false) String contains) {
+        return nodeLogService.read(clusterId, nodeId, offset, fileId, maxBytes, limit,
+                NodeLogService.filter(severity, component, ns, contains));
+    }
+
+    // Long-poll for lines after offset; returns once new lines match or the timeout passes
+    @GetMapping("/{nodeId}/log/follow")
+    public CompletableFuture<Map<String, Object>> followNodeLog(@PathVariable String clusterId, @PathVariable String nodeId,
+                                                                @RequestParam long offset,
+                                                                @RequestParam(required = false) String fileId,
+                                                                @RequestParam(defaultValue = "1048576") long maxBytes,
+                                                                @RequestParam(defaultValue = "1000") int limit,
+                                                                @RequestParam(defaultValue = "25000") long timeoutMs,
+                                                                @RequestParam(required = false) String severity,
+                                                                @RequestParam(required = false) String component,
+                                                                @RequestParam(required = false) String ns,
+                                                                @RequestParam(required = false) String contains) {
+        return nodeLogService.follow(clusterId, nodeId, offset, fileId, maxBytes, limit,
+                NodeLogService.filter(severity, component, ns, contains), timeoutMs);
+    }
+
+    // The raw log file (supports Range)
+    @GetMapping("/{nodeId}/log/raw")
+    public void downloadNodeLog(@PathVariable String clusterId, @PathVariable String nodeId,
+                                @RequestHeader(value = "Range", required = false) String range,
+                                HttpServletResponse response) throws IOException {
+        nodeLogService.download(clusterId, nodeId, range, response);
+    }
+
+    @GetMapping("/{nodeId}/resources")
+    public Map<String, Object> getNodeResources(@PathVariable String clusterId, @PathVariable String nodeId) {
+        ClusterConfig config = configurationService.loadClusterConfig(clusterId);
+        if (config == null) {
+            throw new RuntimeException("Cluster configuration not found: " + clusterId);
+        }
+        return nodeService.getNodeResources(nodeId, config);
+    }
+
+    // Change CPU/memory/I/O limits and affinity; applied immediately to a running node
+    @PutMapping("/{nodeId}/resources")
+    public Map<String, Object> updateNodeResources(@PathVariable String clusterId, @PathVariable String nodeId,
+                                                   @RequestBody(required = false) ResourceProfile profile) {
+        ClusterConfig config = configurationService.loadClusterConfig(clusterId);
+        if (config == null) {
+            return Map.of(
+                "success", false,
+                "message", "Cluster configuration not found: " + clusterId,
+                "nodeId", nodeId
+            );
+        }
+        Map<String, Object> result = nodeService.updateNodeResources(nodeId, profile, config);
+        if (Boolean.TRUE.equals(result.get("success"))) {
+            configurationService.saveClusterConfig(config);
+        }
+        return result;
+    }
+
     @PostMapping("/{nodeId}/start")
     public Map<String, Object> startNode(@PathVariable String clusterId, @PathVariable String nodeId) {
         ClusterConfig config = configurationService.loadClusterConfig(clusterId);
@@ -84,11 +166,15 @@ public class NodeController {
         // Save updated config
         configurationService.saveClusterConfig(config);
         
-        return Map.of(
+        Map<String, Object> result = new HashMap<>(Map.of(
             "success", success,
             "message", success ? "Node " + nodeId + " stopped successfully" : "Failed to stop node " + nodeId,
             "nodeId", nodeId
-        );
+        ));
+        if (success) {
+            result.put("shutdown", nodeService.getLastShutdown(nodeId));
+        }
+        return result;
     }
     @PostMapping("/{nodeId}/restart")
     public Map<String, Object> restartNode(@PathVariable String clusterId, @PathVariable String nodeId) {
@@ -0,0 +1,28 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class BackupCatalogEntry {
+    private String clusterId;
+    private String timestamp; // backup directory name
+    private long createdAt; // epoch millis
+    private String backupType = "logical"; // "logical" (BSON dump) or "snapshot" (dbPath copy)
+    private long sizeBytes;
+    private List<String> databases = new ArrayList<>();
+    private String compression; // "none", "tar.gz", "zip", "dedup"
+    private String dumpLayout; // dump content directory relative to the backup directory, e.g. "dump"
+    private boolean success;
+    private String verificationStatus = "unverified"; // "unverified", "verified", "damaged"
+    private long verifiedAt;
+    private String offloadStatus = "none"; // "none", "offloaded", "failed", "damaged" (local copy no longer matches)
+    private long offloadedAt; // last offload attempt
+    private int offloadAttempts; // failed offloads since the last success
+    private List<Map<String, Object>> artifacts = new ArrayList<>();
+}
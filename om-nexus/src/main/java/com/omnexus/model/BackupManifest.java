@@ -0,0 +1,27 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class BackupManifest {
+    private String clusterId;
+    private String timestamp;
+    private long totalBytes;
+    private long newBytes;
+    private int totalChunks;
+    private int newChunks;
+    private List<FileEntry> files = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    public static class FileEntry {
+        private String path; // relative to the dump directory, '/' separated
+        private long size;
+        private List<String> chunks = new ArrayList<>(); // SHA-256 of each chunk, in file order
+    }
+}
@@ -15,11 +15,22 @@ public class ClusterConfig {
     private int replicaSetSize;
     private String baseDataPath;
     private int basePort;
+    private int mongosPort; // reserved per cluster; configs from before the port allocator keep 27999
     private List<NodeInfo> nodes;
+    private ClusterTuning tuning; // mongod startup options per node type
 
     public ClusterConfig() {
         this.nodes = new ArrayList<>();
+        this.tuning = new ClusterTuning();
         this.basePort = 28000; // Changed from 27017 to avoid conflict with default MongoDB
+        this.mongosPort = 27999;
         this.baseDataPath = System.getProperty("user.dir")+ File.separator+"data";
     }
+
+    /**
+     * Node id of the cluster's mongos. Process ids are host-wide, so it carries the cluster id.
+     */
+    public String mongosNodeId() {
+        return clusterId + "-mongos";
+    }
 }
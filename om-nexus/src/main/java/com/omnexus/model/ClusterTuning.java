@@ -0,0 +1,20 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named tuning profiles of a cluster and which one each node type starts with;
+ * NodeInfo.tuningProfile overrides the type's choice for a single node.
+ */
+@Data
+@NoArgsConstructor
+public class ClusterTuning {
+    private Map<String, TuningProfile> profiles = new LinkedHashMap<>();
+    private Map<String, String> byType = new LinkedHashMap<>(); // "config" / "shard" -> profile name
+    // Share mongod's default cache budget, 50% of (RAM - 1 GB), among the host's managed mongods instead of giving it to each
+    private boolean splitCache = true;
+}
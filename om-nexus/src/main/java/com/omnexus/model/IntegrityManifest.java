@@ -0,0 +1,28 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class IntegrityManifest {
+    private String clusterId;
+    private String timestamp;
+    private String algorithm = "SHA-256";
+    private long createdAt;
+    private List<FileEntry> files = new ArrayList<>(); // dump files, relative to the dump directory
+    private List<FileEntry> archives = new ArrayList<>(); // compressed dump archives, relative to the backup directory
+
+    @Data
+    @NoArgsConstructor
+    public static class FileEntry {
+        private String path; // '/' separated
+        private long size;
+        private String sha256;
+        private long documents = -1; // .bson files only
+        private String contentHash; // .bson files only: order-independent sum of document hashes, hex
+    }
+}
@@ -14,6 +14,8 @@ public class NodeInfo {
     private String status;// "running","stopped",error
     private String dataPath;
     private String replicaSet;
+    private ResourceProfile resources; // cgroup limits and CPU affinity; null = unlimited
+    private String tuningProfile; // name in ClusterConfig.tuning.profiles; null = the profile of the node type
     public NodeInfo(String nodeId, String type, int port, String dataPath) {
         this.nodeId = nodeId;
         this.type = type;
@@ -10,7 +10,11 @@ public class NodeStatus {
     private String status; // "running", "stopped", "error"
     private String host;
     private String replicaSet;
-    private long uptime;
+    private long uptime; // seconds since the process started
+    private Double cpuPercent; // resource use from the last process sample, null if not sampled
+    private Long rssBytes;
+    private Double readBytesPerSec;
+    private Double writeBytesPerSec;
     private String lastPing;
     private boolean isHealthy;
 }
@@ -0,0 +1,31 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Written last next to an offloaded backup in the object store; a backup without
+ * one is an incomplete upload. Checksums are re-checked when files come back.
+ */
+@Data
+@NoArgsConstructor
+public class OffloadManifest {
+    private String clusterId;
+    private String timestamp;
+    private long uploadedAt;
+    private BackupCatalogEntry catalogEntry; // re-recorded locally when the backup is fetched
+    private List<FileEntry> files = new ArrayList<>(); // relative to the backup directory
+    private List<String> chunks = new ArrayList<>(); // chunk store hashes referenced by a deduplicated dump
+
+    @Data
+    @NoArgsConstructor
+    public static class FileEntry {
+        private String path; // '/' separated
+        private long size;
+        private String sha256;
+        private int parts; // 1 for single PUTs
+    }
+}
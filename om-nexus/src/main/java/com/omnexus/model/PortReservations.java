@@ -0,0 +1,19 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Host-wide port reservations, kept in configs/ports.json. Ports are written as compact
+ * lists such as "28000-28006,28010".
+ */
+@Data
+@NoArgsConstructor
+public class PortReservations {
+    private int rangeStart;
+    private int rangeEnd;
+    private Map<String, String> clusters = new LinkedHashMap<>();
+}
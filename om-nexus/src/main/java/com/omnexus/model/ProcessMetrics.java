@@ -0,0 +1,26 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resource use of one managed mongod/mongos, computed between two samples.
+ * Rates are null until a second sample exists; I/O is null where /proc/&lt;pid&gt;/io is unreadable.
+ */
+@Data
+@NoArgsConstructor
+public class ProcessMetrics {
+    private String nodeId;
+    private long pid;
+    private long sampledAt;
+    private long uptimeSeconds;
+    private Double cpuPercent; // of one core, so a busy multi-threaded mongod can exceed 100
+    private long cpuTimeMillis; // user + system since start
+    private Long rssBytes;
+    private Long peakRssBytes;
+    private Integer threads;
+    private Long readBytes; // storage reads since start
+    private Long writeBytes;
+    private Double readBytesPerSec;
+    private Double writeBytesPerSec;
+}
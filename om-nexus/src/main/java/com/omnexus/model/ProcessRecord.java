@@ -0,0 +1,23 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mongod or mongos started by OM Nexus, persisted so the process can be reattached
+ * after OM Nexus restarts instead of being started again.
+ */
+@Data
+@NoArgsConstructor
+public class ProcessRecord {
+    private String nodeId;
+    private String type; // config, shard or mongos
+    private long pid;
+    private int port;
+    private String dataPath; // null for mongos
+    private List<String> command = new ArrayList<>();
+    private long startedAt; // process start time in epoch millis, guards against PID reuse; 0 if unknown
+}
@@ -0,0 +1,17 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resource limits of one node, enforced on Linux through its own cgroup v2 group.
+ * Unset fields leave that resource unlimited.
+ */
+@Data
+@NoArgsConstructor
+public class ResourceProfile {
+    private Integer cpuPercent; // CPU quota in percent of one core: 150 = one and a half cores
+    private Long memoryMaxMb; // hard limit; also caps --wiredTigerCacheSizeGB at start, explicit sizes included
+    private Integer ioWeight; // 1-10000, proportional share of disk time against other nodes (default 100)
+    private String cpus; // CPU affinity as a cpuset list, e.g. "0-3,6"
+}
@@ -0,0 +1,40 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard keys and chunk boundaries of the sharded collections of a cluster,
+ * captured with a backup so a restore can re-create the same distribution.
+ * Keys and bounds are canonical extended JSON so MinKey/MaxKey and types survive.
+ */
+@Data
+@NoArgsConstructor
+public class ShardingLayout {
+    private String clusterId;
+    private long capturedAt;
+    private List<String> shards = new ArrayList<>(); // shard names at capture time
+    private List<CollectionLayout> collections = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    public static class CollectionLayout {
+        private String namespace;
+        private String key; // e.g. {"customerId": 1} or {"_id": "hashed"}
+        private boolean unique;
+        private boolean hashed;
+        private String options; // create options (collation, validator, ...); null in layouts from before they were recorded
+        private List<ChunkRange> chunks = new ArrayList<>(); // ordered by min
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ChunkRange {
+        private String min;
+        private String max;
+        private String shard;
+    }
+}
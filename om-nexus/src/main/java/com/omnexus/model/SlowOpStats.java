@@ -0,0 +1,55 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Slow operations of one cluster aggregated from its nodes' mongod logs, saved with
+ * the log offsets they cover so a restart resumes where the last scan stopped.
+ */
+@Data
+@NoArgsConstructor
+public class SlowOpStats {
+    private String clusterId;
+    private long since; // first scan after creation or reset
+    private long updatedAt;
+    private Map<String, Long> offsets = new HashMap<>(); // nodeId -> bytes of its log already parsed
+    private Map<String, String> fileIds = new HashMap<>(); // nodeId -> identity of the log file the offset is in
+    private Map<String, ShapeStats> shapes = new LinkedHashMap<>(); // "<ns>|<shape>" -> stats, "mongos|<ns>|<shape>" as routed
+    private Map<String, ShardStats> shards = new LinkedHashMap<>(); // shard (replica set), or "mongos"
+
+    @Data
+    @NoArgsConstructor
+    public static class ShapeStats {
+        private String ns;
+        private boolean mongos; // logged by mongos: the routed operation, which the shards log again
+        private String shape; // command plus filter/sort fields, e.g. "find {status,userId} sort {createdAt}"
+        private String queryHash; // queryShapeHash / planCacheShapeHash / queryHash when mongod logs one
+        private String planSummary; // most recent
+        private long count;
+        private long totalMillis;
+        private long maxMillis;
+        private long collscans;
+        private long docsExamined;
+        private long keysExamined;
+        private long nreturned;
+        private long[] histogram; // counts per SlowOpAnalyticsService.BUCKETS_MS bucket
+        private long lastSeen;
+        private Map<String, Long> shards = new HashMap<>(); // occurrences per shard
+    }
+
+    @Data
+    @NoArgsConstructor
+    public static class ShardStats {
+        private String shard;
+        private long count;
+        private long totalMillis;
+        private long collscans;
+        private long[] histogram;
+        private Map<String, Long> namespaceMillis = new HashMap<>(); // time spent per namespace
+    }
+}
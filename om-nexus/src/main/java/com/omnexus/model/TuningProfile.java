@@ -0,0 +1,21 @@
+package com.omnexus.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * mongod startup options for a group of nodes. Unset fields keep mongod's defaults,
+ * except the cache, which is split across co-located nodes when ClusterTuning.splitCache is on.
+ */
+@Data
+@NoArgsConstructor
+public class TuningProfile {
+    private Double cacheSizeGB; // --wiredTigerCacheSizeGB; overrides the split
+    private String blockCompressor; // --wiredTigerCollectionBlockCompressor: snappy, zstd, zlib or none
+    private Integer journalCommitIntervalMs; // --journalCommitInterval, 1-500
+    private Integer oplogSizeMB; // --oplogSize, only used when the replica set member is first initialized
+    private Map<String, String> setParameters = new LinkedHashMap<>(); // --setParameter name=value
+}
@@ -0,0 +1,375 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.BackupCatalogEntry;
+import com.omnexus.model.BackupManifest;
+import com.omnexus.model.IntegrityManifest;
+import com.omnexus.util.BsonFileIndex;
+import com.omnexus.util.BsonFilter;
+import com.omnexus.util.BsonRestoreEngine;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Look inside a backup without restoring it. Plain dump directories are read
+ * through memory-mapped, lazily built offset indexes (BsonFileIndex) that are
+ * cached per backup in a small LRU; deduplicated and compressed backups are
+ * streamed. Collections can be listed, paged, sampled and filtered.
+ */
+@Service
+public class BackupBrowserService {
+    private static final String BACKUP_ROOT = "backup";
+    private static final int MAX_DOCUMENT_SIZE = 48 * 1024 * 1024;
+    private static final JsonWriterSettings RELAXED_JSON = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+
+    private final BackupCatalogService backupCatalogService;
+    private final BackupIntegrityService backupIntegrityService;
+    private final BackupRepositoryService backupRepositoryService;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${omnexus.backup.browser.cache-size:8}")
+    private int cacheSize; // backups whose indexes stay mapped
+
+    @Value("${omnexus.backup.browser.max-scan:1000000}")
+    private long defaultMaxScan;
+
+    private final Map<String, BackupView> views = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BackupView> eldest) {
+            return size() > Math.max(1, cacheSize);
+        }
+    };
+
+    // What the browser knows about one backup; file indexes are added as collections are opened
+    private static class BackupView {
+        String source; // "directory", "chunks", "tar.gz" or "zip"
+        Path backupPath;
+        final Map<String, Path> files = new TreeMap<>(); // namespace -> .bson file (directory)
+        final Map<String, BackupManifest.FileEntry> chunked = new TreeMap<>(); // namespace -> chunk list (chunks)
+        final Map<String, long[]> stats = new ConcurrentHashMap<>(); // namespace -> {documents, bytes}
+        final Map<String, BsonFileIndex> indexes = new ConcurrentHashMap<>();
+    }
+
+    // Stops an archive scan once the wanted entry has been read
+    private static class ScanComplete extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    public BackupBrowserService(BackupCatalogService backupCatalogService, BackupIntegrityService backupIntegrityService,
+                                BackupRepositoryService backupRepositoryService) {
+        this.backupCatalogService = backupCatalogService;
+        this.backupIntegrityService = backupIntegrityService;
+        this.backupRepositoryService = backupRepositoryService;
+    }
+
+    /**
+     * Collections of a backup with document counts and sizes.
+     */
+    public Map<String, Object> listCollections(String clusterId, String timestamp) throws IOException {
+        BackupView view = view(clusterId, timestamp);
+        List<Map<String, Object>> collections = new ArrayList<>();
+        for (String namespace : namespaces(view)) {
+            long[] stats = stats(view, namespace);
+            Map<String, Object> collection = new LinkedHashMap<>();
+            collection.put("namespace", namespace);
+            collection.put("database", namespace.substring(0, namespace.indexOf('.')));
+            collection.put("collection", namespace.substring(namespace.indexOf('.') + 1));
+            collection.put("documents", stats[0]);
+            collection.put("sizeBytes", stats[1]);
+            collection.put("indexed", view.indexes.containsKey(namespace));
+            collections.add(collection);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("clusterId", clusterId);
+        result.put("timestamp", timestamp);
+        result.put("source", view.source);
+        result.put("collections", collections);
+        return result;
+    }
+
+    /**
+     * Page through, filter or randomly sample the documents of one collection.
+     * maxScan bounds how many documents a filter may look at (0 = configured default).
+     */
+    public Map<String, Object> browse(String clusterId, String timestamp, String namespace, long skip, int limit,
+                                      String filterJson, boolean sample, long maxScan) throws IOException {
+        BackupView view = view(clusterId, timestamp);
+        if (!namespaces(view).contains(namespace)) {
+            return Map.of("error", "collection " + namespace + " not found in backup " + timestamp);
+        }
+        BsonFilter filter = BsonFilter.parse(filterJson);
+        skip = Math.max(0, skip);
+        int wanted = Math.max(1, Math.min(limit, 1000));
+        long scanLimit = maxScan > 0 ? maxScan : defaultMaxScan;
+        long start = System.currentTimeMillis();
+
+        List<RawBsonDocument> documents;
+        long[] scanned = new long[1];
+        if (view.source.equals("directory") && sample && filter.isEmpty()) {
+            documents = sampleIndexed(index(view, namespace), wanted);
+            scanned[0] = documents.size();
+        } else if (view.source.equals("directory")) {
+            documents = new ArrayList<>();
+            // Without a filter skip is applied through the index instead of reading the skipped documents
+            long first = filter.isEmpty() && !sample ? skip : 0;
+            collect(predicate -> index(view, namespace).forEach(first, predicate),
+                    filter, sample ? 0 : skip - first, wanted, sample, scanLimit, documents, scanned);
+        } else {
+            documents = new ArrayList<>();
+            collect(predicate -> stream(view, namespace, predicate), filter, sample ? 0 : skip, wanted, sample, scanLimit, documents, scanned);
+        }
+
+        List<Object> converted = new ArrayList<>();
+        for (RawBsonDocument document : documents) {
+            converted.add(mapper.readValue(document.toJson(RELAXED_JSON), Map.class));
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("namespace", namespace);
+        result.put("source", view.source);
+        result.put("documents", converted);
+        result.put("returned", converted.size());
+        result.put("scanned", scanned[0]);
+        result.put("truncated", scanned[0] >= scanLimit);
+        result.put("skip", skip);
+        result.put("limit", wanted);
+        result.put("sample", sample);
+        result.put("durationMs", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Drop the cached indexes (and with them the file mappings) of a backup, e.g. before it is deleted.
+     */
+    public synchronized void evict(String clusterId, String timestamp) {
+        views.remove(clusterId + "/" + timestamp);
+    }
+
+    private interface DocumentScan {
+        void run(Predicate<RawBsonDocument> visitor) throws IOException;
+    }
+
+    // Apply filter, skip and limit (or reservoir-sample the matches) over a document scan
+    private void collect(DocumentScan scan, BsonFilter filter, long skip, int wanted, boolean sample, long scanLimit,
+                         List<RawBsonDocument> out, long[] scanned) throws IOException {
+        Random random = ThreadLocalRandom.current();
+        long[] matched = new long[1];
+        scan.run(document -> {
+            if (scanned[0]++ >= scanLimit) return false;
+            if (!filter.test(document)) return true;
+            long match = matched[0]++;
+            if (sample) {
+                if (out.size() < wanted) {
+                    out.add(document);
+                } else {
+                    long slot = random.nextLong(match + 1);
+                    if (slot < wanted) out.set((int) slot, document);
+                }
+                return true;
+            }
+            if (match < skip) return true;
+            out.add(document);
+            return out.size() < wanted;
+        });
+        scanned[0] = Math.min(scanned[0], scanLimit);
+    }
+
+    // Random documents by document number; the first call indexes the whole file
+    private List<RawBsonDocument> sampleIndexed(BsonFileIndex index, int wanted) {
+        long count = index.documentCount();
+        TreeSet<Long> picks = new TreeSet<>();
+        if (count <= wanted) {
+            for (long i = 0; i < count; i++) picks.add(i);
+        } else {
+            while (picks.size() < wanted) picks.add(ThreadLocalRandom.current().nextLong(count));
+        }
+        List<RawBsonDocument> documents = new ArrayList<>();
+        for (long documentNumber : picks) {
+            documents.add(index.read(index.offsetOf(documentNumber)));
+        }
+        return documents;
+    }
+
+    private long[] stats(BackupView view, String namespace) throws IOException {
+        long[] known = view.stats.get(namespace);
+        if (known != null) return known;
+        long[] stats;
+        if (view.source.equals("directory")) {
+            BsonFileIndex index = index(view, namespace);
+            stats = new long[]{index.documentCount(), index.getSize()};
+        } else {
+            long[] counted = new long[2];
+            stream(view, namespace, document -> {
+                counted[0]++;
+                counted[1] += document.getByteBuffer().remaining();
+                return true;
+            });
+            stats = counted;
+        }
+        view.stats.put(namespace, stats);
+        return stats;
+    }
+
+    private BsonFileIndex index(BackupView view, String namespace) {
+        return view.indexes.computeIfAbsent(namespace, ns -> {
+            try {
+                return new BsonFileIndex(view.files.get(ns));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot map " + view.files.get(ns) + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    // Read one collection of a deduplicated or compressed backup front to back
+    private void stream(BackupView view, String namespace, Predicate<RawBsonDocument> visitor) throws IOException {
+        if (view.source.equals("chunks")) {
+            try (InputStream in = backupRepositoryService.openFile(view.chunked.get(namespace))) {
+                readDocuments(in, namespace, visitor);
+            }
+            return;
+        }
+        Path archive = view.backupPath.resolve(view.source.equals("zip") ? "dump.zip" : "dump.tar.gz");
+        BsonRestoreEngine.DumpSource source = view.source.equals("zip") ? BsonRestoreEngine.zip(archive) : BsonRestoreEngine.tarGz(archive);
+        try {
+            source.forEachEntry((path, in) -> {
+                if (namespace.equals(BsonRestoreEngine.namespaceOf(path, ".bson"))) {
+                    readDocuments(in, namespace, visitor);
+                    throw new ScanComplete();
+                }
+            });
+        } catch (ScanComplete e) {
+            // found and read
+        }
+    }
+
+    private void readDocuments(InputStream in, String namespace, Predicate<RawBsonDocument> visitor) throws IOException {
+        byte[] header = new byte[4];
+        while (true) {
+            int read = in.readNBytes(header, 0, 4);
+            if (read == 0) return;
+            int length = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            if (read < 4 || length < 5 || length > MAX_DOCUMENT_SIZE) {
+                throw new IOException("Corrupt document in " + namespace);
+            }
+            byte[] document = new byte[length];
+            System.arraycopy(header, 0, document, 0, 4);
+            if (in.readNBytes(document, 4, length - 4) < length - 4) {
+                throw new IOException("Truncated document in " + namespace);
+            }
+            if (!visitor.test(new RawBsonDocument(document))) return;
+        }
+    }
+
+    private List<String> namespaces(BackupView view) {
+        if (!view.files.isEmpty()) return new ArrayList<>(view.files.keySet());
+        if (!view.chunked.isEmpty()) return new ArrayList<>(view.chunked.keySet());
+        return new ArrayList<>(view.stats.keySet());
+    }
+
+    private synchronized BackupView view(String clusterId, String timestamp) throws IOException {
+        String key = clusterId + "/" + timestamp;
+        BackupView view = views.get(key);
+        if (view == null) {
+            view = open(clusterId, timestamp);
+            views.put(key, view);
+        }
+        return view;
+    }
+
+    private BackupView open(String clusterId, String timestamp) throws IOException {
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        if (!Files.isDirectory(backupPath)) {
+            throw new IOException("backup not found at " + backupPath);
+        }
+        BackupCatalogEntry entry = backupCatalogService.get(clusterId, timestamp);
+        if (entry != null && "snapshot".equals(entry.getBackupType())) {
+            throw new IOException("backup " + timestamp + " is a snapshot of data files and has no BSON dump to browse");
+        }
+
+        BackupView view = new BackupView();
+        view.backupPath = backupPath;
+        Path dumpPath = backupPath.resolve("dump");
+        if (Files.isDirectory(dumpPath)) {
+            view.source = "directory";
+            try (Stream<Path> walk = Files.walk(dumpPath)) {
+                walk.filter(Files::isRegularFile).forEach(file -> {
+                    String namespace = BsonRestoreEngine.namespaceOf(dumpPath.relativize(file).toString(), ".bson");
+                    if (namespace != null) view.files.put(namespace, file);
+                });
+            }
+        } else if (backupRepositoryService.hasManifest(backupPath)) {
+            view.source = "chunks";
+            BackupManifest manifest = backupRepositoryService.loadManifest(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE));
+            for (BackupManifest.FileEntry file : manifest.getFiles()) {
+                String namespace = BsonRestoreEngine.namespaceOf(file.getPath(), ".bson");
+                if (namespace != null) view.chunked.put(namespace, file);
+            }
+        } else if (Files.exists(backupPath.resolve("dump.tar.gz"))) {
+            view.source = "tar.gz";
+        } else if (Files.exists(backupPath.resolve("dump.zip"))) {
+            view.source = "zip";
+        } else {
+            throw new IOException("no dump data found in " + backupPath);
+        }
+
+        // Counts recorded at backup time save indexing or streaming every collection just to list them
+        IntegrityManifest integrity = backupIntegrityService.load(backupPath);
+        if (integrity != null) {
+            for (IntegrityManifest.FileEntry file : integrity.getFiles()) {
+                String namespace = BsonRestoreEngine.namespaceOf(file.getPath(), ".bson");
+                if (namespace != null && file.getDocuments() >= 0) {
+                    view.stats.put(namespace, new long[]{file.getDocuments(), file.getSize()});
+                }
+            }
+        } else if (view.source.equals("tar.gz") || view.source.equals("zip")) {
+            countArchive(view);
+        }
+        return view;
+    }
+
+    // Archives without an integrity manifest are counted in one streaming pass
+    private void countArchive(BackupView view) throws IOException {
+        Path archive = view.backupPath.resolve(view.source.equals("zip") ? "dump.zip" : "dump.tar.gz");
+        BsonRestoreEngine.DumpSource source = view.source.equals("zip") ? BsonRestoreEngine.zip(archive) : BsonRestoreEngine.tarGz(archive);
+        source.forEachEntry((path, in) -> {
+            String namespace = BsonRestoreEngine.namespaceOf(path, ".bson");
+            if (namespace == null) return;
+            long[] stats = new long[2];
+            readDocuments(in, namespace, document -> {
+                stats[0]++;
+                stats[1] += document.getByteBuffer().remaining();
+                return true;
+            });
+            view.stats.put(namespace, stats);
+        });
+    }
+}
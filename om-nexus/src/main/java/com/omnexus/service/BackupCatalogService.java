@@ -0,0 +1,361 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.BackupCatalogEntry;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Persisted index of the backups of each cluster, stored as
+ * backup/&lt;clusterId&gt;/catalog.json and held in memory ordered by backup time.
+ * Listing and choosing a restore point never touches the backup directories;
+ * a cluster without a catalog is migrated by scanning its directories once.
+ */
+@Service
+public class BackupCatalogService {
+    private static final String BACKUP_ROOT = "backup";
+    private static final String CATALOG_FILE = "catalog.json";
+    // Backup directory names are ISO instants with ':' replaced by '-'
+    private static final Pattern TIMESTAMP = Pattern.compile("(\\d{4}-\\d{2}-\\d{2}T)(\\d{2})-(\\d{2})-(\\d{2}(?:\\.\\d+)?Z)");
+    private static final Comparator<String> BY_TIME =
+            Comparator.comparing(BackupCatalogService::parseTimestamp).thenComparing(Comparator.naturalOrder());
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, NavigableMap<String, BackupCatalogEntry>> catalogs = new ConcurrentHashMap<>();
+    // Backups being read (restore, download, offload) and backups being deleted, by clusterId/timestamp
+    private final Map<String, Integer> leases = new HashMap<>();
+    private final Set<String> deleting = new HashSet<>();
+
+    /**
+     * Held while a backup is read so retention cannot delete it underneath.
+     */
+    public final class Lease implements AutoCloseable {
+        private final String key;
+        private boolean released;
+
+        private Lease(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void close() {
+            synchronized (leases) {
+                if (released) return;
+                released = true;
+                leases.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    public void record(BackupCatalogEntry entry) {
+        NavigableMap<String, BackupCatalogEntry> catalog = catalogFor(entry.getClusterId());
+        catalog.put(entry.getTimestamp(), entry);
+        persist(entry.getClusterId(), catalog);
+    }
+
+    public BackupCatalogEntry get(String clusterId, String timestamp) {
+        return catalogFor(clusterId).get(timestamp);
+    }
+
+    /**
+     * All backups of a cluster, newest first.
+     */
+    public List<BackupCatalogEntry> list(String clusterId) {
+        return new ArrayList<>(catalogFor(clusterId).descendingMap().values());
+    }
+
+    /**
+     * Backups taken within [from, to] (either bound may be null) with the given
+     * verification status (null for any), newest first.
+     */
+    public List<BackupCatalogEntry> query(String clusterId, Instant from, Instant to, String status) {
+        NavigableMap<String, BackupCatalogEntry> catalog = catalogFor(clusterId);
+        long fromMillis = from != null ? from.toEpochMilli() : Long.MIN_VALUE;
+        long toMillis = to != null ? to.toEpochMilli() : Long.MAX_VALUE;
+        List<BackupCatalogEntry> result = new ArrayList<>();
+        for (BackupCatalogEntry entry : catalog.descendingMap().values()) {
+            if (entry.getCreatedAt() < fromMillis || entry.getCreatedAt() > toMillis) continue;
+            if (status == null || status.equalsIgnoreCase(entry.getVerificationStatus())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Newest successful backup, optionally restricted to a verification status.
+     */
+    public BackupCatalogEntry latest(String clusterId, String status) {
+        for (BackupCatalogEntry entry : catalogFor(clusterId).descendingMap().values()) {
+            if (entry.isSuccess() && (status == null || status.equalsIgnoreCase(entry.getVerificationStatus()))) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public void updateVerification(String clusterId, String timestamp, String status) {
+        update(clusterId, timestamp, entry -> {
+            entry.setVerificationStatus(status);
+            entry.setVerifiedAt(System.currentTimeMillis());
+        });
+    }
+
+    public void updateOffload(String clusterId, String timestamp, String status) {
+        update(clusterId, timestamp, entry -> {
+            entry.setOffloadStatus(status);
+            entry.setOffloadedAt(System.currentTimeMillis());
+            entry.setOffloadAttempts("offloaded".equals(status) ? 0 : entry.getOffloadAttempts() + 1);
+        });
+    }
+
+    public void updateDumpLayout(String clusterId, String timestamp, String dumpLayout) {
+        update(clusterId, timestamp, entry -> entry.setDumpLayout(dumpLayout));
+    }
+
+    /**
+     * Lease a backup for reading, or null if it is being deleted.
+     */
+    public Lease acquire(String clusterId, String timestamp) {
+        String key = clusterId + "/" + timestamp;
+        synchronized (leases) {
+            if (deleting.contains(key)) return null;
+            leases.merge(key, 1, Integer::sum);
+            return new Lease(key);
+        }
+    }
+
+    /**
+     * Claim a backup for deletion; false while it is leased. New leases are refused until endDelete.
+     */
+    public boolean beginDelete(String clusterId, String timestamp) {
+        String key = clusterId + "/" + timestamp;
+        synchronized (leases) {
+            if (leases.containsKey(key)) return false;
+            deleting.add(key);
+            return true;
+        }
+    }
+
+    public void endDelete(String clusterId, String timestamp) {
+        synchronized (leases) {
+            deleting.remove(clusterId + "/" + timestamp);
+        }
+    }
+
+    public void remove(String clusterId, String timestamp) {
+        NavigableMap<String, BackupCatalogEntry> catalog = catalogFor(clusterId);
+        if (catalog.remove(timestamp) != null) {
+            persist(clusterId, catalog);
+        }
+    }
+
+    /**
+     * Backup directories of a cluster that have a metadata.json but no catalog entry, e.g. from a
+     * backup that stopped before recording itself, described from their files; newest first.
+     */
+    public List<BackupCatalogEntry> uncatalogued(String clusterId) {
+        List<BackupCatalogEntry> found = scanMissing(clusterId, catalogFor(clusterId));
+        found.sort(Comparator.comparing(BackupCatalogEntry::getTimestamp, BY_TIME).reversed());
+        return found;
+    }
+
+    private List<BackupCatalogEntry> scanMissing(String clusterId, NavigableMap<String, BackupCatalogEntry> catalog) {
+        List<BackupCatalogEntry> found = new ArrayList<>();
+        Path clusterPath = Paths.get(BACKUP_ROOT, clusterId);
+        if (!Files.isDirectory(clusterPath)) return found;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(clusterPath, Files::isDirectory)) {
+            for (Path backupPath : stream) {
+                if (!catalog.containsKey(backupPath.getFileName().toString()) && Files.exists(backupPath.resolve("metadata.json"))) {
+                    found.add(scanEntry(clusterId, backupPath));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to scan backups of " + clusterId + ": " + e.getMessage());
+        }
+        return found;
+    }
+
+    private void update(String clusterId, String timestamp, Consumer<BackupCatalogEntry> change) {
+        NavigableMap<String, BackupCatalogEntry> catalog = catalogFor(clusterId);
+        BackupCatalogEntry entry = catalog.get(timestamp);
+        if (entry != null) {
+            synchronized (entry) {
+                change.accept(entry);
+            }
+            persist(clusterId, catalog);
+        }
+    }
+
+    private NavigableMap<String, BackupCatalogEntry> catalogFor(String clusterId) {
+        return catalogs.computeIfAbsent(clusterId, this::load);
+    }
+
+    private NavigableMap<String, BackupCatalogEntry> load(String clusterId) {
+        NavigableMap<String, BackupCatalogEntry> catalog = new ConcurrentSkipListMap<>(BY_TIME);
+        Path catalogPath = Paths.get(BACKUP_ROOT, clusterId, CATALOG_FILE);
+        if (Files.exists(catalogPath)) {
+            try {
+                List<BackupCatalogEntry> entries = mapper.readValue(catalogPath.toFile(), new TypeReference<>() {});
+                for (BackupCatalogEntry entry : entries) {
+                    catalog.put(entry.getTimestamp(), entry);
+                }
+                if (reconcile(clusterId, catalog)) {
+                    persist(clusterId, catalog);
+                }
+                return catalog;
+            } catch (IOException e) {
+                System.err.println("Backup catalog of " + clusterId + " is unreadable, rebuilding: " + e.getMessage());
+            }
+        }
+
+        migrate(clusterId, catalog);
+        if (!catalog.isEmpty()) {
+            persist(clusterId, catalog);
+        }
+        return catalog;
+    }
+
+    // Bring a stored catalog in line with the backup directories: entries whose directory was
+    // removed by hand are dropped, directories with a metadata.json but no entry are added
+    private boolean reconcile(String clusterId, NavigableMap<String, BackupCatalogEntry> catalog) {
+        boolean changed = catalog.keySet().removeIf(timestamp -> !Files.isDirectory(Paths.get(BACKUP_ROOT, clusterId, timestamp)));
+        for (BackupCatalogEntry entry : scanMissing(clusterId, catalog)) {
+            catalog.put(entry.getTimestamp(), entry);
+            changed = true;
+        }
+        if (changed) {
+            System.out.println("Reconciled the backup catalog of " + clusterId + " with its directories");
+        }
+        return changed;
+    }
+
+    // One-off directory scan for clusters backed up before the catalog existed
+    private void migrate(String clusterId, NavigableMap<String, BackupCatalogEntry> catalog) {
+        Path clusterPath = Paths.get(BACKUP_ROOT, clusterId);
+        if (!Files.isDirectory(clusterPath)) return;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(clusterPath, Files::isDirectory)) {
+            for (Path backupPath : stream) {
+                catalog.put(backupPath.getFileName().toString(), scanEntry(clusterId, backupPath));
+            }
+            System.out.println("Migrated " + catalog.size() + " backups of " + clusterId + " into the catalog");
+        } catch (IOException e) {
+            System.err.println("Failed to scan backups of " + clusterId + ": " + e.getMessage());
+        }
+    }
+
+    // A catalog entry built from the backup directory and its metadata.json
+    @SuppressWarnings("unchecked")
+    private BackupCatalogEntry scanEntry(String clusterId, Path backupPath) {
+        String timestamp = backupPath.getFileName().toString();
+        BackupCatalogEntry entry = new BackupCatalogEntry();
+        entry.setClusterId(clusterId);
+        entry.setTimestamp(timestamp);
+        entry.setCreatedAt(createdAt(timestamp, backupPath));
+        entry.setSizeBytes(directorySize(backupPath));
+        entry.setCompression(detectCompression(backupPath));
+        if (Files.isDirectory(backupPath.resolve(SnapshotBackupService.SNAPSHOT_DIR))) {
+            entry.setBackupType("snapshot");
+            entry.setDumpLayout(SnapshotBackupService.SNAPSHOT_DIR);
+        }
+
+        Path metadataPath = backupPath.resolve("metadata.json");
+        if (Files.exists(metadataPath)) {
+            try {
+                Map<String, Object> meta = mapper.readValue(metadataPath.toFile(), Map.class);
+                entry.setSuccess(Boolean.TRUE.equals(meta.get("success")));
+                if (meta.get("databases") instanceof List<?> databases) {
+                    entry.setDatabases((List<String>) databases);
+                }
+                if (meta.get("artifacts") instanceof List<?> artifacts) {
+                    entry.setArtifacts((List<Map<String, Object>>) artifacts);
+                }
+            } catch (IOException e) {
+                System.err.println("Unreadable metadata in " + backupPath + ": " + e.getMessage());
+            }
+        }
+        return entry;
+    }
+
+    // Written to a temp file and moved into place so readers never see a partial catalog
+    private void persist(String clusterId, NavigableMap<String, BackupCatalogEntry> catalog) {
+        synchronized (catalog) {
+            Path clusterPath = Paths.get(BACKUP_ROOT, clusterId);
+            try {
+                Files.createDirectories(clusterPath);
+                Path temp = Files.createTempFile(clusterPath, CATALOG_FILE, ".tmp");
+                mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), new ArrayList<>(catalog.values()));
+                Files.move(temp, clusterPath.resolve(CATALOG_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Failed to save backup catalog of " + clusterId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public static String detectCompression(Path backupPath) {
+        if (Files.exists(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE))) return "dedup";
+        if (Files.exists(backupPath.resolve("dump.tar.gz"))) return "tar.gz";
+        if (Files.exists(backupPath.resolve("dump.zip"))) return "zip";
+        return "none";
+    }
+
+    public static long directorySize(Path path) {
+        try (Stream<Path> walk = Files.walk(path)) {
+            return walk.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long createdAt(String timestamp, Path backupPath) {
+        Instant instant = parseTimestamp(timestamp);
+        if (!Instant.EPOCH.equals(instant)) return instant.toEpochMilli();
+        try {
+            return Files.getLastModifiedTime(backupPath).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public static Instant parseTimestamp(String timestamp) {
+        Matcher m = TIMESTAMP.matcher(timestamp);
+        if (m.matches()) {
+            try {
+                return Instant.parse(m.group(1) + m.group(2) + ":" + m.group(3) + ":" + m.group(4));
+            } catch (DateTimeParseException e) {
+                // fall through
+            }
+        }
+        return Instant.EPOCH;
+    }
+}
@@ -0,0 +1,211 @@
+package com.omnexus.service;
+
+import com.omnexus.model.BackupManifest;
+import com.omnexus.util.TarStreamWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Streams backups off the host. Compressed archives are sent with
+ * FileChannel.transferTo and honour single HTTP byte ranges so interrupted
+ * transfers can resume; uncompressed and deduplicated dumps are tar-streamed
+ * on the fly. Nothing is buffered beyond the channel copy buffers.
+ */
+@Service
+public class BackupDownloadService {
+    private static final String BACKUP_ROOT = "backup";
+
+    private final BackupRepositoryService backupRepositoryService;
+    private final BackupCatalogService backupCatalogService;
+
+    public BackupDownloadService(BackupRepositoryService backupRepositoryService, BackupCatalogService backupCatalogService) {
+        this.backupRepositoryService = backupRepositoryService;
+        this.backupCatalogService = backupCatalogService;
+    }
+
+    public void download(String clusterId, String timestamp, String rangeHeader, HttpServletResponse response) throws IOException {
+        if (!isSafeName(clusterId) || !isSafeName(timestamp)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cluster id or timestamp");
+            return;
+        }
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        if (!Files.isDirectory(backupPath)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Backup not found: " + clusterId + "/" + timestamp);
+            return;
+        }
+
+        BackupCatalogService.Lease lease = backupCatalogService.acquire(clusterId, timestamp);
+        if (lease == null) {
+            response.sendError(HttpServletResponse.SC_GONE, "Backup is being deleted: " + clusterId + "/" + timestamp);
+            return;
+        }
+        try (lease) {
+            send(clusterId, timestamp, backupPath, rangeHeader, response);
+        }
+    }
+
+    private void send(String clusterId, String timestamp, Path backupPath, String rangeHeader,
+                      HttpServletResponse response) throws IOException {
+        String baseName = clusterId + "-" + timestamp;
+        Path tarGz = backupPath.resolve("dump.tar.gz");
+        Path zip = backupPath.resolve("dump.zip");
+        Path dump = backupPath.resolve("dump");
+
+        if (Files.exists(tarGz)) {
+            sendFile(tarGz, "application/gzip", baseName + ".tar.gz", rangeHeader, response);
+        } else if (Files.exists(zip)) {
+            sendFile(zip, "application/zip", baseName + ".zip", rangeHeader, response);
+        } else if (Files.isDirectory(dump)) {
+            streamDumpDirectory(backupPath, dump, "dump/", baseName + ".tar", response);
+        } else if (Files.isDirectory(backupPath.resolve(SnapshotBackupService.SNAPSHOT_DIR))) {
+            streamDumpDirectory(backupPath, backupPath.resolve(SnapshotBackupService.SNAPSHOT_DIR), "snapshot/", baseName + ".tar", response);
+        } else if (backupRepositoryService.hasManifest(backupPath)) {
+            streamManifest(backupPath, baseName + ".tar", response);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Backup has no dump data: " + clusterId + "/" + timestamp);
+        }
+    }
+
+    /**
+     * Send one file with FileChannel.transferTo, honouring a single byte range.
+     */
+    public void sendFile(Path file, String contentType, String fileName, String rangeHeader, HttpServletResponse response) throws IOException {
+        long size = Files.size(file);
+        long start = 0;
+        long end = size - 1;
+
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", "\"" + size + "-" + Files.getLastModifiedTime(file).toMillis() + "\"");
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+
+        // Single ranges only; multi-range requests get the whole file, which RFC 9110 allows
+        if (rangeHeader != null && rangeHeader.startsWith("bytes=") && !rangeHeader.contains(",")) {
+            long[] range = parseRange(rangeHeader.substring("bytes=".length()).trim(), size);
+            if (range == null) {
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            start = range[0];
+            end = range[1];
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long transferred = in.transferTo(position, remaining, out);
+                if (transferred <= 0) {
+                    throw new IOException("Transfer of " + file + " stalled at " + position);
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        response.flushBuffer();
+    }
+
+    /**
+     * Parse "start-end", "start-" or "-suffix" into inclusive bounds, or null if unsatisfiable.
+     */
+    static long[] parseRange(String spec, long size) {
+        try {
+            int dash = spec.indexOf('-');
+            if (dash < 0 || size == 0) return null;
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start >= size || end < start) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void streamDumpDirectory(Path backupPath, Path dump, String prefix, String fileName, HttpServletResponse response) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dump)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        List<TarEntry> entries = new ArrayList<>();
+        addIfExists(entries, backupPath.resolve("metadata.json"), "metadata.json");
+        for (Path file : files) {
+            String name = prefix + dump.relativize(file).toString().replace('\\', '/');
+            entries.add(new TarEntry(name, Files.size(file), Files.getLastModifiedTime(file).toMillis(), List.of(file)));
+        }
+        streamTar(entries, fileName, response);
+    }
+
+    private void streamManifest(Path backupPath, String fileName, HttpServletResponse response) throws IOException {
+        Path manifestPath = backupPath.resolve(BackupRepositoryService.MANIFEST_FILE);
+        BackupManifest manifest = backupRepositoryService.loadManifest(manifestPath);
+        long modified = Files.getLastModifiedTime(manifestPath).toMillis();
+
+        List<TarEntry> entries = new ArrayList<>();
+        addIfExists(entries, backupPath.resolve("metadata.json"), "metadata.json");
+        for (BackupManifest.FileEntry file : manifest.getFiles()) {
+            List<Path> chunks = file.getChunks().stream().map(backupRepositoryService::chunkPath).toList();
+            entries.add(new TarEntry("dump/" + file.getPath(), file.getSize(), modified, chunks));
+        }
+        streamTar(entries, fileName, response);
+    }
+
+    private void streamTar(List<TarEntry> entries, String fileName, HttpServletResponse response) throws IOException {
+        // The tar layout is deterministic, so the length is known before streaming
+        long length = TarStreamWriter.trailerSize();
+        for (TarEntry entry : entries) {
+            length += TarStreamWriter.entrySize(entry.size());
+        }
+
+        response.setContentType("application/x-tar");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+        response.setHeader("Accept-Ranges", "none");
+        response.setContentLengthLong(length);
+
+        TarStreamWriter tar = new TarStreamWriter(Channels.newChannel(response.getOutputStream()));
+        for (TarEntry entry : entries) {
+            tar.putFile(entry.name(), entry.size(), entry.modifiedMillis(), entry.sources());
+        }
+        tar.finish();
+        response.flushBuffer();
+    }
+
+    private void addIfExists(List<TarEntry> entries, Path file, String name) throws IOException {
+        if (Files.isRegularFile(file)) {
+            entries.add(new TarEntry(name, Files.size(file), Files.getLastModifiedTime(file).toMillis(), List.of(file)));
+        }
+    }
+
+    private boolean isSafeName(String name) {
+        return name != null && !name.isBlank() && !name.contains("/") && !name.contains("\\") && !name.contains("..");
+    }
+
+    private record TarEntry(String name, long size, long modifiedMillis, List<Path> sources) {}
+}
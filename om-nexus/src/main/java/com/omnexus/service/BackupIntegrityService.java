@@ -0,0 +1,413 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.BackupCatalogEntry;
+import com.omnexus.model.BackupManifest;
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.IntegrityManifest;
+import com.omnexus.util.BsonIntegrity;
+import com.omnexus.util.MongoConnectionUtil;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Integrity manifests for backups. A manifest with the SHA-256, size and (for
+ * .bson files) document count and content hash of every dump file is written
+ * with the backup; verification re-hashes the stored data in parallel through
+ * memory maps and records the outcome in the backup catalog.
+ */
+@Service
+public class BackupIntegrityService {
+    public static final String INTEGRITY_FILE = "integrity.json";
+    private static final String BACKUP_ROOT = "backup";
+    private static final int VERIFY_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // Extended JSON keeps int32, int64 and double apart, so a changed numeric type shows as a change
+    private static final JsonWriterSettings SIGNATURE_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private final BackupRepositoryService backupRepositoryService;
+    private final BackupCatalogService backupCatalogService;
+    private final ConfigServerService configServerService;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public BackupIntegrityService(BackupRepositoryService backupRepositoryService, BackupCatalogService backupCatalogService,
+                                  ConfigServerService configServerService) {
+        this.backupRepositoryService = backupRepositoryService;
+        this.backupCatalogService = backupCatalogService;
+        this.configServerService = configServerService;
+    }
+
+    /**
+     * Write the integrity manifest of a freshly written dump. Files in known were
+     * hashed while they were written; everything else is hashed here.
+     */
+    public IntegrityManifest build(String clusterId, String timestamp, Path backupPath, Path dumpPath,
+                                   Map<String, BsonIntegrity.FileDigest> known) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dumpPath)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        List<Callable<IntegrityManifest.FileEntry>> tasks = new ArrayList<>();
+        for (Path file : files) {
+            String relative = dumpPath.relativize(file).toString().replace('\\', '/');
+            tasks.add(() -> {
+                BsonIntegrity.FileDigest digest = known.get(relative);
+                if (digest == null) {
+                    // Streamed rather than mapped so the dump can be deleted right after (dedup, compression)
+                    try (InputStream in = Files.newInputStream(file)) {
+                        digest = BsonIntegrity.scan(in, relative.endsWith(".bson"));
+                    }
+                }
+                return toEntry(relative, digest);
+            });
+        }
+
+        IntegrityManifest manifest = new IntegrityManifest();
+        manifest.setClusterId(clusterId);
+        manifest.setTimestamp(timestamp);
+        manifest.setCreatedAt(System.currentTimeMillis());
+        manifest.setFiles(runAll(tasks));
+        save(backupPath, manifest);
+        System.out.println("Integrity manifest written for " + clusterId + "/" + timestamp + ": "
+                + manifest.getFiles().size() + " files, " + (files.size() - known.size()) + " hashed after the dump");
+        return manifest;
+    }
+
+    /**
+     * Add the compressed dump archive of a backup to its manifest.
+     */
+    public void addArchives(Path backupPath) throws IOException {
+        Path manifestPath = backupPath.resolve(INTEGRITY_FILE);
+        if (!Files.exists(manifestPath)) return;
+        IntegrityManifest manifest = mapper.readValue(manifestPath.toFile(), IntegrityManifest.class);
+        manifest.getArchives().clear();
+        for (String name : List.of("dump.tar.gz", "dump.zip")) {
+            Path archive = backupPath.resolve(name);
+            if (Files.exists(archive)) {
+                try (InputStream in = Files.newInputStream(archive)) {
+                    manifest.getArchives().add(toEntry(name, BsonIntegrity.scan(in, false)));
+                }
+            }
+        }
+        save(backupPath, manifest);
+    }
+
+    /**
+     * Re-hash one backup and record verified/damaged in the catalog.
+     */
+    public Map<String, Object> verify(String clusterId, String timestamp) {
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        Path manifestPath = backupPath.resolve(INTEGRITY_FILE);
+        if (!Files.exists(manifestPath)) {
+            return Map.of("clusterId", clusterId, "timestamp", timestamp, "status", "unverified",
+                    "error", "backup has no integrity manifest");
+        }
+
+        long start = System.currentTimeMillis();
+        List<String> problems;
+        String checked;
+        try {
+            IntegrityManifest manifest = mapper.readValue(manifestPath.toFile(), IntegrityManifest.class);
+            Path dumpPath = backupPath.resolve("dump");
+            if (!manifest.getArchives().isEmpty()) {
+                checked = "archive";
+                problems = verifyFiles(manifest.getArchives(), backupPath);
+            } else if (Files.isDirectory(backupPath.resolve(SnapshotBackupService.SNAPSHOT_DIR))) {
+                checked = "snapshot";
+                problems = verifyFiles(manifest.getFiles(), backupPath.resolve(SnapshotBackupService.SNAPSHOT_DIR));
+            } else if (Files.isDirectory(dumpPath)) {
+                checked = "dump";
+                problems = verifyFiles(manifest.getFiles(), dumpPath);
+            } else if (backupRepositoryService.hasManifest(backupPath)) {
+                checked = "chunks";
+                problems = verifyChunked(manifest.getFiles(), backupPath);
+            } else {
+                checked = "none";
+                problems = List.of("no dump data found");
+            }
+        } catch (IOException e) {
+            checked = "none";
+            problems = List.of("unreadable manifest: " + e.getMessage());
+        }
+
+        String status = problems.isEmpty() ? "verified" : "damaged";
+        backupCatalogService.updateVerification(clusterId, timestamp, status);
+        if (!problems.isEmpty()) {
+            System.err.println("Backup " + clusterId + "/" + timestamp + " is damaged: " + problems);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("clusterId", clusterId);
+        result.put("timestamp", timestamp);
+        result.put("status", status);
+        result.put("checked", checked);
+        result.put("problems", problems);
+        result.put("durationMs", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Verify every backup of a cluster, or only those not verified yet.
+     */
+    public List<Map<String, Object>> verifyCluster(String clusterId, boolean onlyUnverified) {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (BackupCatalogEntry entry : backupCatalogService.list(clusterId)) {
+            if (onlyUnverified && !"unverified".equals(entry.getVerificationStatus())) continue;
+            results.add(verify(clusterId, entry.getTimestamp()));
+        }
+        return results;
+    }
+
+    @Scheduled(cron = "${omnexus.backup.verify-cron:0 0 4 * * ?}")
+    public void verifyNewBackups() {
+        for (String clusterId : configServerService.getAllClusterIds()) {
+            try {
+                verifyCluster(clusterId, true);
+            } catch (Exception e) {
+                System.err.println("Backup verification failed for " + clusterId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Document count and content hash of live collections, comparable with the manifest's:
+     * every shard primary is scanned directly, one task per shard and collection, and the
+     * order-independent per-shard hashes are added up. Collections that could not be read
+     * are left out so callers treat them as changed.
+     */
+    public Map<String, BsonIntegrity.FileDigest> liveDigests(ClusterConfig config, Collection<String> namespaces) {
+        Map<String, String> shards = ShardLayoutService.shardConnections(config);
+        Map<String, long[]> totals = new ConcurrentHashMap<>(); // namespace -> {documents, contentHash}
+        Set<String> failed = ConcurrentHashMap.newKeySet();
+        if (shards.isEmpty() || namespaces.isEmpty()) return Map.of();
+
+        Map<String, MongoClient> clients = new HashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(shards.size() * 2, 8));
+        try {
+            shards.forEach((shard, connectionString) -> clients.put(shard, MongoConnectionUtil.createClient(connectionString)));
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (MongoClient client : clients.values()) {
+                for (String namespace : namespaces) {
+                    tasks.add(() -> {
+                        try {
+                            long[] digest = hashCollection(client, namespace);
+                            totals.merge(namespace, digest, (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]});
+                        } catch (Exception e) {
+                            System.err.println("Could not hash live " + namespace + ": " + e.getMessage());
+                            failed.add(namespace);
+                        }
+                        return null;
+                    });
+                }
+            }
+            pool.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Map.of();
+        } finally {
+            pool.shutdownNow();
+            clients.values().forEach(MongoClient::close);
+        }
+
+        Map<String, BsonIntegrity.FileDigest> digests = new HashMap<>();
+        totals.forEach((namespace, total) -> {
+            if (!failed.contains(namespace)) {
+                digests.put(namespace, new BsonIntegrity.FileDigest(-1, null, total[0], total[1], null));
+            }
+        });
+        return digests;
+    }
+
+    /**
+     * Options and indexes of the namespaces that exist on the cluster, as {@link #metadataSignature}s.
+     * Namespaces that do not exist are left out, as is everything when the cluster cannot be read.
+     */
+    public Map<String, String> liveMetadataSignatures(int mongosPort, Collection<String> namespaces) {
+        Map<String, String> signatures = new HashMap<>();
+        try (MongoClient client = MongoConnectionUtil.createClient("mongodb://localhost:" + mongosPort + "/?serverSelectionTimeoutMS=10000")) {
+            for (String namespace : namespaces) {
+                int dot = namespace.indexOf('.');
+                MongoDatabase db = client.getDatabase(namespace.substring(0, dot));
+                String name = namespace.substring(dot + 1);
+                Document info = db.listCollections().filter(new Document("name", name)).first();
+                if (info == null) continue;
+                Document metadata = new Document();
+                Document options = info.get("options", Document.class);
+                if (options != null) metadata.append("options", options);
+                List<Document> indexes = new ArrayList<>();
+                if (!"view".equals(info.getString("type"))) {
+                    db.getCollection(name).listIndexes().into(indexes);
+                }
+                metadata.append("indexes", indexes);
+                signatures.put(namespace, metadataSignature(metadata));
+            }
+        } catch (Exception e) {
+            System.err.println("Could not read live collection metadata: " + e.getMessage());
+            return Map.of();
+        }
+        return signatures;
+    }
+
+    /**
+     * The options and indexes of a dump's .metadata.json (or the same read live) as one comparable string.
+     */
+    public static String metadataSignature(Document metadata) {
+        Document options = metadata.get("options", Document.class);
+        List<Document> indexes = new ArrayList<>();
+        for (Object index : metadata.getList("indexes", Object.class, List.of())) {
+            if (index instanceof Document spec) {
+                Document copy = new Document(spec);
+                copy.remove("ns");
+                indexes.add(copy);
+            }
+        }
+        indexes.sort(Comparator.comparing(spec -> String.valueOf(spec.get("name"))));
+        return new Document("options", options != null ? options : new Document())
+                .append("indexes", indexes)
+                .toJson(SIGNATURE_JSON);
+    }
+
+    // Orphaned documents left on a shard make a collection look changed, which only costs an extra reload
+    private long[] hashCollection(MongoClient client, String namespace) {
+        int dot = namespace.indexOf('.');
+        MongoCollection<RawBsonDocument> collection = client.getDatabase(namespace.substring(0, dot))
+                .getCollection(namespace.substring(dot + 1), RawBsonDocument.class);
+        long documents = 0;
+        long contentHash = 0;
+        for (RawBsonDocument document : collection.find().batchSize(1000)) {
+            contentHash += BsonIntegrity.documentHash(document.getByteBuffer().asNIO());
+            documents++;
+        }
+        return new long[]{documents, contentHash};
+    }
+
+    private List<String> verifyFiles(List<IntegrityManifest.FileEntry> entries, Path root) {
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (IntegrityManifest.FileEntry entry : entries) {
+            tasks.add(() -> {
+                Path file = root.resolve(entry.getPath());
+                if (!Files.isRegularFile(file)) {
+                    return entry.getPath() + ": missing";
+                }
+                return compare(entry, BsonIntegrity.scan(file, entry.getDocuments() >= 0));
+            });
+        }
+        return problems(tasks);
+    }
+
+    // Deduplicated backups are re-read through their chunks, which also catches damaged shared chunks
+    private List<String> verifyChunked(List<IntegrityManifest.FileEntry> entries, Path backupPath) throws IOException {
+        BackupManifest chunkManifest = backupRepositoryService.loadManifest(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE));
+        Map<String, BackupManifest.FileEntry> chunked = new HashMap<>();
+        for (BackupManifest.FileEntry file : chunkManifest.getFiles()) {
+            chunked.put(file.getPath(), file);
+        }
+
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (IntegrityManifest.FileEntry entry : entries) {
+            tasks.add(() -> {
+                BackupManifest.FileEntry file = chunked.get(entry.getPath());
+                if (file == null) {
+                    return entry.getPath() + ": missing from chunk manifest";
+                }
+                for (String hash : file.getChunks()) {
+                    if (!Files.exists(backupRepositoryService.chunkPath(hash))) {
+                        return entry.getPath() + ": chunk " + hash + " missing";
+                    }
+                }
+                try (InputStream in = backupRepositoryService.openFile(file)) {
+                    return compare(entry, BsonIntegrity.scan(in, entry.getDocuments() >= 0));
+                }
+            });
+        }
+        return problems(tasks);
+    }
+
+    private String compare(IntegrityManifest.FileEntry expected, BsonIntegrity.FileDigest actual) {
+        String path = expected.getPath();
+        if (!actual.isValid()) return path + ": " + actual.error();
+        if (actual.size() != expected.getSize()) return path + ": size " + actual.size() + " != " + expected.getSize();
+        if (expected.getDocuments() >= 0 && actual.documents() != expected.getDocuments()) {
+            return path + ": " + actual.documents() + " documents, expected " + expected.getDocuments();
+        }
+        if (!Objects.equals(actual.sha256(), expected.getSha256())) return path + ": checksum mismatch";
+        return null;
+    }
+
+    private List<String> problems(List<Callable<String>> tasks) {
+        try {
+            return runAll(tasks).stream().filter(Objects::nonNull).toList();
+        } catch (IOException e) {
+            return List.of(e.getMessage());
+        }
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(VERIFY_THREADS);
+        try {
+            List<Future<T>> futures = pool.invokeAll(tasks);
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing backup files", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to hash backup files: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private IntegrityManifest.FileEntry toEntry(String path, BsonIntegrity.FileDigest digest) throws IOException {
+        if (!digest.isValid()) {
+            throw new IOException(path + ": " + digest.error());
+        }
+        IntegrityManifest.FileEntry entry = new IntegrityManifest.FileEntry();
+        entry.setPath(path);
+        entry.setSize(digest.size());
+        entry.setSha256(digest.sha256());
+        entry.setDocuments(digest.documents());
+        entry.setContentHash(digest.documents() >= 0 ? BsonIntegrity.hex(digest.contentHash()) : null);
+        return entry;
+    }
+
+    private void save(Path backupPath, IntegrityManifest manifest) throws IOException {
+        mapper.writerWithDefaultPrettyPrinter().writeValue(backupPath.resolve(INTEGRITY_FILE).toFile(), manifest);
+    }
+
+    public IntegrityManifest load(Path backupPath) throws IOException {
+        Path manifestPath = backupPath.resolve(INTEGRITY_FILE);
+        return Files.exists(manifestPath) ? mapper.readValue(manifestPath.toFile(), IntegrityManifest.class) : null;
+    }
+}
@@ -0,0 +1,638 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.BackupCatalogEntry;
+import com.omnexus.model.BackupManifest;
+import com.omnexus.model.IntegrityManifest;
+import com.omnexus.model.OffloadManifest;
+import com.omnexus.util.BsonRestoreEngine;
+import com.omnexus.util.ProcessManager;
+import com.omnexus.util.S3Client;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Copies finished backups to an S3-compatible object store and brings them back.
+ * Offloading runs on its own schedule after a backup is catalogued, so it never
+ * extends the backup itself. Large files go up as parallel multipart uploads with
+ * at most upload-parallelism parts in memory; deduplicated backups upload only
+ * the chunks the store does not have yet.
+ * <p>
+ * Store layout: &lt;prefix&gt;/&lt;clusterId&gt;/&lt;timestamp&gt;/... with the
+ * offload manifest written last, and chunks under &lt;prefix&gt;/.chunks/&lt;sha256&gt;.
+ */
+@Service
+public class BackupOffloadService {
+    public static final String OFFLOAD_FILE = "offload.json";
+    private static final String BACKUP_ROOT = "backup";
+    private static final int MAX_PARTS = 10_000;
+    private static final Set<String> ARCHIVES = Set.of("dump.tar.gz", "dump.zip");
+
+    private final BackupCatalogService backupCatalogService;
+    private final BackupRepositoryService backupRepositoryService;
+    private final BackupIntegrityService backupIntegrityService;
+    private final ConfigServerService configServerService;
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Serializes uploads with retention sweeps, which must not delete chunks of an upload in progress
+    private final ReentrantLock storeLock = new ReentrantLock();
+    private S3Client client;
+
+    @Value("${omnexus.offload.enabled:false}")
+    private boolean enabled;
+
+    @Value("${omnexus.offload.endpoint:http://localhost:9000}")
+    private String endpoint;
+
+    @Value("${omnexus.offload.region:us-east-1}")
+    private String region;
+
+    @Value("${omnexus.offload.bucket:omnexus-backups}")
+    private String bucket;
+
+    @Value("${omnexus.offload.prefix:}")
+    private String prefix;
+
+    @Value("${omnexus.offload.access-key:${AWS_ACCESS_KEY_ID:}}")
+    private String accessKey;
+
+    @Value("${omnexus.offload.secret-key:${AWS_SECRET_ACCESS_KEY:}}")
+    private String secretKey;
+
+    @Value("${omnexus.offload.path-style:true}")
+    private boolean pathStyle;
+
+    @Value("${omnexus.offload.part-size-mb:16}")
+    private int partSizeMb;
+
+    @Value("${omnexus.offload.upload-parallelism:4}")
+    private int uploadParallelism;
+
+    // Failed offloads are retried after retry-backoff-ms, doubling per attempt, up to max-attempts times
+    @Value("${omnexus.offload.retry-backoff-ms:60000}")
+    private long retryBackoffMs;
+
+    @Value("${omnexus.offload.max-attempts:5}")
+    private int maxAttempts;
+
+    // Offsite backups to keep per cluster and the maximum age of the others (0 = no limit)
+    @Value("${omnexus.offload.retention.keep-last:0}")
+    private int keepLast;
+
+    @Value("${omnexus.offload.retention.max-age-days:0}")
+    private int maxAgeDays;
+
+    public BackupOffloadService(BackupCatalogService backupCatalogService, BackupRepositoryService backupRepositoryService,
+                                BackupIntegrityService backupIntegrityService, ConfigServerService configServerService) {
+        this.backupCatalogService = backupCatalogService;
+        this.backupRepositoryService = backupRepositoryService;
+        this.backupIntegrityService = backupIntegrityService;
+        this.configServerService = configServerService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Offload successful backups that are not in the store yet, then apply the retention policy.
+     * Failed offloads back off and give up after max-attempts; damaged local copies are not retried.
+     */
+    @Scheduled(fixedDelayString = "${omnexus.offload.poll-interval-ms:60000}", initialDelayString = "${omnexus.offload.poll-interval-ms:60000}")
+    public void offloadNewBackups() {
+        if (!enabled) return;
+        for (String clusterId : configServerService.getAllClusterIds()) {
+            try {
+                List<BackupCatalogEntry> pending = backupCatalogService.list(clusterId).stream()
+                        .filter(e -> e.isSuccess() && dueForOffload(e))
+                        .filter(e -> Files.isDirectory(Paths.get(BACKUP_ROOT, clusterId, e.getTimestamp())))
+                        .sorted(Comparator.comparingLong(BackupCatalogEntry::getCreatedAt))
+                        .toList();
+                for (BackupCatalogEntry entry : pending) {
+                    offload(clusterId, entry.getTimestamp());
+                }
+                applyRetention(clusterId);
+            } catch (Exception e) {
+                System.err.println("Backup offload failed for " + clusterId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean dueForOffload(BackupCatalogEntry entry) {
+        if ("none".equals(entry.getOffloadStatus())) return true;
+        if (!"failed".equals(entry.getOffloadStatus()) || entry.getOffloadAttempts() >= maxAttempts) return false;
+        long backoff = retryBackoffMs << Math.min(entry.getOffloadAttempts() - 1, 20);
+        return System.currentTimeMillis() >= entry.getOffloadedAt() + backoff;
+    }
+
+    /**
+     * Upload one backup and record the outcome in the catalog.
+     */
+    public Map<String, Object> offload(String clusterId, String timestamp) {
+        if (!enabled) return Map.of("success", false, "error", "offload is disabled (omnexus.offload.enabled)");
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        if (!Files.isDirectory(backupPath)) return Map.of("success", false, "error", "backup not found at " + backupPath);
+
+        BackupCatalogService.Lease lease = backupCatalogService.acquire(clusterId, timestamp);
+        if (lease == null) return Map.of("success", false, "error", "backup " + timestamp + " is being deleted");
+        storeLock.lock();
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(uploadParallelism);
+        String failedStatus = "failed";
+        try (lease) {
+            S3Client s3 = client();
+            s3.ensureBucket();
+            Map<String, String> expected = expectedChecksums(clusterId, timestamp, backupPath);
+
+            OffloadManifest manifest = new OffloadManifest();
+            manifest.setClusterId(clusterId);
+            manifest.setTimestamp(timestamp);
+            manifest.setCatalogEntry(backupCatalogService.get(clusterId, timestamp));
+
+            int uploadedChunks = 0;
+            if (backupRepositoryService.hasManifest(backupPath)) {
+                manifest.setChunks(referencedChunks(backupPath));
+                uploadedChunks = uploadChunks(s3, pool, manifest.getChunks());
+            }
+
+            Semaphore inFlight = new Semaphore(uploadParallelism);
+            List<Future<OffloadManifest.FileEntry>> uploads = new ArrayList<>();
+            for (Path file : backupFiles(backupPath)) {
+                String path = backupPath.relativize(file).toString().replace('\\', '/');
+                if (path.equals(OFFLOAD_FILE)) continue;
+                uploads.add(uploadFile(s3, pool, inFlight, file, backupKey(clusterId, timestamp, path), path));
+            }
+            long bytes = 0;
+            for (Future<OffloadManifest.FileEntry> upload : uploads) {
+                OffloadManifest.FileEntry file = await(upload);
+                String expectedSha = expected.get(file.getPath());
+                if (expectedSha != null && !expectedSha.equals(file.getSha256())) {
+                    failedStatus = "damaged";
+                    throw new IOException(file.getPath() + " no longer matches its integrity manifest; the local copy is damaged");
+                }
+                manifest.getFiles().add(file);
+                bytes += file.getSize();
+            }
+
+            manifest.setUploadedAt(System.currentTimeMillis());
+            s3.putObject(backupKey(clusterId, timestamp, OFFLOAD_FILE), mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+            backupCatalogService.updateOffload(clusterId, timestamp, "offloaded");
+
+            long millis = System.currentTimeMillis() - start;
+            System.out.println("Offloaded backup " + clusterId + "/" + timestamp + ": " + manifest.getFiles().size()
+                    + " files, " + bytes + " bytes, " + uploadedChunks + " new chunks in " + millis + " ms");
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("success", true);
+            result.put("clusterId", clusterId);
+            result.put("timestamp", timestamp);
+            result.put("files", manifest.getFiles().size());
+            result.put("bytes", bytes);
+            result.put("chunksUploaded", uploadedChunks);
+            result.put("durationMs", millis);
+            return result;
+        } catch (Exception e) {
+            System.err.println("Offload of " + clusterId + "/" + timestamp + " failed: " + e.getMessage());
+            backupCatalogService.updateOffload(clusterId, timestamp, failedStatus);
+            return Map.of("success", false, "error", String.valueOf(e.getMessage()));
+        } finally {
+            pool.shutdownNow();
+            storeLock.unlock();
+        }
+    }
+
+    /**
+     * Completely offloaded backups of a cluster in the store, newest first.
+     */
+    public List<Map<String, Object>> listOffloaded(String clusterId) throws IOException {
+        List<Map<String, Object>> backups = new ArrayList<>();
+        for (String timestamp : offloadedTimestamps(clusterId)) {
+            OffloadManifest manifest = loadRemoteManifest(clusterId, timestamp);
+            Map<String, Object> backup = new LinkedHashMap<>();
+            backup.put("timestamp", timestamp);
+            backup.put("uploadedAt", manifest.getUploadedAt());
+            backup.put("files", manifest.getFiles().size());
+            backup.put("bytes", manifest.getFiles().stream().mapToLong(OffloadManifest.FileEntry::getSize).sum());
+            backup.put("chunks", manifest.getChunks().size());
+            backup.put("local", Files.isDirectory(Paths.get(BACKUP_ROOT, clusterId, timestamp)));
+            backups.add(backup);
+        }
+        return backups;
+    }
+
+    /**
+     * Download an offloaded backup into the local backup directory, verifying every checksum.
+     * With skipArchives the compressed dump stays in the store and restores stream it from
+     * there ({@link #openRemoteArchive}); such partial copies are not catalogued.
+     */
+    public Map<String, Object> fetch(String clusterId, String timestamp, boolean skipArchives) {
+        if (!enabled) return Map.of("success", false, "error", "offload is disabled (omnexus.offload.enabled)");
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        if (Files.exists(backupPath.resolve("metadata.json")) && !Files.exists(backupPath.resolve(OFFLOAD_FILE))) {
+            return Map.of("success", false, "error", "backup " + timestamp + " already exists locally");
+        }
+
+        long start = System.currentTimeMillis();
+        Path staging = backupPath.resolveSibling("." + timestamp + ".fetch");
+        ExecutorService pool = Executors.newFixedThreadPool(uploadParallelism);
+        try {
+            S3Client s3 = client();
+            OffloadManifest manifest = loadRemoteManifest(clusterId, timestamp);
+            int fetchedChunks = fetchChunks(s3, pool, manifest.getChunks());
+
+            deleteIfPresent(staging);
+            List<Future<Long>> downloads = new ArrayList<>();
+            boolean archivesSkipped = false;
+            for (OffloadManifest.FileEntry file : manifest.getFiles()) {
+                if (skipArchives && ARCHIVES.contains(file.getPath())) {
+                    archivesSkipped = true;
+                    continue;
+                }
+                Path target = staging.resolve(file.getPath());
+                downloads.add(pool.submit(() -> download(s3, backupKey(clusterId, timestamp, file.getPath()), target,
+                        file.getSha256(), file.getSize())));
+            }
+            long bytes = 0;
+            for (Future<Long> download : downloads) {
+                bytes += await(download);
+            }
+            Files.createDirectories(staging);
+            mapper.writerWithDefaultPrettyPrinter().writeValue(staging.resolve(OFFLOAD_FILE).toFile(), manifest);
+
+            deleteIfPresent(backupPath);
+            Files.createDirectories(backupPath.getParent());
+            Files.move(staging, backupPath, StandardCopyOption.ATOMIC_MOVE);
+
+            if (!archivesSkipped && manifest.getCatalogEntry() != null) {
+                BackupCatalogEntry entry = manifest.getCatalogEntry();
+                entry.setOffloadStatus("offloaded");
+                backupCatalogService.record(entry);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("success", true);
+            result.put("clusterId", clusterId);
+            result.put("timestamp", timestamp);
+            result.put("bytes", bytes);
+            result.put("chunksFetched", fetchedChunks);
+            result.put("archivesStreamed", archivesSkipped);
+            result.put("durationMs", System.currentTimeMillis() - start);
+            return result;
+        } catch (Exception e) {
+            System.err.println("Fetching " + clusterId + "/" + timestamp + " failed: " + e.getMessage());
+            try {
+                deleteIfPresent(staging);
+            } catch (IOException cleanup) {
+                System.err.println("Could not remove " + staging + ": " + cleanup.getMessage());
+            }
+            return Map.of("success", false, "error", String.valueOf(e.getMessage()));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Compressed dump of a fetched backup read straight from the store, or null if the
+     * backup did not come from the store or its archive was downloaded. The stream is
+     * checked against the uploaded checksum when it ends.
+     */
+    public BsonRestoreEngine.DumpSource openRemoteArchive(String clusterId, String timestamp) throws IOException {
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        Path manifestPath = backupPath.resolve(OFFLOAD_FILE);
+        if (!enabled || !Files.exists(manifestPath)) return null;
+        OffloadManifest manifest = mapper.readValue(manifestPath.toFile(), OffloadManifest.class);
+        for (OffloadManifest.FileEntry file : manifest.getFiles()) {
+            if (!ARCHIVES.contains(file.getPath()) || Files.exists(backupPath.resolve(file.getPath()))) continue;
+            String key = backupKey(clusterId, timestamp, file.getPath());
+            BsonRestoreEngine.StreamOpener opener = () -> new VerifyingInputStream(client().getObject(key), key, file.getSha256());
+            return file.getPath().endsWith(".zip") ? BsonRestoreEngine.zip(opener) : BsonRestoreEngine.tarGz(opener);
+        }
+        return null;
+    }
+
+    /**
+     * Delete offsite backups beyond keep-last or older than max-age-days (the newest one is always
+     * kept), then the chunks no remaining offsite backup references.
+     */
+    public Map<String, Object> applyRetention(String clusterId) throws IOException {
+        if (!enabled || (keepLast <= 0 && maxAgeDays <= 0)) return Map.of("deleted", List.of());
+        storeLock.lock();
+        try {
+            S3Client s3 = client();
+            List<String> timestamps = offloadedTimestamps(clusterId);
+            Instant cutoff = maxAgeDays > 0 ? Instant.now().minus(Duration.ofDays(maxAgeDays)) : null;
+            List<String> deleted = new ArrayList<>();
+            for (int i = 1; i < timestamps.size(); i++) {
+                String timestamp = timestamps.get(i);
+                boolean tooMany = keepLast > 0 && i >= keepLast;
+                boolean tooOld = cutoff != null && BackupCatalogService.parseTimestamp(timestamp).isBefore(cutoff);
+                if (!tooMany && !tooOld) continue;
+                // Manifest first, so an interrupted delete leaves an incomplete backup rather than a broken one
+                s3.deleteObject(backupKey(clusterId, timestamp, OFFLOAD_FILE));
+                for (S3Client.ObjectInfo object : s3.list(backupKey(clusterId, timestamp, ""), null).objects()) {
+                    s3.deleteObject(object.key());
+                }
+                deleted.add(timestamp);
+                System.out.println("Retention: deleted offsite backup " + clusterId + "/" + timestamp);
+            }
+            int sweptChunks = deleted.isEmpty() ? 0 : sweepChunks(s3);
+            return Map.of("deleted", deleted, "chunksDeleted", sweptChunks);
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    // Chunks are shared by all clusters, so every offload manifest in the store is consulted
+    private int sweepChunks(S3Client s3) throws IOException {
+        Set<String> referenced = new HashSet<>();
+        for (S3Client.ObjectInfo object : s3.list(prefixed(""), null).objects()) {
+            if (object.key().endsWith("/" + OFFLOAD_FILE)) {
+                try (InputStream in = s3.getObject(object.key())) {
+                    referenced.addAll(mapper.readValue(in, OffloadManifest.class).getChunks());
+                }
+            }
+        }
+        int deleted = 0;
+        for (S3Client.ObjectInfo chunk : s3.list(prefixed(".chunks/"), null).objects()) {
+            String hash = chunk.key().substring(chunk.key().lastIndexOf('/') + 1);
+            if (!referenced.contains(hash)) {
+                s3.deleteObject(chunk.key());
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    // Timestamps with an offload manifest, newest first
+    private List<String> offloadedTimestamps(String clusterId) throws IOException {
+        String clusterPrefix = prefixed(clusterId + "/");
+        List<String> timestamps = new ArrayList<>();
+        for (S3Client.ObjectInfo object : client().list(clusterPrefix, null).objects()) {
+            String rest = object.key().substring(clusterPrefix.length());
+            if (rest.endsWith("/" + OFFLOAD_FILE) && rest.indexOf('/') == rest.length() - OFFLOAD_FILE.length() - 1) {
+                timestamps.add(rest.substring(0, rest.indexOf('/')));
+            }
+        }
+        timestamps.sort(Comparator.comparing(BackupCatalogService::parseTimestamp).reversed());
+        return timestamps;
+    }
+
+    private OffloadManifest loadRemoteManifest(String clusterId, String timestamp) throws IOException {
+        try (InputStream in = client().getObject(backupKey(clusterId, timestamp, OFFLOAD_FILE))) {
+            return mapper.readValue(in, OffloadManifest.class);
+        }
+    }
+
+    // Small files are single PUTs; larger ones multipart, reading a part only once a slot is free
+    private Future<OffloadManifest.FileEntry> uploadFile(S3Client s3, ExecutorService pool, Semaphore inFlight,
+                                                         Path file, String key, String path) throws IOException, InterruptedException {
+        long size = Files.size(file);
+        long partSize = Math.max((long) partSizeMb << 20, (size + MAX_PARTS - 1) / MAX_PARTS);
+        OffloadManifest.FileEntry entry = new OffloadManifest.FileEntry();
+        entry.setPath(path);
+        entry.setSize(size);
+
+        if (size <= partSize) {
+            inFlight.acquire();
+            byte[] data;
+            try {
+                data = Files.readAllBytes(file);
+            } catch (IOException e) {
+                inFlight.release();
+                throw e;
+            }
+            return pool.submit(() -> {
+                try {
+                    s3.putObject(key, data);
+                    entry.setSha256(S3Client.sha256Hex(data));
+                    entry.setParts(1);
+                    return entry;
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+
+        String uploadId = s3.createMultipartUpload(key);
+        MessageDigest sha256 = sha256();
+        List<Future<String>> parts = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int number = 1; ; number++) {
+                inFlight.acquire();
+                byte[] data = in.readNBytes((int) partSize);
+                if (data.length == 0) {
+                    inFlight.release();
+                    break;
+                }
+                sha256.update(data);
+                int partNumber = number;
+                parts.add(pool.submit(() -> {
+                    try {
+                        return s3.uploadPart(key, uploadId, partNumber, data);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+            List<String> etags = new ArrayList<>();
+            for (Future<String> part : parts) {
+                etags.add(await(part));
+            }
+            s3.completeMultipartUpload(key, uploadId, etags);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            parts.forEach(part -> part.cancel(true));
+            s3.abortMultipartUpload(key, uploadId);
+            throw e;
+        }
+        entry.setSha256(HexFormat.of().formatHex(sha256.digest()));
+        entry.setParts(parts.size());
+        return CompletableFuture.completedFuture(entry);
+    }
+
+    private int uploadChunks(S3Client s3, ExecutorService pool, List<String> chunks) throws IOException, InterruptedException {
+        Set<String> stored = new HashSet<>();
+        for (S3Client.ObjectInfo object : s3.list(prefixed(".chunks/"), null).objects()) {
+            stored.add(object.key().substring(object.key().lastIndexOf('/') + 1));
+        }
+        List<Future<Void>> uploads = new ArrayList<>();
+        for (String hash : chunks) {
+            if (stored.contains(hash)) continue;
+            uploads.add(pool.submit(() -> {
+                s3.putObject(prefixed(".chunks/" + hash), Files.readAllBytes(backupRepositoryService.chunkPath(hash)));
+                return null;
+            }));
+        }
+        for (Future<Void> upload : uploads) {
+            await(upload);
+        }
+        return uploads.size();
+    }
+
+    private int fetchChunks(S3Client s3, ExecutorService pool, List<String> chunks) throws IOException, InterruptedException {
+        List<Future<Long>> downloads = new ArrayList<>();
+        for (String hash : chunks) {
+            Path target = backupRepositoryService.chunkPath(hash);
+            if (Files.exists(target)) continue;
+            downloads.add(pool.submit(() -> download(s3, prefixed(".chunks/" + hash), target, hash, -1)));
+        }
+        for (Future<Long> download : downloads) {
+            await(download);
+        }
+        return downloads.size();
+    }
+
+    // Streams an object to a temp file and moves it into place only if size and checksum match
+    private long download(S3Client s3, String key, Path target, String sha256, long size) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            long copied;
+            try (InputStream in = new DigestInputStream(s3.getObject(key), digest)) {
+                copied = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String actual = HexFormat.of().formatHex(digest.digest());
+            if ((size >= 0 && copied != size) || !actual.equals(sha256)) {
+                throw new IOException(key + ": checksum mismatch after download");
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return copied;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Checksums recorded when the backup was taken, by path relative to the backup directory
+    private Map<String, String> expectedChecksums(String clusterId, String timestamp, Path backupPath) throws IOException {
+        Map<String, String> expected = new HashMap<>();
+        IntegrityManifest integrity = backupIntegrityService.load(backupPath);
+        if (integrity == null) return expected;
+        integrity.getArchives().forEach(file -> expected.put(file.getPath(), file.getSha256()));
+        BackupCatalogEntry entry = backupCatalogService.get(clusterId, timestamp);
+        String dumpLayout = entry != null ? entry.getDumpLayout() : null;
+        if (dumpLayout != null && Files.isDirectory(backupPath.resolve(dumpLayout))) {
+            integrity.getFiles().forEach(file -> expected.put(dumpLayout + "/" + file.getPath(), file.getSha256()));
+        }
+        return expected;
+    }
+
+    private List<String> referencedChunks(Path backupPath) throws IOException {
+        BackupManifest manifest = backupRepositoryService.loadManifest(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE));
+        Set<String> chunks = new HashSet<>();
+        manifest.getFiles().forEach(file -> chunks.addAll(file.getChunks()));
+        return chunks.stream().sorted().toList();
+    }
+
+    private static List<Path> backupFiles(Path backupPath) throws IOException {
+        try (Stream<Path> walk = Files.walk(backupPath)) {
+            return walk.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+
+    private static void deleteIfPresent(Path path) throws IOException {
+        if (Files.exists(path)) ProcessManager.deleteDirectory(path.toFile());
+    }
+
+    private String backupKey(String clusterId, String timestamp, String path) {
+        return prefixed(clusterId + "/" + timestamp + "/" + path);
+    }
+
+    private String prefixed(String key) {
+        if (prefix == null || prefix.isBlank()) return key;
+        return prefix.endsWith("/") ? prefix + key : prefix + "/" + key;
+    }
+
+    private synchronized S3Client client() {
+        if (client == null) {
+            client = new S3Client(endpoint, region, bucket, accessKey, secretKey, pathStyle);
+        }
+        return client;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            throw new IOException(String.valueOf(cause.getMessage()), cause);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes what the restore reads and compares it with the uploaded checksum on close.
+     * A reader that stops early (tar padding) has the rest drained first; one that gives up
+     * far from the end is not checked, since its restore fails anyway.
+     */
+    private static class VerifyingInputStream extends FilterInputStream {
+        private static final long MAX_DRAIN = 1 << 20;
+        private final MessageDigest digest;
+        private final String key;
+        private final String expected;
+
+        VerifyingInputStream(InputStream in, String key, String expected) {
+            this(in, sha256(), key, expected);
+        }
+
+        private VerifyingInputStream(InputStream in, MessageDigest digest, String key, String expected) {
+            super(new DigestInputStream(in, digest));
+            this.digest = digest;
+            this.key = key;
+            this.expected = expected;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                byte[] buffer = new byte[8192];
+                long drained = 0;
+                int read;
+                while (drained <= MAX_DRAIN && (read = in.read(buffer)) >= 0) {
+                    drained += read;
+                }
+                if (drained <= MAX_DRAIN && !HexFormat.of().formatHex(digest.digest()).equals(expected)) {
+                    throw new IOException(key + ": checksum mismatch while streaming from the object store");
+                }
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -3,52 +3,223 @@ package com.omnexus.service;
 import lombok.Data;
 import org.springframework.stereotype.Service;
 
-import javax.print.DocFlavor;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 @Service
 public class BackupProgressService {
+    private static final long STALL_THRESHOLD_MS = 60_000;
+    private static final long RATE_WINDOW_MS = 30_000;
+
     private final Map<String,BackupProgress> activeBackups = new ConcurrentHashMap<>();
+    private final Map<String,BackupProgress> activeRestores = new ConcurrentHashMap<>();
+
+    @Data
+    public static class CollectionProgress {
+        private String namespace;
+        private long totalBytes;
+        private long bytes;
+        private long totalDocuments;
+        private long documents;
+        private boolean complete;
+    }
 
     @Data
     public static class BackupProgress {
         private String clusterId;
-        private String status;// "starting", "dumping", "compressing", "completed", "failed"
+        private String operation; // "backup", "restore"
+        private String status;// "starting", "dumping", "compressing", "restoring", "completed", "failed"
         private int totalStep = 4;
         private int currentStep = 0;
         private String currentOperation;
         private long startTime;
         private long estimatedEndTime;
-        private List<String> completedDatabases = new ArrayList<>();
+        private volatile long lastProgressTime;
+        private List<String> completedDatabases = new CopyOnWriteArrayList<>();
+        private final Map<String, CollectionProgress> collections = new ConcurrentHashMap<>();
+        // (time, bytes) samples used for the recent throughput
+        private final Deque<long[]> rateSamples = new ArrayDeque<>();
+
+        /**
+         * Record the latest counters of one collection. Values are absolute, not deltas.
+         */
+        public void recordCollection(String namespace, long bytes, long totalBytes, long documents, long totalDocuments, boolean complete) {
+            CollectionProgress collection = collections.computeIfAbsent(namespace, ns -> {
+                CollectionProgress created = new CollectionProgress();
+                created.setNamespace(ns);
+                return created;
+            });
+            synchronized (collection) {
+                if (bytes > collection.getBytes() || documents > collection.getDocuments() || complete) {
+                    lastProgressTime = System.currentTimeMillis();
+                }
+                collection.setBytes(Math.max(collection.getBytes(), bytes));
+                collection.setDocuments(Math.max(collection.getDocuments(), documents));
+                if (totalBytes > 0) collection.setTotalBytes(totalBytes);
+                if (totalDocuments > 0) collection.setTotalDocuments(totalDocuments);
+                collection.setComplete(collection.isComplete() || complete);
+            }
+            sampleRate();
+        }
+
+        public void completeDatabase(String dbName) {
+            if (!completedDatabases.contains(dbName)) {
+                completedDatabases.add(dbName);
+            }
+        }
+
+        public long getBytesProcessed() {
+            return collections.values().stream().mapToLong(CollectionProgress::getBytes).sum();
+        }
+
+        public long getBytesTotal() {
+            return collections.values().stream().mapToLong(c -> Math.max(c.getTotalBytes(), c.getBytes())).sum();
+        }
+
+        public long getDocumentsProcessed() {
+            return collections.values().stream().mapToLong(CollectionProgress::getDocuments).sum();
+        }
+
+        public long getDocumentsTotal() {
+            return collections.values().stream().mapToLong(c -> Math.max(c.getTotalDocuments(), c.getDocuments())).sum();
+        }
+
+        private void sampleRate() {
+            long now = System.currentTimeMillis();
+            synchronized (rateSamples) {
+                long[] last = rateSamples.peekLast();
+                if (last != null && now - last[0] < 1000) return;
+                rateSamples.addLast(new long[]{now, getBytesProcessed()});
+                while (rateSamples.size() > 2 && now - rateSamples.peekFirst()[0] > RATE_WINDOW_MS) {
+                    rateSamples.removeFirst();
+                }
+            }
+        }
+
+        /**
+         * Bytes per second over the last sampling window, falling back to the average since start.
+         */
+        public double getThroughputBytesPerSecond() {
+            synchronized (rateSamples) {
+                if (rateSamples.size() >= 2) {
+                    long[] first = rateSamples.peekFirst();
+                    long[] last = rateSamples.peekLast();
+                    if (last[0] > first[0]) {
+                        return (last[1] - first[1]) * 1000.0 / (last[0] - first[0]);
+                    }
+                }
+            }
+            long elapsed = System.currentTimeMillis() - startTime;
+            return elapsed > 0 ? getBytesProcessed() * 1000.0 / elapsed : 0;
+        }
+
+        public int getPercent() {
+            if ("completed".equals(status)) return 100;
+            long bytesTotal = getBytesTotal();
+            if (bytesTotal > 0) return (int) Math.min(99, getBytesProcessed() * 100 / bytesTotal);
+            long documentsTotal = getDocumentsTotal();
+            if (documentsTotal > 0) return (int) Math.min(99, getDocumentsProcessed() * 100 / documentsTotal);
+            return (currentStep * 100) / totalStep;
+        }
+
+        /**
+         * Seconds until the data phase finishes at the current throughput, or -1 if unknown.
+         */
+        public long getEtaSeconds() {
+            long remaining = getBytesTotal() - getBytesProcessed();
+            double throughput = getThroughputBytesPerSecond();
+            if (remaining <= 0 || throughput <= 0) return -1;
+            return (long) Math.ceil(remaining / throughput);
+        }
+
+        public boolean isStalled() {
+            boolean running = !"completed".equals(status) && !"failed".equals(status);
+            return running && lastProgressTime > 0 && System.currentTimeMillis() - lastProgressTime > STALL_THRESHOLD_MS;
+        }
+    }
+
+    public BackupProgress startBackupProgress(String clusterId){
+        BackupProgress progress = newProgress(clusterId, "backup", "Initializing backup...");
+        activeBackups.put(clusterId,progress);
+        return progress;
+    }
+
+    public BackupProgress startRestoreProgress(String clusterId){
+        BackupProgress progress = newProgress(clusterId, "restore", "Initializing restore...");
+        progress.setTotalStep(3);
+        activeRestores.put(clusterId,progress);
+        return progress;
     }
-    public void startBackupProgress(String clusterId){
+
+    private BackupProgress newProgress(String clusterId, String operation, String currentOperation) {
         BackupProgress progress = new BackupProgress();
         progress.setClusterId(clusterId);
+        progress.setOperation(operation);
         progress.setStatus("starting");
         progress.setStartTime(System.currentTimeMillis());
-        progress.setCurrentOperation("Initializing backup...");
-        activeBackups.put(clusterId,progress);
+        progress.setLastProgressTime(progress.getStartTime());
+        progress.setCurrentOperation(currentOperation);
+        return progress;
+    }
+
+    public BackupProgress getActiveBackup(String clusterId) {
+        return activeBackups.get(clusterId);
     }
+
+    public boolean hasActiveBackups() {
+        return activeBackups.values().stream()
+                .anyMatch(p -> !"completed".equals(p.getStatus()) && !"failed".equals(p.getStatus()));
+    }
+
+    /**
+     * Combined recent throughput of all running backups and restores.
+     */
+    public double getActiveThroughputBytesPerSecond() {
+        return Stream.concat(activeBackups.values().stream(), activeRestores.values().stream())
+                .filter(p -> !"completed".equals(p.getStatus()) && !"failed".equals(p.getStatus()))
+                .mapToDouble(BackupProgress::getThroughputBytesPerSecond)
+                .sum();
+    }
+
     public void updateProgress(String clusterId,String operation,int step){
-        BackupProgress progress = activeBackups.get(clusterId);
+        updateProgress(activeBackups.get(clusterId), "in_progress", operation, step);
+    }
+
+    public void updateProgress(BackupProgress progress, String status, String operation, int step){
         if(progress!=null){
             progress.setCurrentStep(step);
-            progress.setStatus(operation);
-            progress.setCurrentOperation("in_progress");
+            progress.setStatus(status);
+            progress.setCurrentOperation(operation);
+            progress.setLastProgressTime(System.currentTimeMillis());
         }
     }
+
     public void completeBackup(String clusterId,boolean success){
-        BackupProgress progress = activeBackups.get(clusterId);
+        complete(activeBackups, clusterId, success);
+    }
+
+    public void completeRestore(String clusterId,boolean success){
+        complete(activeRestores, clusterId, success);
+    }
+
+    private void complete(Map<String, BackupProgress> active, String clusterId, boolean success) {
+        BackupProgress progress = active.get(clusterId);
         if(progress!=null){
             progress.setStatus(success?"completed":"failed");
             progress.setCurrentStep(progress.getTotalStep());
+            progress.setEstimatedEndTime(System.currentTimeMillis());
 
-            CompletableFuture.delayedExecutor(5, TimeUnit.MINUTES).execute(()->activeBackups.remove(clusterId));
+            CompletableFuture.delayedExecutor(5, TimeUnit.MINUTES).execute(()->active.remove(clusterId, progress));
         }
     }
 
@@ -57,13 +228,41 @@ public class BackupProgressService {
         if(progress==null){
             return Map.of("status","no_backup_running");
         }
-        return Map.of(
-                "clusterId",clusterId,
-                "status",progress.getStatus(),
-                "progress",(progress.getCurrentStep() *100)/progress.getTotalStep(),
-                "currentOperation", progress.getCurrentOperation(),
-                "startTime", progress.getStartTime(),
-                "completedDatabases", progress.getCompletedDatabases()
-        );
+        return toMap(progress);
+    }
+
+    public Map<String,Object> getRestoreProgress(String clusterId){
+        BackupProgress progress = activeRestores.get(clusterId);
+        if(progress==null){
+            return Map.of("status","no_restore_running");
+        }
+        return toMap(progress);
+    }
+
+    private Map<String,Object> toMap(BackupProgress progress) {
+        long eta = progress.getEtaSeconds();
+        Map<String,Object> result = new HashMap<>();
+        result.put("clusterId", progress.getClusterId());
+        result.put("operation", progress.getOperation());
+        result.put("status", progress.getStatus());
+        result.put("progress", progress.getPercent());
+        result.put("currentOperation", progress.getCurrentOperation());
+        result.put("startTime", progress.getStartTime());
+        result.put("completedDatabases", progress.getCompletedDatabases());
+        result.put("bytesProcessed", progress.getBytesProcessed());
+        result.put("bytesTotal", progress.getBytesTotal());
+        result.put("documentsProcessed", progress.getDocumentsProcessed());
+        result.put("documentsTotal", progress.getDocumentsTotal());
+        result.put("throughputBytesPerSec", Math.round(progress.getThroughputBytesPerSecond()));
+        result.put("etaSeconds", eta);
+        result.put("estimatedEndTime", progress.getEstimatedEndTime() > 0
+                ? progress.getEstimatedEndTime()
+                : (eta >= 0 ? System.currentTimeMillis() + eta * 1000 : -1));
+        result.put("stalled", progress.isStalled());
+
+        List<CollectionProgress> collections = new ArrayList<>(progress.getCollections().values());
+        collections.sort(Comparator.comparing(CollectionProgress::getNamespace));
+        result.put("collections", collections);
+        return result;
     }
 }
@@ -0,0 +1,308 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.BackupManifest;
+import com.omnexus.util.BsonRestoreEngine;
+import com.omnexus.util.ContentDefinedChunker;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for backup data. Dump files are split into
+ * content-defined chunks, each unique chunk is stored once under
+ * backup/.chunks by its SHA-256, and a backup is described by a manifest
+ * listing the chunks of every file.
+ */
+@Service
+public class BackupRepositoryService {
+    public static final String MANIFEST_FILE = "dump.manifest.json";
+    private static final Path CHUNK_ROOT = Paths.get("backup", ".chunks");
+    private static final int INGEST_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    // Striped by hash: reuse of a chunk and its deletion by the sweep never interleave
+    private final Object[] chunkLocks = new Object[256];
+    // Last time a chunk was written or reused; a sweep that sees one after its mark stops
+    private volatile long lastChunkUse;
+
+    public BackupRepositoryService() {
+        for (int i = 0; i < chunkLocks.length; i++) chunkLocks[i] = new Object();
+        try {
+            Files.createDirectories(CHUNK_ROOT);
+        } catch (IOException e) {
+            System.err.println("Failed to create chunk store: " + e.getMessage());
+        }
+    }
+
+    public boolean hasManifest(Path backupPath) {
+        return Files.exists(backupPath.resolve(MANIFEST_FILE));
+    }
+
+    /**
+     * Chunk every file of a dump directory into the store and write the manifest
+     * next to it. Only chunks not already present are written.
+     */
+    public BackupManifest storeDump(String clusterId, String timestamp, Path dumpPath, Path manifestPath) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dumpPath)) {
+            files = walk.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        AtomicLong newBytes = new AtomicLong();
+        AtomicInteger newChunks = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(INGEST_THREADS);
+        try {
+            List<Future<BackupManifest.FileEntry>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(pool.submit(() -> storeFile(dumpPath, file, newBytes, newChunks)));
+            }
+
+            BackupManifest manifest = new BackupManifest();
+            manifest.setClusterId(clusterId);
+            manifest.setTimestamp(timestamp);
+            for (Future<BackupManifest.FileEntry> future : futures) {
+                BackupManifest.FileEntry entry = future.get();
+                manifest.getFiles().add(entry);
+                manifest.setTotalBytes(manifest.getTotalBytes() + entry.getSize());
+                manifest.setTotalChunks(manifest.getTotalChunks() + entry.getChunks().size());
+            }
+            manifest.setNewBytes(newBytes.get());
+            manifest.setNewChunks(newChunks.get());
+
+            mapper.writerWithDefaultPrettyPrinter().writeValue(manifestPath.toFile(), manifest);
+            System.out.println("Stored " + manifest.getFiles().size() + " files in chunk store: "
+                    + manifest.getNewChunks() + "/" + manifest.getTotalChunks() + " chunks new, "
+                    + manifest.getNewBytes() + "/" + manifest.getTotalBytes() + " bytes written");
+            return manifest;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while storing dump", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to store dump: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private BackupManifest.FileEntry storeFile(Path root, Path file, AtomicLong newBytes, AtomicInteger newChunks) throws IOException {
+        BackupManifest.FileEntry entry = new BackupManifest.FileEntry();
+        entry.setPath(root.relativize(file).toString().replace('\\', '/'));
+
+        try (InputStream in = Files.newInputStream(file)) {
+            ContentDefinedChunker chunker = new ContentDefinedChunker(in);
+            byte[] chunk;
+            while ((chunk = chunker.nextChunk()) != null) {
+                String hash = sha256(chunk);
+                if (writeChunk(hash, chunk)) {
+                    newBytes.addAndGet(chunk.length);
+                    newChunks.incrementAndGet();
+                }
+                entry.getChunks().add(hash);
+                entry.setSize(entry.getSize() + chunk.length);
+            }
+        }
+        return entry;
+    }
+
+    // Returns true if this call stored the chunk, false if it was already in the store
+    private boolean writeChunk(String hash, byte[] data) throws IOException {
+        Path target = chunkPath(hash);
+        if (reuseChunk(hash, target)) return false;
+        // The chunk is written outside the lock; only publishing it under its final name is locked
+        Files.createDirectories(target.getParent());
+        Path temp = Files.createTempFile(target.getParent(), hash, ".tmp");
+        try {
+            Files.write(temp, data);
+            synchronized (chunkLock(hash)) {
+                // An atomic move replaces silently on POSIX, so a writer that lost the race must not count it as new
+                if (reuseChunk(hash, target)) return false;
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private boolean reuseChunk(String hash, Path target) throws IOException {
+        synchronized (chunkLock(hash)) {
+            lastChunkUse = System.currentTimeMillis();
+            if (!Files.exists(target)) return false;
+            // Fresh mtime tells the retention sweep that a backup still being written uses this chunk
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        }
+    }
+
+    public BackupManifest loadManifest(Path manifestPath) throws IOException {
+        return mapper.readValue(manifestPath.toFile(), BackupManifest.class);
+    }
+
+    /**
+     * Reassemble every file of a manifest under the target directory.
+     */
+    public void materialize(Path manifestPath, Path targetDir) throws IOException {
+        BackupManifest manifest = loadManifest(manifestPath);
+        for (BackupManifest.FileEntry entry : manifest.getFiles()) {
+            Path out = targetDir.resolve(entry.getPath());
+            Files.createDirectories(out.getParent());
+            try (FileChannel target = FileChannel.open(out, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (String hash : entry.getChunks()) {
+                    try (FileChannel source = FileChannel.open(chunkPath(hash), StandardOpenOption.READ)) {
+                        long size = source.size();
+                        long position = 0;
+                        while (position < size) {
+                            position += source.transferTo(position, size - position, target);
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("Reassembled " + manifest.getFiles().size() + " files into " + targetDir);
+    }
+
+    /**
+     * Stream a single file of a manifest, opening its chunks one at a time.
+     */
+    public InputStream openFile(BackupManifest.FileEntry entry) {
+        Iterator<String> hashes = entry.getChunks().iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return hashes.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(chunkPath(hashes.next()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Feed the files of a manifest to a restore straight from the chunk store,
+     * metadata files first so collections can be created with their options.
+     */
+    public BsonRestoreEngine.DumpSource openDumpSource(Path manifestPath) throws IOException {
+        return openDumpSource(manifestPath, namespace -> true);
+    }
+
+    /**
+     * Like openDumpSource, but only the chunks of files whose namespace is accepted are read.
+     */
+    public BsonRestoreEngine.DumpSource openDumpSource(Path manifestPath, Predicate<String> includeNamespace) throws IOException {
+        BackupManifest manifest = loadManifest(manifestPath);
+        List<BackupManifest.FileEntry> files = manifest.getFiles().stream()
+                .filter(f -> {
+                    String namespace = BsonRestoreEngine.namespaceOf(f.getPath(), f.getPath().endsWith(".bson") ? ".bson" : ".metadata.json");
+                    return namespace == null || includeNamespace.test(namespace);
+                })
+                .sorted(Comparator.comparing((BackupManifest.FileEntry f) -> !f.getPath().endsWith(".metadata.json")))
+                .toList();
+        return visitor -> {
+            for (BackupManifest.FileEntry file : files) {
+                try (InputStream in = openFile(file)) {
+                    visitor.visit(file.getPath(), in);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+    }
+
+    /**
+     * Chunks referenced by any dump manifest under backup/, whether catalogued or not.
+     */
+    public Set<String> referencedChunks() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        try (Stream<Path> manifests = Files.find(CHUNK_ROOT.getParent(), 3,
+                (path, attributes) -> attributes.isRegularFile() && path.getFileName().toString().equals(MANIFEST_FILE))) {
+            for (Path manifestPath : manifests.toList()) {
+                loadManifest(manifestPath).getFiles().forEach(file -> referenced.addAll(file.getChunks()));
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Delete chunks nobody references that were last written or reused before cutoffMillis.
+     * onDeleted receives the size of each deleted chunk. Returns {chunks, bytes, stopped}; the
+     * sweep stops (stopped = 1) as soon as a backup writes or reuses a chunk after cutoffMillis.
+     */
+    public long[] sweepChunks(Set<String> referenced, long cutoffMillis, LongConsumer onDeleted) throws IOException {
+        long[] reclaimed = new long[3];
+        if (!Files.isDirectory(CHUNK_ROOT)) return reclaimed;
+        try (Stream<Path> chunks = Files.find(CHUNK_ROOT, 3, (path, attributes) -> attributes.isRegularFile())) {
+            for (Path chunk : (Iterable<Path>) chunks::iterator) {
+                String hash = chunk.getFileName().toString();
+                if (referenced.contains(hash) || hash.endsWith(".tmp")) continue;
+                long size;
+                synchronized (chunkLock(hash)) {
+                    // Any chunk written or reused since the mark may belong to a manifest the mark did not see
+                    if (lastChunkUse >= cutoffMillis) {
+                        reclaimed[2] = 1;
+                        return reclaimed;
+                    }
+                    if (Files.getLastModifiedTime(chunk).toMillis() >= cutoffMillis) continue;
+                    size = Files.size(chunk);
+                    if (!Files.deleteIfExists(chunk)) continue;
+                }
+                reclaimed[0]++;
+                reclaimed[1] += size;
+                onDeleted.accept(size); // throttling sleeps outside the lock
+            }
+        }
+        return reclaimed;
+    }
+
+    private Object chunkLock(String hash) {
+        return chunkLocks[Math.floorMod(hash.hashCode(), chunkLocks.length)];
+    }
+
+    public Path chunkPath(String hash) {
+        return CHUNK_ROOT.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    private static String sha256(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.omnexus.service;
+
+import com.omnexus.model.BackupCatalogEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Deletes old local backups by a grandfather-father-son policy: the newest keep-last
+ * backups plus the newest one of each of the last keep-hourly hours, keep-daily days
+ * and keep-weekly ISO weeks. Backups that are leased (being restored, downloaded or
+ * offloaded) or not offloaded yet while offload is enabled are never deleted. Backup
+ * directories with a metadata.json that the catalog misses are judged too. After
+ * deleting, chunks no dump manifest references any more are swept from the chunk store.
+ * Files are removed at no more than io-budget-mb-per-sec so reclaim stays in the background.
+ */
+@Service
+public class BackupRetentionService {
+    private static final String BACKUP_ROOT = "backup";
+
+    private final BackupCatalogService backupCatalogService;
+    private final BackupRepositoryService backupRepositoryService;
+    private final BackupBrowserService backupBrowserService;
+    private final BackupOffloadService backupOffloadService;
+    private final BackupProgressService backupProgressService;
+    private final ConfigServerService configServerService;
+    private final Map<String, Map<String, Object>> lastRuns = new ConcurrentHashMap<>();
+
+    @Value("${omnexus.backup.retention.enabled:false}")
+    private boolean enabled;
+
+    @Value("${omnexus.backup.retention.keep-last:3}")
+    private int keepLast;
+
+    @Value("${omnexus.backup.retention.keep-hourly:24}")
+    private int keepHourly;
+
+    @Value("${omnexus.backup.retention.keep-daily:7}")
+    private int keepDaily;
+
+    @Value("${omnexus.backup.retention.keep-weekly:4}")
+    private int keepWeekly;
+
+    @Value("${omnexus.backup.retention.io-budget-mb-per-sec:0}")
+    private long ioBudgetMbPerSec; // 0 = unlimited
+
+    public BackupRetentionService(BackupCatalogService backupCatalogService, BackupRepositoryService backupRepositoryService,
+                                  BackupBrowserService backupBrowserService, BackupOffloadService backupOffloadService,
+                                  BackupProgressService backupProgressService, ConfigServerService configServerService) {
+        this.backupCatalogService = backupCatalogService;
+        this.backupRepositoryService = backupRepositoryService;
+        this.backupBrowserService = backupBrowserService;
+        this.backupOffloadService = backupOffloadService;
+        this.backupProgressService = backupProgressService;
+        this.configServerService = configServerService;
+    }
+
+    @Scheduled(cron = "${omnexus.backup.retention.cron:0 15 * * * ?}")
+    public void applyAll() {
+        if (!enabled) return;
+        Throttle throttle = new Throttle(ioBudgetMbPerSec);
+        boolean deletedDedup = false;
+        for (String clusterId : configServerService.getAllClusterIds()) {
+            try {
+                Map<String, Object> report = deleteExpired(clusterId, throttle);
+                deletedDedup |= Boolean.TRUE.equals(report.remove("deletedDedup"));
+                lastRuns.put(clusterId, report);
+            } catch (Exception e) {
+                System.err.println("Backup retention failed for " + clusterId + ": " + e.getMessage());
+            }
+        }
+        if (deletedDedup) {
+            Map<String, Object> sweep = sweepChunks(throttle);
+            System.out.println("Retention chunk sweep: " + sweep);
+        }
+    }
+
+    /**
+     * Apply the policy to one cluster now, then sweep unreferenced chunks.
+     */
+    public Map<String, Object> apply(String clusterId) {
+        Throttle throttle = new Throttle(ioBudgetMbPerSec);
+        Map<String, Object> report = deleteExpired(clusterId, throttle);
+        report.put("chunkSweep", Boolean.TRUE.equals(report.remove("deletedDedup")) ? sweepChunks(throttle) : Map.of("skipped", "no deduplicated backups deleted"));
+        lastRuns.put(clusterId, report);
+        return report;
+    }
+
+    /**
+     * What the policy keeps (with the reasons) and would delete, without deleting anything.
+     */
+    public Map<String, Object> plan(String clusterId) {
+        List<BackupCatalogEntry> backups = backups(clusterId);
+        Map<String, String> keep = keepReasons(backups);
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (BackupCatalogEntry entry : backups) {
+            Map<String, Object> decision = new LinkedHashMap<>();
+            decision.put("timestamp", entry.getTimestamp());
+            decision.put("sizeBytes", entry.getSizeBytes());
+            decision.put("action", keep.containsKey(entry.getTimestamp()) ? "keep" : "delete");
+            decision.put("reason", keep.getOrDefault(entry.getTimestamp(), "expired"));
+            if (backupCatalogService.get(clusterId, entry.getTimestamp()) == null) decision.put("uncatalogued", true);
+            entries.add(decision);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clusterId", clusterId);
+        result.put("enabled", enabled);
+        result.put("policy", Map.of("keepLast", keepLast, "keepHourly", keepHourly, "keepDaily", keepDaily,
+                "keepWeekly", keepWeekly, "ioBudgetMbPerSec", ioBudgetMbPerSec));
+        result.put("backups", entries);
+        result.put("lastRun", lastRuns.get(clusterId));
+        return result;
+    }
+
+    private Map<String, Object> deleteExpired(String clusterId, Throttle throttle) {
+        long start = System.currentTimeMillis();
+        List<BackupCatalogEntry> backups = backups(clusterId);
+        Map<String, String> keep = keepReasons(backups);
+        List<Map<String, Object>> deleted = new ArrayList<>();
+        List<Map<String, Object>> skipped = new ArrayList<>();
+        long bytesReclaimed = 0;
+        boolean deletedDedup = false;
+
+        for (BackupCatalogEntry entry : backups) {
+            String timestamp = entry.getTimestamp();
+            if (keep.containsKey(timestamp)) continue;
+            if (!backupCatalogService.beginDelete(clusterId, timestamp)) {
+                skipped.add(Map.of("timestamp", timestamp, "reason", "in use"));
+                continue;
+            }
+            try {
+                Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+                boolean dedup = backupRepositoryService.hasManifest(backupPath);
+                backupBrowserService.evict(clusterId, timestamp);
+                // The entry goes only once the files are gone, so a failed delete is retried next run
+                long bytes = deleteTree(backupPath, throttle);
+                backupCatalogService.remove(clusterId, timestamp);
+                bytesReclaimed += bytes;
+                deletedDedup |= dedup;
+                deleted.add(Map.of("timestamp", timestamp, "bytes", bytes));
+                System.out.println("Retention: deleted backup " + clusterId + "/" + timestamp + " (" + bytes + " bytes)");
+            } catch (IOException e) {
+                skipped.add(Map.of("timestamp", timestamp, "reason", "delete failed: " + e.getMessage()));
+            } finally {
+                backupCatalogService.endDelete(clusterId, timestamp);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("clusterId", clusterId);
+        report.put("ranAt", Instant.now().toString());
+        report.put("deleted", deleted);
+        report.put("skipped", skipped);
+        report.put("bytesReclaimed", bytesReclaimed);
+        report.put("durationMs", System.currentTimeMillis() - start);
+        report.put("deletedDedup", deletedDedup);
+        return report;
+    }
+
+    // The catalog plus uncatalogued backup directories, newest first. A running backup writes
+    // metadata.json just before cataloguing itself, so those wait while any backup runs.
+    private List<BackupCatalogEntry> backups(String clusterId) {
+        List<BackupCatalogEntry> backups = new ArrayList<>(backupCatalogService.list(clusterId));
+        if (!backupProgressService.hasActiveBackups()) {
+            backups.addAll(backupCatalogService.uncatalogued(clusterId));
+        }
+        backups.sort(Comparator.comparingLong(BackupCatalogEntry::getCreatedAt).reversed());
+        return backups;
+    }
+
+    // Mark every chunk a manifest references, then sweep older unreferenced ones. Chunks written
+    // or reused after the mark started belong to a backup in flight: the sweep does not start while
+    // a backup runs, and stops if one starts using chunks meanwhile (checked under the chunk's lock).
+    private Map<String, Object> sweepChunks(Throttle throttle) {
+        if (backupProgressService.hasActiveBackups()) {
+            return Map.of("skipped", "a backup is running; unreferenced chunks are swept on the next run");
+        }
+        long markStart = System.currentTimeMillis();
+        try {
+            Set<String> referenced = backupRepositoryService.referencedChunks();
+            long[] swept = backupRepositoryService.sweepChunks(referenced, markStart, throttle::consumed);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("referenced", referenced.size());
+            result.put("chunksDeleted", swept[0]);
+            result.put("bytesReclaimed", swept[1]);
+            result.put("durationMs", System.currentTimeMillis() - markStart);
+            if (swept[2] != 0) {
+                result.put("stopped", "a backup started using chunks; the rest is swept on the next run");
+            }
+            return result;
+        } catch (IOException e) {
+            return Map.of("error", "chunk sweep failed: " + e.getMessage());
+        }
+    }
+
+    // Reasons to keep each backup that is kept, by timestamp
+    private Map<String, String> keepReasons(List<BackupCatalogEntry> newestFirst) {
+        List<BackupCatalogEntry> successful = newestFirst.stream().filter(BackupCatalogEntry::isSuccess).toList();
+        Map<String, String> keep = new LinkedHashMap<>();
+        // The newest successful backup is kept whatever the policy says
+        int last = Math.max(1, keepLast);
+        successful.stream().limit(last).forEach(e -> keep.merge(e.getTimestamp(), "last", this::join));
+        keepNewestPerBucket(successful, keepHourly, e -> e.getCreatedAt() / 3_600_000L, "hourly", keep);
+        keepNewestPerBucket(successful, keepDaily, e -> utcDate(e).toEpochDay(), "daily", keep);
+        keepNewestPerBucket(successful, keepWeekly,
+                e -> (long) utcDate(e).get(IsoFields.WEEK_BASED_YEAR) * 100 + utcDate(e).get(IsoFields.WEEK_OF_WEEK_BASED_YEAR),
+                "weekly", keep);
+
+        long newestSuccess = successful.isEmpty() ? Long.MAX_VALUE : successful.get(0).getCreatedAt();
+        boolean offload = backupOffloadService.isEnabled();
+        for (BackupCatalogEntry entry : newestFirst) {
+            if (!entry.isSuccess() && entry.getCreatedAt() > newestSuccess) {
+                keep.merge(entry.getTimestamp(), "failed after the last success", this::join);
+            }
+            if (offload && entry.isSuccess() && !"offloaded".equals(entry.getOffloadStatus())) {
+                keep.merge(entry.getTimestamp(), "not offloaded yet", this::join);
+            }
+        }
+        return keep;
+    }
+
+    private void keepNewestPerBucket(List<BackupCatalogEntry> newestFirst, int buckets, Function<BackupCatalogEntry, Long> bucketOf,
+                                     String reason, Map<String, String> keep) {
+        Set<Long> seen = new HashSet<>();
+        for (BackupCatalogEntry entry : newestFirst) {
+            if (seen.size() >= buckets) break;
+            if (seen.add(bucketOf.apply(entry))) {
+                keep.merge(entry.getTimestamp(), reason, this::join);
+            }
+        }
+    }
+
+    private String join(String a, String b) {
+        return a + ", " + b;
+    }
+
+    private static LocalDate utcDate(BackupCatalogEntry entry) {
+        return Instant.ofEpochMilli(entry.getCreatedAt()).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    // Files first, deepest directories last; returns the bytes of the deleted files
+    private static long deleteTree(Path root, Throttle throttle) throws IOException {
+        if (!Files.exists(root)) return 0;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(root)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        long bytes = 0;
+        for (Path path : paths) {
+            if (Files.isRegularFile(path)) {
+                long size = Files.size(path);
+                Files.delete(path);
+                bytes += size;
+                throttle.consumed(size);
+            } else {
+                Files.delete(path);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Sleeps so that reclaimed bytes stay within the budget since the run started.
+     */
+    private static class Throttle {
+        private final double bytesPerMilli;
+        private final long start = System.currentTimeMillis();
+        private long total;
+
+        Throttle(long mbPerSec) {
+            this.bytesPerMilli = mbPerSec > 0 ? mbPerSec * 1024.0 * 1024.0 / 1000.0 : 0;
+        }
+
+        void consumed(long bytes) {
+            if (bytesPerMilli <= 0) return;
+            total += bytes;
+            long ahead = (long) (total / bytesPerMilli) - (System.currentTimeMillis() - start);
+            if (ahead > 0) {
+                try {
+                    Thread.sleep(ahead);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
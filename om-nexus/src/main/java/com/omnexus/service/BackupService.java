@@ -1,15 +1,27 @@
 package com.omnexus.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.BackupCatalogEntry;
 import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.IntegrityManifest;
+import com.omnexus.model.ShardingLayout;
 import com.omnexus.model.NodeInfo;
+import com.omnexus.util.BsonDumpEngine;
+import com.omnexus.util.BsonIntegrity;
+import com.omnexus.util.BsonFilter;
+import com.omnexus.util.BsonRestoreEngine;
 import com.omnexus.util.ProcessManager;
+import com.omnexus.util.ShardKeyRouter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,21 +30,60 @@ import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 @Service
 public class BackupService {
     private static final String BACKUP_ROOT = "backup";
+    // mongodump prints "[####....]  db.coll  1200/5000  (24.0%)" while a collection is dumped
+    private static final Pattern DUMP_PROGRESS = Pattern.compile("\\[[#.]+\\]\\s+(\\S+)\\s+(\\d+)/(\\d+)");
+    // mongorestore prints "[####....]  db.coll  1.2MB/5.0MB  (24.0%)"
+    private static final Pattern RESTORE_PROGRESS = Pattern.compile("\\[[#.]+\\]\\s+(\\S+)\\s+([\\d.]+)([KMGT]?B)/([\\d.]+)([KMGT]?B)");
     private final ConfigServerService configServerService;
     private final ClusterService clusterService;
     private final BackupProgressService backupProgressService;
+    private final BackupRepositoryService backupRepositoryService;
+    private final BackupCatalogService backupCatalogService;
+    private final BackupIntegrityService backupIntegrityService;
+    private final ShardLayoutService shardLayoutService;
+    private final BackupOffloadService backupOffloadService;
+    private final PortAllocatorService portAllocatorService;
     private final ObjectMapper mapper = new ObjectMapper();
 
+    @Value("${omnexus.backup.engine:native}")
+    private String dumpEngine; // "native" or "mongodump"
 
-    public BackupService(ConfigServerService configServerService, ClusterService clusterService,BackupProgressService backupProgressService) {
+    @Value("${omnexus.backup.dump-parallelism:4}")
+    private int dumpParallelism;
+
+    @Value("${omnexus.restore.stream-archives:true}")
+    private boolean streamArchives; // restore compressed/deduplicated backups without extracting them
+
+    @Value("${omnexus.restore.insert-workers:4}")
+    private int restoreInsertWorkers;
+
+    @Value("${omnexus.restore.incremental:true}")
+    private boolean incrementalRestore; // with drop, skip collections whose live content matches the backup
+
+    @Value("${omnexus.restore.chunk-aware:true}")
+    private boolean chunkAwareRestore; // pre-split sharded collections and load them straight into their shards
+
+
+    public BackupService(ConfigServerService configServerService, ClusterService clusterService,BackupProgressService backupProgressService,BackupRepositoryService backupRepositoryService,BackupCatalogService backupCatalogService,BackupIntegrityService backupIntegrityService,ShardLayoutService shardLayoutService,BackupOffloadService backupOffloadService,PortAllocatorService portAllocatorService) {
         this.configServerService = configServerService;
         this.clusterService = clusterService;
         this.backupProgressService = backupProgressService;
+        this.backupRepositoryService = backupRepositoryService;
+        this.backupCatalogService = backupCatalogService;
+        this.backupIntegrityService = backupIntegrityService;
+        this.shardLayoutService = shardLayoutService;
+        this.backupOffloadService = backupOffloadService;
+        this.portAllocatorService = portAllocatorService;
         ensureBackupRoot();
     }
     private void ensureBackupRoot(){
@@ -46,6 +97,22 @@ public class BackupService {
 
 
     public Map<String,Object> backupCluster(String clusterId,boolean compress){
+        return backupCluster(clusterId, compress, false);
+    }
+
+    public Map<String,Object> backupCluster(String clusterId,boolean compress,boolean dedup){
+        BackupProgressService.BackupProgress progress = backupProgressService.startBackupProgress(clusterId);
+        boolean success = false;
+        try {
+            Map<String,Object> result = runBackup(clusterId, compress, dedup, progress);
+            success = Boolean.TRUE.equals(result.get("success"));
+            return result;
+        } finally {
+            backupProgressService.completeBackup(clusterId, success);
+        }
+    }
+
+    private Map<String,Object> runBackup(String clusterId,boolean compress,boolean dedup,BackupProgressService.BackupProgress progress){
         ClusterConfig clusterConfig = configServerService.loadClusterConfig(clusterId);
         if(clusterConfig == null) {
             return  Map.of("error","cluster not found: " + clusterId);
@@ -53,6 +120,7 @@ public class BackupService {
 
         // Ensure cluster is running before backup
         System.out.println("=== Starting Full Cluster Backup ===");
+        backupProgressService.updateProgress(progress, "starting", "Ensuring cluster is running...", 1);
         boolean clusterReady = ensureClusterRunning(clusterConfig);
         if (!clusterReady) {
             return Map.of("error", "Failed to start cluster for backup");
@@ -70,20 +138,25 @@ public class BackupService {
         }
         List<Map<String,Object>> artifacts = new ArrayList<>();
         boolean allSuccess = true;
+        // Checksums of files hashed while the native engine wrote them, by path relative to the dump
+        Map<String, BsonIntegrity.FileDigest> digests = new ConcurrentHashMap<>();
 
         // Find mongos port for backing up user databases
         var mongosNode = clusterConfig.getNodes().stream()
                 .filter(n -> "mongos".equals(n.getType()))
                 .findFirst();
 
-        int mongosPort = mongosNode.map(NodeInfo::getPort).orElse(27999);
+        int mongosPort = mongosNode.map(NodeInfo::getPort).orElse(clusterConfig.getMongosPort());
         System.out.println("Using mongos on port " + mongosPort + " for backup");
 
         // 1. Backup ALL databases through mongos (this gets user databases properly)
+        backupProgressService.updateProgress(progress, "dumping", "Dumping databases through mongos...", 2);
         try {
             System.out.println("Backing up all databases through mongos...");
-            boolean ok = ProcessManager.runMongoDump("localhost", mongosPort, null, dumpPath.toString(), false, false);
-            artifacts.add(Map.of("type", "mongos-dump", "port", mongosPort, "success", ok));
+            Map<String, Object> artifact = new HashMap<>(Map.of("type", "mongos-dump", "port", mongosPort));
+            boolean ok = runDump("localhost", mongosPort, null, dumpPath, artifact, progress, "", digests);
+            artifact.put("success", ok);
+            artifacts.add(artifact);
             allSuccess &= ok;
             if (ok) {
                 System.out.println("Successfully backed up all databases through mongos");
@@ -95,14 +168,26 @@ public class BackupService {
             allSuccess = false;
         }
 
+        // Shard keys and chunk boundaries, so a restore can pre-split instead of migrating afterwards
+        try {
+            ShardingLayout layout = shardLayoutService.capture(clusterId, mongosPort);
+            shardLayoutService.save(clusterBackupPath, layout);
+            artifacts.add(Map.of("type", "sharding", "success", true, "collections", layout.getCollections().size()));
+        } catch (Exception e) {
+            artifacts.add(Map.of("type", "sharding", "success", false, "error", String.valueOf(e.getMessage())));
+        }
+
         // 2. Also backup config database from config server (for cluster metadata)
         try{
             var configNodes = clusterConfig.getNodes().stream().filter(n->"config".equals(n.getType())).toList();
             if(!configNodes.isEmpty()){
                 int port = configNodes.get(0).getPort();
                 System.out.println("Backing up config database from config server (port " + port + ")...");
-                boolean ok = ProcessManager.runMongoDump("localhost", port, "config", dumpPath.toString(), false, false);
-                artifacts.add(Map.of("type","config","port", port, "success",ok));
+                Map<String, Object> artifact = new HashMap<>(Map.of("type", "config", "port", port));
+                backupProgressService.updateProgress(progress, "dumping", "Dumping config database from config server...", 2);
+                boolean ok = runDump("localhost", port, "config", dumpPath, artifact, progress, "configsvr:", digests);
+                artifact.put("success", ok);
+                artifacts.add(artifact);
                 // Don't fail the whole backup if config backup fails - we already have it from mongos
             }
         } catch (Exception e) {
@@ -112,13 +197,46 @@ public class BackupService {
         // List what was backed up BEFORE compression (since compression deletes the folder)
         List<String> backedUpDatabases = listDatabasesInDump(dumpPath);
         System.out.println("Databases backed up: " + backedUpDatabases);
+        String dumpLayout = relativeLayout(clusterBackupPath, findActualDumpPath(dumpPath));
+
+        // Record checksums and document counts before the dump is compressed or chunked away
+        boolean hasIntegrity = false;
+        if(allSuccess){
+            backupProgressService.updateProgress(progress, "hashing", "Writing integrity manifest...", 3);
+            try{
+                var integrity = backupIntegrityService.build(clusterId, timestamp, clusterBackupPath, dumpPath, digests);
+                hasIntegrity = true;
+                artifacts.add(Map.of("type", "integrity", "success", true, "files", integrity.getFiles().size()));
+            } catch (Exception e) {
+                artifacts.add(Map.of("type","integrity","success",false,"error",String.valueOf(e.getMessage())));
+            }
+        }
+
+        // Store into the deduplicating chunk repository if requested (takes precedence over compression)
+        boolean deduplicated = false;
+        if(dedup && allSuccess){
+            backupProgressService.updateProgress(progress, "storing", "Storing dump in chunk repository...", 3);
+            try{
+                var manifest = backupRepositoryService.storeDump(clusterId, timestamp, dumpPath,
+                        clusterBackupPath.resolve(BackupRepositoryService.MANIFEST_FILE));
+                ProcessManager.deleteDirectory(dumpPath.toFile());
+                deduplicated = true;
+                artifacts.add(Map.of("type", "dedup", "success", true,
+                        "totalBytes", manifest.getTotalBytes(), "newBytes", manifest.getNewBytes(),
+                        "totalChunks", manifest.getTotalChunks(), "newChunks", manifest.getNewChunks()));
+            } catch (Exception e) {
+                artifacts.add(Map.of("type","dedup","success",false,"error",String.valueOf(e.getMessage())));
+            }
+        }
 
         // Compress the entire dump directory if requested
-        if(compress && allSuccess){
+        if(compress && allSuccess && !deduplicated){
+            backupProgressService.updateProgress(progress, "compressing", "Compressing dump...", 3);
             try{
                 boolean compressed = ProcessManager.compressDirectory(dumpPath.toString());
                 // Note: compressDirectory already deletes the folder after zipping
                 if (compressed) {
+                    if (hasIntegrity) backupIntegrityService.addArchives(clusterBackupPath);
                     artifacts.add(Map.of("type", "compression", "success", true));
                 } else {
                     artifacts.add(Map.of("type", "compression", "success", false, "error", "compression failed"));
@@ -129,10 +247,12 @@ public class BackupService {
         }
 
         //Save metadata
+        backupProgressService.updateProgress(progress, "finalizing", "Writing backup metadata...", 4);
         Map<String,Object> meta = new HashMap<>();
         meta.put("clusterId", clusterId);
         meta.put("timestamp", timestamp);
-        meta.put("compressed", compress && allSuccess);
+        meta.put("compressed", compress && allSuccess && !deduplicated);
+        meta.put("deduplicated", deduplicated);
         meta.put("dumpPath", dumpPath.toString());
         meta.put("artifacts", artifacts);
         meta.put("databases", backedUpDatabases);
@@ -144,24 +264,205 @@ public class BackupService {
             artifacts.add(Map.of("type","metadata","success",false,"error",e.getMessage()));
         }
 
+        BackupCatalogEntry entry = new BackupCatalogEntry();
+        entry.setClusterId(clusterId);
+        entry.setTimestamp(timestamp);
+        entry.setCreatedAt(System.currentTimeMillis());
+        entry.setSizeBytes(BackupCatalogService.directorySize(clusterBackupPath));
+        entry.setDatabases(backedUpDatabases);
+        entry.setCompression(BackupCatalogService.detectCompression(clusterBackupPath));
+        entry.setDumpLayout(dumpLayout);
+        entry.setSuccess(allSuccess);
+        entry.setArtifacts(artifacts);
+        backupCatalogService.record(entry);
+
         System.out.println("=== Backup Complete ===");
         return meta;
     }
 
+    // Dump with the configured engine; the native engine also records per-collection counters.
+    // scope prefixes progress namespaces so the config server pass does not overwrite the mongos one.
+    private boolean runDump(String host, int port, String dbName, Path dumpPath, Map<String, Object> artifact,
+                            BackupProgressService.BackupProgress progress, String scope,
+                            Map<String, BsonIntegrity.FileDigest> digests) {
+        if ("mongodump".equalsIgnoreCase(dumpEngine)) {
+            artifact.put("engine", "mongodump");
+            return ProcessManager.runMongoDump(host, port, dbName, dumpPath.toString(), false, false,
+                    line -> recordDumpLine(progress, scope, line));
+        }
+        // A later dump of the same files (config server after mongos) replaces them, so drop stale digests
+        if (dbName != null) {
+            digests.keySet().removeIf(path -> path.startsWith(dbName + "/"));
+        }
+        BsonDumpEngine engine = new BsonDumpEngine(host, port, dumpParallelism);
+        engine.setProgressListener(new BsonDumpEngine.ProgressListener() {
+            @Override
+            public void onCollectionProgress(BsonDumpEngine.CollectionCounters counters) {
+                progress.recordCollection(scope + counters.getNamespace(), counters.getBytes(), counters.getEstimatedBytes(),
+                        counters.getDocuments(), counters.getEstimatedDocuments(), counters.isComplete());
+            }
+
+            @Override
+            public void onDatabaseComplete(String completedDb) {
+                progress.completeDatabase(scope + completedDb);
+            }
+        });
+        boolean ok = engine.dump(dbName, dumpPath);
+        artifact.put("engine", "native");
+        engine.getCounters().values().forEach(counters -> {
+            BsonIntegrity.FileDigest digest = counters.toDigest();
+            if (digest != null) {
+                String namespace = counters.getNamespace();
+                int dot = namespace.indexOf('.');
+                digests.put(namespace.substring(0, dot) + "/" + namespace.substring(dot + 1) + ".bson", digest);
+            }
+        });
+        artifact.put("collections", engine.getCounters().values().stream()
+                .map(BsonDumpEngine.CollectionCounters::toMap)
+                .toList());
+        return ok;
+    }
+
+    private void recordDumpLine(BackupProgressService.BackupProgress progress, String scope, String line) {
+        Matcher m = DUMP_PROGRESS.matcher(line);
+        if (m.find()) {
+            long documents = Long.parseLong(m.group(2));
+            long total = Long.parseLong(m.group(3));
+            progress.recordCollection(scope + m.group(1), 0, 0, documents, total, total > 0 && documents >= total);
+        } else if (line.contains("done dumping")) {
+            // "done dumping db.coll (5000 documents)"
+            String[] parts = line.substring(line.indexOf("done dumping") + "done dumping".length()).trim().split("\\s+");
+            if (parts.length > 0 && !parts[0].isEmpty()) {
+                progress.recordCollection(scope + parts[0], 0, 0, 0, 0, true);
+            }
+        }
+    }
+
+    private void recordRestoreLine(BackupProgressService.BackupProgress progress, String line) {
+        Matcher m = RESTORE_PROGRESS.matcher(line);
+        if (m.find()) {
+            long bytes = toBytes(m.group(2), m.group(3));
+            long total = toBytes(m.group(4), m.group(5));
+            progress.recordCollection(m.group(1), bytes, total, 0, 0, false);
+        }
+    }
+
+    private static long toBytes(String value, String unit) {
+        double amount = Double.parseDouble(value);
+        int exponent = switch (unit) {
+            case "KB" -> 1;
+            case "MB" -> 2;
+            case "GB" -> 3;
+            case "TB" -> 4;
+            default -> 0;
+        };
+        return (long) (amount * Math.pow(1024, exponent));
+    }
+
+    // Seed restore progress with the .bson sizes of a database so totals are known before mongorestore starts
+    private Map<String, Long> seedRestoreProgress(BackupProgressService.BackupProgress progress, String dbName, Path dbPath) {
+        Map<String, Long> sizes = new HashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dbPath, "*.bson")) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                String namespace = dbName + "." + fileName.substring(0, fileName.length() - ".bson".length());
+                long size = Files.size(file);
+                sizes.put(namespace, size);
+                progress.recordCollection(namespace, 0, size, 0, 0, false);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not size dump files of " + dbName + ": " + e.getMessage());
+        }
+        return sizes;
+    }
+
+    private void finishRestoreProgress(BackupProgressService.BackupProgress progress, String dbName, Map<String, Long> sizes, boolean ok) {
+        if (!ok) return;
+        sizes.forEach((namespace, size) -> progress.recordCollection(namespace, size, size, 0, 0, true));
+        progress.completeDatabase(dbName);
+    }
+
+    private boolean restoreDatabase(BackupProgressService.BackupProgress progress, int port, String dbName, Path dbPath, boolean dropBeforeRestore) {
+        Map<String, Long> sizes = seedRestoreProgress(progress, dbName, dbPath);
+        boolean ok = ProcessManager.runMongoRestore("localhost", port, dbPath.toString(), dropBeforeRestore, false,
+                line -> recordRestoreLine(progress, line));
+        finishRestoreProgress(progress, dbName, sizes, ok);
+        return ok;
+    }
+
+    // Backups only kept offsite are fetched first; with streaming, their compressed dump stays in the store
+    private boolean ensureLocalBackup(String clusterId, String timestamp, Path backupPath) {
+        if (Files.exists(backupPath)) return true;
+        if (!backupOffloadService.isEnabled()) return false;
+        System.out.println("Backup " + timestamp + " is not on disk, fetching it from the object store...");
+        return Boolean.TRUE.equals(backupOffloadService.fetch(clusterId, timestamp, streamArchives).get("success"));
+    }
+
+    // Refuse backups that failed verification (or are not logical dumps) instead of finding out halfway through a restore
+    private Map<String,Object> checkIntegrity(String clusterId, String timestamp) {
+        BackupCatalogEntry entry = backupCatalogService.get(clusterId, timestamp);
+        if (entry != null && "damaged".equals(entry.getVerificationStatus())) {
+            return Map.of("error", "backup " + timestamp + " failed integrity verification; re-verify or pick another backup");
+        }
+        if (entry != null && "snapshot".equals(entry.getBackupType())) {
+            return Map.of("error", "backup " + timestamp + " is a snapshot; stop the nodes and copy its snapshot/<nodeId> directories back into their dbPath");
+        }
+        return null;
+    }
+
     // Restore a shard from a given Backup path
     public Map<String,Object> restoreShard(String clusterId,String timestamp,String shardName,boolean dropBeforeRestore){
+        BackupCatalogService.Lease lease = backupCatalogService.acquire(clusterId, timestamp);
+        if (lease == null) return Map.of("error", "backup " + timestamp + " is being deleted by retention");
+        BackupProgressService.BackupProgress progress = backupProgressService.startRestoreProgress(clusterId);
+        boolean success = false;
+        try (lease) {
+            Map<String,Object> result = runRestoreShard(clusterId, timestamp, shardName, dropBeforeRestore, progress);
+            success = Boolean.TRUE.equals(result.get("restored"));
+            return result;
+        } finally {
+            backupProgressService.completeRestore(clusterId, success);
+        }
+    }
+
+    private Map<String,Object> runRestoreShard(String clusterId,String timestamp,String shardName,boolean dropBeforeRestore,
+                                               BackupProgressService.BackupProgress progress){
         ClusterConfig config = configServerService.loadClusterConfig(clusterId);
         if (config == null) return Map.of("error","cluster not found: " + clusterId);
 
         // Use the main backup path, not shard-specific path
         Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
-        if(!Files.exists(backupPath)){
+        if(!ensureLocalBackup(clusterId, timestamp, backupPath)){
             return Map.of("error", "backup not found at " + backupPath.toString());
         }
+        Map<String,Object> integrityError = checkIntegrity(clusterId, timestamp);
+        if (integrityError != null) return integrityError;
+
+        // Find shard node in config
+        var nodeOpt = config.getNodes().stream()
+                .filter(n -> shardName.equals(n.getReplicaSet()))
+                .findFirst();
+        if(nodeOpt.isEmpty()) return Map.of("error", "shard not found in config: " + shardName);
+
+        var node = nodeOpt.get();
 
         // Check if backup is compressed and decompress if needed
+        backupProgressService.updateProgress(progress, "preparing", "Preparing dump files...", 1);
         Path dumpPath = backupPath.resolve("dump");
         if (!Files.exists(dumpPath)) {
+            BsonRestoreEngine.DumpSource archive = openArchiveSource(backupPath, namespace -> true);
+            if (archive != null) {
+                backupProgressService.updateProgress(progress, "restoring", "Streaming archive to shard " + shardName + "...", 3);
+                Map<String, Object> streamed = streamRestore(progress, backupPath, archive, node.getPort(),
+                        skipDatabases(Set.of("config", "admin", "local")), null, dropBeforeRestore, null);
+                return Map.of(
+                        "shard", shardName,
+                        "path", backupPath.toString(),
+                        "restored", streamed.get("success"),
+                        "restoredDatabases", streamed.get("databases"),
+                        "errors", streamed.get("errors")
+                );
+            }
             Map<String, Object> decompressResult = decompressBackupIfNeeded(backupPath);
             if (decompressResult != null) {
                 return decompressResult; // Return error
@@ -169,28 +470,20 @@ public class BackupService {
         }
 
         // Find actual dump content
-        Path actualDumpPath = findActualDumpPath(dumpPath);
-
-        // Find shard node in config
-        var nodeOpt = config.getNodes().stream()
-                .filter(n -> shardName.equals(n.getReplicaSet()))
-                .findFirst();
-        if(nodeOpt.isEmpty()) return Map.of("error", "shard not found in config: " + shardName);
-
-        var node = nodeOpt.get();
+        Path actualDumpPath = resolveDumpPath(clusterId, timestamp, backupPath, dumpPath);
 
         // Restore all databases to this specific shard
         boolean allSuccess = true;
         List<String> restoredDatabases = new ArrayList<>();
 
+        backupProgressService.updateProgress(progress, "restoring", "Restoring databases to shard " + shardName + "...", 3);
         try {
             List<String> databases = listDatabasesInDump(actualDumpPath);
             for (String dbName : databases) {
                 if (!dbName.equals("config") && !dbName.equals("admin") && !dbName.equals("local")) {
                     Path dbPath = actualDumpPath.resolve(dbName);
                     if (Files.exists(dbPath)) {
-                        boolean ok = ProcessManager.runMongoRestore("localhost", node.getPort(),
-                                dbPath.toString(), dropBeforeRestore, false);
+                        boolean ok = restoreDatabase(progress, node.getPort(), dbName, dbPath, dropBeforeRestore);
                         if (ok) {
                             restoredDatabases.add(dbName);
                         }
@@ -210,33 +503,39 @@ public class BackupService {
         );
     }
 
-    // List backups for cluster
+    // List backups for cluster, newest first
     public List<String> listBackups(String clusterId){
-        Path clusterPath = Paths.get(BACKUP_ROOT,clusterId);
-        if(!Files.exists(clusterPath)) return Collections.emptyList();
-        try{
-            List<String> list = new ArrayList<>();
-            try(DirectoryStream<Path> stream = Files.newDirectoryStream(clusterPath)){
-                for (Path p :stream){
-                    if(Files.isDirectory(p)) list.add(p.getFileName().toString());
-                }
-            }
-            list.sort(Comparator.reverseOrder());
-            return list;
-        } catch (Exception e) {
-            return Collections.emptyList();
-        }
+        return backupCatalogService.list(clusterId).stream()
+                .map(BackupCatalogEntry::getTimestamp)
+                .toList();
     }
 
     // Restore entire cluster from backup
     public Map<String,Object> restoreCluster(String clusterId, String timestamp, boolean dropBeforeRestore){
+        BackupCatalogService.Lease lease = backupCatalogService.acquire(clusterId, timestamp);
+        if (lease == null) return Map.of("error", "backup " + timestamp + " is being deleted by retention");
+        BackupProgressService.BackupProgress progress = backupProgressService.startRestoreProgress(clusterId);
+        boolean success = false;
+        try (lease) {
+            Map<String,Object> result = runRestoreCluster(clusterId, timestamp, dropBeforeRestore, progress);
+            success = Boolean.TRUE.equals(result.get("success"));
+            return result;
+        } finally {
+            backupProgressService.completeRestore(clusterId, success);
+        }
+    }
+
+    private Map<String,Object> runRestoreCluster(String clusterId, String timestamp, boolean dropBeforeRestore,
+                                                 BackupProgressService.BackupProgress progress){
         System.out.println("=== Starting Full Cluster Restore ===");
         System.out.println("Cluster ID: " + clusterId + ", Timestamp: " + timestamp);
 
         Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
-        if (!Files.exists(backupPath)) {
+        if (!ensureLocalBackup(clusterId, timestamp, backupPath)) {
             return Map.of("error", "backup not found at " + backupPath.toString());
         }
+        Map<String,Object> integrityError = checkIntegrity(clusterId, timestamp);
+        if (integrityError != null) return integrityError;
 
         // Load or create cluster config
         ClusterConfig config = configServerService.loadClusterConfig(clusterId);
@@ -249,8 +548,13 @@ public class BackupService {
         }
 
         // Check if backup is compressed and decompress if needed
+        backupProgressService.updateProgress(progress, "preparing", "Preparing dump files...", 1);
         Path dumpPath = backupPath.resolve("dump");
         if (!Files.exists(dumpPath)) {
+            if (openArchiveSource(backupPath, namespace -> true) != null) {
+                return streamRestoreCluster(clusterId, timestamp, config, backupPath,
+                        include -> openArchiveSource(backupPath, include), dropBeforeRestore, progress);
+            }
             Map<String, Object> decompressResult = decompressBackupIfNeeded(backupPath);
             if (decompressResult != null) {
                 return decompressResult; // Return error
@@ -258,15 +562,25 @@ public class BackupService {
         }
 
         // Find actual dump content - may be nested due to previous mongodump bug
-        Path actualDumpPath = findActualDumpPath(dumpPath);
+        Path actualDumpPath = resolveDumpPath(clusterId, timestamp, backupPath, dumpPath);
         System.out.println("Using dump path: " + actualDumpPath.toString());
 
+        // mongorestore would load sharded collections onto the primary shard and reload unchanged
+        // collections, so use the native restore for chunk-aware and incremental restores
+        boolean chunkAware = chunkAwareRestore && Files.exists(backupPath.resolve(ShardLayoutService.LAYOUT_FILE));
+        boolean incremental = incrementalRestore && dropBeforeRestore && Files.exists(backupPath.resolve(BackupIntegrityService.INTEGRITY_FILE));
+        if (chunkAware || incremental) {
+            return streamRestoreCluster(clusterId, timestamp, config, backupPath,
+                    include -> BsonRestoreEngine.directory(actualDumpPath, include), dropBeforeRestore, progress);
+        }
+
         // List all databases found in dump
         List<String> foundDatabases = listDatabasesInDump(actualDumpPath);
         System.out.println("Found databases in backup: " + foundDatabases);
 
         // Ensure cluster is running before restore
         System.out.println("Ensuring cluster is running...");
+        backupProgressService.updateProgress(progress, "starting", "Ensuring cluster is running...", 2);
         boolean clusterReady = ensureClusterRunning(config);
         if (!clusterReady) {
             return Map.of("error", "Failed to start cluster for restore. Please ensure MongoDB processes can start.");
@@ -280,7 +594,7 @@ public class BackupService {
                 .filter(n -> "mongos".equals(n.getType()))
                 .findFirst();
 
-        int mongosPort = mongosNode.map(NodeInfo::getPort).orElse(27999);
+        int mongosPort = mongosNode.map(NodeInfo::getPort).orElse(config.getMongosPort());
         System.out.println("Using mongos on port " + mongosPort + " for restore");
 
         // Find user databases (exclude system databases)
@@ -291,12 +605,13 @@ public class BackupService {
         System.out.println("User databases to restore: " + userDatabases);
 
         // 1. Restore user databases through mongos (this ensures proper routing)
+        backupProgressService.updateProgress(progress, "restoring", "Restoring databases through mongos...", 3);
         for (String dbName : userDatabases) {
             Path dbPath = actualDumpPath.resolve(dbName);
             if (Files.exists(dbPath)) {
                 try {
                     System.out.println("Restoring database '" + dbName + "' through mongos (port " + mongosPort + ")");
-                    boolean ok = ProcessManager.runMongoRestore("localhost", mongosPort, dbPath.toString(), dropBeforeRestore, false);
+                    boolean ok = restoreDatabase(progress, mongosPort, dbName, dbPath, dropBeforeRestore);
                     restoreResults.add(Map.of("type", "database", "database", dbName, "port", mongosPort, "success", ok));
                     allSuccess &= ok;
                     if (!ok) {
@@ -316,7 +631,7 @@ public class BackupService {
         if (Files.exists(adminPath)) {
             try {
                 System.out.println("Restoring admin database through mongos");
-                boolean ok = ProcessManager.runMongoRestore("localhost", mongosPort, adminPath.toString(), dropBeforeRestore, false);
+                boolean ok = restoreDatabase(progress, mongosPort, "admin", adminPath, dropBeforeRestore);
                 restoreResults.add(Map.of("type", "admin", "port", mongosPort, "success", ok));
             } catch (Exception e) {
                 restoreResults.add(Map.of("type", "admin", "success", false, "error", e.getMessage()));
@@ -341,6 +656,375 @@ public class BackupService {
 
         return result;
     }
+    // Opens the dump, reading only the files of collections the predicate accepts where the format allows it
+    private interface SourceFactory {
+        BsonRestoreEngine.DumpSource open(Predicate<String> includeNamespace) throws IOException;
+    }
+
+    private Map<String,Object> streamRestoreCluster(String clusterId, String timestamp, ClusterConfig config, Path backupPath,
+                                                    SourceFactory sourceFactory, boolean dropBeforeRestore,
+                                                    BackupProgressService.BackupProgress progress) {
+        backupProgressService.updateProgress(progress, "starting", "Ensuring cluster is running...", 2);
+        if (!ensureClusterRunning(config)) {
+            return Map.of("error", "Failed to start cluster for restore. Please ensure MongoDB processes can start.");
+        }
+        int mongosPort = config.getNodes().stream()
+                .filter(n -> "mongos".equals(n.getType()))
+                .map(NodeInfo::getPort)
+                .findFirst().orElse(config.getMongosPort());
+
+        // With drop, collections whose live data already matches the backup are left alone
+        Set<String> unchanged = Set.of();
+        if (incrementalRestore && dropBeforeRestore) {
+            backupProgressService.updateProgress(progress, "comparing", "Comparing live collections with the backup...", 2);
+            unchanged = unchangedNamespaces(config, backupPath, sourceFactory, mongosPort);
+        }
+        Set<String> skip = unchanged;
+        Function<String, String> databases = skipDatabases(Set.of("config", "local"));
+        Function<String, String> mapper = namespace -> skip.contains(namespace) || isAdminSystem(namespace)
+                ? null : databases.apply(namespace);
+
+        BsonRestoreEngine.DumpSource source;
+        try {
+            source = sourceFactory.open(namespace -> mapper.apply(namespace) != null);
+        } catch (IOException e) {
+            return Map.of("error", "cannot read backup: " + e.getMessage());
+        }
+
+        backupProgressService.updateProgress(progress, "restoring", "Streaming dump through mongos...", 3);
+        Map<String, Object> streamed = streamRestore(progress, backupPath, source, mongosPort, mapper,
+                null, dropBeforeRestore, config);
+        boolean success = Boolean.TRUE.equals(streamed.get("success"));
+        configServerService.saveClusterConfig(config);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("clusterId", clusterId);
+        result.put("timestamp", timestamp);
+        result.put("backupPath", backupPath.toString());
+        result.put("streamed", true);
+        result.put("unchangedCollections", new TreeSet<>(unchanged));
+        result.put("databasesRestored", streamed.get("databases"));
+        result.put("restoreResults", streamed.get("collections"));
+        result.put("sharding", streamed.get("sharding"));
+        result.put("errors", streamed.get("errors"));
+        result.put("success", success);
+        result.put("message", success ? "Cluster restored successfully" : "Some restore operations failed");
+        return result;
+    }
+
+    /**
+     * Restore only some collections of a backup, optionally filtered and renamed.
+     * namespaces are "db.coll" or glob patterns such as "shop.*"; renames map a source
+     * namespace (or "db.*") to its target. Without a shard the restore goes through mongos.
+     */
+    public Map<String,Object> restoreCollections(String clusterId, String timestamp, List<String> namespaces, String filter,
+                                                 Map<String, String> renames, String shardName, boolean dropBeforeRestore) {
+        BackupCatalogService.Lease lease = backupCatalogService.acquire(clusterId, timestamp);
+        if (lease == null) return Map.of("error", "backup " + timestamp + " is being deleted by retention");
+        BackupProgressService.BackupProgress progress = backupProgressService.startRestoreProgress(clusterId);
+        boolean success = false;
+        try (lease) {
+            Map<String,Object> result = runRestoreCollections(clusterId, timestamp, namespaces, filter, renames, shardName,
+                    dropBeforeRestore, progress);
+            success = Boolean.TRUE.equals(result.get("success"));
+            return result;
+        } finally {
+            backupProgressService.completeRestore(clusterId, success);
+        }
+    }
+
+    private Map<String,Object> runRestoreCollections(String clusterId, String timestamp, List<String> namespaces, String filter,
+                                                     Map<String, String> renames, String shardName, boolean dropBeforeRestore,
+                                                     BackupProgressService.BackupProgress progress) {
+        if (namespaces == null || namespaces.isEmpty()) {
+            return Map.of("error", "namespaces is required, e.g. [\"shop.orders\"] or [\"shop.*\"]");
+        }
+        ClusterConfig config = configServerService.loadClusterConfig(clusterId);
+        if (config == null) return Map.of("error", "cluster not found: " + clusterId);
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        if (!ensureLocalBackup(clusterId, timestamp, backupPath)) {
+            return Map.of("error", "backup not found at " + backupPath.toString());
+        }
+        Map<String,Object> integrityError = checkIntegrity(clusterId, timestamp);
+        if (integrityError != null) return integrityError;
+
+        if (renames != null && renames.values().stream().anyMatch(target -> target == null || target.indexOf('.') <= 0)) {
+            return Map.of("error", "rename targets must be \"db.collection\" or \"db.*\"");
+        }
+
+        BsonFilter documentFilter;
+        try {
+            documentFilter = BsonFilter.parse(filter);
+        } catch (Exception e) {
+            return Map.of("error", "invalid filter: " + e.getMessage());
+        }
+
+        int port;
+        if (shardName != null) {
+            var node = config.getNodes().stream().filter(n -> shardName.equals(n.getReplicaSet())).findFirst();
+            if (node.isEmpty()) return Map.of("error", "shard not found in config: " + shardName);
+            port = node.get().getPort();
+        } else {
+            port = config.getNodes().stream()
+                    .filter(n -> "mongos".equals(n.getType()))
+                    .map(NodeInfo::getPort)
+                    .findFirst().orElse(config.getMongosPort());
+        }
+
+        List<Pattern> includes = namespaces.stream().map(BackupService::namespacePattern).toList();
+        Predicate<String> included = namespace -> includes.stream().anyMatch(p -> p.matcher(namespace).matches());
+        Function<String, String> mapper = namespace -> included.test(namespace) && !isAdminSystem(namespace)
+                ? renameNamespace(namespace, renames) : null;
+
+        // Only the selected collections' files are opened (archives are still decompressed front to back)
+        backupProgressService.updateProgress(progress, "preparing", "Selecting collections...", 1);
+        BsonRestoreEngine.DumpSource source;
+        try {
+            Path dumpPath = backupPath.resolve("dump");
+            if (Files.exists(dumpPath)) {
+                source = BsonRestoreEngine.directory(resolveDumpPath(clusterId, timestamp, backupPath, dumpPath), included);
+            } else if (backupRepositoryService.hasManifest(backupPath)) {
+                source = backupRepositoryService.openDumpSource(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE), included);
+            } else if (Files.exists(backupPath.resolve("dump.tar.gz"))) {
+                source = BsonRestoreEngine.tarGz(backupPath.resolve("dump.tar.gz"));
+            } else if (Files.exists(backupPath.resolve("dump.zip"))) {
+                source = BsonRestoreEngine.zip(backupPath.resolve("dump.zip"));
+            } else {
+                return Map.of("error", "no dump directory or compressed backup found");
+            }
+        } catch (IOException e) {
+            return Map.of("error", "cannot read backup: " + e.getMessage());
+        }
+
+        backupProgressService.updateProgress(progress, "restoring", "Restoring selected collections...", 3);
+        Map<String, Object> streamed = streamRestore(progress, backupPath, source, port, mapper,
+                documentFilter.isEmpty() ? null : documentFilter, dropBeforeRestore, shardName == null ? config : null);
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> collections = (List<Map<String, Object>>) streamed.get("collections");
+        boolean success = Boolean.TRUE.equals(streamed.get("success"));
+        if (success && collections.isEmpty()) {
+            return Map.of("success", false, "error", "no collection in backup " + timestamp + " matches " + namespaces);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("clusterId", clusterId);
+        result.put("timestamp", timestamp);
+        result.put("target", shardName != null ? shardName : "mongos");
+        result.put("port", port);
+        result.put("collections", collections);
+        result.put("sharding", streamed.get("sharding"));
+        result.put("errors", streamed.get("errors"));
+        result.put("success", success);
+        return result;
+    }
+
+    // "shop.*" style patterns; a pattern without a dot means the whole database
+    private static Pattern namespacePattern(String pattern) {
+        String full = pattern.contains(".") ? pattern : pattern + ".*";
+        StringBuilder regex = new StringBuilder();
+        for (char c : full.toCharArray()) {
+            regex.append(c == '*' ? ".*" : Pattern.quote(String.valueOf(c)));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String renameNamespace(String namespace, Map<String, String> renames) {
+        if (renames == null || renames.isEmpty()) return namespace;
+        String exact = renames.get(namespace);
+        if (exact != null) return exact;
+        String db = namespace.substring(0, namespace.indexOf('.'));
+        String dbRename = renames.get(db + ".*");
+        if (dbRename != null && dbRename.endsWith(".*")) {
+            return dbRename.substring(0, dbRename.length() - 2) + namespace.substring(db.length());
+        }
+        return namespace;
+    }
+
+    // Namespaces whose live document count and content hash equal those recorded in the integrity manifest
+    private Set<String> unchangedNamespaces(ClusterConfig config, Path backupPath, SourceFactory sourceFactory, int mongosPort) {
+        Map<String, IntegrityManifest.FileEntry> expected = new HashMap<>();
+        try {
+            IntegrityManifest manifest = backupIntegrityService.load(backupPath);
+            if (manifest == null) return Set.of();
+            for (IntegrityManifest.FileEntry file : manifest.getFiles()) {
+                String namespace = BsonRestoreEngine.namespaceOf(file.getPath(), ".bson");
+                if (namespace == null || file.getContentHash() == null) continue;
+                String db = namespace.substring(0, namespace.indexOf('.'));
+                if (!db.equals("config") && !db.equals("local")) expected.put(namespace, file);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read integrity manifest, restoring everything: " + e.getMessage());
+            return Set.of();
+        }
+
+        long start = System.currentTimeMillis();
+        Map<String, BsonIntegrity.FileDigest> live = backupIntegrityService.liveDigests(config, expected.keySet());
+        Set<String> unchanged = new HashSet<>();
+        expected.forEach((namespace, file) -> {
+            BsonIntegrity.FileDigest digest = live.get(namespace);
+            if (digest != null && digest.documents() == file.getDocuments()
+                    && BsonIntegrity.hex(digest.contentHash()).equals(file.getContentHash())) {
+                unchanged.add(namespace);
+            }
+        });
+        if (!unchanged.isEmpty()) {
+            // Matching data is not enough: the collection must still exist with the dumped options and indexes
+            Map<String, String> liveMetadata = backupIntegrityService.liveMetadataSignatures(mongosPort, unchanged);
+            Map<String, String> dumpedMetadata = dumpedMetadataSignatures(sourceFactory, unchanged);
+            unchanged.removeIf(namespace -> liveMetadata.get(namespace) == null
+                    || !liveMetadata.get(namespace).equals(dumpedMetadata.get(namespace)));
+        }
+        System.out.println("Incremental restore: " + unchanged.size() + " of " + expected.size()
+                + " collections unchanged (compared in " + (System.currentTimeMillis() - start) + " ms)");
+        return unchanged;
+    }
+
+    // Stops a metadata scan once every wanted namespace was seen
+    private static class MetadataComplete extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    // Signatures of the namespaces' .metadata.json entries; data entries are passed over unread
+    private Map<String, String> dumpedMetadataSignatures(SourceFactory sourceFactory, Set<String> namespaces) {
+        Map<String, String> signatures = new HashMap<>();
+        try {
+            sourceFactory.open(namespaces::contains).forEachEntry((path, in) -> {
+                String namespace = BsonRestoreEngine.namespaceOf(path, ".metadata.json");
+                if (namespace == null || !namespaces.contains(namespace)) return;
+                Document metadata = Document.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                signatures.put(namespace, BackupIntegrityService.metadataSignature(metadata));
+                if (signatures.size() == namespaces.size()) throw new MetadataComplete();
+            });
+        } catch (Exception e) {
+            // A source may wrap the stop signal
+            if (!(e instanceof MetadataComplete) && !(e.getCause() instanceof MetadataComplete)) {
+                System.err.println("Could not read collection metadata from the backup, restoring everything: " + e.getMessage());
+                return Map.of();
+            }
+        }
+        return signatures;
+    }
+
+    // Compressed or deduplicated dump that can be streamed into the cluster, or null to extract it as before.
+    // Deduplicated dumps only read the chunks of included namespaces.
+    private BsonRestoreEngine.DumpSource openArchiveSource(Path backupPath, Predicate<String> includeNamespace) {
+        if (!streamArchives) return null;
+        try {
+            if (backupRepositoryService.hasManifest(backupPath)) {
+                return backupRepositoryService.openDumpSource(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE), includeNamespace);
+            }
+            if (Files.exists(backupPath.resolve("dump.tar.gz"))) {
+                return BsonRestoreEngine.tarGz(backupPath.resolve("dump.tar.gz"));
+            }
+            if (Files.exists(backupPath.resolve("dump.zip"))) {
+                return BsonRestoreEngine.zip(backupPath.resolve("dump.zip"));
+            }
+            BsonRestoreEngine.DumpSource remote = backupOffloadService.openRemoteArchive(
+                    backupPath.getParent().getFileName().toString(), backupPath.getFileName().toString());
+            if (remote != null) {
+                return remote;
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot stream backup " + backupPath + ", extracting it instead: " + e.getMessage());
+        }
+        return null;
+    }
+
+    // admin.system.version, .users and .roles are server state: dropping and re-inserting them
+    // bypasses the user-management commands, so native restores leave them alone
+    private static boolean isAdminSystem(String namespace) {
+        return namespace.startsWith("admin.system.");
+    }
+
+    // Namespace mapper that leaves out whole databases
+    private static Function<String, String> skipDatabases(Set<String> databases) {
+        return namespace -> databases.contains(namespace.substring(0, namespace.indexOf('.'))) ? null : namespace;
+    }
+
+    // shardedCluster is set when port is a mongos; the backup's sharding layout is then re-created before loading
+    private Map<String,Object> streamRestore(BackupProgressService.BackupProgress progress, Path backupPath,
+                                             BsonRestoreEngine.DumpSource archive, int port, Function<String, String> namespaceMapper,
+                                             Predicate<? super RawBsonDocument> documentFilter, boolean dropBeforeRestore,
+                                             ClusterConfig shardedCluster) {
+        // Sizes and document counts from the integrity manifest give the progress totals up front
+        Map<String, IntegrityManifest.FileEntry> totals = new HashMap<>();
+        try {
+            IntegrityManifest manifest = backupIntegrityService.load(backupPath);
+            if (manifest != null) {
+                for (IntegrityManifest.FileEntry file : manifest.getFiles()) {
+                    String namespace = BsonRestoreEngine.namespaceOf(file.getPath(), ".bson");
+                    if (namespace == null || namespaceMapper.apply(namespace) == null) continue;
+                    totals.put(namespace, file);
+                    progress.recordCollection(namespace, 0, file.getSize(), 0, Math.max(0, file.getDocuments()), false);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read integrity manifest of " + backupPath + ": " + e.getMessage());
+        }
+
+        BsonRestoreEngine engine = new BsonRestoreEngine("localhost", port, restoreInsertWorkers);
+        engine.setNamespaceMapper(namespaceMapper);
+        engine.setDocumentFilter(documentFilter);
+
+        ShardLayoutService.PreparedLayout layout = ShardLayoutService.PreparedLayout.empty();
+        if (shardedCluster != null && chunkAwareRestore) {
+            try {
+                ShardingLayout recorded = shardLayoutService.load(backupPath);
+                if (recorded != null && !recorded.getCollections().isEmpty()) {
+                    layout = shardLayoutService.prepare(recorded, shardedCluster, port, namespaceMapper, dropBeforeRestore);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not read sharding layout of " + backupPath + ": " + e.getMessage());
+            }
+        }
+        Map<String, ShardKeyRouter> routers = layout.routers();
+        if (!routers.isEmpty()) {
+            layout.shardConnections().forEach(engine::addTarget);
+            engine.setRouter((namespace, document) -> {
+                ShardKeyRouter router = routers.get(namespace);
+                return router != null ? router.route(document) : null;
+            });
+        }
+        engine.setPresharded(layout.presharded());
+        engine.setProgressListener(counters -> {
+            IntegrityManifest.FileEntry total = totals.get(counters.getSourceNamespace());
+            progress.recordCollection(counters.getSourceNamespace(), counters.getBytes(),
+                    total != null ? total.getSize() : counters.getBytes(), counters.getDocuments(),
+                    total != null ? Math.max(0, total.getDocuments()) : counters.getDocuments(), counters.isComplete());
+        });
+
+        System.out.println("Streaming " + backupPath + " into port " + port + " without extracting it");
+        boolean ok;
+        try {
+            ok = engine.restore(archive, dropBeforeRestore);
+        } finally {
+            shardLayoutService.finish(port, layout);
+        }
+
+        Set<String> databases = new TreeSet<>();
+        List<Map<String, Object>> collections = new ArrayList<>();
+        for (BsonRestoreEngine.CollectionCounters counters : engine.getCounters().values()) {
+            databases.add(counters.getNamespace().substring(0, counters.getNamespace().indexOf('.')));
+            collections.add(counters.toMap());
+        }
+        if (ok) {
+            databases.forEach(progress::completeDatabase);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", ok);
+        result.put("databases", new ArrayList<>(databases));
+        result.put("collections", collections);
+        result.put("sharding", layout.results());
+        result.put("errors", engine.getErrors());
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     private ClusterConfig recreateClusterConfigFromBackup(String clusterId, Path backupPath) {
         try {
@@ -361,14 +1045,19 @@ public class BackupService {
             newConfig.setNumberOfShards(shardCount > 0 ? shardCount : 2);
             newConfig.setNumberOfConfigServers(configCount > 0 ? configCount : 1);
 
+            List<Integer> ports = portAllocatorService.reserve(clusterId,
+                    newConfig.getNumberOfConfigServers() + newConfig.getNumberOfShards() + 1);
+            newConfig.setBasePort(ports.get(0));
+            newConfig.setMongosPort(ports.get(ports.size() - 1));
+
             List<NodeInfo> nodes = new ArrayList<>();
-            int currentPort = 28000;
+            int next = 0;
 
             for (int i = 1; i <= newConfig.getNumberOfConfigServers(); i++) {
                 NodeInfo configNode = new NodeInfo(
                         "config-" + i,
                         "config",
-                        currentPort++,
+                        ports.get(next++),
                         newConfig.getBaseDataPath() + File.separator + "config" + File.separator + "configsvr" + i
                 );
                 configNode.setReplicaSet("configReplSet");
@@ -379,7 +1068,7 @@ public class BackupService {
                 NodeInfo shardNode = new NodeInfo(
                         "shard-" + i,
                         "shard",
-                        currentPort++,
+                        ports.get(next++),
                         newConfig.getBaseDataPath() + File.separator + "shard" + File.separator + "shard" + i
                 );
                 shardNode.setReplicaSet("shard" + i);
@@ -391,6 +1080,7 @@ public class BackupService {
             boolean configSaved = configServerService.saveClusterConfig(newConfig);
             if (!configSaved) {
                 System.err.println("Failed to save recreated cluster config");
+                portAllocatorService.releaseCluster(clusterId);
                 return null;
             }
 
@@ -406,7 +1096,14 @@ public class BackupService {
         Path compressedZipPath = backupPath.resolve("dump.zip");
         Path compressedTarPath = backupPath.resolve("dump.tar.gz");
 
-        if (Files.exists(compressedZipPath)) {
+        if (backupRepositoryService.hasManifest(backupPath)) {
+            try {
+                System.out.println("Reassembling deduplicated backup...");
+                backupRepositoryService.materialize(backupPath.resolve(BackupRepositoryService.MANIFEST_FILE), backupPath.resolve("dump"));
+            } catch (Exception e) {
+                return Map.of("error", "failed to reassemble deduplicated backup: " + e.getMessage());
+            }
+        } else if (Files.exists(compressedZipPath)) {
             try {
                 System.out.println("Decompressing ZIP backup...");
                 boolean decompressed = decompressZipFile(compressedZipPath.toString(), backupPath.toString());
@@ -474,6 +1171,26 @@ public class BackupService {
         }
         return databases;
     }
+    // Dump content location from the catalog; scans the dump only for backups without a recorded layout
+    private Path resolveDumpPath(String clusterId, String timestamp, Path backupPath, Path dumpPath) {
+        BackupCatalogEntry entry = backupCatalogService.get(clusterId, timestamp);
+        if (entry != null && entry.getDumpLayout() != null) {
+            Path recorded = backupPath.resolve(entry.getDumpLayout());
+            if (Files.isDirectory(recorded)) {
+                return recorded;
+            }
+        }
+        Path actualDumpPath = findActualDumpPath(dumpPath);
+        if (entry != null) {
+            backupCatalogService.updateDumpLayout(clusterId, timestamp, relativeLayout(backupPath, actualDumpPath));
+        }
+        return actualDumpPath;
+    }
+
+    private String relativeLayout(Path backupPath, Path actualDumpPath) {
+        return backupPath.relativize(actualDumpPath).toString().replace('\\', '/');
+    }
+
     private Path findActualDumpPath(Path dumpPath) {
         // First check if dumpPath directly contains database folders
         if (containsDatabaseFolders(dumpPath)) {
@@ -552,15 +1269,12 @@ public class BackupService {
     }
 
     @Async("backupExecutor")
-    public CompletableFuture<Map<String,Object>> backupClusterAsync(String clusterId,boolean compress){
-        backupProgressService.startBackupProgress(clusterId);
+    public CompletableFuture<Map<String,Object>> backupClusterAsync(String clusterId,boolean compress,boolean dedup){
+        // backupCluster tracks its own progress
         try{
-            backupProgressService.updateProgress(clusterId,"Starting cluster backup...",1);
-            Map<String,Object> result = backupCluster(clusterId,compress);
-            backupProgressService.completeBackup(clusterId,(Boolean) result.get("success"));
+            Map<String,Object> result = backupCluster(clusterId,compress,dedup);
             return CompletableFuture.completedFuture(result);
         } catch (Exception e) {
-            backupProgressService.completeBackup(clusterId,false);
             return CompletableFuture.completedFuture(Map.of("success", false, "error", e.getMessage()));
         }
     }
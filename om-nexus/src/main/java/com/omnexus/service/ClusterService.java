@@ -1,17 +1,27 @@
 package com.omnexus.service;
 
 import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.ClusterTuning;
 import com.omnexus.model.NodeInfo;
 import com.omnexus.util.MongoConnectionUtil;
+import com.omnexus.util.MongodTuning;
 import com.omnexus.util.ProcessManager;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class ClusterService {
+    private final PortAllocatorService portAllocatorService;
+
+    public ClusterService(PortAllocatorService portAllocatorService) {
+        this.portAllocatorService = portAllocatorService;
+    }
 
     public ClusterConfig createCluster(String clusterId, int shards, int configServers, int replicasPerShard) {
         ClusterConfig config = new ClusterConfig();
@@ -20,15 +30,20 @@ public class ClusterService {
         config.setNumberOfConfigServers(configServers);
         config.setReplicaSetSize(replicasPerShard);
 
+        // Config servers, shard members, then mongos, from the host-wide range
+        List<Integer> ports = portAllocatorService.reserve(clusterId, configServers + shards * replicasPerShard + 1);
+        config.setBasePort(ports.get(0));
+        config.setMongosPort(ports.get(ports.size() - 1));
+
         List<NodeInfo> nodes = new ArrayList<>();
-        int currentPort = 28000;
+        int next = 0;
 
         // Create config servers
         for (int i = 1; i <= configServers; i++) {
             NodeInfo configNode = new NodeInfo(
                     "config-" + i,
                     "config",
-                    currentPort++,
+                    ports.get(next++),
                     config.getBaseDataPath() + File.separator + "config" + File.separator + "configsvr" + i
             );
             configNode.setReplicaSet("configReplSet");
@@ -44,7 +59,7 @@ public class ClusterService {
                 NodeInfo shardNode = new NodeInfo(
                         nodeId,
                         "shard",
-                        currentPort++,
+                        ports.get(next++),
                         config.getBaseDataPath() + File.separator + "shard" + File.separator + nodeId
                 );
                 shardNode.setReplicaSet(replicaSetName);
@@ -69,7 +84,9 @@ public class ClusterService {
                     node.getType(),
                     node.getPort(),
                     node.getDataPath(),
-                    node.getReplicaSet()
+                    node.getReplicaSet(),
+                    node.getResources(),
+                    MongodTuning.args(config, node)
             );
             node.setStatus(started ? "running" : "error");
         }
@@ -90,18 +107,79 @@ public class ClusterService {
         }
     }
 
+    /**
+     * The tuning settings and the mongod options each node gets on its next start.
+     */
+    public Map<String, Object> getTuning(ClusterConfig config) {
+        List<Map<String, Object>> nodes = new ArrayList<>();
+        for (NodeInfo node : config.getNodes()) {
+            if ("mongos".equals(node.getType())) continue;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("nodeId", node.getNodeId());
+            entry.put("type", node.getType());
+            entry.put("profile", node.getTuningProfile() != null ? node.getTuningProfile()
+                    : config.getTuning() != null ? config.getTuning().getByType().get(node.getType()) : null);
+            entry.put("args", MongodTuning.args(config, node));
+            nodes.add(entry);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clusterId", config.getClusterId());
+        result.put("tuning", config.getTuning());
+        result.put("nodes", nodes);
+        return result;
+    }
+
+    /**
+     * Replace the tuning settings and per-node profile choices; nodes pick them up when they restart.
+     * Returns an error message if a name refers to a profile that does not exist, else null.
+     */
+    public String updateTuning(ClusterConfig config, ClusterTuning tuning, Map<String, String> nodeProfiles) {
+        ClusterTuning next = tuning != null ? tuning : new ClusterTuning();
+        if (next.getProfiles() == null) next.setProfiles(new LinkedHashMap<>());
+        if (next.getByType() == null) next.setByType(new LinkedHashMap<>());
+        for (Map.Entry<String, String> byType : next.getByType().entrySet()) {
+            if (!next.getProfiles().containsKey(byType.getValue())) {
+                return "Unknown profile for node type " + byType.getKey() + ": " + byType.getValue();
+            }
+        }
+        if (nodeProfiles != null) {
+            for (Map.Entry<String, String> choice : nodeProfiles.entrySet()) {
+                if (choice.getValue() != null && !next.getProfiles().containsKey(choice.getValue())) {
+                    return "Unknown profile for node " + choice.getKey() + ": " + choice.getValue();
+                }
+                if (config.getNodes().stream().noneMatch(n -> n.getNodeId().equals(choice.getKey()))) {
+                    return "Node not found: " + choice.getKey();
+                }
+            }
+        }
+        config.setTuning(next);
+        if (nodeProfiles != null) {
+            config.getNodes().stream()
+                    .filter(n -> nodeProfiles.containsKey(n.getNodeId()))
+                    .forEach(n -> n.setTuningProfile(nodeProfiles.get(n.getNodeId())));
+        }
+        // Choices of nodes left alone must still point at a profile
+        config.getNodes().stream()
+                .filter(n -> n.getTuningProfile() != null && !next.getProfiles().containsKey(n.getTuningProfile()))
+                .forEach(n -> n.setTuningProfile(null));
+        return null;
+    }
+
     public boolean stopCluster(ClusterConfig config) {
         System.out.println("=== Stopping Cluster ===");
         boolean allStopped = true;
 
         // Stop mongos first
-        if (ProcessManager.isProcessRunning("mongos")) {
+        if (ProcessManager.isProcessRunning(config.mongosNodeId())) {
             System.out.println("Stopping mongos router...");
-            ProcessManager.stopProcess("mongos");
+            ProcessManager.stopProcess(config.mongosNodeId());
         }
 
-        // Stop all nodes
-        for (NodeInfo node : config.getNodes()) {
+        // Shards before config servers, as MongoDB recommends: a shard shutting down may still
+        // need the config servers
+        List<NodeInfo> nodes = new ArrayList<>(config.getNodes());
+        nodes.sort(Comparator.comparing(n -> "config".equals(n.getType())));
+        for (NodeInfo node : nodes) {
             if (!"mongos".equals(node.getType()) && ProcessManager.isProcessRunning(node.getNodeId())) {
                 System.out.println("Stopping node: " + node.getNodeId());
                 boolean stopped = ProcessManager.stopProcess(node.getNodeId());
@@ -178,11 +256,11 @@ public class ClusterService {
             }
 
             // 2. Start mongos router (only if not already running)
-            System.out.println("Step 2: Starting mongos router on port 27999...");
+            System.out.println("Step 2: Starting mongos router on port " + config.getMongosPort() + "...");
 
-            if (!ProcessManager.isProcessRunning("mongos")) {
+            if (!ProcessManager.isProcessRunning(config.mongosNodeId())) {
                 String configDbString = "configReplSet/" + String.join(",", configMembers);
-                boolean mongosStarted = ProcessManager.startMongosProcess("mongos", 27999, configDbString);
+                boolean mongosStarted = ProcessManager.startMongosProcess(config.mongosNodeId(), config.getMongosPort(), configDbString);
 
                 if (!mongosStarted) {
                     System.err.println("Failed to start mongos router");
@@ -197,7 +275,7 @@ public class ClusterService {
                         .anyMatch(node -> "mongos".equals(node.getType()));
 
                 if (!hasMongos) {
-                    NodeInfo mongosNode = new NodeInfo("mongos", "mongos", 27999, "");
+                    NodeInfo mongosNode = new NodeInfo(config.mongosNodeId(), "mongos", config.getMongosPort(), "");
                     mongosNode.setStatus("running");
                     config.getNodes().add(mongosNode);
                 }
@@ -249,12 +327,12 @@ public class ClusterService {
                 }
 
                 // Check if shard is already added to cluster
-                if (!MongoConnectionUtil.isShardInCluster("localhost", 27999, shardName)) {
+                if (!MongoConnectionUtil.isShardInCluster("localhost", config.getMongosPort(), shardName)) {
                     System.out.println("Adding shard to cluster: " + shardName);
                     // Build connection string with all replica members
                     String connectionString = shardName + "/" + String.join(",", shardMembers);
                     boolean shardAdded = MongoConnectionUtil.addShardToCluster(
-                            "localhost", 27999, connectionString
+                            "localhost", config.getMongosPort(), connectionString
                     );
 
                     if (!shardAdded) {
@@ -283,12 +361,12 @@ public class ClusterService {
     private boolean isClusterInitialized(ClusterConfig config) {
         try {
             // Check if mongos is running
-            if (!ProcessManager.isProcessRunning("mongos")) {
+            if (!ProcessManager.isProcessRunning(config.mongosNodeId())) {
                 return false;
             }
 
             // Check if we can connect to mongos
-            boolean mongosConnected = MongoConnectionUtil.canConnect("localhost", 27999);
+            boolean mongosConnected = MongoConnectionUtil.canConnect("localhost", config.getMongosPort());
             if (!mongosConnected) {
                 return false;
             }
@@ -299,7 +377,7 @@ public class ClusterService {
                     .toList();
 
             for (NodeInfo shardNode : shardNodes) {
-                if (!MongoConnectionUtil.isShardInCluster("localhost", 27999, shardNode.getReplicaSet())) {
+                if (!MongoConnectionUtil.isShardInCluster("localhost", config.getMongosPort(), shardNode.getReplicaSet())) {
                     return false;
                 }
             }
@@ -68,6 +68,10 @@ public class ConfigServerService {
             }
 
             ClusterConfig config = objectMapper.readValue(configFile, ClusterConfig.class);
+            // Configs from before mongos ids were per cluster all named it "mongos"
+            config.getNodes().stream()
+                    .filter(node -> "mongos".equals(node.getType()) && "mongos".equals(node.getNodeId()))
+                    .forEach(node -> node.setNodeId(config.mongosNodeId()));
 
             // Update cache
             configCache.put(clusterId, config);
@@ -42,7 +42,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: " + clusterId);
             return false;
         }
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             MongoDatabase admin = client.getDatabase("admin");
             Document command = new Document("enableSharding",databaseName);
             admin.runCommand(command);
@@ -60,7 +60,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: " + clusterId);
             return false;
         }
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             MongoDatabase db = client.getDatabase(databaseName);
             db.getCollection(collectionName).drop();
             System.out.println("Dropped existing collection: " + databaseName + "." + collectionName);
@@ -97,7 +97,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: " + clusterId);
             return false;
         }
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             MongoDatabase database = client.getDatabase(databaseName);
             database.getCollection(collectionName).insertOne(document);
             System.out.println("Document inserted into: " + databaseName + "." + collectionName);
@@ -115,7 +115,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: "+clusterId);
             return dbNames;
         }
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             MongoIterable<String> databases = client.listDatabaseNames();
             databases.into(dbNames);
         } catch (Exception e) {
@@ -132,7 +132,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: "+clusterId);
             return result;
         }
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             // Get all database names
             List<String> dbNames = new ArrayList<>();
             client.listDatabaseNames().into(dbNames);
@@ -194,7 +194,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: "+clusterId);
             return null;
         }
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             MongoDatabase database = client.getDatabase(databaseName);
             Document statsCommand = new Document("collStats",collectionName);
             return database.runCommand(statsCommand);
@@ -214,7 +214,7 @@ public class DatabaseService {
             return Map.of("error", "Cluster not found: " + clusterId);
         }
 
-        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, "mongos")) {
+        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())) {
             MongoDatabase database = client.getDatabase(databaseName);
             MongoDatabase configDb = client.getDatabase("config");
 
@@ -260,7 +260,7 @@ public class DatabaseService {
         }
         Map<String,Object> distribution = new HashMap<>();
 
-        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+        try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
             MongoDatabase configDb = client.getDatabase("config");
             // Get All Shards
             MongoCollection<Document> shardsCollection = configDb.getCollection("shards");
@@ -301,7 +301,7 @@ public class DatabaseService {
             System.out.println("Cluster not found: " + clusterId);
             return false;
         }
-        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, "mongos")) {
+        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())) {
             MongoDatabase admin = client.getDatabase("admin");
 
             // Build moveChunk command with generic Object
@@ -326,7 +326,7 @@ public class DatabaseService {
         }
         Map<String, Object> distribution = new HashMap<>();
 
-        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, "mongos")) {
+        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())) {
             MongoDatabase configDb = client.getDatabase("config");
 
             MongoCollection<Document> chunksCollection = configDb.getCollection("chunks");
@@ -456,7 +456,7 @@ public class DatabaseService {
 
         List<Map<String, Object>> result = new ArrayList<>();
 
-        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, "mongos")) {
+        try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())) {
             MongoDatabase configDatabase = client.getDatabase("config");
             MongoCollection<Document> chunksCollection = configDatabase.getCollection("chunks");
 
@@ -8,6 +8,8 @@ import com.omnexus.util.ProcessManager;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -38,6 +40,12 @@ public class HealthMonitorService {
         this.configServerService = configServerService;
     }
     
+    // Pick up the mongod/mongos processes that kept running while OM Nexus was down
+    @EventListener(ApplicationReadyEvent.class)
+    public void reattachProcesses() {
+        ProcessManager.reattachProcesses();
+    }
+
     @Scheduled(fixedRate = 30000) // Every 30 seconds
     public void performHealthChecks() {
         List<String> clusterIds = configServerService.getAllClusterIds();
@@ -58,7 +58,7 @@ public class MonitoringService {
         status.setShardServers(shardServers);
 
         // Mongos status
-        status.setMongosRunning(ProcessManager.isProcessRunning("mongos"));
+        status.setMongosRunning(ProcessManager.isProcessRunning(config.mongosNodeId()));
 
         // Replica set counts (simplified for now)
         status.setTotalReplicaSets(2); // configReplSet + number of shards
@@ -203,7 +203,7 @@ public class MonitoringService {
 
         // Critical services status
         Map<String, Object> criticalServices = new HashMap<>();
-        criticalServices.put("mongosRunning", ProcessManager.isProcessRunning("mongos"));
+        criticalServices.put("mongosRunning", ProcessManager.isProcessRunning(config.mongosNodeId()));
         criticalServices.put("configServersHealthy", nodeStatuses.stream()
                 .filter(n -> "config".equals(n.getType()))
                 .allMatch(NodeStatus::isHealthy));
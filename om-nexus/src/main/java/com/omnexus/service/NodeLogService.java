@@ -0,0 +1,340 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.util.ProcessManager;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads node log files (mongod --logpath, mongos logs/&lt;nodeId&gt;.log) by byte offset with
+ * positional FileChannel reads, so a page costs only the bytes it covers. Lines can be
+ * filtered by severity, component and namespace of mongod's structured JSON log. Follow
+ * requests long-poll on one shared WatchService instead of re-reading the file.
+ */
+@Service
+public class NodeLogService {
+    private static final int READ_CHUNK = 64 * 1024;
+    private static final long MAX_PAGE_BYTES = 16L * 1024 * 1024;
+    private static final long MAX_FOLLOW_MS = 60_000;
+    // mongod severities, most severe first
+    private static final List<String> SEVERITIES = List.of("F", "E", "W", "I", "D1", "D2", "D3", "D4", "D5");
+
+    private final ConfigServerService configServerService;
+    private final BackupDownloadService backupDownloadService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Path, List<CompletableFuture<Void>>> waiters = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+    private volatile WatchService watchService;
+
+    public NodeLogService(ConfigServerService configServerService, BackupDownloadService backupDownloadService) {
+        this.configServerService = configServerService;
+        this.backupDownloadService = backupDownloadService;
+    }
+
+    /**
+     * Line filter; null fields match everything. Severity is the least severe level returned.
+     */
+    public record Filter(String severity, Set<String> components, String namespace, String contains) {
+        boolean isEmpty() {
+            return severity == null && components == null && namespace == null && contains == null;
+        }
+    }
+
+    public static Filter filter(String severity, String component, String namespace, String contains) {
+        Set<String> components = null;
+        if (component != null && !component.isBlank()) {
+            components = new HashSet<>();
+            for (String c : component.split(",")) components.add(c.trim().toUpperCase(Locale.ROOT));
+        }
+        return new Filter(blankToNull(severity == null ? null : severity.toUpperCase(Locale.ROOT)), components,
+                blankToNull(namespace), blankToNull(contains));
+    }
+
+    /**
+     * The raw log file, or a byte range of it.
+     */
+    public void download(String clusterId, String nodeId, String rangeHeader, HttpServletResponse response) throws IOException {
+        Path file = logFile(clusterId, nodeId);
+        if (file == null || !Files.isRegularFile(file)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No log file for " + clusterId + "/" + nodeId);
+            return;
+        }
+        backupDownloadService.sendFile(file, "text/plain", nodeId + ".log", rangeHeader, response);
+    }
+
+    /**
+     * Complete lines from offset on, at most maxBytes scanned and limit lines returned.
+     * A negative offset tails: reading starts at the first line within maxBytes of the end.
+     * A line longer than maxBytes is returned cut at maxBytes and flagged "truncated"; the
+     * next page skips the rest of it. fileId is the one returned with the offset: when the log
+     * is now a different file (rotated by rename or replaced), reading restarts at 0.
+     */
+    public Map<String, Object> read(String clusterId, String nodeId, long offset, String fileId, long maxBytes, int limit, Filter filter) {
+        Path file = logFile(clusterId, nodeId);
+        if (file == null) {
+            return Map.of("success", false, "error", "Node not found: " + clusterId + "/" + nodeId);
+        }
+        try {
+            return readPage(file, nodeId, offset, fileId, Math.min(Math.max(1, maxBytes), MAX_PAGE_BYTES), Math.max(1, limit), filter);
+        } catch (IOException e) {
+            return Map.of("success", false, "error", "Failed to read log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Like read, but when nothing new matches yet, waits up to timeoutMs for the file to change first.
+     * A node whose log directory does not exist yet gets the empty page at once.
+     */
+    public CompletableFuture<Map<String, Object>> follow(String clusterId, String nodeId, long offset, String fileId, long maxBytes,
+                                                         int limit, Filter filter, long timeoutMs) {
+        Map<String, Object> page = read(clusterId, nodeId, offset, fileId, maxBytes, limit, filter);
+        if (!(page.get("lines") instanceof List<?> lines) || !lines.isEmpty() || !Boolean.TRUE.equals(page.get("eof"))) {
+            return CompletableFuture.completedFuture(page);
+        }
+        Path file = logFile(clusterId, nodeId);
+        if (!Files.isDirectory(file.toAbsolutePath().getParent())) {
+            return CompletableFuture.completedFuture(page);
+        }
+        long next = (Long) page.get("nextOffset");
+        String nextFileId = (String) page.get("fileId");
+        try {
+            return awaitChange(file, Math.min(Math.max(0, timeoutMs), MAX_FOLLOW_MS))
+                    .thenApply(changed -> read(clusterId, nodeId, next, nextFileId, maxBytes, limit, filter));
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(Map.of("success", false, "error", "Cannot watch log: " + e.getMessage()));
+        }
+    }
+
+    private Map<String, Object> readPage(Path file, String nodeId, long offset, String fileId, long maxBytes, int limit, Filter filter) throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nodeId", nodeId);
+        result.put("file", file.toAbsolutePath().toString());
+        if (!Files.isRegularFile(file)) {
+            result.put("size", 0L);
+            result.put("nextOffset", Math.max(0, offset));
+            result.put("eof", true);
+            result.put("lines", List.of());
+            return result;
+        }
+
+        List<String> lines = new ArrayList<>();
+        long size;
+        long position;
+        boolean eof;
+        boolean rotated = false;
+        boolean truncated = false;
+        String currentId;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            currentId = fileId(file);
+            size = channel.size();
+            if (offset > 0 && (offset > size || fileId != null && !fileId.equals(currentId))) {
+                // Truncated, or renamed away and recreated, since the client's last read
+                rotated = true;
+                offset = 0;
+            }
+            boolean tail = offset < 0;
+            position = tail ? Math.max(0, size - maxBytes) : offset;
+            long end = Math.min(size, position + maxBytes);
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_CHUNK, Math.max(1, end - position)));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            // A page starting mid-line (a tail, or the rest of a truncated line) skips to the next line
+            boolean skipping = position > 0 && !precededByNewline(channel, position);
+            long start = position;
+            long lineStart = position;
+            long read = position;
+
+            scan:
+            while (read < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - read));
+                int n = channel.read(buffer, read);
+                if (n <= 0) break;
+                buffer.flip();
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer.get();
+                    read++;
+                    if (b != '\n') {
+                        if (!skipping) line.write(b);
+                        continue;
+                    }
+                    if (skipping) {
+                        skipping = false;
+                    } else {
+                        String text = line.toString(StandardCharsets.UTF_8);
+                        if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+                        String matched = match(text, filter);
+                        if (matched != null) lines.add(matched);
+                    }
+                    line.reset();
+                    lineStart = read;
+                    if (lines.size() >= limit) break scan;
+                }
+            }
+            if (lineStart == start && read == end && end < size) {
+                // No line ends within maxBytes: return what was read and move past it, or the client never advances
+                if (!skipping) {
+                    String matched = match(line.toString(StandardCharsets.UTF_8), filter);
+                    if (matched != null) lines.add(matched);
+                }
+                truncated = true;
+                position = read;
+            } else {
+                // Stop before a partial last line; it is returned once complete
+                position = lineStart;
+            }
+            eof = read >= size;
+        }
+
+        result.put("size", size);
+        result.put("fileId", currentId);
+        result.put("nextOffset", position);
+        result.put("eof", eof);
+        if (rotated) result.put("rotated", true);
+        if (truncated) result.put("truncated", true);
+        result.put("lines", lines);
+        return result;
+    }
+
+    // The inode where the file system has one, else the creation time
+    private static String fileId(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : String.valueOf(attributes.creationTime().toMillis());
+    }
+
+    private static boolean precededByNewline(FileChannel channel, long position) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return channel.read(one, position - 1) == 1 && one.get(0) == '\n';
+    }
+
+    // The line itself when it passes the filter, otherwise null
+    private String match(String text, Filter filter) {
+        if (filter == null || filter.isEmpty()) return text;
+        if (filter.contains() != null && !text.contains(filter.contains())) return null;
+        if (filter.severity() == null && filter.components() == null && filter.namespace() == null) return text;
+        JsonNode entry;
+        try {
+            entry = objectMapper.readTree(text);
+        } catch (IOException e) {
+            return null; // not a structured log line
+        }
+        if (entry == null || !entry.isObject()) return null;
+        if (filter.severity() != null) {
+            int wanted = SEVERITIES.indexOf(filter.severity());
+            int actual = SEVERITIES.indexOf(entry.path("s").asText());
+            if (wanted >= 0 && (actual < 0 || actual > wanted)) return null;
+        }
+        if (filter.components() != null && !filter.components().contains(entry.path("c").asText().toUpperCase(Locale.ROOT))) {
+            return null;
+        }
+        if (filter.namespace() != null) {
+            JsonNode attr = entry.path("attr");
+            String ns = attr.path("ns").asText(attr.path("namespace").asText(""));
+            if (!ns.equals(filter.namespace()) && !ns.startsWith(filter.namespace() + ".")) return null;
+        }
+        return text;
+    }
+
+    private Path logFile(String clusterId, String nodeId) {
+        ClusterConfig config = configServerService.loadClusterConfig(clusterId);
+        if (config == null || config.getNodes() == null) return null;
+        for (NodeInfo node : config.getNodes()) {
+            if (nodeId.equals(node.getNodeId())) {
+                return Paths.get(ProcessManager.logPath(node.getNodeId(), node.getType(), node.getDataPath()));
+            }
+        }
+        return null;
+    }
+
+    // Completes when the file is modified or created, or after the timeout
+    private CompletableFuture<Void> awaitChange(Path file, long timeoutMs) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Path dir = key.getParent();
+        WatchService watcher = watcher();
+        if (watchedDirs.add(dir)) {
+            try {
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            } catch (IOException e) {
+                watchedDirs.remove(dir);
+                throw e;
+            }
+        }
+        CompletableFuture<Void> change = new CompletableFuture<>();
+        waiters.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(change);
+        change.whenComplete((v, e) -> waiters.computeIfPresent(key, (k, list) -> {
+            list.remove(change);
+            return list.isEmpty() ? null : list;
+        }));
+        return change.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized WatchService watcher() throws IOException {
+        if (watchService == null) {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(this::dispatchEvents, "log-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return watchService;
+    }
+
+    private void dispatchEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (!(event.context() instanceof Path name)) continue;
+                    List<CompletableFuture<Void>> list = waiters.get(dir.resolve(name).toAbsolutePath().normalize());
+                    if (list != null) list.forEach(f -> f.complete(null));
+                }
+                if (!key.reset()) {
+                    watchedDirs.remove(dir);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (watchService != null) watchService.close();
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+}
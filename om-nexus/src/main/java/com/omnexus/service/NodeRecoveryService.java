@@ -3,6 +3,7 @@ package com.omnexus.service;
 import com.omnexus.model.ClusterConfig;
 import com.omnexus.event.NodeFailureEvent;
 import com.omnexus.model.NodeInfo;
+import com.omnexus.util.MongodTuning;
 import com.omnexus.util.ProcessManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.event.EventListener;
@@ -95,7 +96,9 @@ public class NodeRecoveryService {
                             node.getType(),
                             node.getPort(),
                             node.getDataPath(),
-                            node.getReplicaSet()
+                            node.getReplicaSet(),
+                            node.getResources(),
+                            MongodTuning.args(config, node)
                     );
                 }
                 if (started){
@@ -3,7 +3,12 @@ package com.omnexus.service;
 import com.omnexus.model.ClusterConfig;
 import com.omnexus.model.NodeInfo;
 import com.omnexus.model.NodeStatus;
+import com.omnexus.model.ProcessMetrics;
+import com.omnexus.model.ResourceProfile;
+import com.omnexus.util.CgroupManager;
+import com.omnexus.util.MongodTuning;
 import com.omnexus.util.ProcessManager;
+import com.omnexus.util.ProcessOutput;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -14,6 +19,14 @@ import java.util.Map;
 
 @Service
 public class NodeService {
+    private final ProcessMetricsService processMetricsService;
+    private final PortAllocatorService portAllocatorService;
+
+    public NodeService(ProcessMetricsService processMetricsService, PortAllocatorService portAllocatorService) {
+        this.processMetricsService = processMetricsService;
+        this.portAllocatorService = portAllocatorService;
+    }
+
     public List<NodeStatus> getNodeStatuses(ClusterConfig config) {
         List<NodeStatus> nodeStatuses = new ArrayList<>();
         for(NodeInfo node : config.getNodes()){
@@ -26,7 +39,14 @@ public class NodeService {
             status.setStatus(ProcessManager.isProcessRunning(node.getNodeId()) ? "running" : "stopped" );
             status.setHealthy(ProcessManager.isProcessRunning(node.getNodeId()));
             status.setLastPing(LocalDateTime.now().toString());
-            status.setUptime(0L); // TODO: Calculate actual uptime
+            ProcessMetrics metrics = processMetricsService.get(node.getNodeId());
+            if (metrics != null) {
+                status.setUptime(metrics.getUptimeSeconds());
+                status.setCpuPercent(metrics.getCpuPercent());
+                status.setRssBytes(metrics.getRssBytes());
+                status.setReadBytesPerSec(metrics.getReadBytesPerSec());
+                status.setWriteBytesPerSec(metrics.getWriteBytesPerSec());
+            }
 
             nodeStatuses.add(status);
         }
@@ -50,7 +70,9 @@ public class NodeService {
                     node.getType(),
                     node.getPort(),
                     node.getDataPath(),
-                    node.getReplicaSet()
+                    node.getReplicaSet(),
+                    node.getResources(),
+                    MongodTuning.args(config, node)
             );
         }
         return false;
@@ -58,6 +80,67 @@ public class NodeService {
     public boolean stopNode(String nodeId) {
         return ProcessManager.stopProcess(nodeId);
     }
+
+    /**
+     * How the node was last stopped: method, whether it exited cleanly, and how long it took.
+     */
+    public Map<String, Object> getLastShutdown(String nodeId) {
+        return ProcessManager.lastShutdown(nodeId);
+    }
+
+    /**
+     * The node's resource profile and, when it has a cgroup, the limits and usage in effect.
+     */
+    public Map<String, Object> getNodeResources(String nodeId, ClusterConfig config) {
+        NodeInfo node = findNode(nodeId, config);
+        if (node == null) {
+            return Map.of("success", false, "message", "Node not found: " + nodeId);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("nodeId", nodeId);
+        result.put("profile", node.getResources());
+        result.put("cgroupSupported", CgroupManager.isSupported());
+        result.put("cgroup", CgroupManager.read(nodeId));
+        return result;
+    }
+
+    /**
+     * Store a new resource profile on the node and apply it right away if it is running.
+     * The caller saves the config.
+     */
+    public Map<String, Object> updateNodeResources(String nodeId, ResourceProfile profile, ClusterConfig config) {
+        NodeInfo node = findNode(nodeId, config);
+        if (node == null) {
+            return Map.of("success", false, "message", "Node not found: " + nodeId);
+        }
+        if ("mongos".equals(node.getType())) {
+            return Map.of("success", false, "message", "Resource profiles apply to mongod nodes only");
+        }
+        node.setResources(profile);
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("nodeId", nodeId);
+        result.put("profile", profile);
+        result.put("applied", ProcessManager.applyResources(nodeId, profile));
+        return result;
+    }
+
+    private NodeInfo findNode(String nodeId, ClusterConfig config) {
+        return config.getNodes().stream()
+                .filter(n -> nodeId.equals(n.getNodeId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Recent process output of a node: lines after the given sequence, or the last limit lines when after is -1.
+     */
+    public Map<String, Object> getNodeOutput(String nodeId, long after, int limit) {
+        Map<String, Object> result = new HashMap<>(ProcessOutput.read(nodeId, after, limit));
+        result.put("nodeId", nodeId);
+        result.put("running", ProcessManager.isProcessRunning(nodeId));
+        return result;
+    }
     public List<NodeInfo> getAllNodes(ClusterConfig config) {
         return config.getNodes();
     }
@@ -121,6 +204,9 @@ public class NodeService {
 
             // Remove From Config (this would need to be persisted in a real implementation)
             boolean removed = config.getNodes().removeIf(node -> nodeId.equals(node.getNodeId()));
+            if (removed) {
+                portAllocatorService.release(config.getClusterId(), nodeToRemove.getPort());
+            }
             result.put("success",removed);
             result.put("message",removed ? ("Node " + nodeId + " removed from cluster successfully") : ("Failed to remove node " + nodeId + " from cluster"));
             result.put("nodeId",nodeId);
@@ -0,0 +1,296 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.model.PortReservations;
+import com.omnexus.util.PortOwnerResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Hands out node ports from one host-wide range, so clusters never collide. A bitmap over the
+ * range marks the ports reserved by any cluster; reservations are kept per cluster in
+ * configs/ports.json and released with the cluster or node. Each change runs under a file
+ * lock and re-reads the file, so several OM Nexus instances sharing configs/ stay consistent.
+ * Ports something else listens on (per /proc/net/tcp) are skipped without being reserved.
+ */
+@Service
+public class PortAllocatorService {
+    private static final Path FILE = Paths.get("configs", "ports.json");
+    private static final Path LOCK_FILE = Paths.get("configs", "ports.lock");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int rangeStart;
+    private final int rangeEnd;
+
+    public PortAllocatorService(ConfigServerService configServerService,
+                                @Value("${omnexus.ports.range-start:28000}") int rangeStart,
+                                @Value("${omnexus.ports.range-end:28999}") int rangeEnd) {
+        if (rangeStart < 1 || rangeEnd > 65535 || rangeEnd < rangeStart) {
+            throw new IllegalArgumentException("Invalid port range " + rangeStart + "-" + rangeEnd);
+        }
+        this.rangeStart = rangeStart;
+        this.rangeEnd = rangeEnd;
+        try {
+            adoptExistingClusters(configServerService);
+        } catch (IllegalStateException e) {
+            // Every reservation can be derived again from the cluster configs, so a damaged file must not stop startup
+            System.err.println("Cannot read " + FILE + ", rebuilding it from the cluster configs: " + e.getMessage());
+            try {
+                Files.move(FILE, FILE.resolveSibling(FILE.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+                adoptExistingClusters(configServerService);
+            } catch (IOException | IllegalStateException again) {
+                System.err.println("Could not rebuild " + FILE + ": " + again.getMessage());
+            }
+        }
+    }
+
+    public int getRangeStart() {
+        return rangeStart;
+    }
+
+    public int getRangeEnd() {
+        return rangeEnd;
+    }
+
+    /**
+     * Reserve count ports for the cluster, as one contiguous run when the range has one.
+     */
+    public List<Integer> reserve(String clusterId, int count) {
+        return update(reservations -> {
+            BitSet taken = reservedBitmap(reservations);
+            markListening(taken);
+            List<Integer> ports = pick(taken, rangeStart, rangeEnd, count);
+            if (ports.size() < count) {
+                throw new IllegalStateException("Port range " + rangeStart + "-" + rangeEnd + " has " + ports.size()
+                        + " free ports, " + count + " needed");
+            }
+            TreeSet<Integer> owned = parse(reservations.getClusters().get(clusterId));
+            owned.addAll(ports);
+            reservations.getClusters().put(clusterId, format(owned));
+            System.out.println("Reserved ports " + format(ports) + " for cluster " + clusterId);
+            return ports;
+        });
+    }
+
+    /**
+     * Release one port of the cluster, e.g. after its node was removed.
+     */
+    public void release(String clusterId, int port) {
+        update(reservations -> {
+            TreeSet<Integer> owned = parse(reservations.getClusters().get(clusterId));
+            if (owned.remove(port)) {
+                if (owned.isEmpty()) reservations.getClusters().remove(clusterId);
+                else reservations.getClusters().put(clusterId, format(owned));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Release every port of the cluster.
+     */
+    public void releaseCluster(String clusterId) {
+        update(reservations -> {
+            String released = reservations.getClusters().remove(clusterId);
+            if (released != null) {
+                System.out.println("Released ports " + released + " of cluster " + clusterId);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The range, its use, and the ports held by each cluster.
+     */
+    public Map<String, Object> status() {
+        return update(reservations -> {
+            BitSet reserved = reservedBitmap(reservations);
+            BitSet listening = new BitSet();
+            markListening(listening);
+            listening.andNot(reserved);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("rangeStart", rangeStart);
+            result.put("rangeEnd", rangeEnd);
+            result.put("reserved", reserved.cardinality());
+            result.put("busyUnreserved", listening.cardinality()); // listened on by something OM Nexus did not reserve
+            result.put("free", rangeEnd - rangeStart + 1 - reserved.cardinality() - listening.cardinality());
+            result.put("clusters", reservations.getClusters());
+            return result;
+        });
+    }
+
+    // Clusters created before the allocator keep their ports; overlaps between them stay
+    // reserved until the last owner releases them
+    private void adoptExistingClusters(ConfigServerService configServerService) {
+        update(reservations -> {
+            for (String clusterId : configServerService.getAllClusterIds()) {
+                if (reservations.getClusters().containsKey(clusterId)) continue;
+                ClusterConfig config = configServerService.loadClusterConfig(clusterId);
+                if (config == null) continue;
+                TreeSet<Integer> ports = new TreeSet<>();
+                for (NodeInfo node : config.getNodes()) ports.add(node.getPort());
+                ports.add(config.getMongosPort());
+                ports.removeIf(port -> !inRange(port));
+                if (!ports.isEmpty()) {
+                    reservations.getClusters().put(clusterId, format(ports));
+                    System.out.println("Adopted ports " + format(ports) + " of existing cluster " + clusterId);
+                }
+            }
+            return null;
+        });
+    }
+
+    private interface Change<T> {
+        T apply(PortReservations reservations);
+    }
+
+    // synchronized covers this JVM (FileLock is per process); the file lock covers other processes
+    private synchronized <T> T update(Change<T> change) {
+        try {
+            Files.createDirectories(FILE.getParent());
+            try (FileChannel channel = FileChannel.open(LOCK_FILE, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                PortReservations reservations = load();
+                String before = objectMapper.writeValueAsString(reservations.getClusters());
+                T result = change.apply(reservations);
+                if (!before.equals(objectMapper.writeValueAsString(reservations.getClusters()))) {
+                    save(reservations);
+                }
+                return result;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Port reservations unavailable: " + e.getMessage(), e);
+        }
+    }
+
+    private PortReservations load() throws IOException {
+        PortReservations reservations = Files.exists(FILE)
+                ? objectMapper.readValue(FILE.toFile(), PortReservations.class)
+                : new PortReservations();
+        if (reservations.getClusters() == null) reservations.setClusters(new LinkedHashMap<>());
+        return reservations;
+    }
+
+    private void save(PortReservations reservations) throws IOException {
+        reservations.setRangeStart(rangeStart);
+        reservations.setRangeEnd(rangeEnd);
+        Path tmp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), reservations);
+        Files.move(tmp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Bit i stands for port rangeStart + i
+    private BitSet reservedBitmap(PortReservations reservations) {
+        BitSet bits = new BitSet(rangeEnd - rangeStart + 1);
+        for (String ports : reservations.getClusters().values()) {
+            for (int port : parse(ports)) {
+                if (inRange(port)) bits.set(port - rangeStart);
+            }
+        }
+        return bits;
+    }
+
+    // One read of the socket tables on Linux; elsewhere a bind test of every port not yet taken
+    private void markListening(BitSet taken) {
+        if (PortOwnerResolver.isSupported()) {
+            try {
+                for (int port : PortOwnerResolver.listeningPorts()) {
+                    if (inRange(port)) taken.set(port - rangeStart);
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not read /proc/net/tcp, testing ports by binding: " + e.getMessage());
+            }
+        }
+        for (int i = taken.nextClearBit(0); i <= rangeEnd - rangeStart; i = taken.nextClearBit(i + 1)) {
+            if (!canBind(rangeStart + i)) taken.set(i);
+        }
+    }
+
+    // The first run of count clear bits, else the first count clear bits wherever they are
+    static List<Integer> pick(BitSet taken, int rangeStart, int rangeEnd, int count) {
+        int size = rangeEnd - rangeStart + 1;
+        for (int start = taken.nextClearBit(0); start + count <= size; ) {
+            int next = taken.nextSetBit(start);
+            if (next < 0 || next - start >= count) {
+                List<Integer> ports = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) ports.add(rangeStart + start + i);
+                return ports;
+            }
+            start = taken.nextClearBit(next);
+        }
+        List<Integer> ports = new ArrayList<>();
+        for (int i = taken.nextClearBit(0); i < size && ports.size() < count; i = taken.nextClearBit(i + 1)) {
+            ports.add(rangeStart + i);
+        }
+        return ports;
+    }
+
+    private boolean inRange(int port) {
+        return port >= rangeStart && port <= rangeEnd;
+    }
+
+    private static boolean canBind(int port) {
+        try (ServerSocket socket = new ServerSocket(port)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // "28000-28006,28010" <-> ports
+    static TreeSet<Integer> parse(String value) {
+        TreeSet<Integer> ports = new TreeSet<>();
+        if (value == null || value.isBlank()) return ports;
+        for (String part : value.split(",")) {
+            String[] bounds = part.trim().split("-");
+            int from = Integer.parseInt(bounds[0].trim());
+            int to = bounds.length > 1 ? Integer.parseInt(bounds[1].trim()) : from;
+            for (int port = from; port <= to; port++) ports.add(port);
+        }
+        return ports;
+    }
+
+    static String format(Collection<Integer> values) {
+        StringBuilder out = new StringBuilder();
+        Integer runStart = null;
+        Integer previous = null;
+        for (int port : new TreeSet<>(values)) {
+            if (previous != null && port == previous + 1) {
+                previous = port;
+                continue;
+            }
+            appendRun(out, runStart, previous);
+            runStart = port;
+            previous = port;
+        }
+        appendRun(out, runStart, previous);
+        return out.toString();
+    }
+
+    private static void appendRun(StringBuilder out, Integer from, Integer to) {
+        if (from == null) return;
+        if (out.length() > 0) out.append(',');
+        out.append(from);
+        if (!from.equals(to)) out.append('-').append(to);
+    }
+}
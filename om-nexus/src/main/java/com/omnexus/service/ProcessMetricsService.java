@@ -0,0 +1,160 @@
+package com.omnexus.service;
+
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.model.ProcessMetrics;
+import com.omnexus.util.ProcessManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Samples CPU, memory and I/O of every process ProcessManager tracks. On Linux the counters
+ * come from /proc/&lt;pid&gt;/stat, status and io; elsewhere CPU time and uptime come from
+ * ProcessHandle and memory and I/O are left empty. Rates are deltas between two samples.
+ */
+@Service
+public class ProcessMetricsService {
+    private static final Path PROC = Paths.get("/proc");
+    // USER_HZ, the unit of the stat CPU fields; 100 on every architecture Linux ships with
+    private static final long CLOCK_TICKS_PER_SEC = 100;
+
+    private final Map<String, ProcessMetrics> latest = new ConcurrentHashMap<>();
+
+    @Value("${omnexus.metrics.process.enabled:true}")
+    private boolean enabled;
+
+    @Scheduled(fixedRateString = "${omnexus.metrics.process.sample-interval-ms:5000}")
+    public void sampleAll() {
+        if (!enabled) return;
+        Map<String, ProcessHandle> processes = ProcessManager.runningProcesses();
+        latest.keySet().retainAll(processes.keySet());
+        processes.forEach((nodeId, handle) -> {
+            if (!handle.isAlive()) {
+                latest.remove(nodeId);
+                return;
+            }
+            ProcessMetrics previous = latest.get(nodeId);
+            latest.put(nodeId, sample(nodeId, handle, previous != null && previous.getPid() == handle.pid() ? previous : null));
+        });
+    }
+
+    /**
+     * The last sample of a node, or null if it is not running or not sampled yet.
+     */
+    public ProcessMetrics get(String nodeId) {
+        return latest.get(nodeId);
+    }
+
+    /**
+     * Latest samples of a cluster's nodes and its mongos, busiest CPU first.
+     */
+    public Map<String, Object> clusterProcesses(ClusterConfig config) {
+        Set<String> nodeIds = new LinkedHashSet<>();
+        for (NodeInfo node : config.getNodes()) nodeIds.add(node.getNodeId());
+        nodeIds.add(config.mongosNodeId());
+        List<ProcessMetrics> processes = new ArrayList<>();
+        List<String> notSampled = new ArrayList<>();
+        for (String nodeId : nodeIds) {
+            ProcessMetrics metrics = latest.get(nodeId);
+            if (metrics != null) processes.add(metrics);
+            else if (!config.mongosNodeId().equals(nodeId)) notSampled.add(nodeId);
+        }
+        processes.sort(Comparator.comparing((ProcessMetrics m) -> m.getCpuPercent() != null ? m.getCpuPercent() : -1.0).reversed());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clusterId", config.getClusterId());
+        result.put("enabled", enabled);
+        result.put("totalCpuPercent", round(processes.stream().mapToDouble(m -> m.getCpuPercent() != null ? m.getCpuPercent() : 0).sum()));
+        result.put("totalRssBytes", processes.stream().mapToLong(m -> m.getRssBytes() != null ? m.getRssBytes() : 0).sum());
+        result.put("processes", processes);
+        result.put("notSampled", notSampled); // stopped, or started since the last sample
+        return result;
+    }
+
+    private ProcessMetrics sample(String nodeId, ProcessHandle handle, ProcessMetrics previous) {
+        ProcessMetrics metrics = new ProcessMetrics();
+        metrics.setNodeId(nodeId);
+        metrics.setPid(handle.pid());
+        metrics.setSampledAt(System.currentTimeMillis());
+        handle.info().startInstant().ifPresent(start ->
+                metrics.setUptimeSeconds(Duration.between(start, Instant.now()).toSeconds()));
+
+        Path proc = PROC.resolve(String.valueOf(handle.pid()));
+        boolean fromProc = Files.isReadable(proc.resolve("stat")) && readProc(proc, metrics);
+        if (!fromProc) {
+            handle.info().totalCpuDuration().ifPresent(cpu -> metrics.setCpuTimeMillis(cpu.toMillis()));
+        }
+
+        if (previous != null) {
+            double seconds = (metrics.getSampledAt() - previous.getSampledAt()) / 1000.0;
+            if (seconds > 0) {
+                metrics.setCpuPercent(round((metrics.getCpuTimeMillis() - previous.getCpuTimeMillis()) / 10.0 / seconds));
+                if (metrics.getReadBytes() != null && previous.getReadBytes() != null) {
+                    metrics.setReadBytesPerSec(round((metrics.getReadBytes() - previous.getReadBytes()) / seconds));
+                    metrics.setWriteBytesPerSec(round((metrics.getWriteBytes() - previous.getWriteBytes()) / seconds));
+                }
+            }
+        }
+        return metrics;
+    }
+
+    // False if the process vanished between the check and the read
+    private boolean readProc(Path proc, ProcessMetrics metrics) {
+        try {
+            // "pid (comm) state ppid ..."; comm may contain spaces, so fields are counted after ')'
+            String stat = Files.readString(proc.resolve("stat"));
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split("\\s+");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]); // utime, stime
+            metrics.setCpuTimeMillis(ticks * 1000 / CLOCK_TICKS_PER_SEC);
+            metrics.setThreads(Integer.parseInt(fields[17]));
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+        try {
+            for (String line : Files.readAllLines(proc.resolve("status"))) {
+                if (line.startsWith("VmRSS:")) metrics.setRssBytes(kilobytes(line));
+                else if (line.startsWith("VmHWM:")) metrics.setPeakRssBytes(kilobytes(line));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Memory stays empty
+        }
+        try {
+            // Unreadable for processes of other users without privileges
+            List<String> io = Files.readAllLines(proc.resolve("io"));
+            for (String line : io) {
+                if (line.startsWith("read_bytes:")) metrics.setReadBytes(Long.parseLong(line.substring(11).trim()));
+                else if (line.startsWith("write_bytes:")) metrics.setWriteBytes(Long.parseLong(line.substring(12).trim()));
+            }
+        } catch (IOException | RuntimeException e) {
+            metrics.setReadBytes(null);
+            metrics.setWriteBytes(null);
+        }
+        return true;
+    }
+
+    // "VmRSS:     12345 kB"
+    private static long kilobytes(String line) {
+        String[] parts = line.trim().split("\\s+");
+        return Long.parseLong(parts[1]) * 1024;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10.0) / 10.0;
+    }
+}
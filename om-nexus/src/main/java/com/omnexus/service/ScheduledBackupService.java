@@ -1,59 +1,233 @@
 package com.omnexus.service;
 
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.scheduling.support.CronTrigger;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Scheduled backups. A cron trigger only queues a job; a dispatcher starts queued
+ * jobs on the backup executor in priority order, after a random start delay, and
+ * only while the global and per-host concurrency limits and the I/O budget allow.
+ * Nodes run on this machine, so a "host" is a volume holding node data: a backup counts
+ * against every volume its cluster's nodes keep their dbPath on.
+ */
 @Service
 public class ScheduledBackupService {
+    private static final Comparator<BackupJob> DISPATCH_ORDER = Comparator
+            .comparingInt(BackupJob::priority).reversed()
+            .thenComparingLong(BackupJob::notBefore)
+            .thenComparingLong(BackupJob::sequence);
+
     private final BackupService backupService;
     private final Map<String, ScheduledFuture<?>> scheduledBackups = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> scheduleConfigs = new ConcurrentHashMap<>();
     private final TaskScheduler taskScheduler;
     private final ConfigServerService configServerService;
+    private final TaskExecutor backupExecutor;
+    private final BackupProgressService backupProgressService;
+
+    private final PriorityBlockingQueue<BackupJob> queue = new PriorityBlockingQueue<>(16, DISPATCH_ORDER);
+    private final Map<String, BackupJob> running = new ConcurrentHashMap<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Value("${omnexus.backup.scheduler.max-concurrent:2}")
+    private int maxConcurrent;
+
+    @Value("${omnexus.backup.scheduler.max-per-host:1}")
+    private int maxPerHost;
+
+    @Value("${omnexus.backup.scheduler.max-jitter-seconds:600}")
+    private int maxJitterSeconds;
+
+    @Value("${omnexus.backup.scheduler.io-budget-mb-per-sec:0}")
+    private long ioBudgetMbPerSec; // 0 = unlimited
 
-    public ScheduledBackupService(ConfigServerService configServerService, BackupService backupProgressService, TaskScheduler taskScheduler) {
+    /**
+     * One queued backup. notBefore is the jittered earliest start time.
+     */
+    public record BackupJob(String clusterId, List<String> hosts, int priority, boolean compress, boolean dedup,
+                            long enqueuedAt, long notBefore, long sequence) {
+        public Map<String, Object> toMap() {
+            return Map.of("clusterId", clusterId, "hosts", hosts, "priority", priority, "compress", compress,
+                    "dedup", dedup, "enqueuedAt", enqueuedAt, "notBefore", notBefore);
+        }
+    }
+
+    public ScheduledBackupService(ConfigServerService configServerService, BackupService backupProgressService, TaskScheduler taskScheduler,
+                                  @Qualifier("backupExecutor") TaskExecutor backupExecutor, BackupProgressService progressService) {
         this.backupService = backupProgressService;
         this.configServerService = configServerService;
         this.taskScheduler = taskScheduler;
-    }
-
-    @Async("backupExecutor")
-    @Scheduled(cron = "0 0 2 * * ?")
-    public void performScheduledBackups() {
-        List<String> clusters = configServerService.getAllClusterIds();
-        for(String clusterId : clusters){
-            if(isBackupScheduled(clusterId)){
-                CompletableFuture.runAsync(()->{
-                    System.out.println("Starting scheduled backup for cluster " + clusterId);
-                    backupService.backupCluster(clusterId,true);
-                });
-            }
-        }
+        this.backupExecutor = backupExecutor;
+        this.backupProgressService = progressService;
     }
 
     public Map<String,Object> scheduledBackup(String clusterId,Map<String,Object> config){
+        if (configServerService.loadClusterConfig(clusterId) == null) {
+            return Map.of("success", false, "error", "Cluster not found: " + clusterId);
+        }
         String cronExpression = (String)config.getOrDefault("cron","0 0 2 * * ?");
         boolean enabled = (boolean) config.getOrDefault("enabled",true);
+
+        ScheduledFuture<?> previous = scheduledBackups.remove(clusterId);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        scheduleConfigs.remove(clusterId);
+
         if(enabled){
-            ScheduledFuture<?> scheduledFuture = taskScheduler.schedule(
-                    ()->backupService.backupCluster(clusterId,true),
-                    new CronTrigger(cronExpression)
-            );
-            scheduledBackups.put(clusterId,scheduledFuture);
+            try {
+                ScheduledFuture<?> scheduledFuture = taskScheduler.schedule(
+                        ()->enqueue(clusterId, config),
+                        new CronTrigger(cronExpression)
+                );
+                scheduledBackups.put(clusterId,scheduledFuture);
+                scheduleConfigs.put(clusterId, new HashMap<>(config));
+            } catch (IllegalArgumentException e) {
+                return Map.of("success", false, "error", "Invalid cron expression: " + e.getMessage());
+            }
         }
-        return Map.of("success", true, "clusterId", clusterId, "scheduled", enabled);
+        return Map.of("success", true, "clusterId", clusterId, "scheduled", enabled, "cron", cronExpression);
     }
-    private boolean isBackupScheduled(String clusterId){
-        return scheduledBackups.containsKey(clusterId) && !scheduledBackups.get(clusterId).isCancelled();
+
+    /**
+     * Queue a backup with a random start delay; a cluster is never queued or running twice.
+     */
+    public boolean enqueue(String clusterId, Map<String, Object> config) {
+        if (running.containsKey(clusterId) || queue.stream().anyMatch(job -> job.clusterId().equals(clusterId))) {
+            System.out.println("Backup of " + clusterId + " already queued or running, skipping");
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long jitter = maxJitterSeconds > 0 ? ThreadLocalRandom.current().nextLong(maxJitterSeconds * 1000L) : 0;
+        BackupJob job = new BackupJob(
+                clusterId,
+                hostsOf(clusterId),
+                priorityOf(clusterId, config.get("priority")),
+                Boolean.TRUE.equals(config.getOrDefault("compress", true)),
+                Boolean.TRUE.equals(config.getOrDefault("dedup", false)),
+                now, now + jitter, sequence.incrementAndGet());
+        queue.add(job);
+        System.out.println("Queued scheduled backup of " + clusterId + " to start after " + (jitter / 1000) + "s");
+        return true;
     }
-}
 
+    @Scheduled(fixedDelay = 5000)
+    public synchronized void dispatch() {
+        if (queue.isEmpty()) return;
+        long now = System.currentTimeMillis();
+
+        List<BackupJob> candidates = new ArrayList<>(queue);
+        candidates.sort(DISPATCH_ORDER);
+        for (BackupJob job : candidates) {
+            if (running.size() >= maxConcurrent || overIoBudget()) return;
+            if (job.notBefore() > now) continue;
+            if (job.hosts().stream().anyMatch(host -> runningPerHost.getOrDefault(host, 0) >= maxPerHost)) continue;
+            if (!queue.remove(job)) continue;
+            start(job);
+        }
+    }
+
+    private void start(BackupJob job) {
+        running.put(job.clusterId(), job);
+        job.hosts().forEach(host -> runningPerHost.merge(host, 1, Integer::sum));
+        try {
+            backupExecutor.execute(() -> {
+                try {
+                    System.out.println("Starting scheduled backup for cluster " + job.clusterId());
+                    backupService.backupCluster(job.clusterId(), job.compress(), job.dedup());
+                } catch (Exception e) {
+                    System.err.println("Scheduled backup of " + job.clusterId() + " failed: " + e.getMessage());
+                } finally {
+                    finish(job);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // Executor is saturated by other work; try again on the next dispatch
+            finish(job);
+            queue.add(job);
+        }
+    }
+
+    private synchronized void finish(BackupJob job) {
+        running.remove(job.clusterId());
+        job.hosts().forEach(host -> runningPerHost.merge(host, -1, (a, b) -> a + b <= 0 ? null : a + b));
+    }
+
+    // The volumes behind the nodes' dbPaths; a path that does not exist yet counts for its nearest existing parent
+    private List<String> hostsOf(String clusterId) {
+        ClusterConfig cluster = configServerService.loadClusterConfig(clusterId);
+        TreeSet<String> hosts = new TreeSet<>();
+        if (cluster != null && cluster.getNodes() != null) {
+            for (NodeInfo node : cluster.getNodes()) {
+                if (node.getDataPath() == null || "mongos".equals(node.getType())) continue;
+                Path path = Paths.get(node.getDataPath()).toAbsolutePath();
+                while (path != null && !Files.exists(path)) path = path.getParent();
+                if (path == null) continue;
+                try {
+                    hosts.add(Files.getFileStore(path).name());
+                } catch (IOException e) {
+                    System.err.println("Cannot find the volume of " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        return hosts.isEmpty() ? List.of(clusterId) : new ArrayList<>(hosts);
+    }
+
+    private static int priorityOf(String clusterId, Object value) {
+        if (value instanceof Number number) return number.intValue();
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid priority of " + clusterId + ": " + value);
+            }
+        }
+        return 0;
+    }
+
+    // Hold back new jobs while running backups already use most of the I/O budget
+    private boolean overIoBudget() {
+        if (ioBudgetMbPerSec <= 0 || running.isEmpty()) return false;
+        double budget = ioBudgetMbPerSec * 1024.0 * 1024.0;
+        return backupProgressService.getActiveThroughputBytesPerSecond() >= budget * 0.8;
+    }
+
+    public Map<String, Object> getSchedulerStatus() {
+        List<BackupJob> queued = new ArrayList<>(queue);
+        queued.sort(DISPATCH_ORDER);
+        return Map.of(
+                "maxConcurrent", maxConcurrent,
+                "maxPerHost", maxPerHost,
+                "ioBudgetMbPerSec", ioBudgetMbPerSec,
+                "activeThroughputBytesPerSec", Math.round(backupProgressService.getActiveThroughputBytesPerSecond()),
+                "schedules", scheduleConfigs,
+                "running", running.values().stream().map(BackupJob::toMap).toList(),
+                "queued", queued.stream().map(BackupJob::toMap).toList()
+        );
+    }
+}
@@ -0,0 +1,312 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Sorts;
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.model.ShardingLayout;
+import com.omnexus.util.MongoConnectionUtil;
+import com.omnexus.util.ShardKeyRouter;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Captures the shard keys and chunk maps of sharded collections with a backup
+ * and re-creates them before a restore: collections are sharded, pre-split at
+ * the recorded boundaries and the (still empty) chunks moved to their shards,
+ * so the data lands where it belongs and the balancer has nothing to migrate.
+ */
+@Service
+public class ShardLayoutService {
+    public static final String LAYOUT_FILE = "sharding.json";
+    private static final JsonWriterSettings EXTENDED_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Collections sharded ahead of a restore, the routers for those that can be loaded
+     * straight into their shards, and the shard connection strings.
+     */
+    public record PreparedLayout(Set<String> presharded, Map<String, ShardKeyRouter> routers,
+                                 Map<String, String> shardConnections, boolean balancerWasRunning,
+                                 List<Map<String, Object>> results) {
+        public static PreparedLayout empty() {
+            return new PreparedLayout(Set.of(), Map.of(), Map.of(), false, List.of());
+        }
+    }
+
+    public ShardingLayout capture(String clusterId, int mongosPort) {
+        ShardingLayout layout = new ShardingLayout();
+        layout.setClusterId(clusterId);
+        layout.setCapturedAt(System.currentTimeMillis());
+        try (MongoClient client = mongos(mongosPort)) {
+            MongoDatabase configDb = client.getDatabase("config");
+            for (Document shard : configDb.getCollection("shards").find()) {
+                layout.getShards().add(shard.getString("_id"));
+            }
+            for (Document collection : configDb.getCollection("collections").find(Filters.ne("dropped", true))) {
+                String namespace = collection.getString("_id");
+                if (namespace.startsWith("config.") || namespace.startsWith("admin.")) continue;
+
+                ShardingLayout.CollectionLayout collectionLayout = new ShardingLayout.CollectionLayout();
+                Document key = collection.get("key", Document.class);
+                collectionLayout.setNamespace(namespace);
+                collectionLayout.setKey(key.toJson(EXTENDED_JSON));
+                collectionLayout.setUnique(Boolean.TRUE.equals(collection.getBoolean("unique")));
+                collectionLayout.setHashed(key.values().stream().anyMatch("hashed"::equals));
+                Document info = client.getDatabase(namespace.substring(0, namespace.indexOf('.')))
+                        .listCollections().filter(new Document("name", namespace.substring(namespace.indexOf('.') + 1))).first();
+                Document options = info != null ? info.get("options", Document.class) : null;
+                collectionLayout.setOptions((options != null ? options : new Document()).toJson(EXTENDED_JSON));
+
+                for (Document chunk : configDb.getCollection("chunks").find(chunkFilter(collection, namespace)).sort(Sorts.ascending("min"))) {
+                    ShardingLayout.ChunkRange range = new ShardingLayout.ChunkRange();
+                    range.setMin(chunk.get("min", Document.class).toJson(EXTENDED_JSON));
+                    range.setMax(chunk.get("max", Document.class).toJson(EXTENDED_JSON));
+                    range.setShard(chunk.getString("shard"));
+                    collectionLayout.getChunks().add(range);
+                }
+                layout.getCollections().add(collectionLayout);
+            }
+        }
+        return layout;
+    }
+
+    public void save(Path backupPath, ShardingLayout layout) throws IOException {
+        mapper.writerWithDefaultPrettyPrinter().writeValue(backupPath.resolve(LAYOUT_FILE).toFile(), layout);
+    }
+
+    public ShardingLayout load(Path backupPath) throws IOException {
+        Path layoutPath = backupPath.resolve(LAYOUT_FILE);
+        return Files.exists(layoutPath) ? mapper.readValue(layoutPath.toFile(), ShardingLayout.class) : null;
+    }
+
+    /**
+     * Shard, pre-split and distribute every recorded collection the namespace mapper keeps.
+     * Collections that already exist (and are not dropped) are left alone.
+     */
+    public PreparedLayout prepare(ShardingLayout layout, ClusterConfig config, int mongosPort,
+                                  Function<String, String> namespaceMapper, boolean drop) {
+        Set<String> presharded = new HashSet<>();
+        Map<String, ShardKeyRouter> routers = new HashMap<>();
+        List<Map<String, Object>> results = new ArrayList<>();
+        // Set as soon as the balancer state is known, so finish() restarts it whatever fails later
+        boolean balancerWasRunning = false;
+
+        try (MongoClient client = mongos(mongosPort)) {
+            MongoDatabase admin = client.getDatabase("admin");
+            List<String> targetShards = new ArrayList<>();
+            for (Document shard : client.getDatabase("config").getCollection("shards").find()) {
+                targetShards.add(shard.getString("_id"));
+            }
+            if (targetShards.isEmpty()) return PreparedLayout.empty();
+            Map<String, String> shardMapping = mapShards(layout.getShards(), targetShards);
+
+            balancerWasRunning = !"off".equals(admin.runCommand(new Document("balancerStatus", 1)).getString("mode"));
+            admin.runCommand(new Document("balancerStop", 1));
+
+            for (ShardingLayout.CollectionLayout collection : layout.getCollections()) {
+                String target = namespaceMapper.apply(collection.getNamespace());
+                if (target == null) continue;
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("namespace", target);
+                // Without its recorded options the collection would lose them to shardCollection's
+                // implicit create; time series collections are sharded differently. Both load through mongos.
+                if (collection.getOptions() == null || Document.parse(collection.getOptions()).containsKey("timeseries")) {
+                    result.put("status", "skipped");
+                    result.put("reason", collection.getOptions() == null ? "no recorded collection options" : "time series collection");
+                    results.add(result);
+                    continue;
+                }
+                try {
+                    if (!shardCollection(client, collection, target, drop)) {
+                        result.put("status", "exists");
+                        results.add(result);
+                        continue;
+                    }
+                    presharded.add(target);
+                    int[] placed = distribute(client, collection, target, shardMapping);
+                    result.put("status", "presplit");
+                    result.put("chunks", collection.getChunks().size());
+                    result.put("split", placed[0]);
+                    result.put("moved", placed[1]);
+
+                    // Direct loads follow the chunk map as it ended up, never the planned one: a
+                    // document written to a shard that does not own its chunk is an orphan that
+                    // mongos hides and the range deleter removes
+                    List<Map.Entry<BsonDocument, String>> bounds = placed[2] == 0 && !collection.isHashed()
+                            ? actualChunks(client, target) : List.of();
+                    if (!bounds.isEmpty()) {
+                        routers.put(target, new ShardKeyRouter(BsonDocument.parse(collection.getKey()), bounds));
+                        result.put("load", "direct");
+                    } else {
+                        result.put("load", "mongos");
+                        if (placed[2] > 0) result.put("failedOperations", placed[2]);
+                    }
+                } catch (Exception e) {
+                    System.err.println("Could not pre-split " + target + ": " + e.getMessage());
+                    result.put("status", "failed");
+                    result.put("error", String.valueOf(e.getMessage()));
+                }
+                results.add(result);
+            }
+        } catch (Exception e) {
+            System.err.println("Could not prepare sharded collections: " + e.getMessage());
+            return new PreparedLayout(presharded, Map.of(), Map.of(), balancerWasRunning, results);
+        }
+
+        return new PreparedLayout(presharded, routers, shardConnections(config), balancerWasRunning, results);
+    }
+
+    /**
+     * Turn the balancer back on if prepare stopped it.
+     */
+    public void finish(int mongosPort, PreparedLayout prepared) {
+        if (!prepared.balancerWasRunning()) return;
+        try (MongoClient client = mongos(mongosPort)) {
+            client.getDatabase("admin").runCommand(new Document("balancerStart", 1));
+        } catch (Exception e) {
+            System.err.println("Could not restart the balancer: " + e.getMessage());
+        }
+    }
+
+    // Returns false when the target collection already exists and is kept
+    private boolean shardCollection(MongoClient client, ShardingLayout.CollectionLayout collection, String target, boolean drop) {
+        String dbName = target.substring(0, target.indexOf('.'));
+        String collectionName = target.substring(target.indexOf('.') + 1);
+        MongoDatabase db = client.getDatabase(dbName);
+        if (drop) {
+            db.getCollection(collectionName).drop();
+        } else if (db.listCollectionNames().into(new ArrayList<>()).contains(collectionName)) {
+            return false;
+        }
+        try {
+            client.getDatabase("admin").runCommand(new Document("enableSharding", dbName));
+        } catch (Exception e) {
+            // Implicit since 6.0, and already enabled on re-runs
+        }
+        // Create with the dumped options first, as shardCollection would create a plain collection
+        Document options = Document.parse(collection.getOptions());
+        if (!options.isEmpty()) {
+            Document create = new Document("create", collectionName);
+            create.putAll(options);
+            db.runCommand(create);
+        }
+        Document shardCollection = new Document("shardCollection", target)
+                .append("key", Document.parse(collection.getKey()))
+                .append("unique", collection.isUnique());
+        if (options.containsKey("collation")) {
+            // The shard key index of a collection with a default collation must use simple binary comparison
+            shardCollection.append("collation", new Document("locale", "simple"));
+        }
+        client.getDatabase("admin").runCommand(shardCollection);
+        return true;
+    }
+
+    // Split at every recorded lower bound, then move the empty chunks to their shards.
+    // Returns {splits, moves, failed splits and moves}.
+    private int[] distribute(MongoClient client, ShardingLayout.CollectionLayout collection, String target,
+                             Map<String, String> shardMapping) {
+        MongoDatabase admin = client.getDatabase("admin");
+        int split = 0;
+        int moved = 0;
+        int failed = 0;
+        List<ShardingLayout.ChunkRange> chunks = collection.getChunks();
+        for (int i = 1; i < chunks.size(); i++) {
+            try {
+                admin.runCommand(new Document("split", target).append("middle", Document.parse(chunks.get(i).getMin())));
+                split++;
+            } catch (Exception e) {
+                System.err.println("Split of " + target + " at " + chunks.get(i).getMin() + " failed: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        Document database = client.getDatabase("config").getCollection("databases")
+                .find(Filters.eq("_id", target.substring(0, target.indexOf('.')))).first();
+        String primary = database != null ? database.getString("primary") : null;
+        for (ShardingLayout.ChunkRange chunk : chunks) {
+            String shard = shardMapping.get(chunk.getShard());
+            if (shard == null || shard.equals(primary)) continue;
+            try {
+                admin.runCommand(new Document("moveChunk", target)
+                        .append("bounds", List.of(Document.parse(chunk.getMin()), Document.parse(chunk.getMax())))
+                        .append("to", shard));
+                moved++;
+            } catch (Exception e) {
+                System.err.println("Moving chunk " + chunk.getMin() + " of " + target + " to " + shard + " failed: " + e.getMessage());
+                failed++;
+            }
+        }
+        return new int[]{split, moved, failed};
+    }
+
+    // Lower bound and owning shard of every chunk of the collection, from config.chunks
+    private List<Map.Entry<BsonDocument, String>> actualChunks(MongoClient client, String target) {
+        MongoDatabase configDb = client.getDatabase("config");
+        Document collection = configDb.getCollection("collections").find(Filters.eq("_id", target)).first();
+        if (collection == null) return List.of();
+        List<Map.Entry<BsonDocument, String>> bounds = new ArrayList<>();
+        for (Document chunk : configDb.getCollection("chunks").find(chunkFilter(collection, target)).sort(Sorts.ascending("min"))) {
+            bounds.add(new AbstractMap.SimpleEntry<>(
+                    BsonDocument.parse(chunk.get("min", Document.class).toJson(EXTENDED_JSON)), chunk.getString("shard")));
+        }
+        return bounds;
+    }
+
+    // Chunks reference their collection by uuid since 5.0 and by ns before
+    private static Bson chunkFilter(Document collection, String namespace) {
+        return collection.get("uuid") != null
+                ? Filters.or(Filters.eq("uuid", collection.get("uuid")), Filters.eq("ns", namespace))
+                : Filters.eq("ns", namespace);
+    }
+
+    // Same shard names when the target cluster has them, otherwise by position
+    private static Map<String, String> mapShards(List<String> recorded, List<String> target) {
+        List<String> sortedRecorded = recorded.stream().sorted().toList();
+        List<String> sortedTarget = target.stream().sorted().toList();
+        Map<String, String> mapping = new HashMap<>();
+        for (int i = 0; i < sortedRecorded.size(); i++) {
+            String name = sortedRecorded.get(i);
+            mapping.put(name, target.contains(name) ? name : sortedTarget.get(i % sortedTarget.size()));
+        }
+        return mapping;
+    }
+
+    // Replica set connection string of every shard, so operations reach its primary
+    public static Map<String, String> shardConnections(ClusterConfig config) {
+        Map<String, List<NodeInfo>> byReplicaSet = config.getNodes().stream()
+                .filter(n -> "shard".equals(n.getType()) && n.getReplicaSet() != null)
+                .collect(Collectors.groupingBy(NodeInfo::getReplicaSet));
+        Map<String, String> connections = new HashMap<>();
+        byReplicaSet.forEach((replicaSet, nodes) -> connections.put(replicaSet, "mongodb://"
+                + nodes.stream().map(n -> "localhost:" + n.getPort()).collect(Collectors.joining(","))
+                + "/?replicaSet=" + replicaSet + "&serverSelectionTimeoutMS=10000"));
+        return connections;
+    }
+
+    private MongoClient mongos(int port) {
+        return MongoConnectionUtil.createClient("mongodb://localhost:" + port + "/?serverSelectionTimeoutMS=5000");
+    }
+}
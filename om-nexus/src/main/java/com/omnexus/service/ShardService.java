@@ -8,6 +8,7 @@ import com.omnexus.model.ClusterConfig;
 import com.omnexus.model.NodeInfo;
 import com.omnexus.model.ShardInfo;
 import com.omnexus.util.MongoConnectionUtil;
+import com.omnexus.util.MongodTuning;
 import com.omnexus.util.ProcessManager;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,10 +22,12 @@ import java.util.List;
 @Service
 public class ShardService {
     private final ConfigServerService configServerService;
+    private final PortAllocatorService portAllocatorService;
 
     @Autowired
-    public ShardService(ConfigServerService configServerService,ClusterService clusterService){
+    public ShardService(ConfigServerService configServerService,ClusterService clusterService,PortAllocatorService portAllocatorService){
         this.configServerService = configServerService;
+        this.portAllocatorService = portAllocatorService;
     }
     public List<ShardInfo> getShardStatus(ClusterConfig config) {
         List<ShardInfo> shardInfos = new ArrayList<>();
@@ -104,6 +107,10 @@ public class ShardService {
                     System.out.println("Shard " + shardId + " successfully removed.");
                     
                     // Remove from local config after successful MongoDB removal
+                    config.getNodes().stream()
+                            .filter(node -> shardId.equals(node.getNodeId()) && "shard".equals(node.getType()))
+                            .findFirst()
+                            .ifPresent(node -> portAllocatorService.release(config.getClusterId(), node.getPort()));
                     config.getNodes().removeIf(node -> 
                         shardId.equals(node.getNodeId()) && "shard".equals(node.getType()));
                     
@@ -141,7 +148,7 @@ public class ShardService {
         try{
             ClusterConfig clusterConfig = configServerService.loadClusterConfig(clusterId);
 
-            try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig,"mongos")){
+            try(MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())){
                 MongoDatabase adminDb = client.getDatabase("admin");
 
                 for (Object splitValue : splitValues) {
@@ -166,7 +173,7 @@ public class ShardService {
         try {
             ClusterConfig clusterConfig = configServerService.loadClusterConfig(clusterId);
 
-            try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, "mongos")) {
+            try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())) {
                 MongoDatabase configDb = client.getDatabase("config");
                 MongoDatabase adminDb = client.getDatabase("admin");
 
@@ -311,7 +318,7 @@ public class ShardService {
     public boolean rebalanceShards(String clusterId) {
         try {
             ClusterConfig clusterConfig = configServerService.loadClusterConfig(clusterId);
-            try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, "mongos")) {
+            try (MongoClient client = MongoConnectionUtil.createClientForNodeId(clusterConfig, clusterConfig.mongosNodeId())) {
                 MongoDatabase adminDb = client.getDatabase("admin");
                 Document cmd = new Document("balancerStart", 1);
                 adminDb.runCommand(cmd);
@@ -360,11 +367,8 @@ public class ShardService {
                 return false;
             }
 
-            // Find next available port
-            int nextPort = config.getNodes().stream()
-                    .mapToInt(NodeInfo::getPort)
-                    .max()
-                    .orElse(28000) + 1;
+            // Next free port of the host-wide range
+            int nextPort = portAllocatorService.reserve(clusterId, 1).get(0);
 
             System.out.println("Using port: " + nextPort);
 
@@ -394,13 +398,16 @@ public class ShardService {
                     newShard.getType(),
                     newShard.getPort(),
                     newShard.getDataPath(),
-                    newShard.getReplicaSet()
+                    newShard.getReplicaSet(),
+                    newShard.getResources(),
+                    MongodTuning.args(config, newShard)
             );
 
             if (!started) {
                 System.out.println("ERROR: Failed to start mongod process for " + shardId);
                 // Remove from config if start failed
                 config.getNodes().removeIf(n -> n.getNodeId().equals(shardId));
+                portAllocatorService.release(clusterId, nextPort);
                 return false;
             }
             System.out.println("Mongod process started successfully");
@@ -0,0 +1,386 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.model.SlowOpStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Query performance from the "Slow query" entries mongod already writes to its log, so no
+ * profiler is needed. Each scan continues every node's log from the saved offset, parses only
+ * slow-op lines and folds them into latency histograms per namespace and query shape, COLLSCAN
+ * counts and per-shard totals. Stats and offsets are saved to configs/&lt;clusterId&gt;-slowops.json.
+ */
+@Service
+public class SlowOpAnalyticsService {
+    private static final String CONFIG_DIR = "configs";
+    private static final String STATS_FILE_SUFFIX = "-slowops.json";
+    private static final long PAGE_BYTES = 4L * 1024 * 1024;
+    private static final NodeLogService.Filter SLOW_QUERIES = NodeLogService.filter(null, null, null, "\"msg\":\"Slow query\"");
+    // Upper bounds of the latency buckets; the last bucket is everything slower
+    public static final long[] BUCKETS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final ConfigServerService configServerService;
+    private final NodeLogService nodeLogService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, SlowOpStats> states = new ConcurrentHashMap<>();
+
+    @Value("${omnexus.slowops.enabled:true}")
+    private boolean enabled;
+
+    @Value("${omnexus.slowops.max-bytes-per-scan-mb:64}")
+    private long maxBytesPerScanMb; // per node; a large existing log is caught up over several scans
+
+    @Value("${omnexus.slowops.max-shapes:2000}")
+    private int maxShapes;
+
+    public SlowOpAnalyticsService(ConfigServerService configServerService, NodeLogService nodeLogService) {
+        this.configServerService = configServerService;
+        this.nodeLogService = nodeLogService;
+    }
+
+    @Scheduled(fixedDelayString = "${omnexus.slowops.scan-interval-ms:30000}", initialDelay = 15000)
+    public void scanAll() {
+        if (!enabled) return;
+        for (String clusterId : configServerService.getAllClusterIds()) {
+            try {
+                scan(clusterId);
+            } catch (Exception e) {
+                System.err.println("Slow-op scan failed for " + clusterId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Parse what the cluster's node logs gained since the last scan.
+     */
+    public Map<String, Object> scan(String clusterId) {
+        ClusterConfig config = configServerService.loadClusterConfig(clusterId);
+        if (config == null) {
+            return Map.of("success", false, "error", "Cluster not found: " + clusterId);
+        }
+        SlowOpStats stats = state(clusterId);
+        Map<String, Object> perNode = new LinkedHashMap<>();
+        synchronized (stats) {
+            for (NodeInfo node : config.getNodes()) {
+                perNode.put(node.getNodeId(), scanNode(clusterId, node, stats));
+            }
+            evictShapes(stats);
+            stats.setUpdatedAt(System.currentTimeMillis());
+            save(stats);
+        }
+        return Map.of("success", true, "clusterId", clusterId, "nodes", perNode);
+    }
+
+    private Map<String, Object> scanNode(String clusterId, NodeInfo node, SlowOpStats stats) {
+        long offset = stats.getOffsets().getOrDefault(node.getNodeId(), 0L);
+        String fileId = stats.getFileIds().get(node.getNodeId());
+        long budget = maxBytesPerScanMb * 1024 * 1024;
+        long parsed = 0;
+        boolean rotated = false;
+        while (budget > 0) {
+            Map<String, Object> page = nodeLogService.read(clusterId, node.getNodeId(), offset, fileId, Math.min(PAGE_BYTES, budget), 10_000, SLOW_QUERIES);
+            if (page.containsKey("error")) {
+                return Map.of("error", page.get("error"));
+            }
+            boolean restarted = Boolean.TRUE.equals(page.get("rotated"));
+            rotated |= restarted;
+            long next = (Long) page.get("nextOffset");
+            fileId = (String) page.get("fileId");
+            @SuppressWarnings("unchecked")
+            List<String> lines = (List<String>) page.get("lines");
+            for (String line : lines) {
+                if (record(stats, node, line)) parsed++;
+            }
+            boolean eof = Boolean.TRUE.equals(page.get("eof"));
+            long consumed = restarted ? next : next - offset;
+            offset = next;
+            budget -= consumed;
+            if (eof) break;
+        }
+        stats.getOffsets().put(node.getNodeId(), offset);
+        if (fileId != null) stats.getFileIds().put(node.getNodeId(), fileId);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("offset", offset);
+        result.put("slowOps", parsed);
+        if (rotated) result.put("rotated", true);
+        return result;
+    }
+
+    // Fold one "Slow query" line into the stats; false if it is not a usable entry
+    private boolean record(SlowOpStats stats, NodeInfo node, String line) {
+        JsonNode attr;
+        try {
+            attr = objectMapper.readTree(line).path("attr");
+        } catch (IOException e) {
+            return false;
+        }
+        String ns = attr.path("ns").asText("");
+        if (ns.isEmpty() || !attr.has("durationMillis")) return false;
+        long millis = attr.path("durationMillis").asLong();
+        String planSummary = attr.path("planSummary").asText("");
+        boolean collscan = planSummary.contains("COLLSCAN");
+        boolean mongos = "mongos".equals(node.getType());
+        String shard = mongos ? "mongos" : String.valueOf(node.getReplicaSet());
+        String hash = firstText(attr, "queryShapeHash", "planCacheShapeHash", "queryHash");
+        String shape = shape(attr);
+
+        // A slow routed operation is also logged by each shard it reached, so mongos keeps its own shapes
+        String key = (mongos ? "mongos|" : "") + ns + "|" + (hash != null ? hash : shape);
+        SlowOpStats.ShapeStats s = stats.getShapes().computeIfAbsent(key, k -> {
+            SlowOpStats.ShapeStats created = new SlowOpStats.ShapeStats();
+            created.setNs(ns);
+            created.setMongos(mongos);
+            created.setShape(shape);
+            created.setQueryHash(hash);
+            created.setHistogram(new long[BUCKETS_MS.length + 1]);
+            return created;
+        });
+        s.setCount(s.getCount() + 1);
+        s.setTotalMillis(s.getTotalMillis() + millis);
+        s.setMaxMillis(Math.max(s.getMaxMillis(), millis));
+        if (collscan) s.setCollscans(s.getCollscans() + 1);
+        s.setDocsExamined(s.getDocsExamined() + attr.path("docsExamined").asLong());
+        s.setKeysExamined(s.getKeysExamined() + attr.path("keysExamined").asLong());
+        s.setNreturned(s.getNreturned() + attr.path("nreturned").asLong());
+        if (!planSummary.isEmpty()) s.setPlanSummary(planSummary);
+        s.getHistogram()[bucket(millis)]++;
+        s.setLastSeen(System.currentTimeMillis());
+        s.getShards().merge(shard, 1L, Long::sum);
+
+        SlowOpStats.ShardStats sh = stats.getShards().computeIfAbsent(shard, k -> {
+            SlowOpStats.ShardStats created = new SlowOpStats.ShardStats();
+            created.setShard(shard);
+            created.setHistogram(new long[BUCKETS_MS.length + 1]);
+            return created;
+        });
+        sh.setCount(sh.getCount() + 1);
+        sh.setTotalMillis(sh.getTotalMillis() + millis);
+        if (collscan) sh.setCollscans(sh.getCollscans() + 1);
+        sh.getHistogram()[bucket(millis)]++;
+        sh.getNamespaceMillis().merge(ns, millis, Long::sum);
+        return true;
+    }
+
+    // "find {a,b} sort {c}": the command and the fields it filters and sorts on, values dropped
+    private static String shape(JsonNode attr) {
+        JsonNode command = attr.path("command");
+        if (command.has("getMore") && attr.has("originatingCommand")) {
+            command = attr.path("originatingCommand");
+        }
+        String type = attr.path("type").asText("command");
+        String name = "command".equals(type) && command.fieldNames().hasNext() ? command.fieldNames().next() : type;
+        StringBuilder shape = new StringBuilder(name);
+        JsonNode filter = command.has("filter") ? command.get("filter") : command.has("q") ? command.get("q") : command.get("query");
+        if (filter == null && command.path("pipeline").path(0).has("$match")) {
+            filter = command.path("pipeline").path(0).get("$match");
+        }
+        if (filter != null && filter.isObject()) {
+            shape.append(" {").append(String.join(",", fields(filter, new TreeSet<>()))).append('}');
+        }
+        if (command.path("sort").isObject()) {
+            shape.append(" sort {").append(String.join(",", fields(command.get("sort"), new TreeSet<>()))).append('}');
+        }
+        return shape.toString();
+    }
+
+    private static TreeSet<String> fields(JsonNode node, TreeSet<String> into) {
+        node.fields().forEachRemaining(field -> {
+            if (field.getValue().isArray() && List.of("$and", "$or", "$nor").contains(field.getKey())) {
+                field.getValue().forEach(clause -> fields(clause, into));
+            } else {
+                into.add(field.getKey());
+            }
+        });
+        return into;
+    }
+
+    private static String firstText(JsonNode node, String... names) {
+        for (String name : names) {
+            if (node.hasNonNull(name)) return node.get(name).asText();
+        }
+        return null;
+    }
+
+    private static int bucket(long millis) {
+        for (int i = 0; i < BUCKETS_MS.length; i++) {
+            if (millis <= BUCKETS_MS[i]) return i;
+        }
+        return BUCKETS_MS.length;
+    }
+
+    // Keep the shapes that cost the most time; shard totals still count the evicted ones
+    private void evictShapes(SlowOpStats stats) {
+        int excess = stats.getShapes().size() - Math.max(1, maxShapes);
+        if (excess <= 0) return;
+        List<String> cheapest = stats.getShapes().entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().getTotalMillis()))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList();
+        cheapest.forEach(stats.getShapes()::remove);
+    }
+
+    /**
+     * Dashboard: slowest shapes, COLLSCAN offenders, per-namespace latency and per-shard hot spots.
+     */
+    public Map<String, Object> report(String clusterId, String namespace, int top) {
+        SlowOpStats stats = state(clusterId);
+        synchronized (stats) {
+            List<SlowOpStats.ShapeStats> matching = stats.getShapes().values().stream()
+                    .filter(s -> namespace == null || s.getNs().equals(namespace) || s.getNs().startsWith(namespace + "."))
+                    .toList();
+            List<SlowOpStats.ShapeStats> shapes = matching.stream().filter(s -> !s.isMongos()).toList();
+
+            Map<String, long[]> nsHistograms = new LinkedHashMap<>();
+            Map<String, long[]> nsTotals = new LinkedHashMap<>(); // count, totalMillis, collscans, maxMillis
+            for (SlowOpStats.ShapeStats s : shapes) {
+                long[] histogram = nsHistograms.computeIfAbsent(s.getNs(), k -> new long[BUCKETS_MS.length + 1]);
+                for (int i = 0; i < histogram.length; i++) histogram[i] += s.getHistogram()[i];
+                long[] totals = nsTotals.computeIfAbsent(s.getNs(), k -> new long[4]);
+                totals[0] += s.getCount();
+                totals[1] += s.getTotalMillis();
+                totals[2] += s.getCollscans();
+                totals[3] = Math.max(totals[3], s.getMaxMillis());
+            }
+            List<Map<String, Object>> namespaces = new ArrayList<>();
+            nsTotals.forEach((ns, t) -> {
+                Map<String, Object> entry = latency(t[0], t[1], t[3], nsHistograms.get(ns));
+                entry.put("ns", ns);
+                entry.put("collscans", t[2]);
+                namespaces.add(entry);
+            });
+            namespaces.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("totalMillis")).reversed());
+
+            List<Map<String, Object>> shards = new ArrayList<>();
+            for (SlowOpStats.ShardStats sh : stats.getShards().values()) {
+                Map<String, Object> entry = latency(sh.getCount(), sh.getTotalMillis(), -1, sh.getHistogram());
+                entry.put("shard", sh.getShard());
+                entry.put("collscans", sh.getCollscans());
+                entry.put("hotNamespaces", sh.getNamespaceMillis().entrySet().stream()
+                        .sorted(Map.Entry.<String, Long>comparingByValue().reversed()).limit(5)
+                        .map(e -> Map.of("ns", e.getKey(), "totalMillis", e.getValue())).toList());
+                shards.add(entry);
+            }
+            shards.sort(Comparator.comparingLong((Map<String, Object> m) -> (Long) m.get("totalMillis")).reversed());
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("clusterId", clusterId);
+            result.put("since", stats.getSince());
+            result.put("updatedAt", stats.getUpdatedAt());
+            result.put("bucketsMs", BUCKETS_MS);
+            result.put("slowOps", shapes.stream().mapToLong(SlowOpStats.ShapeStats::getCount).sum());
+            result.put("topShapes", shapes.stream()
+                    .sorted(Comparator.comparingLong(SlowOpStats.ShapeStats::getTotalMillis).reversed())
+                    .limit(top).map(this::describe).toList());
+            result.put("topCollscans", shapes.stream().filter(s -> s.getCollscans() > 0)
+                    .sorted(Comparator.comparingLong(SlowOpStats.ShapeStats::getCollscans)
+                            .thenComparingLong(SlowOpStats.ShapeStats::getDocsExamined).reversed())
+                    .limit(top).map(this::describe).toList());
+            result.put("mongosShapes", matching.stream().filter(SlowOpStats.ShapeStats::isMongos)
+                    .sorted(Comparator.comparingLong(SlowOpStats.ShapeStats::getTotalMillis).reversed())
+                    .limit(top).map(this::describe).toList());
+            result.put("namespaces", namespaces);
+            result.put("shards", shards);
+            return result;
+        }
+    }
+
+    /**
+     * Drop the aggregates; offsets are kept so old log lines are not counted again.
+     */
+    public Map<String, Object> reset(String clusterId) {
+        SlowOpStats stats = state(clusterId);
+        synchronized (stats) {
+            stats.getShapes().clear();
+            stats.getShards().clear();
+            stats.setSince(System.currentTimeMillis());
+            save(stats);
+        }
+        return Map.of("success", true, "clusterId", clusterId);
+    }
+
+    private Map<String, Object> describe(SlowOpStats.ShapeStats s) {
+        Map<String, Object> entry = latency(s.getCount(), s.getTotalMillis(), s.getMaxMillis(), s.getHistogram());
+        entry.put("ns", s.getNs());
+        entry.put("shape", s.getShape());
+        entry.put("queryHash", s.getQueryHash());
+        entry.put("planSummary", s.getPlanSummary());
+        entry.put("collscans", s.getCollscans());
+        entry.put("docsExaminedPerReturned", s.getNreturned() > 0 ? (double) s.getDocsExamined() / s.getNreturned() : null);
+        entry.put("docsExamined", s.getDocsExamined());
+        entry.put("keysExamined", s.getKeysExamined());
+        entry.put("nreturned", s.getNreturned());
+        entry.put("shards", s.getShards());
+        entry.put("lastSeen", s.getLastSeen());
+        return entry;
+    }
+
+    // Percentiles are bucket upper bounds (the max for the open last bucket when known)
+    private static Map<String, Object> latency(long count, long totalMillis, long maxMillis, long[] histogram) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("count", count);
+        entry.put("totalMillis", totalMillis);
+        entry.put("avgMillis", count > 0 ? totalMillis / count : 0);
+        entry.put("p50Millis", percentile(histogram, count, 0.50, maxMillis));
+        entry.put("p95Millis", percentile(histogram, count, 0.95, maxMillis));
+        entry.put("p99Millis", percentile(histogram, count, 0.99, maxMillis));
+        if (maxMillis >= 0) entry.put("maxMillis", maxMillis);
+        entry.put("histogram", histogram);
+        return entry;
+    }
+
+    private static Long percentile(long[] histogram, long count, double p, long maxMillis) {
+        if (count == 0) return null;
+        long rank = (long) Math.ceil(p * count);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                if (i == BUCKETS_MS.length) return maxMillis >= 0 ? maxMillis : null;
+                return maxMillis >= 0 ? Math.min(BUCKETS_MS[i], maxMillis) : BUCKETS_MS[i];
+            }
+        }
+        return maxMillis >= 0 ? maxMillis : null;
+    }
+
+    private SlowOpStats state(String clusterId) {
+        return states.computeIfAbsent(clusterId, id -> {
+            File file = new File(CONFIG_DIR, id + STATS_FILE_SUFFIX);
+            if (file.exists()) {
+                try {
+                    return objectMapper.readValue(file, SlowOpStats.class);
+                } catch (IOException e) {
+                    System.err.println("Failed to read slow-op stats " + file.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }
+            SlowOpStats created = new SlowOpStats();
+            created.setClusterId(id);
+            created.setSince(System.currentTimeMillis());
+            return created;
+        });
+    }
+
+    private void save(SlowOpStats stats) {
+        try {
+            new File(CONFIG_DIR).mkdirs();
+            objectMapper.writeValue(new File(CONFIG_DIR, stats.getClusterId() + STATS_FILE_SUFFIX), stats);
+        } catch (IOException e) {
+            System.err.println("Failed to save slow-op stats for " + stats.getClusterId() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.omnexus.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoClient;
+import com.omnexus.model.BackupCatalogEntry;
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.util.BsonIntegrity;
+import com.omnexus.util.MongoConnectionUtil;
+import com.omnexus.util.ProcessManager;
+import com.omnexus.util.SnapshotCopier;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Physical backups: one member of every replica set (a secondary when there is
+ * one) is locked with fsyncLock, its dbPath is cloned or copied into
+ * backup/&lt;clusterId&gt;/&lt;timestamp&gt;/snapshot/&lt;nodeId&gt;, and the lock is released.
+ * The balancer is paused for the duration so no chunk moves between shards.
+ */
+@Service
+public class SnapshotBackupService {
+    private static final String BACKUP_ROOT = "backup";
+    public static final String SNAPSHOT_DIR = "snapshot";
+
+    private final ConfigServerService configServerService;
+    private final BackupCatalogService backupCatalogService;
+    private final BackupIntegrityService backupIntegrityService;
+    private final BackupProgressService backupProgressService;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${omnexus.backup.snapshot.copy-parallelism:4}")
+    private int copyParallelism;
+
+    public SnapshotBackupService(ConfigServerService configServerService, BackupCatalogService backupCatalogService,
+                                 BackupIntegrityService backupIntegrityService, BackupProgressService backupProgressService) {
+        this.configServerService = configServerService;
+        this.backupCatalogService = backupCatalogService;
+        this.backupIntegrityService = backupIntegrityService;
+        this.backupProgressService = backupProgressService;
+    }
+
+    public Map<String, Object> snapshotCluster(String clusterId) {
+        BackupProgressService.BackupProgress progress = backupProgressService.startBackupProgress(clusterId);
+        boolean success = false;
+        try {
+            Map<String, Object> result = runSnapshot(clusterId, progress);
+            success = Boolean.TRUE.equals(result.get("success"));
+            return result;
+        } finally {
+            backupProgressService.completeBackup(clusterId, success);
+        }
+    }
+
+    private Map<String, Object> runSnapshot(String clusterId, BackupProgressService.BackupProgress progress) {
+        ClusterConfig config = configServerService.loadClusterConfig(clusterId);
+        if (config == null) {
+            return Map.of("error", "cluster not found: " + clusterId);
+        }
+
+        // One member per replica set, preferring secondaries so the primary keeps taking writes
+        backupProgressService.updateProgress(progress, "starting", "Selecting snapshot members...", 1);
+        Map<String, NodeInfo> members = selectMembers(config);
+        if (members.isEmpty()) {
+            return Map.of("error", "no running shard or config server members to snapshot");
+        }
+        // A snapshot without one of the replica sets cannot be restored as a cluster
+        Set<String> unreachable = new TreeSet<>();
+        for (NodeInfo node : config.getNodes()) {
+            if (!"mongos".equals(node.getType()) && node.getReplicaSet() != null && !members.containsKey(node.getReplicaSet())) {
+                unreachable.add(node.getReplicaSet());
+            }
+        }
+        if (!unreachable.isEmpty()) {
+            return Map.of("error", "no reachable member in replica set(s) " + String.join(", ", unreachable));
+        }
+
+        String timestamp = DateTimeFormatter.ISO_INSTANT.format(Instant.now()).replace(":", "-");
+        Path backupPath = Paths.get(BACKUP_ROOT, clusterId, timestamp);
+        Path snapshotPath = backupPath.resolve(SNAPSHOT_DIR);
+        int mongosPort = config.getNodes().stream()
+                .filter(n -> "mongos".equals(n.getType()))
+                .map(NodeInfo::getPort)
+                .findFirst().orElse(config.getMongosPort());
+
+        List<String> databases = listDatabases(mongosPort);
+        boolean balancerWasRunning = setBalancer(mongosPort, false);
+        List<Map<String, Object>> artifacts = new ArrayList<>();
+        Map<String, BsonIntegrity.FileDigest> digests = new ConcurrentHashMap<>();
+        List<NodeInfo> locked = new ArrayList<>();
+        boolean allSuccess = true;
+        long lockStart = System.currentTimeMillis();
+        long lockMillis;
+
+        try {
+            Files.createDirectories(snapshotPath);
+
+            // Lock every member before copying so all shards are captured at the same moment
+            backupProgressService.updateProgress(progress, "locking", "Locking members with fsyncLock...", 2);
+            for (NodeInfo node : members.values()) {
+                if (!fsyncLock(node, true)) {
+                    // Nothing was copied yet: leave no empty backup directory behind
+                    discard(backupPath);
+                    return Map.of("error", "fsyncLock failed on " + node.getNodeId());
+                }
+                locked.add(node);
+            }
+
+            backupProgressService.updateProgress(progress, "copying", "Copying data files...", 3);
+            ExecutorService pool = Executors.newFixedThreadPool(members.size());
+            try {
+                List<Future<Map<String, Object>>> copies = new ArrayList<>();
+                for (NodeInfo node : members.values()) {
+                    copies.add(pool.submit(() -> copyMember(node, snapshotPath, digests, progress)));
+                }
+                for (Future<Map<String, Object>> copy : copies) {
+                    Map<String, Object> artifact = copy.get();
+                    artifacts.add(artifact);
+                    allSuccess &= Boolean.TRUE.equals(artifact.get("success"));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        } catch (Exception e) {
+            artifacts.add(Map.of("type", "snapshot", "success", false, "error", String.valueOf(e.getMessage())));
+            allSuccess = false;
+        } finally {
+            for (NodeInfo node : locked) {
+                if (!fsyncLock(node, false)) {
+                    System.err.println("fsyncUnlock failed on " + node.getNodeId() + "; unlock it manually with db.fsyncUnlock()");
+                }
+            }
+            lockMillis = System.currentTimeMillis() - lockStart;
+            if (balancerWasRunning) {
+                setBalancer(mongosPort, true);
+            }
+        }
+
+        // Hash reflinked files now that the members are unlocked; copied files were hashed while copying
+        backupProgressService.updateProgress(progress, "hashing", "Writing integrity manifest...", 4);
+        if (allSuccess) {
+            try {
+                backupIntegrityService.build(clusterId, timestamp, backupPath, snapshotPath, digests);
+            } catch (Exception e) {
+                artifacts.add(Map.of("type", "integrity", "success", false, "error", String.valueOf(e.getMessage())));
+            }
+        }
+
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("clusterId", clusterId);
+        meta.put("timestamp", timestamp);
+        meta.put("type", "snapshot");
+        meta.put("snapshotPath", snapshotPath.toString());
+        meta.put("lockMillis", lockMillis);
+        meta.put("artifacts", artifacts);
+        meta.put("databases", databases);
+        meta.put("success", allSuccess);
+        try {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(backupPath.resolve("metadata.json").toFile(), meta);
+        } catch (Exception e) {
+            artifacts.add(Map.of("type", "metadata", "success", false, "error", String.valueOf(e.getMessage())));
+        }
+
+        BackupCatalogEntry entry = new BackupCatalogEntry();
+        entry.setClusterId(clusterId);
+        entry.setTimestamp(timestamp);
+        entry.setCreatedAt(System.currentTimeMillis());
+        entry.setBackupType("snapshot");
+        entry.setSizeBytes(BackupCatalogService.directorySize(backupPath));
+        entry.setDatabases(databases);
+        entry.setCompression("none");
+        entry.setDumpLayout(SNAPSHOT_DIR);
+        entry.setSuccess(allSuccess);
+        entry.setArtifacts(artifacts);
+        backupCatalogService.record(entry);
+
+        System.out.println("=== Snapshot Backup Complete (members locked for " + lockMillis + " ms) ===");
+        return meta;
+    }
+
+    private Map<String, Object> copyMember(NodeInfo node, Path snapshotPath, Map<String, BsonIntegrity.FileDigest> digests,
+                                           BackupProgressService.BackupProgress progress) {
+        Map<String, Object> artifact = new HashMap<>();
+        artifact.put("type", "snapshot");
+        artifact.put("nodeId", node.getNodeId());
+        artifact.put("replicaSet", node.getReplicaSet());
+        artifact.put("port", node.getPort());
+        try {
+            long start = System.currentTimeMillis();
+            Path source = Paths.get(node.getDataPath());
+            SnapshotCopier.CopyResult result = SnapshotCopier.copyTree(source, snapshotPath.resolve(node.getNodeId()),
+                    copyParallelism, SnapshotBackupService::isDataFile);
+            result.digests().forEach((path, digest) -> digests.put(node.getNodeId() + "/" + path, digest));
+            progress.recordCollection(node.getNodeId(), result.bytes(), result.bytes(), 0, 0, true);
+
+            artifact.put("method", result.method());
+            artifact.put("files", result.files());
+            artifact.put("bytes", result.bytes());
+            artifact.put("copyMillis", System.currentTimeMillis() - start);
+            artifact.put("success", true);
+        } catch (Exception e) {
+            System.err.println("Snapshot copy of " + node.getNodeId() + " failed: " + e.getMessage());
+            artifact.put("success", false);
+            artifact.put("error", String.valueOf(e.getMessage()));
+        }
+        return artifact;
+    }
+
+    // The lock file and the log live in dbPath but are not part of the data
+    private static boolean isDataFile(Path relative) {
+        String name = relative.getFileName().toString();
+        return !name.equals("mongod.lock") && !name.startsWith("mongod.log");
+    }
+
+    private Map<String, NodeInfo> selectMembers(ClusterConfig config) {
+        Map<String, NodeInfo> members = new LinkedHashMap<>();
+        for (NodeInfo node : config.getNodes()) {
+            if ("mongos".equals(node.getType()) || node.getReplicaSet() == null) continue;
+            Document hello = hello(node);
+            if (hello == null) continue;
+
+            NodeInfo current = members.get(node.getReplicaSet());
+            if (current == null || Boolean.TRUE.equals(hello.getBoolean("secondary"))) {
+                members.put(node.getReplicaSet(), node);
+            }
+        }
+        return members;
+    }
+
+    private Document hello(NodeInfo node) {
+        try (MongoClient client = directClient(node.getPort())) {
+            return client.getDatabase("admin").runCommand(new Document("hello", 1));
+        } catch (Exception e) {
+            System.err.println("Member " + node.getNodeId() + " is not reachable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void discard(Path backupPath) {
+        try {
+            if (Files.exists(backupPath)) ProcessManager.deleteDirectory(backupPath.toFile());
+        } catch (IOException e) {
+            System.err.println("Could not remove " + backupPath + ": " + e.getMessage());
+        }
+    }
+
+    private boolean fsyncLock(NodeInfo node, boolean lock) {
+        try (MongoClient client = directClient(node.getPort())) {
+            Document command = lock ? new Document("fsync", 1).append("lock", true) : new Document("fsyncUnlock", 1);
+            client.getDatabase("admin").runCommand(command);
+            System.out.println((lock ? "Locked " : "Unlocked ") + node.getNodeId() + " (port " + node.getPort() + ")");
+            return true;
+        } catch (Exception e) {
+            System.err.println((lock ? "fsyncLock" : "fsyncUnlock") + " failed on " + node.getNodeId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Returns whether the balancer was enabled before the change
+    private boolean setBalancer(int mongosPort, boolean enabled) {
+        try (MongoClient client = MongoConnectionUtil.createClient("mongodb://localhost:" + mongosPort + "/?serverSelectionTimeoutMS=5000")) {
+            var admin = client.getDatabase("admin");
+            boolean wasEnabled = !"off".equals(admin.runCommand(new Document("balancerStatus", 1)).getString("mode"));
+            admin.runCommand(new Document(enabled ? "balancerStart" : "balancerStop", 1));
+            return wasEnabled;
+        } catch (Exception e) {
+            System.err.println("Could not " + (enabled ? "start" : "stop") + " the balancer: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private List<String> listDatabases(int mongosPort) {
+        try (MongoClient client = MongoConnectionUtil.createClient("mongodb://localhost:" + mongosPort + "/?serverSelectionTimeoutMS=5000")) {
+            return client.listDatabaseNames().into(new ArrayList<>());
+        } catch (Exception e) {
+            System.err.println("Could not list databases: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private MongoClient directClient(int port) {
+        return MongoConnectionUtil.createClient("mongodb://localhost:" + port + "/?directConnection=true&serverSelectionTimeoutMS=5000");
+    }
+}
@@ -0,0 +1,482 @@
+package com.omnexus.util;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.Binary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process replacement for mongodump. Collections are scanned with the driver
+ * as raw BSON, large collections are split into index ranges (chunk boundaries
+ * for sharded collections, sampled _id boundaries otherwise) that are read in
+ * parallel, and the output is written as mongodump-compatible .bson and
+ * .metadata.json files through buffered FileChannels.
+ */
+public class BsonDumpEngine {
+    private static final long SPLIT_THRESHOLD_DOCS = 100_000;
+    private static final int SAMPLES_PER_RANGE = 32;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    private static final JsonWriterSettings METADATA_JSON = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    private final String host;
+    private final int port;
+    private final int parallelism;
+    private final Map<String, CollectionCounters> counters = new ConcurrentHashMap<>();
+    private volatile ProgressListener progressListener;
+
+    public static class CollectionCounters {
+        private final String namespace;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong contentHash = new AtomicLong();
+        private volatile String sha256;
+        private volatile long estimatedBytes;
+        private volatile long estimatedDocuments;
+        private volatile int ranges;
+        private volatile boolean complete;
+
+        public CollectionCounters(String namespace) {
+            this.namespace = namespace;
+        }
+
+        public String getNamespace() { return namespace; }
+        public long getBytes() { return bytes.get(); }
+        public long getDocuments() { return documents.get(); }
+        public long getEstimatedBytes() { return estimatedBytes; }
+        public long getEstimatedDocuments() { return estimatedDocuments; }
+        public int getRanges() { return ranges; }
+        public boolean isComplete() { return complete; }
+        public long getContentHash() { return contentHash.get(); }
+        public String getSha256() { return sha256; }
+
+        /**
+         * Integrity record of the finished .bson file, or null while the collection is incomplete.
+         */
+        public BsonIntegrity.FileDigest toDigest() {
+            return complete && sha256 != null
+                    ? new BsonIntegrity.FileDigest(getBytes(), sha256, getDocuments(), getContentHash(), null)
+                    : null;
+        }
+
+        public Map<String, Object> toMap() {
+            return Map.of("namespace", namespace, "bytes", getBytes(), "documents", getDocuments(),
+                    "ranges", ranges, "complete", complete);
+        }
+    }
+
+    // One slice of a collection, bounded in index order; null bounds are open-ended
+    private record Range(Document min, Document max) {}
+
+    private record CollectionPlan(String collName, Document hint, List<Range> ranges) {}
+
+    private record PlannedCollection(String dbName, Path dbDir, MongoCollection<RawBsonDocument> collection,
+                                     CollectionPlan plan, CollectionCounters counters) {}
+
+    private record PendingCollection(String dbName, CollectionCounters counters, Path target, List<Path> parts, List<Future<?>> futures) {}
+
+    /**
+     * Receives counter updates roughly once per written buffer and when a collection or database completes.
+     */
+    public interface ProgressListener {
+        void onCollectionProgress(CollectionCounters counters);
+
+        default void onDatabaseComplete(String dbName) {
+        }
+    }
+
+    public BsonDumpEngine(String host, int port, int parallelism) {
+        this.host = host;
+        this.port = port;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public Map<String, CollectionCounters> getCounters() {
+        return counters;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    private void notifyProgress(CollectionCounters collectionCounters) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onCollectionProgress(collectionCounters);
+        }
+    }
+
+    private void notifyDatabaseComplete(String dbName) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onDatabaseComplete(dbName);
+        }
+    }
+
+    /**
+     * Dump one database (or all databases except local when dbName is blank) into outDir.
+     */
+    public boolean dump(String dbName, Path outDir) {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        List<PendingCollection> pending = new ArrayList<>();
+        try (MongoClient client = MongoClients.create("mongodb://" + host + ":" + port + "/?serverSelectionTimeoutMS=10000")) {
+            Files.createDirectories(outDir);
+            writePrelude(client, outDir);
+
+            List<String> databases = dbName != null && !dbName.isBlank()
+                    ? List.of(dbName)
+                    : client.listDatabaseNames().into(new ArrayList<>());
+
+            // Plan every collection up front so the totals are known before any data is read
+            List<PlannedCollection> planned = new ArrayList<>();
+            Map<String, Integer> remainingPerDatabase = new LinkedHashMap<>();
+            for (String db : databases) {
+                if ("local".equals(db)) continue;
+                List<PlannedCollection> dbPlans = planDatabase(client, db, outDir.resolve(db));
+                planned.addAll(dbPlans);
+                remainingPerDatabase.put(db, dbPlans.size());
+            }
+
+            // Submit the ranges of every collection so small collections run side by side
+            for (PlannedCollection collection : planned) {
+                pending.add(submit(collection, pool));
+            }
+            remainingPerDatabase.forEach((db, remaining) -> {
+                if (remaining == 0) notifyDatabaseComplete(db);
+            });
+
+            boolean allSuccess = true;
+            for (PendingCollection collection : pending) {
+                allSuccess &= await(collection);
+                String db = collection.dbName();
+                int remaining = remainingPerDatabase.merge(db, -1, Integer::sum);
+                if (remaining == 0) notifyDatabaseComplete(db);
+            }
+
+            long totalDocs = counters.values().stream().mapToLong(CollectionCounters::getDocuments).sum();
+            long totalBytes = counters.values().stream().mapToLong(CollectionCounters::getBytes).sum();
+            System.out.println("Native dump of " + host + ":" + port + " finished: " + counters.size()
+                    + " collections, " + totalDocs + " documents, " + totalBytes + " bytes");
+            return allSuccess;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            System.err.println("Native dump failed for " + host + ":" + port + ": " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        } finally {
+            pool.shutdownNow();
+            deleteParts(pool, pending);
+        }
+    }
+
+    // Range files left by failed or aborted collections; merged parts are already gone.
+    // Waits for the range writers first so none recreates a file after it was deleted.
+    private static void deleteParts(ExecutorService pool, List<PendingCollection> pending) {
+        try {
+            if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("Range dumps still running; their part files may be left behind");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (PendingCollection collection : pending) {
+            if (collection.parts().size() < 2) continue;
+            for (Path part : collection.parts()) {
+                try {
+                    Files.deleteIfExists(part);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + part + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private List<PlannedCollection> planDatabase(MongoClient client, String dbName, Path dbDir) throws IOException {
+        MongoDatabase db = client.getDatabase(dbName);
+        Files.createDirectories(dbDir);
+
+        List<PlannedCollection> planned = new ArrayList<>();
+        for (Document info : db.listCollections()) {
+            String name = info.getString("name");
+            String type = info.getString("type");
+            if (name.equals("system.profile") || name.equals("system.views")) continue;
+
+            writeMetadata(db, info, dbDir.resolve(name + ".metadata.json"));
+            // Views and time-series definitions are carried by the metadata only
+            if (type != null && !"collection".equals(type)) continue;
+
+            String namespace = dbName + "." + name;
+            CollectionCounters collectionCounters = new CollectionCounters(namespace);
+            estimateSize(db, name, collectionCounters);
+            CollectionPlan plan = planCollection(client, db, name);
+            collectionCounters.ranges = plan.ranges().size();
+            counters.put(namespace, collectionCounters);
+            planned.add(new PlannedCollection(dbName, dbDir, db.getCollection(name, RawBsonDocument.class), plan, collectionCounters));
+        }
+        return planned;
+    }
+
+    private PendingCollection submit(PlannedCollection planned, ExecutorService pool) {
+        CollectionPlan plan = planned.plan();
+        Path target = planned.dbDir().resolve(plan.collName() + ".bson");
+        List<Path> parts = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < plan.ranges().size(); i++) {
+            Path part = plan.ranges().size() == 1 ? target : planned.dbDir().resolve(plan.collName() + ".bson.part" + i);
+            parts.add(part);
+            Range range = plan.ranges().get(i);
+            // A single range is written straight to the target, so it is hashed as it is written
+            boolean single = plan.ranges().size() == 1;
+            futures.add(pool.submit(() -> {
+                MessageDigest digest = single ? BsonIntegrity.newDigest() : null;
+                dumpRange(planned.collection(), plan.hint(), range, part, planned.counters(), digest);
+                if (digest != null) {
+                    planned.counters().sha256 = BsonIntegrity.hex(digest.digest());
+                }
+                return null;
+            }));
+        }
+        return new PendingCollection(planned.dbName(), planned.counters(), target, parts, futures);
+    }
+
+    private boolean await(PendingCollection collection) throws InterruptedException {
+        try {
+            for (Future<?> future : collection.futures()) {
+                future.get();
+            }
+            if (collection.parts().size() > 1) {
+                collection.counters().sha256 = mergeParts(collection.parts(), collection.target());
+            }
+            collection.counters().complete = true;
+            notifyProgress(collection.counters());
+            return true;
+        } catch (ExecutionException | IOException e) {
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            System.err.println("Failed to dump " + collection.counters().getNamespace() + ": " + cause.getMessage());
+            // The other ranges are of no use now; their part files are deleted when the dump ends
+            collection.futures().forEach(future -> future.cancel(true));
+            return false;
+        }
+    }
+
+    // collStats sizes drive progress percentages and ETAs; failures just leave them unknown
+    private void estimateSize(MongoDatabase db, String collName, CollectionCounters collectionCounters) {
+        try {
+            Document stats = db.runCommand(new Document("collStats", collName));
+            Object size = stats.get("size");
+            Object count = stats.get("count");
+            if (size instanceof Number n) collectionCounters.estimatedBytes = n.longValue();
+            if (count instanceof Number n) collectionCounters.estimatedDocuments = n.longValue();
+        } catch (Exception e) {
+            // Leave estimates at zero
+        }
+    }
+
+    private CollectionPlan planCollection(MongoClient client, MongoDatabase db, String collName) {
+        String namespace = db.getName() + "." + collName;
+        if (parallelism == 1) {
+            return new CollectionPlan(collName, null, List.of(new Range(null, null)));
+        }
+
+        // Sharded collections: split along existing chunk boundaries
+        try {
+            MongoDatabase configDb = client.getDatabase("config");
+            Document entry = configDb.getCollection("collections").find(Filters.eq("_id", namespace)).first();
+            if (entry != null && entry.get("key") != null && !Boolean.TRUE.equals(entry.getBoolean("unsplittable"))) {
+                Object uuid = entry.get("uuid");
+                List<Document> chunks = configDb.getCollection("chunks")
+                        .find(uuid != null ? Filters.eq("uuid", uuid) : Filters.eq("ns", namespace))
+                        .sort(new Document("min", 1))
+                        .into(new ArrayList<>());
+                if (chunks.size() > 1) {
+                    List<Document> bounds = new ArrayList<>();
+                    for (Document chunk : chunks) {
+                        bounds.add(chunk.get("min", Document.class));
+                    }
+                    return new CollectionPlan(collName, entry.get("key", Document.class), toRanges(bounds));
+                }
+            }
+        } catch (Exception e) {
+            // Not a mongos or no access to config metadata; fall through to sampling
+        }
+
+        // Unsharded collections: sample _id values when the collection is large enough
+        try {
+            MongoCollection<Document> collection = db.getCollection(collName);
+            if (collection.estimatedDocumentCount() >= SPLIT_THRESHOLD_DOCS) {
+                List<Document> samples = collection.aggregate(List.of(
+                        new Document("$sample", new Document("size", parallelism * SAMPLES_PER_RANGE)),
+                        new Document("$project", new Document("_id", 1)),
+                        new Document("$sort", new Document("_id", 1))
+                )).into(new ArrayList<>());
+                if (samples.size() > 1) {
+                    return new CollectionPlan(collName, new Document("_id", 1), toRanges(samples));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not sample " + namespace + ", dumping as a single range: " + e.getMessage());
+        }
+        return new CollectionPlan(collName, null, List.of(new Range(null, null)));
+    }
+
+    // Pick parallelism - 1 evenly spaced split points out of ordered candidate bounds
+    private List<Range> toRanges(List<Document> orderedBounds) {
+        List<Document> splits = new ArrayList<>();
+        for (int i = 1; i < parallelism; i++) {
+            Document candidate = orderedBounds.get((int) ((long) i * orderedBounds.size() / parallelism));
+            if (splits.isEmpty() || !splits.get(splits.size() - 1).equals(candidate)) {
+                splits.add(candidate);
+            }
+        }
+        List<Range> ranges = new ArrayList<>();
+        Document lower = null;
+        for (Document split : splits) {
+            ranges.add(new Range(lower, split));
+            lower = split;
+        }
+        ranges.add(new Range(lower, null));
+        return ranges;
+    }
+
+    private void dumpRange(MongoCollection<RawBsonDocument> collection, Document hint, Range range,
+                           Path out, CollectionCounters collectionCounters, MessageDigest digest) throws IOException {
+        FindIterable<RawBsonDocument> find = collection.find().batchSize(1000).noCursorTimeout(true);
+        // min()/max() bound the scan by index key order, which covers every BSON type
+        if (hint != null) {
+            find = find.hint(hint);
+            if (range.min() != null) find = find.min(range.min());
+            if (range.max() != null) find = find.max(range.max());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(out, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             MongoCursor<RawBsonDocument> cursor = find.iterator()) {
+            while (cursor.hasNext()) {
+                ByteBuffer document = cursor.next().getByteBuffer().asNIO();
+                int length = document.remaining();
+                collectionCounters.contentHash.addAndGet(BsonIntegrity.documentHash(document));
+                if (digest != null) {
+                    digest.update(document.duplicate());
+                }
+                if (length > buffer.remaining()) {
+                    flush(channel, buffer);
+                    notifyProgress(collectionCounters);
+                }
+                if (length > buffer.capacity()) {
+                    writeFully(channel, document);
+                } else {
+                    buffer.put(document);
+                }
+                collectionCounters.documents.incrementAndGet();
+                collectionCounters.bytes.addAndGet(length);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    // Concatenate the range files into the target, hashing them on the way; returns the SHA-256.
+    // Plain reads rather than maps, so the parts can be deleted right away on every platform.
+    private String mergeParts(List<Path> parts, Path target) throws IOException {
+        MessageDigest digest = BsonIntegrity.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Path part : parts) {
+                try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                    while (in.read(buffer) > 0) {
+                        buffer.flip();
+                        digest.update(buffer.duplicate());
+                        writeFully(out, buffer);
+                        buffer.clear();
+                    }
+                }
+                Files.delete(part);
+            }
+        }
+        return BsonIntegrity.hex(digest.digest());
+    }
+
+    private void writeMetadata(MongoDatabase db, Document info, Path path) throws IOException {
+        String name = info.getString("name");
+        Document metadata = new Document();
+        Document options = info.get("options", Document.class);
+        if (options != null && !options.isEmpty()) {
+            metadata.append("options", options);
+        }
+
+        List<Document> indexes = new ArrayList<>();
+        if (!"view".equals(info.getString("type"))) {
+            for (Document index : db.getCollection(name).listIndexes()) {
+                index.remove("ns");
+                indexes.add(index);
+            }
+        }
+        metadata.append("indexes", indexes);
+
+        Document collectionInfo = info.get("info", Document.class);
+        Object uuid = collectionInfo != null ? collectionInfo.get("uuid") : null;
+        if (uuid instanceof UUID u) {
+            metadata.append("uuid", u.toString().replace("-", ""));
+        } else if (uuid instanceof Binary b) {
+            metadata.append("uuid", HexFormat.of().formatHex(b.getData()));
+        }
+        metadata.append("collectionName", name);
+        metadata.append("type", info.getString("type") != null ? info.getString("type") : "collection");
+
+        Files.writeString(path, metadata.toJson(METADATA_JSON));
+    }
+
+    private void writePrelude(MongoClient client, Path outDir) {
+        try {
+            Document buildInfo = client.getDatabase("admin").runCommand(new Document("buildInfo", 1));
+            Document prelude = new Document("ServerVersion", buildInfo.getString("version"))
+                    .append("ToolVersion", "om-nexus-native");
+            Files.writeString(outDir.resolve("prelude.json"), prelude.toJson());
+        } catch (Exception e) {
+            System.err.println("Could not write dump prelude: " + e.getMessage());
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
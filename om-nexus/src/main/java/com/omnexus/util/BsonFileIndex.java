@@ -0,0 +1,142 @@
+package com.omnexus.util;
+
+import org.bson.RawBsonDocument;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * Sparse offset index over a memory-mapped .bson dump file. Only every
+ * CHECKPOINT_INTERVAL-th document offset is kept, and the index is extended
+ * on demand by hopping from one length prefix to the next, so reading the
+ * first documents of a huge file never scans the rest of it.
+ */
+public class BsonFileIndex {
+    public static final int CHECKPOINT_INTERVAL = 1024;
+    private static final long SEGMENT = 1L << 30;
+    // Segments overlap by more than the largest document so every document lies inside one mapping
+    private static final long OVERLAP = 64L * 1024 * 1024;
+
+    private final Path file;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private long[] checkpoints = new long[16]; // offset of document i * CHECKPOINT_INTERVAL
+    private int checkpointCount = 1;
+    private long indexedDocuments; // documents before indexedOffset
+    private long indexedOffset;
+    private boolean complete;
+    private String error;
+
+    public BsonFileIndex(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.size = channel.size();
+            int count = (int) Math.max(1, (size + SEGMENT - 1) / SEGMENT);
+            this.segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT;
+                long length = Math.min(size - start, SEGMENT + OVERLAP);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(0, length));
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        this.complete = size == 0;
+    }
+
+    public Path getFile() { return file; }
+    public long getSize() { return size; }
+    public synchronized boolean isComplete() { return complete; }
+    public synchronized String getError() { return error; }
+
+    /**
+     * Total number of documents; indexes the whole file on first call.
+     */
+    public synchronized long documentCount() {
+        extendTo(Long.MAX_VALUE);
+        return indexedDocuments;
+    }
+
+    /**
+     * Byte offset of a document, or -1 past the end of the file.
+     */
+    public long offsetOf(long documentNumber) {
+        long offset;
+        long current;
+        synchronized (this) {
+            extendTo(documentNumber);
+            if (documentNumber >= indexedDocuments && complete) return -1;
+            int checkpoint = (int) (documentNumber / CHECKPOINT_INTERVAL);
+            offset = checkpoints[checkpoint];
+            current = (long) checkpoint * CHECKPOINT_INTERVAL;
+        }
+        while (current < documentNumber) {
+            offset += length(offset);
+            current++;
+        }
+        return offset;
+    }
+
+    public RawBsonDocument read(long offset) {
+        int length = length(offset);
+        int segment = (int) (offset / SEGMENT);
+        byte[] bytes = new byte[length];
+        segments[segment].get((int) (offset - segment * SEGMENT), bytes);
+        return new RawBsonDocument(bytes);
+    }
+
+    /**
+     * Visit documents in file order starting at a document number until the visitor returns false.
+     */
+    public void forEach(long firstDocument, Predicate<RawBsonDocument> visitor) {
+        long documentNumber = firstDocument;
+        long offset = offsetOf(documentNumber);
+        while (offset >= 0) {
+            RawBsonDocument document = read(offset);
+            if (!visitor.test(document)) return;
+            offset += document.getByteBuffer().remaining();
+            if (!isIndexed(++documentNumber)) return;
+        }
+    }
+
+    private synchronized boolean isIndexed(long documentNumber) {
+        extendTo(documentNumber);
+        return documentNumber < indexedDocuments;
+    }
+
+    private int length(long offset) {
+        int segment = (int) (offset / SEGMENT);
+        return segments[segment].getInt((int) (offset - segment * SEGMENT));
+    }
+
+    // Hop along length prefixes until documentNumber is indexed or the file ends
+    private void extendTo(long documentNumber) {
+        while (!complete && indexedDocuments <= documentNumber) {
+            if (size - indexedOffset < 5) {
+                if (indexedOffset != size) error = "trailing " + (size - indexedOffset) + " bytes";
+                complete = true;
+                return;
+            }
+            int length = length(indexedOffset);
+            if (length < 5 || indexedOffset + length > size) {
+                error = "corrupt document length " + length + " at offset " + indexedOffset;
+                complete = true;
+                return;
+            }
+            indexedOffset += length;
+            indexedDocuments++;
+            if (indexedDocuments % CHECKPOINT_INTERVAL == 0) {
+                if (checkpointCount == checkpoints.length) {
+                    checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+                }
+                checkpoints[checkpointCount++] = indexedOffset;
+            }
+            if (indexedOffset == size) complete = true;
+        }
+    }
+}
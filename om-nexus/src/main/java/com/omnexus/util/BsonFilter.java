@@ -0,0 +1,189 @@
+package com.omnexus.util;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonNumber;
+import org.bson.BsonValue;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Small subset of the MongoDB query language evaluated directly against raw
+ * BSON documents: equality, $eq/$ne/$gt/$gte/$lt/$lte/$in/$nin/$exists,
+ * dotted paths, $and/$or, and array fields matching on any element. As in MongoDB,
+ * {field: null} also matches documents without the field.
+ */
+public class BsonFilter implements Predicate<BsonDocument> {
+    private static final Set<String> OPERATORS = Set.of("$eq", "$ne", "$gt", "$gte", "$lt", "$lte", "$in", "$nin", "$exists");
+
+    private final BsonDocument filter;
+
+    private BsonFilter(BsonDocument filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Parse an (extended) JSON filter; a blank filter matches everything. The whole filter is
+     * validated here, so an unsupported operator or malformed operand fails before a restore
+     * drops anything rather than at the first document.
+     *
+     * @throws IllegalArgumentException if the filter is not valid JSON or not supported
+     */
+    public static BsonFilter parse(String json) {
+        if (json == null || json.isBlank()) return new BsonFilter(new BsonDocument());
+        BsonDocument filter;
+        try {
+            filter = BsonDocument.parse(json);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid filter JSON: " + e.getMessage(), e);
+        }
+        validate(filter);
+        return new BsonFilter(filter);
+    }
+
+    public boolean isEmpty() {
+        return filter.isEmpty();
+    }
+
+    @Override
+    public boolean test(BsonDocument document) {
+        return matches(document, filter);
+    }
+
+    private static boolean matches(BsonDocument document, BsonDocument filter) {
+        for (Map.Entry<String, BsonValue> clause : filter.entrySet()) {
+            String key = clause.getKey();
+            BsonValue condition = clause.getValue();
+            boolean matched = switch (key) {
+                case "$and" -> condition.asArray().stream().allMatch(c -> matches(document, c.asDocument()));
+                case "$or" -> condition.asArray().stream().anyMatch(c -> matches(document, c.asDocument()));
+                default -> matchesField(lookup(document, key), condition);
+            };
+            if (!matched) return false;
+        }
+        return true;
+    }
+
+    private static void validate(BsonDocument filter) {
+        for (Map.Entry<String, BsonValue> clause : filter.entrySet()) {
+            String key = clause.getKey();
+            BsonValue condition = clause.getValue();
+            if (key.equals("$and") || key.equals("$or")) {
+                if (!condition.isArray() || condition.asArray().isEmpty()) {
+                    throw new IllegalArgumentException(key + " needs a non-empty array of filters");
+                }
+                for (BsonValue c : condition.asArray()) {
+                    if (!c.isDocument()) throw new IllegalArgumentException(key + " entries must be filter documents");
+                    validate(c.asDocument());
+                }
+            } else if (key.startsWith("$")) {
+                throw new IllegalArgumentException("Unsupported filter operator " + key);
+            } else if (isOperatorDocument(condition)) {
+                validateOperators(key, condition.asDocument());
+            }
+        }
+    }
+
+    private static void validateOperators(String field, BsonDocument operators) {
+        for (Map.Entry<String, BsonValue> operator : operators.entrySet()) {
+            String name = operator.getKey();
+            BsonValue operand = operator.getValue();
+            if (!OPERATORS.contains(name)) {
+                throw new IllegalArgumentException("Unsupported filter operator " + name + " on " + field);
+            }
+            if ((name.equals("$in") || name.equals("$nin")) && !operand.isArray()) {
+                throw new IllegalArgumentException(name + " on " + field + " needs an array");
+            }
+            if (name.equals("$exists") && !operand.isBoolean() && !operand.isNumber()) {
+                throw new IllegalArgumentException("$exists on " + field + " needs a boolean or number");
+            }
+        }
+    }
+
+    private static boolean matchesField(BsonValue value, BsonValue condition) {
+        if (!isOperatorDocument(condition)) {
+            return equalsAny(value, condition);
+        }
+        for (Map.Entry<String, BsonValue> operator : condition.asDocument().entrySet()) {
+            BsonValue operand = operator.getValue();
+            boolean matched = switch (operator.getKey()) {
+                case "$eq" -> equalsAny(value, operand);
+                case "$ne" -> !equalsAny(value, operand);
+                case "$gt" -> anyElement(value, v -> comparable(v, operand) && compare(v, operand) > 0);
+                case "$gte" -> anyElement(value, v -> comparable(v, operand) && compare(v, operand) >= 0);
+                case "$lt" -> anyElement(value, v -> comparable(v, operand) && compare(v, operand) < 0);
+                case "$lte" -> anyElement(value, v -> comparable(v, operand) && compare(v, operand) <= 0);
+                case "$in" -> operand.asArray().stream().anyMatch(o -> equalsAny(value, o));
+                case "$nin" -> operand.asArray().stream().noneMatch(o -> equalsAny(value, o));
+                case "$exists" -> (value != null) == truthy(operand);
+                default -> throw new IllegalArgumentException("Unsupported filter operator " + operator.getKey());
+            };
+            if (!matched) return false;
+        }
+        return true;
+    }
+
+    // A missing field equals null, as in MongoDB
+    private static boolean equalsAny(BsonValue value, BsonValue operand) {
+        if (value == null) return operand.isNull();
+        return anyElement(value, v -> compare(v, operand) == 0);
+    }
+
+    // $exists: 1 and $exists: 0 mean the same as true and false
+    private static boolean truthy(BsonValue operand) {
+        return operand.isBoolean() ? operand.asBoolean().getValue() : operand.asNumber().doubleValue() != 0;
+    }
+
+    // Any $-key makes it an operator document; mixing operators and fields is an error in MongoDB
+    private static boolean isOperatorDocument(BsonValue condition) {
+        return condition.isDocument() && condition.asDocument().keySet().stream().anyMatch(k -> k.startsWith("$"));
+    }
+
+    // Arrays match when the array itself or any of its elements does
+    private static boolean anyElement(BsonValue value, Predicate<BsonValue> predicate) {
+        if (value == null) return false;
+        if (predicate.test(value)) return true;
+        return value.isArray() && value.asArray().stream().anyMatch(predicate);
+    }
+
+    private static BsonValue lookup(BsonDocument document, String path) {
+        BsonValue current = document;
+        for (String part : path.split("\\.")) {
+            if (current == null) return null;
+            if (current.isDocument()) {
+                current = current.asDocument().get(part);
+            } else if (current.isArray() && part.chars().allMatch(Character::isDigit)) {
+                BsonArray array = current.asArray();
+                int index = Integer.parseInt(part);
+                current = index < array.size() ? array.get(index) : null;
+            } else {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    private static boolean comparable(BsonValue a, BsonValue b) {
+        return (a instanceof BsonNumber && b instanceof BsonNumber) || a.getBsonType() == b.getBsonType();
+    }
+
+    // Numbers compare by value across types; other types compare within their own type only
+    private static int compare(BsonValue a, BsonValue b) {
+        if (a instanceof BsonNumber x && b instanceof BsonNumber y) {
+            return Double.compare(x.doubleValue(), y.doubleValue());
+        }
+        if (a.getBsonType() != b.getBsonType()) {
+            return 1;
+        }
+        return switch (a.getBsonType()) {
+            case STRING -> a.asString().getValue().compareTo(b.asString().getValue());
+            case DATE_TIME -> Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+            case OBJECT_ID -> a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+            case BOOLEAN -> Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+            case TIMESTAMP -> a.asTimestamp().compareTo(b.asTimestamp());
+            default -> a.equals(b) ? 0 : 1;
+        };
+    }
+}
@@ -0,0 +1,177 @@
+package com.omnexus.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Checksums for dump files. Every file gets a SHA-256; .bson files also get a
+ * document count and an order-independent content hash (the sum of per-document
+ * hashes), which stays the same however the documents were split into ranges
+ * and can be recomputed from a live collection.
+ */
+public final class BsonIntegrity {
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final int MAX_DOCUMENT_SIZE = 48 * 1024 * 1024;
+    private static final int STREAM_BUFFER = 1024 * 1024;
+
+    /**
+     * Result of hashing one file. documents and contentHash are -1 for non-BSON files;
+     * error is set when the BSON framing is broken (e.g. a truncated file).
+     */
+    public record FileDigest(long size, String sha256, long documents, long contentHash, String error) {
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+
+    private BsonIntegrity() {
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    public static String hex(long value) {
+        return HexFormat.of().toHexDigits(value);
+    }
+
+    /**
+     * 64-bit hash of one BSON document, combined with others by addition. Uses the
+     * CRC32C and CRC32 intrinsics followed by a mixing step; the buffer position is not changed.
+     */
+    public static long documentHash(ByteBuffer document) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(document.duplicate());
+        CRC32 crc32 = new CRC32();
+        crc32.update(document.duplicate());
+        return mix((crc32c.getValue() << 32) | crc32.getValue());
+    }
+
+    // SplitMix64 finalizer so that sums of similar documents do not cancel out
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Hash a file through read-only memory maps. When bson is true the file is also
+     * walked document by document to count documents and build the content hash.
+     */
+    public static FileDigest scan(Path file, boolean bson) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long documents = 0;
+            long contentHash = 0;
+
+            while (position < size) {
+                long windowSize = Math.min(MAP_WINDOW, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                if (!bson) {
+                    digest.update(window);
+                    position += windowSize;
+                    continue;
+                }
+
+                // Consume whole documents only; a document crossing the window starts the next one
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                int offset = 0;
+                while (offset + 4 <= windowSize) {
+                    int length = window.getInt(offset);
+                    if (length < 5 || length > MAX_DOCUMENT_SIZE) {
+                        return new FileDigest(size, null, documents, contentHash,
+                                "invalid document length " + length + " at offset " + (position + offset));
+                    }
+                    if (offset + length > windowSize) break;
+                    ByteBuffer document = window.slice(offset, length);
+                    contentHash += documentHash(document);
+                    digest.update(document);
+                    documents++;
+                    offset += length;
+                }
+                if (offset == 0) {
+                    return new FileDigest(size, null, documents, contentHash,
+                            "truncated document at offset " + position);
+                }
+                position += offset;
+            }
+            return result(digest, size, bson, documents, contentHash);
+        }
+    }
+
+    /**
+     * Same as {@link #scan(Path, boolean)} for data that is not a single plain file,
+     * such as chunk-backed or archived files. The stream is not closed.
+     */
+    public static FileDigest scan(InputStream in, boolean bson) throws IOException {
+        MessageDigest digest = newDigest();
+        long size = 0;
+        if (!bson) {
+            byte[] buffer = new byte[STREAM_BUFFER];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+            return result(digest, size, false, -1, -1);
+        }
+
+        long documents = 0;
+        long contentHash = 0;
+        byte[] header = new byte[4];
+        byte[] document = new byte[STREAM_BUFFER];
+        while (true) {
+            int headerRead = in.readNBytes(header, 0, 4);
+            if (headerRead == 0) break;
+            if (headerRead < 4) {
+                return new FileDigest(size + headerRead, null, documents, contentHash, "truncated document at offset " + size);
+            }
+            int length = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            if (length < 5 || length > MAX_DOCUMENT_SIZE) {
+                return new FileDigest(size, null, documents, contentHash, "invalid document length " + length + " at offset " + size);
+            }
+            if (length > document.length) {
+                document = new byte[length];
+            }
+            System.arraycopy(header, 0, document, 0, 4);
+            int bodyRead = in.readNBytes(document, 4, length - 4);
+            if (bodyRead < length - 4) {
+                return new FileDigest(size + 4 + bodyRead, null, documents, contentHash, "truncated document at offset " + size);
+            }
+            ByteBuffer view = ByteBuffer.wrap(document, 0, length);
+            contentHash += documentHash(view);
+            digest.update(document, 0, length);
+            documents++;
+            size += length;
+        }
+        return result(digest, size, true, documents, contentHash);
+    }
+
+    private static FileDigest result(MessageDigest digest, long size, boolean bson, long documents, long contentHash) {
+        String sha256 = hex(digest.digest());
+        return bson
+                ? new FileDigest(size, sha256, documents, contentHash, null)
+                : new FileDigest(size, sha256, -1, -1, null);
+    }
+}
@@ -0,0 +1,479 @@
+package com.omnexus.util;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * In-process replacement for mongorestore that reads dump entries from a stream
+ * (a .tar.gz or .zip being decompressed, chunk-store files, ...). One thread
+ * decompresses and frames documents into batches on a bounded queue while a
+ * pool of workers inserts them, so decompression and loading overlap and
+ * nothing is extracted to disk. Indexes are built once the data is in.
+ */
+public class BsonRestoreEngine {
+    private static final int BATCH_DOCUMENTS = 1000;
+    private static final int BATCH_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_DOCUMENT_SIZE = 48 * 1024 * 1024;
+    private static final int DUPLICATE_KEY = 11000;
+    private static final Batch POISON = new Batch(null, null, List.of(), 0);
+
+    private final String host;
+    private final int port;
+    private final int parallelism;
+    private final Map<String, CollectionCounters> counters = new ConcurrentHashMap<>();
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private Function<String, String> namespaceMapper = Function.identity();
+    private Predicate<? super RawBsonDocument> documentFilter;
+    private volatile ProgressListener progressListener;
+    private final Map<String, String> targets = new LinkedHashMap<>(); // name -> connection string
+    private BiFunction<String, RawBsonDocument, String> router;
+    private Set<String> presharded = Set.of();
+
+    /**
+     * Feeds dump entries to the engine one at a time, in archive order.
+     */
+    public interface DumpSource {
+        void forEachEntry(EntryVisitor visitor) throws IOException;
+    }
+
+    public interface EntryVisitor {
+        void visit(String path, InputStream in) throws IOException;
+    }
+
+    /**
+     * Opens the raw bytes of an archive, e.g. a local file or an object store download.
+     */
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    public interface ProgressListener {
+        void onCollectionProgress(CollectionCounters counters);
+    }
+
+    public static class CollectionCounters {
+        private final String namespace; // target namespace
+        private final String sourceNamespace;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong documents = new AtomicLong();
+        private final AtomicLong duplicates = new AtomicLong();
+        private final AtomicLong filtered = new AtomicLong();
+        private volatile boolean complete;
+
+        public CollectionCounters(String sourceNamespace, String namespace) {
+            this.sourceNamespace = sourceNamespace;
+            this.namespace = namespace;
+        }
+
+        public String getNamespace() { return namespace; }
+        public String getSourceNamespace() { return sourceNamespace; }
+        public long getBytes() { return bytes.get(); }
+        public long getDocuments() { return documents.get(); }
+        public long getDuplicates() { return duplicates.get(); }
+        public long getFiltered() { return filtered.get(); }
+        public boolean isComplete() { return complete; }
+
+        public Map<String, Object> toMap() {
+            return Map.of("namespace", namespace, "source", sourceNamespace, "documents", getDocuments(),
+                    "bytes", getBytes(), "duplicates", getDuplicates(), "filtered", getFiltered(), "complete", complete);
+        }
+    }
+
+    private record Batch(CollectionCounters counters, String target, List<RawBsonDocument> documents, long bytes) {}
+
+    // Documents read for one target while a collection is being framed
+    private static class PendingBatch {
+        List<RawBsonDocument> documents = new ArrayList<>(BATCH_DOCUMENTS);
+        long bytes;
+    }
+
+    public BsonRestoreEngine(String host, int port, int parallelism) {
+        this.host = host;
+        this.port = port;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Maps a source namespace ("db.coll") to the namespace to restore into, or null to skip it.
+     */
+    public void setNamespaceMapper(Function<String, String> namespaceMapper) {
+        this.namespaceMapper = namespaceMapper;
+    }
+
+    /**
+     * Only documents accepted by the filter are inserted; null restores everything.
+     */
+    public void setDocumentFilter(Predicate<? super RawBsonDocument> documentFilter) {
+        this.documentFilter = documentFilter;
+    }
+
+    /**
+     * Extra insert destination (e.g. a shard's replica set) that the router can send documents to.
+     */
+    public void addTarget(String name, String connectionString) {
+        targets.put(name, connectionString);
+    }
+
+    /**
+     * Picks the target of each document from its target namespace; null keeps it on the default connection.
+     * Collection set-up and index builds always use the default connection.
+     */
+    public void setRouter(BiFunction<String, RawBsonDocument, String> router) {
+        this.router = router;
+    }
+
+    /**
+     * Namespaces that were created (and sharded) before the restore; they are neither dropped nor re-created.
+     */
+    public void setPresharded(Set<String> presharded) {
+        this.presharded = presharded;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public Map<String, CollectionCounters> getCounters() {
+        return counters;
+    }
+
+    /**
+     * Why the last restore failed: aborted loads and options or indexes that could not be applied.
+     */
+    public List<String> getErrors() {
+        return List.copyOf(errors);
+    }
+
+    public static DumpSource tarGz(Path archive) {
+        return tarGz(() -> Files.newInputStream(archive));
+    }
+
+    public static DumpSource tarGz(StreamOpener archive) {
+        return visitor -> {
+            try (InputStream in = new GZIPInputStream(archive.open(), 1 << 16)) {
+                TarStreamReader tar = new TarStreamReader(in);
+                TarStreamReader.Entry entry;
+                while ((entry = tar.next()) != null) {
+                    if (entry.regularFile()) {
+                        visitor.visit(entry.name(), tar.entryStream());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Files of a dump directory whose namespace is accepted, metadata first. Other files are never opened.
+     */
+    public static DumpSource directory(Path dumpPath, Predicate<String> includeNamespace) {
+        return visitor -> {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(dumpPath)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(file -> {
+                            String name = file.getFileName().toString();
+                            String namespace = namespaceOf(dumpPath.relativize(file).toString(), name.endsWith(".bson") ? ".bson" : ".metadata.json");
+                            return namespace != null && includeNamespace.test(namespace);
+                        })
+                        .sorted(Comparator.comparing((Path file) -> !file.getFileName().toString().endsWith(".metadata.json"))
+                                .thenComparing(Comparator.naturalOrder()))
+                        .toList();
+            }
+            for (Path file : files) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+                    visitor.visit(dumpPath.relativize(file).toString(), in);
+                }
+            }
+        };
+    }
+
+    public static DumpSource zip(Path archive) {
+        return zip(() -> Files.newInputStream(archive));
+    }
+
+    public static DumpSource zip(StreamOpener archive) {
+        return visitor -> {
+            try (ZipInputStream in = new ZipInputStream(new BufferedInputStream(archive.open(), 1 << 16))) {
+                ZipEntry entry;
+                while ((entry = in.getNextEntry()) != null) {
+                    if (!entry.isDirectory()) {
+                        visitor.visit(entry.getName(), in);
+                    }
+                    in.closeEntry();
+                }
+            }
+        };
+    }
+
+    /**
+     * Source namespace of a dump entry path such as "dump/shop/orders.bson": the parent
+     * directory is the database. Returns null for entries that are not collection files.
+     */
+    public static String namespaceOf(String path, String suffix) {
+        String normalized = path.replace('\\', '/');
+        if (!normalized.endsWith(suffix)) return null;
+        String[] parts = normalized.split("/");
+        if (parts.length < 2) return null;
+        String file = parts[parts.length - 1];
+        return parts[parts.length - 2] + "." + file.substring(0, file.length() - suffix.length());
+    }
+
+    /**
+     * Restore everything the source yields. Returns false if any collection failed, including
+     * collections whose options or indexes could not be applied; getErrors() says why.
+     */
+    public boolean restore(DumpSource source, boolean drop) {
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Map<String, Document> metadata = new LinkedHashMap<>();
+        Set<String> prepared = new HashSet<>();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        long start = System.currentTimeMillis();
+
+        Map<String, MongoClient> targetClients = new HashMap<>();
+        try (MongoClient client = MongoConnectionUtil.createClient("mongodb://" + host + ":" + port + "/?serverSelectionTimeoutMS=10000")) {
+            targets.forEach((name, connectionString) -> targetClients.put(name, MongoConnectionUtil.createClient(connectionString)));
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(pool.submit(() -> {
+                    insertLoop(client, targetClients, queue, failure);
+                    return null;
+                }));
+            }
+
+            try {
+                source.forEachEntry((path, in) -> {
+                    if (failure.get() != null) {
+                        throw new IOException("Aborting restore: " + failure.get().getMessage(), failure.get());
+                    }
+                    String metadataNs = namespaceOf(path, ".metadata.json");
+                    String bsonNs = namespaceOf(path, ".bson");
+                    if (metadataNs != null) {
+                        String target = namespaceMapper.apply(metadataNs);
+                        if (target == null) return;
+                        Document meta = Document.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                        metadata.put(target, meta);
+                        if (prepared.add(target)) {
+                            prepareCollection(client, target, meta, drop);
+                        } else if (hasOptions(meta)) {
+                            error("Options of " + target + " arrived after its data and were not applied");
+                        }
+                    } else if (bsonNs != null) {
+                        String target = namespaceMapper.apply(bsonNs);
+                        if (target == null) return;
+                        if (prepared.add(target)) {
+                            prepareCollection(client, target, null, drop);
+                        }
+                        CollectionCounters collectionCounters = counters.computeIfAbsent(target, ns -> new CollectionCounters(bsonNs, ns));
+                        readDocuments(in, collectionCounters, queue, failure);
+                    }
+                });
+            } finally {
+                for (int i = 0; i < parallelism; i++) {
+                    queue.put(POISON);
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            }
+            if (failure.get() != null) {
+                throw new IOException(failure.get().getMessage(), failure.get());
+            }
+
+            counters.values().forEach(collectionCounters -> {
+                collectionCounters.complete = true;
+                notifyProgress(collectionCounters);
+            });
+            metadata.forEach((namespace, meta) -> createIndexes(client, namespace, meta));
+
+            long totalDocs = counters.values().stream().mapToLong(CollectionCounters::getDocuments).sum();
+            System.out.println("Native restore into " + host + ":" + port + " finished: " + counters.size() + " collections, "
+                    + totalDocs + " documents in " + (System.currentTimeMillis() - start) + " ms");
+            return errors.isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error("Native restore into " + host + ":" + port + " was interrupted");
+            return false;
+        } catch (Exception e) {
+            error("Native restore into " + host + ":" + port + " failed: " + e.getMessage());
+            return false;
+        } finally {
+            pool.shutdownNow();
+            targetClients.values().forEach(MongoClient::close);
+        }
+    }
+
+    private void readDocuments(InputStream in, CollectionCounters collectionCounters, BlockingQueue<Batch> queue,
+                               AtomicReference<Throwable> failure) throws IOException {
+        byte[] header = new byte[4];
+        Map<String, PendingBatch> pending = new HashMap<>();
+        try {
+            while (failure.get() == null) {
+                int headerRead = in.readNBytes(header, 0, 4);
+                if (headerRead == 0) break;
+                int length = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                if (headerRead < 4 || length < 5 || length > MAX_DOCUMENT_SIZE) {
+                    throw new IOException("Corrupt document in " + collectionCounters.getSourceNamespace());
+                }
+                byte[] document = new byte[length];
+                System.arraycopy(header, 0, document, 0, 4);
+                if (in.readNBytes(document, 4, length - 4) < length - 4) {
+                    throw new IOException("Truncated document in " + collectionCounters.getSourceNamespace());
+                }
+                RawBsonDocument parsed = new RawBsonDocument(document);
+                if (documentFilter != null && !documentFilter.test(parsed)) {
+                    collectionCounters.filtered.incrementAndGet();
+                    collectionCounters.bytes.addAndGet(length);
+                    continue;
+                }
+                String target = router != null ? router.apply(collectionCounters.getNamespace(), parsed) : null;
+                PendingBatch batch = pending.computeIfAbsent(target, t -> new PendingBatch());
+                batch.documents.add(parsed);
+                batch.bytes += length;
+                if (batch.documents.size() >= BATCH_DOCUMENTS || batch.bytes >= BATCH_BYTES) {
+                    queue.put(new Batch(collectionCounters, target, batch.documents, batch.bytes));
+                    pending.remove(target);
+                }
+            }
+            for (Map.Entry<String, PendingBatch> batch : pending.entrySet()) {
+                queue.put(new Batch(collectionCounters, batch.getKey(), batch.getValue().documents, batch.getValue().bytes));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + collectionCounters.getSourceNamespace(), e);
+        }
+    }
+
+    private void insertLoop(MongoClient client, Map<String, MongoClient> targetClients, BlockingQueue<Batch> queue,
+                            AtomicReference<Throwable> failure) throws InterruptedException {
+        while (true) {
+            Batch batch = queue.take();
+            if (batch == POISON) return;
+            if (failure.get() != null) continue; // drain so the reader never blocks
+
+            CollectionCounters collectionCounters = batch.counters();
+            try {
+                MongoClient destination = batch.target() != null ? targetClients.getOrDefault(batch.target(), client) : client;
+                collection(destination, collectionCounters.getNamespace())
+                        .insertMany(batch.documents(), new InsertManyOptions().ordered(false).bypassDocumentValidation(true));
+                collectionCounters.documents.addAndGet(batch.documents().size());
+            } catch (MongoBulkWriteException e) {
+                // Like mongorestore, documents whose _id already exists are skipped
+                List<BulkWriteError> errors = e.getWriteErrors();
+                if (errors.stream().anyMatch(error -> error.getCode() != DUPLICATE_KEY)) {
+                    failure.compareAndSet(null, e);
+                    continue;
+                }
+                collectionCounters.documents.addAndGet(batch.documents().size() - errors.size());
+                collectionCounters.duplicates.addAndGet(errors.size());
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                continue;
+            }
+            collectionCounters.bytes.addAndGet(batch.bytes());
+            notifyProgress(collectionCounters);
+        }
+    }
+
+    // Drop (if asked) and create the collection with its dump options before any data arrives
+    private void prepareCollection(MongoClient client, String namespace, Document meta, boolean drop) {
+        if (presharded.contains(namespace)) return;
+        MongoCollection<RawBsonDocument> collection = collection(client, namespace);
+        if (drop) {
+            collection.drop();
+        }
+        if (meta != null && hasOptions(meta)) {
+            MongoDatabase db = client.getDatabase(namespace.substring(0, namespace.indexOf('.')));
+            String name = namespace.substring(namespace.indexOf('.') + 1);
+            // Like mongorestore without --drop, an existing collection or view keeps its own options
+            if (!drop && db.listCollections().filter(new Document("name", name)).first() != null) return;
+            Document create = new Document("create", name);
+            create.putAll(meta.get("options", Document.class));
+            try {
+                db.runCommand(create);
+            } catch (Exception e) {
+                error("Could not create " + namespace + " with its options: " + e.getMessage());
+            }
+        }
+    }
+
+    private void createIndexes(MongoClient client, String namespace, Document meta) {
+        List<Document> indexes = new ArrayList<>();
+        for (Object index : meta.getList("indexes", Object.class, List.of())) {
+            if (index instanceof Document spec && !"_id_".equals(spec.getString("name"))) {
+                Document copy = new Document(spec);
+                copy.remove("ns");
+                copy.remove("v");
+                indexes.add(copy);
+            }
+        }
+        if (indexes.isEmpty()) return;
+        MongoDatabase db = client.getDatabase(namespace.substring(0, namespace.indexOf('.')));
+        try {
+            db.runCommand(new Document("createIndexes", namespace.substring(namespace.indexOf('.') + 1)).append("indexes", indexes));
+        } catch (Exception e) {
+            error("Could not build indexes of " + namespace + ": " + e.getMessage());
+        }
+    }
+
+    private void error(String message) {
+        System.err.println(message);
+        errors.add(message);
+    }
+
+    private static boolean hasOptions(Document meta) {
+        Document options = meta.get("options", Document.class);
+        return options != null && !options.isEmpty();
+    }
+
+    private MongoCollection<RawBsonDocument> collection(MongoClient client, String namespace) {
+        int dot = namespace.indexOf('.');
+        return client.getDatabase(namespace.substring(0, dot)).getCollection(namespace.substring(dot + 1), RawBsonDocument.class);
+    }
+
+    private void notifyProgress(CollectionCounters collectionCounters) {
+        ProgressListener listener = progressListener;
+        if (listener != null) {
+            listener.onCollectionProgress(collectionCounters);
+        }
+    }
+}
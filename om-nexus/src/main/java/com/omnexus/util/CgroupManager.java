@@ -0,0 +1,214 @@
+package com.omnexus.util;
+
+import com.omnexus.model.ResourceProfile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts each node's process in its own cgroup v2 group under one OM Nexus parent group
+ * (/sys/fs/cgroup/omnexus by default) and writes the node's ResourceProfile to cpu.max,
+ * memory.max, io.weight and cpuset.cpus. The parent must be writable: run as root or under
+ * a systemd unit with Delegate=yes. Without cgroup v2, CPU affinity falls back to taskset
+ * and the other limits are skipped. A mongod is launched inside its group (see launchCommand),
+ * so whatever it sizes at startup, like the WiredTiger cache, already sees the limits.
+ */
+public class CgroupManager {
+    private static final long CPU_PERIOD_US = 100_000;
+    private static final List<String> CONTROLLERS = List.of("cpu", "memory", "io", "cpuset");
+
+    private static volatile boolean enabled = true;
+    private static volatile Path root = Paths.get("/sys/fs/cgroup/omnexus");
+
+    public static void configure(boolean enable, String rootPath) {
+        enabled = enable;
+        root = Paths.get(rootPath);
+    }
+
+    /**
+     * Whether limits can be enforced: enabled, and the parent of the group root is a cgroup v2 directory.
+     */
+    public static boolean isSupported() {
+        return enabled && root.getParent() != null && Files.exists(root.getParent().resolve("cgroup.controllers"));
+    }
+
+    /**
+     * Write the profile to the node's group and move the process into it. Returns what was
+     * applied and what was not, with reasons; a null profile clears the limits.
+     */
+    public static Map<String, Object> apply(String nodeId, long pid, ResourceProfile profile) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+        ResourceProfile p = profile != null ? profile : new ResourceProfile();
+        if (!isSupported()) {
+            result.put("cgroup", false);
+            if (enabled) skipped.add("cgroup v2 not available at " + root.getParent());
+            if (p.getCpus() != null && !p.getCpus().isBlank()) {
+                result.put("cpus", setAffinity(pid, p.getCpus()) ? p.getCpus() : "failed");
+            }
+            if (p.getCpuPercent() != null || p.getMemoryMaxMb() != null || p.getIoWeight() != null) {
+                skipped.add("cpuPercent, memoryMaxMb and ioWeight need cgroup v2");
+            }
+            result.put("skipped", skipped);
+            return result;
+        }
+
+        Path group = writeGroup(nodeId, p, result, skipped);
+        if (group != null && pid > 0) {
+            write(group, "cgroup.procs", String.valueOf(pid), true, skipped);
+        }
+        result.put("skipped", skipped);
+        return result;
+    }
+
+    /**
+     * Create the node's group and write the profile to it before its process starts, for
+     * launchCommand. Returns null without cgroup v2; then apply after the start instead.
+     */
+    public static Map<String, Object> prepare(String nodeId, ResourceProfile profile) {
+        if (!isSupported()) return null;
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<String> skipped = new ArrayList<>();
+        writeGroup(nodeId, profile != null ? profile : new ResourceProfile(), result, skipped);
+        result.put("skipped", skipped);
+        return result;
+    }
+
+    // The group with the profile's limits, or null if it cannot be created
+    private static Path writeGroup(String nodeId, ResourceProfile p, Map<String, Object> result, List<String> skipped) {
+        Path group = root.resolve(groupName(nodeId));
+        try {
+            ensureParent();
+            Files.createDirectories(group);
+        } catch (IOException e) {
+            result.put("cgroup", false);
+            skipped.add("cannot create " + group + ": " + e.getMessage());
+            return null;
+        }
+        result.put("cgroup", group.toString());
+        boolean cpuLimited = p.getCpuPercent() != null && p.getCpuPercent() > 0;
+        boolean memoryLimited = p.getMemoryMaxMb() != null && p.getMemoryMaxMb() > 0;
+        boolean pinned = p.getCpus() != null && !p.getCpus().isBlank();
+        write(group, "cpu.max", cpuLimited ? (p.getCpuPercent() * CPU_PERIOD_US / 100) + " " + CPU_PERIOD_US : "max " + CPU_PERIOD_US,
+                cpuLimited, skipped);
+        write(group, "memory.max", memoryLimited ? String.valueOf(p.getMemoryMaxMb() * 1024 * 1024) : "max", memoryLimited, skipped);
+        write(group, "io.weight", "default " + (p.getIoWeight() != null ? Math.max(1, Math.min(10000, p.getIoWeight())) : 100),
+                p.getIoWeight() != null, skipped);
+        // An empty cpuset.cpus inherits the parent's CPUs
+        write(group, "cpuset.cpus", pinned ? p.getCpus().trim() : "", pinned, skipped);
+        return group;
+    }
+
+    /**
+     * The command wrapped in a shell that moves itself into the group and then execs it, so
+     * the process keeps the shell's PID and runs inside the group from its first instruction.
+     * If the group cannot be joined, the process still starts and says why in its output.
+     */
+    public static List<String> launchCommand(String group, List<String> command) {
+        List<String> wrapped = new ArrayList<>(List.of("/bin/sh", "-c",
+                "echo $$ > \"$0\" || echo \"could not join cgroup $0\" >&2; exec \"$@\"",
+                Paths.get(group, "cgroup.procs").toString()));
+        wrapped.addAll(command);
+        return wrapped;
+    }
+
+    /**
+     * Current limits and usage of the node's group, or null if it has none.
+     */
+    public static Map<String, Object> read(String nodeId) {
+        Path group = root.resolve(groupName(nodeId));
+        if (!isSupported() || !Files.isDirectory(group)) return null;
+        Map<String, Object> state = new LinkedHashMap<>();
+        for (String file : List.of("cpu.max", "memory.max", "memory.current", "memory.peak", "io.weight", "cpuset.cpus.effective", "cgroup.procs")) {
+            try {
+                state.put(file, Files.readString(group.resolve(file)).trim());
+            } catch (IOException e) {
+                // Controller not enabled for the group
+            }
+        }
+        try {
+            // nr_throttled / throttled_usec show how often the CPU quota bit
+            for (String line : Files.readAllLines(group.resolve("cpu.stat"))) {
+                String[] kv = line.split(" ");
+                if (kv.length == 2 && (kv[0].startsWith("nr_") || kv[0].startsWith("throttled"))) {
+                    state.put("cpu.stat." + kv[0], Long.parseLong(kv[1]));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // No cpu controller
+        }
+        return state;
+    }
+
+    /**
+     * Remove the node's group once its process is gone; a group with processes left is kept.
+     */
+    public static void release(String nodeId) {
+        if (!isSupported()) return;
+        try {
+            Files.deleteIfExists(root.resolve(groupName(nodeId)));
+        } catch (IOException e) {
+            // Still populated, or already gone
+        }
+    }
+
+    // Controllers have to be enabled top-down before child groups get their interface files
+    private static void ensureParent() throws IOException {
+        Files.createDirectories(root);
+        enableControllers(root.getParent());
+        enableControllers(root);
+    }
+
+    private static void enableControllers(Path dir) {
+        try {
+            String available = Files.readString(dir.resolve("cgroup.controllers"));
+            for (String controller : CONTROLLERS) {
+                if (available.contains(controller)) {
+                    try {
+                        Files.writeString(dir.resolve("cgroup.subtree_control"), "+" + controller);
+                    } catch (IOException e) {
+                        // Not delegated to us; the matching limit files are then missing and reported
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Not a cgroup directory
+        }
+    }
+
+    // Resetting a limit whose controller is not enabled is not worth reporting
+    private static void write(Path group, String file, String value, boolean requested, List<String> skipped) {
+        Path path = group.resolve(file);
+        if (!requested && !Files.exists(path)) return;
+        try {
+            Files.writeString(path, value);
+        } catch (IOException e) {
+            skipped.add(file + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean setAffinity(long pid, String cpus) {
+        if (pid <= 0) return false;
+        try {
+            // -a covers all threads of the running process
+            Process process = new ProcessBuilder("taskset", "-a", "-cp", cpus, String.valueOf(pid))
+                    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String groupName(String nodeId) {
+        return nodeId.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+}
@@ -0,0 +1,90 @@
+package com.omnexus.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Splits a stream into content-defined chunks using a gear rolling hash
+ * (FastCDC style, with normalized chunking around the average size).
+ * Boundaries depend only on the bytes around them, so an insert or update
+ * in one part of a BSON file leaves the chunks of the rest of the file unchanged.
+ */
+public class ContentDefinedChunker {
+    public static final int MIN_SIZE = 256 * 1024;
+    public static final int AVG_SIZE = 1024 * 1024;
+    public static final int MAX_SIZE = 4 * 1024 * 1024;
+
+    // Stricter mask before the average size, looser after it (normalized chunking)
+    private static final long MASK_SMALL = -1L << (64 - 22);
+    private static final long MASK_LARGE = -1L << (64 - 18);
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: chunk boundaries must be identical between runs
+        SplittableRandom random = new SplittableRandom(0x6f6d2d6e65787573L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[MAX_SIZE];
+    private int filled = 0;
+    private boolean eof = false;
+
+    public ContentDefinedChunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the next chunk, or null once the stream is exhausted.
+     */
+    public byte[] nextChunk() throws IOException {
+        fill();
+        if (filled == 0) {
+            return null;
+        }
+
+        int cut = findBoundary(filled);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+        filled -= cut;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        while (!eof && filled < buffer.length) {
+            int read = in.read(buffer, filled, buffer.length - filled);
+            if (read < 0) {
+                eof = true;
+            } else {
+                filled += read;
+            }
+        }
+    }
+
+    private int findBoundary(int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        long hash = 0;
+        int normal = Math.min(AVG_SIZE, length);
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,151 @@
+package com.omnexus.util;
+
+import com.omnexus.model.ClusterConfig;
+import com.omnexus.model.ClusterTuning;
+import com.omnexus.model.NodeInfo;
+import com.omnexus.model.ProcessRecord;
+import com.omnexus.model.TuningProfile;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a node's tuning profile into mongod command-line options. Left alone, every mongod
+ * sizes its WiredTiger cache at 50% of (RAM - 1 GB) as if it had the host to itself; with
+ * splitCache that budget is divided among the cluster's mongods and the other clusters' running
+ * ones, as all of them share the host. The cache of a node with
+ * memoryMaxMb is always capped at 50% of (limit - 1 GB) here, explicit sizes included, as
+ * mongod only derives its default from the limit and the limit needs cgroup v2.
+ */
+public class MongodTuning {
+    private static final double MIN_CACHE_GB = 0.25; // mongod's lower bound
+    private static final Set<String> COMPRESSORS = Set.of("snappy", "zstd", "zlib", "none");
+
+    /**
+     * The profile a node starts with: its own choice, else its type's, else none.
+     */
+    public static TuningProfile profileFor(ClusterConfig config, NodeInfo node) {
+        ClusterTuning tuning = config.getTuning();
+        if (tuning == null || tuning.getProfiles() == null) return null;
+        String name = node.getTuningProfile() != null ? node.getTuningProfile()
+                : tuning.getByType() != null ? tuning.getByType().get(node.getType()) : null;
+        return name != null ? tuning.getProfiles().get(name) : null;
+    }
+
+    /**
+     * Extra mongod options for the node; invalid values are left out with a warning.
+     */
+    public static List<String> args(ClusterConfig config, NodeInfo node) {
+        List<String> args = new ArrayList<>();
+        if ("mongos".equals(node.getType())) return args;
+        TuningProfile profile = profileFor(config, node);
+
+        Double cacheGB = profile != null ? profile.getCacheSizeGB() : null;
+        if (cacheGB == null && config.getTuning() != null && config.getTuning().isSplitCache()) {
+            cacheGB = splitCacheGB(config);
+        }
+        Double limitGB = memoryLimitCacheGB(node);
+        if (limitGB != null && (cacheGB == null || cacheGB <= 0 || cacheGB > limitGB)) {
+            if (cacheGB != null && cacheGB > limitGB) {
+                System.err.println("Capping cacheSizeGB of " + node.getNodeId() + " at " + limitGB + " to fit memoryMaxMb");
+            }
+            cacheGB = limitGB;
+        }
+        if (cacheGB != null && cacheGB > 0) {
+            args.add("--wiredTigerCacheSizeGB");
+            args.add(String.format(Locale.ROOT, "%.2f", Math.max(MIN_CACHE_GB, cacheGB)));
+        }
+        if (profile == null) return args;
+
+        String compressor = profile.getBlockCompressor();
+        if (compressor != null) {
+            if (COMPRESSORS.contains(compressor.toLowerCase(Locale.ROOT))) {
+                args.add("--wiredTigerCollectionBlockCompressor");
+                args.add(compressor.toLowerCase(Locale.ROOT));
+            } else {
+                System.err.println("Ignoring unknown block compressor for " + node.getNodeId() + ": " + compressor);
+            }
+        }
+        Integer journal = profile.getJournalCommitIntervalMs();
+        if (journal != null) {
+            if (journal >= 1 && journal <= 500) {
+                args.add("--journalCommitInterval");
+                args.add(String.valueOf(journal));
+            } else {
+                System.err.println("Ignoring journalCommitIntervalMs outside 1-500 for " + node.getNodeId() + ": " + journal);
+            }
+        }
+        if (profile.getOplogSizeMB() != null && profile.getOplogSizeMB() > 0) {
+            args.add("--oplogSize");
+            args.add(String.valueOf(profile.getOplogSizeMB()));
+        }
+        if (profile.getSetParameters() != null) {
+            for (Map.Entry<String, String> parameter : profile.getSetParameters().entrySet()) {
+                String name = parameter.getKey();
+                if (name == null || !name.matches("[A-Za-z0-9_.]+") || parameter.getValue() == null) {
+                    System.err.println("Ignoring invalid setParameter for " + node.getNodeId() + ": " + name);
+                    continue;
+                }
+                args.add("--setParameter");
+                args.add(name + "=" + parameter.getValue());
+            }
+        }
+        return args;
+    }
+
+    // mongod's default budget shared by every mongod of the cluster, running or not, and every
+    // running mongod of other clusters; these are told apart by data path, as node ids repeat
+    private static double splitCacheGB(ClusterConfig config) {
+        Set<String> own = new HashSet<>();
+        for (NodeInfo n : config.getNodes()) {
+            if (!"mongos".equals(n.getType())) own.add(normalize(n.getDataPath()));
+        }
+        long mongods = config.getNodes().stream().filter(n -> !"mongos".equals(n.getType())).count();
+        Map<String, ProcessRecord> records = ProcessRegistry.all();
+        for (Map.Entry<String, ProcessHandle> running : ProcessManager.runningProcesses().entrySet()) {
+            ProcessRecord record = records.get(running.getKey());
+            if (record != null && record.getDataPath() != null && !"mongos".equals(record.getType())
+                    && running.getValue().isAlive() && !own.contains(normalize(record.getDataPath()))) {
+                mongods++;
+            }
+        }
+        double budget = 0.5 * (totalMemoryGB() - 1);
+        return roundDown(budget / Math.max(1, mongods));
+    }
+
+    private static String normalize(String path) {
+        try {
+            return Paths.get(path).toAbsolutePath().normalize().toString();
+        } catch (InvalidPathException e) {
+            return path;
+        }
+    }
+
+    // What mongod would choose if it saw the node's memory limit, or null without one
+    private static Double memoryLimitCacheGB(NodeInfo node) {
+        if (node.getResources() == null || node.getResources().getMemoryMaxMb() == null || node.getResources().getMemoryMaxMb() <= 0) {
+            return null;
+        }
+        return roundDown(0.5 * (node.getResources().getMemoryMaxMb() / 1024.0 - 1));
+    }
+
+    // Round down to 50 MB steps so restarts with the same inputs give the same option
+    private static double roundDown(double gb) {
+        return Math.max(MIN_CACHE_GB, Math.floor(gb * 20) / 20);
+    }
+
+    // The container's limit when the JVM runs in one
+    private static double totalMemoryGB() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getTotalMemorySize() / (1024.0 * 1024 * 1024);
+        }
+        return 2; // unknown: leaves mongod its minimum cache
+    }
+}
@@ -0,0 +1,128 @@
+package com.omnexus.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Finds the processes listening on TCP ports by reading /proc instead of running
+ * netstat or lsof: /proc/net/tcp{,6} maps listening ports to socket inodes and
+ * /proc/&lt;pid&gt;/fd links name the inodes each process holds. One pass covers any
+ * number of ports. Linux only; processes of other users are invisible without root.
+ */
+public class PortOwnerResolver {
+    private static final Path PROC = Paths.get("/proc");
+    private static final List<String> TCP_TABLES = List.of("net/tcp", "net/tcp6");
+    private static final String LISTEN = "0A";
+
+    public static boolean isSupported() {
+        return Files.isReadable(PROC.resolve("net/tcp"));
+    }
+
+    /**
+     * PIDs listening on each of the given ports; ports nobody listens on are absent.
+     */
+    public static Map<Integer, Set<Long>> listeningPids(Collection<Integer> ports) throws IOException {
+        return listeningPids(PROC, ports);
+    }
+
+    // proc is /proc, or a copy of its layout in tests
+    static Map<Integer, Set<Long>> listeningPids(Path proc, Collection<Integer> ports) throws IOException {
+        Map<Long, Integer> portByInode = listeningInodes(proc, new HashSet<>(ports));
+        Map<Integer, Set<Long>> pids = new TreeMap<>();
+        if (portByInode.isEmpty()) return pids;
+
+        try (DirectoryStream<Path> processes = Files.newDirectoryStream(proc, path -> isNumeric(path.getFileName().toString()))) {
+            for (Path process : processes) {
+                long pid = Long.parseLong(process.getFileName().toString());
+                try (DirectoryStream<Path> fds = Files.newDirectoryStream(process.resolve("fd"))) {
+                    for (Path fd : fds) {
+                        Long inode = socketInode(fd);
+                        Integer port = inode != null ? portByInode.get(inode) : null;
+                        if (port != null) {
+                            pids.computeIfAbsent(port, p -> new HashSet<>()).add(pid);
+                        }
+                    }
+                } catch (IOException | SecurityException e) {
+                    // Exited meanwhile, or owned by another user
+                }
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Every port with a listening TCP socket, IPv4 or IPv6. Only the socket tables are read, so
+     * this also sees the sockets of other users.
+     */
+    public static Set<Integer> listeningPorts() throws IOException {
+        return listeningPorts(PROC);
+    }
+
+    static Set<Integer> listeningPorts(Path proc) throws IOException {
+        Set<Integer> ports = new HashSet<>();
+        for (String table : TCP_TABLES) {
+            Path path = proc.resolve(table);
+            if (!Files.isReadable(path)) continue;
+            List<String> lines = Files.readAllLines(path);
+            for (int i = 1; i < lines.size(); i++) {
+                String[] fields = lines.get(i).trim().split("\\s+");
+                if (fields.length < 4 || !LISTEN.equals(fields[3])) continue;
+                ports.add(Integer.parseInt(fields[1].substring(fields[1].indexOf(':') + 1), 16));
+            }
+        }
+        return ports;
+    }
+
+    // inode -> port of every listening socket on one of the ports
+    private static Map<Long, Integer> listeningInodes(Path proc, Set<Integer> ports) throws IOException {
+        Map<Long, Integer> inodes = new HashMap<>();
+        for (String table : TCP_TABLES) {
+            Path path = proc.resolve(table);
+            if (!Files.isReadable(path)) continue;
+            List<String> lines = Files.readAllLines(path);
+            // "sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode ..."
+            for (int i = 1; i < lines.size(); i++) {
+                String[] fields = lines.get(i).trim().split("\\s+");
+                if (fields.length < 10 || !LISTEN.equals(fields[3])) continue;
+                String local = fields[1];
+                int port = Integer.parseInt(local.substring(local.indexOf(':') + 1), 16);
+                long inode = Long.parseLong(fields[9]);
+                if (ports.contains(port) && inode != 0) {
+                    inodes.put(inode, port);
+                }
+            }
+        }
+        return inodes;
+    }
+
+    // fd links to sockets read "socket:[12345]"
+    private static Long socketInode(Path fd) {
+        try {
+            String target = Files.readSymbolicLink(fd).toString();
+            if (target.startsWith("socket:[") && target.endsWith("]")) {
+                return Long.parseLong(target.substring(8, target.length() - 1));
+            }
+        } catch (IOException | UnsupportedOperationException | NumberFormatException e) {
+            // Closed between listing and reading
+        }
+        return null;
+    }
+
+    private static boolean isNumeric(String name) {
+        if (name.isEmpty()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) return false;
+        }
+        return true;
+    }
+}
@@ -1,17 +1,53 @@
 package com.omnexus.util;
 
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.omnexus.model.ProcessRecord;
+import com.omnexus.model.ResourceProfile;
+import org.bson.Document;
+
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 
 public class ProcessManager {
-    private static final Map<String,Process> runningProcesses = new ConcurrentHashMap<>();
+    private static final Map<String,ProcessHandle> runningProcesses = new ConcurrentHashMap<>();
+    private static final long TERMINATE_GRACE_MS = 5000;
+    private static final String MONGOS_LOG_DIR = "logs";
+    private static final Map<String, Map<String, Object>> lastShutdowns = new ConcurrentHashMap<>();
+
+    private static volatile int shutdownTimeoutSecs = 30;
+    private static volatile int shutdownExitWaitSecs = 300;
+
+    /**
+     * How long a primary's shutdown waits for a secondary to catch up before it is forced, and
+     * how long a mongod that accepted shutdown may take to checkpoint and exit before it is signalled.
+     */
+    public static void configureShutdown(int timeoutSecs, int exitWaitSecs) {
+        shutdownTimeoutSecs = Math.max(1, timeoutSecs);
+        shutdownExitWaitSecs = Math.max(1, exitWaitSecs);
+    }
 
     private static boolean isPortAvailable(int port) {
         try (java.net.ServerSocket socket = new java.net.ServerSocket(port)) {
@@ -22,66 +58,122 @@ public class ProcessManager {
     }
 
     public static void killProcessesOnPortRange(int startPort, int endPort) {
+        System.out.println("=== Cleaning up processes on ports " + startPort + "-" + endPort + " ===");
+        long start = System.currentTimeMillis();
+        List<Integer> ports = new ArrayList<>();
+        for (int port = startPort; port <= endPort; port++) {
+            ports.add(port);
+        }
+        killPortOwners(ports);
+
+        // Clear our process map
+        runningProcesses.clear();
+        ProcessRegistry.clear();
+        System.out.println("=== Port cleanup complete in " + (System.currentTimeMillis() - start) + " ms ===");
+    }
+
+    public static void killProcessesOnPort(int port) {
+        killPortOwners(List.of(port));
+    }
+
+    // Resolve all owners in one pass, terminate them together and wait for them to exit
+    private static void killPortOwners(Collection<Integer> ports) {
+        Map<Integer, Set<Long>> owners;
         try {
-            System.out.println("=== Cleaning up processes on ports " + startPort + "-" + endPort + " ===");
-            
-            for (int port = startPort; port <= endPort; port++) {
-                killProcessOnPort(port);
-            }
-            
-            // Also kill mongos on port 27999
-            killProcessOnPort(27999);
-            
-            // Clear our process map
-            runningProcesses.clear();
-            
-            // Wait for processes to fully terminate
-            Thread.sleep(2000);
-            
-            System.out.println("=== Port cleanup complete ===");
-            
+            owners = findPortOwners(ports);
         } catch (Exception e) {
-            System.err.println("Error during port cleanup: " + e.getMessage());
+            System.err.println("Could not resolve processes on ports " + ports + ": " + e.getMessage());
+            return;
         }
+        long self = ProcessHandle.current().pid();
+        List<CompletableFuture<Void>> exits = new ArrayList<>();
+        owners.forEach((port, pids) -> pids.forEach(pid -> {
+            if (pid == self) return;
+            ProcessHandle.of(pid).ifPresent(handle -> {
+                System.out.println("Killing process " + pid + " on port " + port);
+                exits.add(terminate(handle));
+            });
+        }));
+        CompletableFuture.allOf(exits.toArray(CompletableFuture[]::new)).join();
     }
 
-    private static void killProcessOnPort(int port) {
-        try {
-            // Find process using the port on Windows
-            ProcessBuilder pb = new ProcessBuilder("netstat", "-ano");
-            Process process = pb.start();
-            
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.contains(":" + port + " ") && line.contains("LISTENING")) {
-                        // Extract PID from the line (last column)
-                        String[] parts = line.trim().split("\\s+");
-                        if (parts.length > 4) {
-                            String pid = parts[parts.length - 1];
-                            System.out.println("Killing process " + pid + " on port " + port);
-                            
-                            // Kill the process
-                            ProcessBuilder killPb = new ProcessBuilder("taskkill", "/F", "/PID", pid);
-                            killPb.start().waitFor();
-                        }
-                    }
+    // SIGTERM lets mongod shut down cleanly; force it if it is still there after the grace period
+    private static CompletableFuture<Void> terminate(ProcessHandle handle) {
+        handle.destroy();
+        return handle.onExit()
+                .completeOnTimeout(handle, TERMINATE_GRACE_MS, TimeUnit.MILLISECONDS)
+                .thenCompose(h -> {
+                    if (!h.isAlive()) return CompletableFuture.completedFuture(null);
+                    h.destroyForcibly();
+                    return h.onExit().completeOnTimeout(h, TERMINATE_GRACE_MS, TimeUnit.MILLISECONDS).thenApply(exited -> null);
+                });
+    }
+
+    // Listening PIDs per port: /proc on Linux, otherwise a single netstat (Windows) or lsof call
+    private static Map<Integer, Set<Long>> findPortOwners(Collection<Integer> ports) throws IOException, InterruptedException {
+        if (PortOwnerResolver.isSupported()) {
+            return PortOwnerResolver.listeningPids(ports);
+        }
+        Map<Integer, Set<Long>> owners = new HashMap<>();
+        boolean windows = System.getProperty("os.name").toLowerCase().contains("win");
+        ProcessBuilder pb = windows
+                ? new ProcessBuilder("netstat", "-ano", "-p", "TCP")
+                : new ProcessBuilder("lsof", "-nP", "-iTCP", "-sTCP:LISTEN", "-Fpn");
+        pb.redirectErrorStream(true);
+        Process process = pb.start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            long pid = -1;
+            while ((line = reader.readLine()) != null) {
+                if (windows) {
+                    // "  TCP    127.0.0.1:28000    0.0.0.0:0    LISTENING    1234"
+                    String[] parts = line.trim().split("\\s+");
+                    if (parts.length < 5 || !"LISTENING".equals(parts[3])) continue;
+                    addOwner(owners, ports, parts[1], Long.parseLong(parts[4]));
+                } else if (line.startsWith("p")) {
+                    pid = Long.parseLong(line.substring(1));
+                } else if (line.startsWith("n") && pid > 0) {
+                    addOwner(owners, ports, line.substring(1), pid);
                 }
             }
-            
-        } catch (Exception e) {
-            // Ignore errors for individual ports
-            System.out.println("No process found on port " + port + " or failed to kill");
+        }
+        process.waitFor();
+        return owners;
+    }
+
+    private static void addOwner(Map<Integer, Set<Long>> owners, Collection<Integer> ports, String address, long pid) {
+        try {
+            int port = Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+            if (ports.contains(port)) {
+                owners.computeIfAbsent(port, p -> new HashSet<>()).add(pid);
+            }
+        } catch (NumberFormatException e) {
+            // Not a numeric port
         }
     }
 
     public static boolean startMongodProcess(String nodeId, String type, int port, String dataPath, String replicaSet) {
+        return startMongodProcess(nodeId, type, port, dataPath, replicaSet, null, List.of());
+    }
+
+    /**
+     * Start a mongod with extra tuning options (see MongodTuning) and confine it to the given
+     * resource profile (null = unlimited).
+     */
+    public static boolean startMongodProcess(String nodeId, String type, int port, String dataPath, String replicaSet,
+                                             ResourceProfile resources, List<String> tuningArgs) {
         try {
+            if (adoptRunning(nodeId, type, port, dataPath)) {
+                if (resources != null) {
+                    applyResources(nodeId, resources);
+                }
+                return true;
+            }
+
             // Check if port is available, if not try to kill only that specific port
             if (!isPortAvailable(port)) {
                 System.out.println("Port " + port + " is in use, attempting to free it...");
-                killProcessOnPort(port);
-                Thread.sleep(1000); // Wait for process to die
+                killProcessesOnPort(port);
 
                 if (!isPortAvailable(port)) {
                     System.err.println("ERROR: Port " + port + " is still in use for " + nodeId + " after cleanup");
@@ -106,19 +198,13 @@ public class ProcessManager {
                 dataDir.mkdirs();
             }
 
-            // Remove stale lock files (both mongod.lock and WiredTiger.lock)
-            File lockFile = new File(dataPath, "mongod.lock");
-            if (lockFile.exists()) {
-                System.out.println("Removing stale lock file: " + lockFile.getAbsolutePath());
-                lockFile.delete();
-            }
-            File wiredTigerLock = new File(dataPath, "WiredTiger.lock");
-            if (wiredTigerLock.exists()) {
-                System.out.println("Removing stale WiredTiger lock file: " + wiredTigerLock.getAbsolutePath());
-                wiredTigerLock.delete();
+            String lockOwner = releaseStaleLocks(nodeId, dataPath);
+            if (lockOwner != null) {
+                System.err.println("ERROR: " + dataPath + " is in use by " + lockOwner + ", not starting " + nodeId);
+                return false;
             }
 
-            String logPath = dataPath + File.separator + "mongod.log";
+            String logPath = logPath(nodeId, type, dataPath);
 
             if("config".equals(type)) {
                 processBuilder.command(
@@ -144,9 +230,31 @@ public class ProcessManager {
                 );
             }
 
+            if (tuningArgs != null && !tuningArgs.isEmpty()) {
+                processBuilder.command().addAll(tuningArgs);
+                System.out.println("Tuning for " + nodeId + ": " + String.join(" ", tuningArgs));
+            }
+
+            List<String> command = new ArrayList<>(processBuilder.command());
+            Map<String, Object> limits = resources != null ? CgroupManager.prepare(nodeId, resources) : null;
+            if (limits != null) {
+                List<?> skipped = (List<?>) limits.get("skipped");
+                if (limits.get("cgroup") instanceof String group) {
+                    // mongod joins its group before exec, so it sizes its cache under the memory limit
+                    processBuilder.command(CgroupManager.launchCommand(group, command));
+                    System.out.println("Starting " + nodeId + " in " + group + (skipped.isEmpty() ? "" : ", skipped " + skipped));
+                } else {
+                    System.err.println("Starting " + nodeId + " without its cgroup: " + skipped);
+                }
+            }
+
             processBuilder.redirectErrorStream(true);
             Process process = processBuilder.start();
-            runningProcesses.put(nodeId, process);
+            track(nodeId, type, port, dataPath, process.toHandle(), command);
+            if (resources != null && limits == null) {
+                // Without cgroup v2 only CPU affinity applies, which needs the PID
+                applyResources(nodeId, resources);
+            }
 
             startOutputReader(nodeId, process);
             Thread.sleep(3000);
@@ -170,33 +278,342 @@ public class ProcessManager {
         }
     }
 
+    // One virtual thread per process: blocked reads cost no OS thread, and lines go to the
+    // node's ring buffer instead of contending for the console
     private static void startOutputReader(String nodeId, Process process) {
-        Thread outputThread = new Thread(() -> {
+        Thread.ofVirtual().name("OutputReader-" + nodeId).start(() -> {
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
                 String line;
                 while ((line = reader.readLine()) != null) {
-                    System.out.println("[" + nodeId + "] " + line);
+                    ProcessOutput.append(nodeId, line);
                 }
             } catch (IOException e) {
                 // Process terminated, this is expected
             }
         });
-        outputThread.setDaemon(true);
-        outputThread.setName("OutputReader-" + nodeId);
-        outputThread.start();
     }
+    /**
+     * The --logpath a node is started with: mongod.log in its data directory, or logs/&lt;nodeId&gt;.log for mongos.
+     */
+    public static String logPath(String nodeId, String type, String dataPath) {
+        if ("mongos".equals(type)) {
+            return new File(MONGOS_LOG_DIR, nodeId + ".log").getAbsolutePath();
+        }
+        return dataPath + File.separator + "mongod.log";
+    }
+
+    /**
+     * Stop a node the way mongod expects: the shutdown command, which checkpoints WiredTiger and
+     * leaves mongod.lock empty, so the next start skips crash recovery. A primary refusing because
+     * no secondary caught up within the timeout gets force; signals are the last resort. Waits for
+     * the exit so a following start never finds the old process still on the port.
+     */
     public static  boolean stopProcess(String nodeId){
-        Process process = runningProcesses.get(nodeId);
-        if(process != null){
-            process.destroy();
-            runningProcesses.remove(nodeId);
+        ProcessHandle handle = runningProcesses.remove(nodeId);
+        if(handle != null){
+            ProcessRecord record = ProcessRegistry.all().get(nodeId);
+            List<String> command = commandLine(handle);
+            int port = record != null ? record.getPort() : parsePort(option(command, "--port"));
+            String dataPath = record != null ? record.getDataPath() : option(command, "--dbpath");
+            long start = System.currentTimeMillis();
+
+            String method = shutdown(nodeId, handle, port);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("nodeId", nodeId);
+            result.put("pid", handle.pid());
+            result.put("method", method);
+            result.put("exited", !handle.isAlive());
+            // mongos has no data files; for mongod an emptied mongod.lock is the mark of a clean shutdown
+            result.put("clean", dataPath != null ? !handle.isAlive() && lockOwnerPid(dataPath) == null : !handle.isAlive());
+            result.put("durationMs", System.currentTimeMillis() - start);
+            result.put("stoppedAt", System.currentTimeMillis());
+            lastShutdowns.put(nodeId, result);
+            System.out.println("Stopped " + nodeId + " via " + method + " in " + result.get("durationMs") + " ms"
+                    + (Boolean.TRUE.equals(result.get("clean")) ? "" : " (unclean: the next start runs recovery)"));
+
+            ProcessRegistry.remove(nodeId, handle.pid());
+            CgroupManager.release(nodeId);
             return true;
         }
         return false;
     }
+
+    /**
+     * How the node was last stopped, or null if it has not been stopped since OM Nexus started.
+     */
+    public static Map<String, Object> lastShutdown(String nodeId) {
+        return lastShutdowns.get(nodeId);
+    }
+
+    // "shutdown", "shutdown-force" or "signal", whichever ended the process
+    private static String shutdown(String nodeId, ProcessHandle handle, int port) {
+        if (port > 0 && !isPortAvailable(port)) {
+            String method = "shutdown";
+            Boolean accepted = sendShutdown(port, false);
+            if (Boolean.FALSE.equals(accepted)) {
+                System.out.println(nodeId + " refused shutdown within " + shutdownTimeoutSecs + "s, forcing it");
+                method = "shutdown-force";
+                accepted = sendShutdown(port, true);
+            }
+            if (Boolean.TRUE.equals(accepted)) {
+                awaitExit(handle, shutdownExitWaitSecs);
+                if (!handle.isAlive()) return method;
+                System.err.println(nodeId + " still running " + shutdownExitWaitSecs + "s after shutdown, signalling it");
+            }
+        }
+        terminate(handle).join();
+        return "signal";
+    }
+
+    // True once mongod dropped the connection to shut down, false if it refused, null if unreachable.
+    // force only skips waiting for secondaries; the data files are still closed cleanly.
+    private static Boolean sendShutdown(int port, boolean force) {
+        // The command blocks while a primary waits for a secondary to catch up
+        String uri = "mongodb://localhost:" + port + "/?directConnection=true&serverSelectionTimeoutMS=3000"
+                + "&connectTimeoutMS=3000&socketTimeoutMS=" + (shutdownTimeoutSecs + 30) * 1000L;
+        try (MongoClient client = MongoClients.create(uri)) {
+            Document command = new Document("shutdown", 1).append("timeoutSecs", shutdownTimeoutSecs);
+            if (force) command.append("force", true);
+            client.getDatabase("admin").runCommand(command);
+            return true; // a reply instead of a dropped connection: shutdown is under way anyway
+        } catch (MongoCommandException e) {
+            System.err.println("shutdown on port " + port + " refused: " + e.getErrorMessage());
+            return false;
+        } catch (MongoSocketException e) {
+            return true;
+        } catch (Exception e) {
+            System.err.println("Could not send shutdown to port " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void awaitExit(ProcessHandle handle, int seconds) {
+        try {
+            handle.onExit().get(seconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // Still running; the caller decides
+        }
+    }
+
+    // Lock files are only removed when their owner is gone: deleting them under a running mongod lets
+    // a second one open the same files. Returns the owner, or null once the directory is free.
+    private static String releaseStaleLocks(String nodeId, String dataPath) {
+        Path mongodLock = Paths.get(dataPath, "mongod.lock");
+        if (!Files.exists(mongodLock)) return null;
+        Long pid = lockOwnerPid(dataPath);
+        if (pid == null) return null; // empty: the last shutdown was clean
+        if (pid > 0) {
+            // The PID may have been reused since an unclean exit
+            Optional<ProcessHandle> owner = ProcessHandle.of(pid).filter(h -> usesDataPath(h, dataPath, true));
+            if (owner.isPresent()) return "mongod PID " + pid;
+        } else {
+            // Unreadable while another mongod holds it (Windows); look for one on the same --dbpath
+            Optional<ProcessHandle> owner = ProcessHandle.allProcesses()
+                    .filter(h -> usesDataPath(h, dataPath, false))
+                    .findFirst();
+            if (owner.isPresent()) return "mongod PID " + owner.get().pid();
+        }
+        System.out.println("Previous shutdown of " + nodeId + " was unclean; removing stale locks, WiredTiger will recover on start");
+        for (String name : List.of("mongod.lock", "WiredTiger.lock")) {
+            try {
+                Files.deleteIfExists(Paths.get(dataPath, name));
+            } catch (IOException e) {
+                System.err.println("Could not remove " + name + " in " + dataPath + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    // mongod writes its PID to mongod.lock while running and truncates it on a clean shutdown:
+    // null when empty or missing, -1 when it cannot be read or parsed
+    private static Long lockOwnerPid(String dataPath) {
+        Path lock = Paths.get(dataPath, "mongod.lock");
+        try {
+            if (!Files.exists(lock)) return null;
+            String content = Files.readString(lock).trim();
+            return content.isEmpty() ? null : Long.parseLong(content);
+        } catch (IOException | NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    // A mongod with this --dbpath; when its arguments are hidden, assumeIfHidden decides
+    private static boolean usesDataPath(ProcessHandle handle, String dataPath, boolean assumeIfHidden) {
+        if (!matches(handle, -1, null)) return false;
+        if (handle.info().arguments().isEmpty()) return assumeIfHidden;
+        return samePath(dataPath, option(commandLine(handle), "--dbpath"));
+    }
+
+    private static int parsePort(String value) {
+        try {
+            return value != null ? Integer.parseInt(value) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    /**
+     * Tracked processes by node id.
+     */
+    public static Map<String, ProcessHandle> runningProcesses() {
+        return Map.copyOf(runningProcesses);
+    }
+
+    /**
+     * Apply a resource profile to a running node now; null clears its limits.
+     */
+    public static Map<String, Object> applyResources(String nodeId, ResourceProfile resources) {
+        ProcessHandle handle = runningProcesses.get(nodeId);
+        if (handle == null || !handle.isAlive()) {
+            return Map.of("note", nodeId + " is not running; the profile applies when it starts");
+        }
+        Map<String, Object> result = CgroupManager.apply(nodeId, handle.pid(), resources);
+        List<?> skipped = (List<?>) result.get("skipped");
+        System.out.println("Applied resources to " + nodeId + (skipped.isEmpty() ? "" : ", skipped " + skipped));
+        return result;
+    }
+
     public static boolean isProcessRunning(String nodeId){
-        Process process = runningProcesses.get(nodeId);
-        return process != null && process.isAlive();
+        ProcessHandle handle = runningProcesses.get(nodeId);
+        return handle != null && handle.isAlive();
+    }
+
+    /**
+     * Reattach to the processes recorded before OM Nexus last stopped, so restarting OM Nexus
+     * never restarts MongoDB. A record is kept only if its PID is alive, is still the same
+     * process (start time), runs mongod/mongos with the recorded port and data path, and
+     * listens on that port; other records are dropped.
+     */
+    public static Map<String, Object> reattachProcesses() {
+        Map<String, ProcessRecord> records = ProcessRegistry.all();
+        List<String> reattached = new ArrayList<>();
+        Map<String, String> dropped = new LinkedHashMap<>();
+        Map<Integer, Set<Long>> owners = null;
+        try {
+            owners = findPortOwners(records.values().stream().map(ProcessRecord::getPort).toList());
+        } catch (Exception e) {
+            System.err.println("Could not resolve port owners, checking ports only: " + e.getMessage());
+        }
+        for (ProcessRecord record : records.values()) {
+            Optional<ProcessHandle> handle = ProcessHandle.of(record.getPid()).filter(ProcessHandle::isAlive);
+            String reason = handle.isPresent() ? staleReason(record, handle.get(), owners) : "not running";
+            if (reason == null) {
+                runningProcesses.put(record.getNodeId(), handle.get());
+                watch(record.getNodeId(), handle.get());
+                reattached.add(record.getNodeId());
+            } else {
+                ProcessRegistry.remove(record.getNodeId(), record.getPid());
+                dropped.put(record.getNodeId(), reason);
+            }
+        }
+        if (!records.isEmpty()) {
+            System.out.println("Reattached to " + reattached.size() + " running process(es) " + reattached
+                    + (dropped.isEmpty() ? "" : ", dropped stale records " + dropped));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("reattached", reattached);
+        result.put("dropped", dropped);
+        return result;
+    }
+
+    private static String staleReason(ProcessRecord record, ProcessHandle handle, Map<Integer, Set<Long>> owners) {
+        long startedAt = startedAt(handle);
+        if (record.getStartedAt() > 0 && startedAt > 0 && Math.abs(startedAt - record.getStartedAt()) > 1000) {
+            return "PID reused by another process";
+        }
+        if (!matches(handle, record.getPort(), record.getDataPath())) {
+            return "command line does not match";
+        }
+        boolean listening = owners != null
+                ? owners.getOrDefault(record.getPort(), Set.of()).contains(record.getPid())
+                : !isPortAvailable(record.getPort());
+        return listening ? null : "not listening on port " + record.getPort();
+    }
+
+    // A mongod/mongos already serving this node is kept instead of being killed and started again
+    private static boolean adoptRunning(String nodeId, String type, int port, String dataPath) {
+        ProcessHandle tracked = runningProcesses.get(nodeId);
+        if (tracked != null && tracked.isAlive() && matches(tracked, port, dataPath)) {
+            System.out.println(nodeId + " is already running as PID " + tracked.pid() + " on port " + port);
+            return true;
+        }
+        if (isPortAvailable(port)) return false;
+        try {
+            for (long pid : findPortOwners(List.of(port)).getOrDefault(port, Set.of())) {
+                Optional<ProcessHandle> handle = ProcessHandle.of(pid).filter(h -> matches(h, port, dataPath));
+                if (handle.isPresent()) {
+                    track(nodeId, type, port, dataPath, handle.get(), commandLine(handle.get()));
+                    System.out.println("Adopted running " + type + " process " + pid + " for " + nodeId + " on port " + port);
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Could not check the owner of port " + port + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    private static void track(String nodeId, String type, int port, String dataPath, ProcessHandle handle, List<String> command) {
+        runningProcesses.put(nodeId, handle);
+        ProcessRecord record = new ProcessRecord();
+        record.setNodeId(nodeId);
+        record.setType(type);
+        record.setPid(handle.pid());
+        record.setPort(port);
+        record.setDataPath(dataPath);
+        record.setCommand(new ArrayList<>(command));
+        record.setStartedAt(startedAt(handle));
+        ProcessRegistry.put(record);
+        watch(nodeId, handle);
+    }
+
+    // Forget the node once its process exits, unless it has been replaced meanwhile
+    private static void watch(String nodeId, ProcessHandle handle) {
+        handle.onExit().thenRun(() -> {
+            if (runningProcesses.remove(nodeId, handle)) {
+                System.out.println("Process " + nodeId + " (PID " + handle.pid() + ") exited");
+            }
+            ProcessRegistry.remove(nodeId, handle.pid());
+        });
+    }
+
+    // mongod/mongos started with this --port and, for mongod, this --dbpath. Where the OS does not
+    // expose the arguments, or port is negative, only the executable is checked; callers also check
+    // who owns the port.
+    private static boolean matches(ProcessHandle handle, int port, String dataPath) {
+        Optional<String> command = handle.info().command();
+        if (command.isEmpty()) return false;
+        String executable = command.get().substring(Math.max(command.get().lastIndexOf('/'), command.get().lastIndexOf('\\')) + 1).toLowerCase();
+        if (!executable.startsWith("mongod") && !executable.startsWith("mongos")) return false;
+        Optional<String[]> arguments = handle.info().arguments();
+        if (arguments.isEmpty() || port < 0) return true;
+        List<String> args = List.of(arguments.get());
+        return String.valueOf(port).equals(option(args, "--port"))
+                && (dataPath == null || samePath(dataPath, option(args, "--dbpath")));
+    }
+
+    private static List<String> commandLine(ProcessHandle handle) {
+        List<String> command = new ArrayList<>();
+        handle.info().command().ifPresent(command::add);
+        handle.info().arguments().ifPresent(args -> command.addAll(List.of(args)));
+        return command;
+    }
+
+    private static String option(List<String> args, String name) {
+        int i = args.indexOf(name);
+        return i >= 0 && i + 1 < args.size() ? args.get(i + 1) : null;
+    }
+
+    private static boolean samePath(String a, String b) {
+        if (b == null) return false;
+        try {
+            return Paths.get(a).toAbsolutePath().normalize().equals(Paths.get(b).toAbsolutePath().normalize());
+        } catch (InvalidPathException e) {
+            return a.equals(b);
+        }
+    }
+
+    private static long startedAt(ProcessHandle handle) {
+        return handle.info().startInstant().map(Instant::toEpochMilli).orElse(0L);
     }
 
     /**
@@ -207,6 +624,10 @@ public class ProcessManager {
     }
     public static boolean startMongosProcess(String nodeId,int port,String configReplSet){
         try{
+            if (adoptRunning(nodeId, "mongos", port, null)) {
+                return true;
+            }
+
             ProcessBuilder processBuilder = new ProcessBuilder();
             String mongosPath = "C:\\Program Files\\MongoDB\\Server\\8.2\\bin\\mongos.exe";
 
@@ -217,18 +638,22 @@ public class ProcessManager {
                 return false;
             }
 
+            // Log to a file like mongod does: a reattached mongos has nobody reading its output
+            new File(MONGOS_LOG_DIR).mkdirs();
             processBuilder.command(
                     mongosPath,
                     "--port",String.valueOf(port),
                     "--configdb",configReplSet,
-                    "--bind_ip", "localhost"
+                    "--bind_ip", "localhost",
+                    "--logpath", logPath(nodeId, "mongos", null),
+                    "--logappend"
             );
 
             // Redirect error stream to output stream
             processBuilder.redirectErrorStream(true);
 
             Process process = processBuilder.start();
-            runningProcesses.put(nodeId,process);
+            track(nodeId, "mongos", port, null, process.toHandle(), processBuilder.command());
 
             // Start a thread to read process output
             startOutputReader(nodeId, process);
@@ -250,60 +675,6 @@ public class ProcessManager {
             return false;
         }
     }
-    public static void killProcessesOnPort(int port) {
-        try {
-            String os = System.getProperty("os.name").toLowerCase();
-
-            if (os.contains("win")) {
-                // Windows: Find and kill process on port
-                ProcessBuilder findProcess = new ProcessBuilder(
-                        "cmd.exe", "/c",
-                        "for /f \"tokens=5\" %a in ('netstat -aon ^| findstr :" + port + "') do @echo %a"
-                );
-                Process process = findProcess.start();
-
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream())
-                );
-
-                String pid;
-                while ((pid = reader.readLine()) != null) {
-                    pid = pid.trim();
-                    if (!pid.isEmpty() && pid.matches("\\d+")) {
-                        System.out.println("Killing process " + pid + " on port " + port);
-                        Runtime.getRuntime().exec("taskkill /F /PID " + pid);
-                    }
-                }
-
-            } else {
-                // Linux/Mac: Find and kill process on port
-                ProcessBuilder findProcess = new ProcessBuilder(
-                        "sh", "-c",
-                        "lsof -ti:" + port
-                );
-                Process process = findProcess.start();
-
-                BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(process.getInputStream())
-                );
-
-                String pid;
-                while ((pid = reader.readLine()) != null) {
-                    pid = pid.trim();
-                    if (!pid.isEmpty()) {
-                        System.out.println("Killing process " + pid + " on port " + port);
-                        Runtime.getRuntime().exec("kill -9 " + pid);
-                    }
-                }
-            }
-
-        } catch (Exception e) {
-            System.err.println("Error killing process on port " + port + ": " + e.getMessage());
-        }
-    }
-
-
-
     private static String findMongoToolPath(String toolName) {
         String[] possiblePaths = {
             "C:\\Program Files\\MongoDB\\Server\\8.2\\bin\\" + toolName + ".exe",
@@ -330,6 +701,10 @@ public class ProcessManager {
     }
 
     public static boolean runMongoDump(String host,int port,String dbName,String outDir,boolean compress,boolean useOplog){
+        return runMongoDump(host, port, dbName, outDir, compress, useOplog, null);
+    }
+
+    public static boolean runMongoDump(String host,int port,String dbName,String outDir,boolean compress,boolean useOplog,Consumer<String> lineListener){
         List<String> cmd = new ArrayList<>();
         cmd.add(findMongoToolPath("mongodump"));
         cmd.add("--host");
@@ -347,7 +722,7 @@ public class ProcessManager {
             cmd.add("--oplog");
         }
         // Use current working directory instead of outDir to avoid path issues
-        int rc = runProcessAndWait(cmd, System.getProperty("user.dir"));
+        int rc = runProcessAndWait(cmd, System.getProperty("user.dir"), lineListener);
         if (rc != 0) return false;
         if (compress){
             return compressDirectory(outDir);
@@ -356,6 +731,10 @@ public class ProcessManager {
     }
 
     public static boolean runMongoRestore(String host,int port,String dumpDir,boolean dropBeforeRestore,boolean decompress){
+        return runMongoRestore(host, port, dumpDir, dropBeforeRestore, decompress, null);
+    }
+
+    public static boolean runMongoRestore(String host,int port,String dumpDir,boolean dropBeforeRestore,boolean decompress,Consumer<String> lineListener){
         List<String> cmd = new ArrayList<>();
         cmd.add(findMongoToolPath("mongorestore"));
         cmd.add("--host");
@@ -379,7 +758,7 @@ public class ProcessManager {
         System.out.println("Running mongorestore: " + String.join(" ", cmd));
 
         // Use current working directory for process execution
-        int rc = runProcessAndWait(cmd, System.getProperty("user.dir"));
+        int rc = runProcessAndWait(cmd, System.getProperty("user.dir"), lineListener);
         return rc == 0;
     }
     public static boolean compressDirectory(String directoryPath){
@@ -436,6 +815,11 @@ public class ProcessManager {
 
 
     public static int runProcessAndWait(List<String> command, String workingDir) {
+        return runProcessAndWait(command, workingDir, null);
+    }
+
+    // lineListener, when set, sees every output line (e.g. to parse tool progress)
+    public static int runProcessAndWait(List<String> command, String workingDir, Consumer<String> lineListener) {
         ProcessBuilder pb = new ProcessBuilder(command);
         if (workingDir != null) pb.directory(new File(workingDir));
         pb.redirectErrorStream(true);
@@ -449,6 +833,13 @@ public class ProcessManager {
                 String line;
                 while ((line = reader.readLine()) != null) {
                     System.out.println(line);
+                    if (lineListener != null) {
+                        try {
+                            lineListener.accept(line);
+                        } catch (Exception e) {
+                            System.err.println("Output listener failed: " + e.getMessage());
+                        }
+                    }
                 }
             }
 
@@ -465,7 +856,7 @@ public class ProcessManager {
     }
 
     // Delete directory recursively
-    private static void deleteDirectory(File dir) throws IOException {
+    public static void deleteDirectory(File dir) throws IOException {
         if (dir.isDirectory()) {
             for (File f : dir.listFiles()) {
                 deleteDirectory(f);
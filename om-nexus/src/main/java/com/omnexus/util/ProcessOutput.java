@@ -0,0 +1,74 @@
+package com.omnexus.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Recent stdout/stderr lines of each mongod/mongos, kept in a bounded ring per node and
+ * numbered by a per-node sequence so clients can page forward without missing or repeating
+ * lines. The sequence survives node restarts; lines older than the ring are dropped.
+ */
+public class ProcessOutput {
+    private static final Map<String, Ring> rings = new ConcurrentHashMap<>();
+    private static volatile int capacity = 1000;
+    private static volatile boolean echo = false;
+
+    public record Line(long seq, long time, String text) {}
+
+    /**
+     * Lines per node, and whether lines are also copied to the console.
+     */
+    public static void configure(int bufferLines, boolean echoToConsole) {
+        capacity = Math.max(1, bufferLines);
+        echo = echoToConsole;
+    }
+
+    public static void append(String nodeId, String text) {
+        rings.computeIfAbsent(nodeId, id -> new Ring(capacity)).append(text);
+        if (echo) {
+            System.out.println("[" + nodeId + "] " + text);
+        }
+    }
+
+    /**
+     * Up to limit lines with a sequence above after; after = -1 returns the last limit lines.
+     */
+    public static Map<String, Object> read(String nodeId, long after, int limit) {
+        Ring ring = rings.get(nodeId);
+        return ring != null ? ring.read(after, Math.max(1, limit)) : new Ring(1).read(after, 1);
+    }
+
+    private static class Ring {
+        private final Line[] lines;
+        private long next = 1; // sequence of the next line
+
+        Ring(int capacity) {
+            this.lines = new Line[capacity];
+        }
+
+        synchronized void append(String text) {
+            lines[(int) (next % lines.length)] = new Line(next, System.currentTimeMillis(), text);
+            next++;
+        }
+
+        synchronized Map<String, Object> read(long after, int limit) {
+            long first = Math.max(1, next - lines.length);
+            long from = after < 0 ? Math.max(first, next - limit) : Math.max(first, after + 1);
+            List<Line> page = new ArrayList<>();
+            for (long seq = from; seq < next && page.size() < limit; seq++) {
+                page.add(lines[(int) (seq % lines.length)]);
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("firstSeq", next > 1 ? first : 0);
+            result.put("lastSeq", next - 1);
+            // Pass back as after to continue; lines between after and firstSeq were overwritten
+            result.put("nextAfter", page.isEmpty() ? Math.max(after, next - 1) : page.get(page.size() - 1).seq());
+            result.put("missed", after >= 0 && after + 1 < first ? first - after - 1 : 0);
+            result.put("lines", page);
+            return result;
+        }
+    }
+}
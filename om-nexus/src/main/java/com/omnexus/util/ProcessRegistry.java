@@ -0,0 +1,70 @@
+package com.omnexus.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.omnexus.model.ProcessRecord;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Node id -> the process OM Nexus started for it, kept in configs/processes.json.
+ * Every change rewrites the file through a temp file so a crash never leaves it half written.
+ */
+public class ProcessRegistry {
+    private static final Path FILE = Paths.get("configs", "processes.json");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Map<String, ProcessRecord> records = load();
+
+    public static synchronized Map<String, ProcessRecord> all() {
+        return new LinkedHashMap<>(records);
+    }
+
+    public static synchronized void put(ProcessRecord record) {
+        records.put(record.getNodeId(), record);
+        save();
+    }
+
+    /**
+     * Forget the node, but only while it still points at the given PID; a newer start keeps its record.
+     */
+    public static synchronized void remove(String nodeId, long pid) {
+        ProcessRecord record = records.get(nodeId);
+        if (record != null && record.getPid() == pid) {
+            records.remove(nodeId);
+            save();
+        }
+    }
+
+    public static synchronized void clear() {
+        if (records.isEmpty()) return;
+        records.clear();
+        save();
+    }
+
+    private static Map<String, ProcessRecord> load() {
+        if (!Files.exists(FILE)) return new LinkedHashMap<>();
+        try {
+            return objectMapper.readValue(FILE.toFile(), new TypeReference<LinkedHashMap<String, ProcessRecord>>() {});
+        } catch (IOException e) {
+            System.err.println("Failed to read process registry " + FILE.toAbsolutePath() + ": " + e.getMessage());
+            return new LinkedHashMap<>();
+        }
+    }
+
+    private static void save() {
+        try {
+            Files.createDirectories(FILE.getParent());
+            Path tmp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), records);
+            Files.move(tmp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write process registry " + FILE.toAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.omnexus.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal client for S3-compatible object stores (AWS S3, MinIO, Ceph RGW) covering
+ * what backup offload needs: single and multipart uploads, streaming downloads,
+ * listing and deletes. Requests are signed with AWS Signature Version 4 and every
+ * uploaded payload carries its SHA-256, which the server checks before storing it.
+ */
+public class S3Client {
+    private static final String EMPTY_SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final Pattern ERROR_CODE = Pattern.compile("<Code>(.*?)</Code>");
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final boolean pathStyle;
+    private final HttpClient http;
+
+    public record ObjectInfo(String key, long size, String etag) {}
+
+    public record Listing(List<ObjectInfo> objects, List<String> prefixes) {}
+
+    public S3Client(String endpoint, String region, String bucket, String accessKey, String secretKey, boolean pathStyle) {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.pathStyle = pathStyle;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * Create the bucket unless it exists already.
+     */
+    public void ensureBucket() throws IOException {
+        HttpResponse<byte[]> head = send("HEAD", "", Map.of(), null);
+        if (head.statusCode() == 200) return;
+        byte[] body = "us-east-1".equals(region) ? null
+                : ("<CreateBucketConfiguration xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"><LocationConstraint>"
+                + region + "</LocationConstraint></CreateBucketConfiguration>").getBytes(StandardCharsets.UTF_8);
+        HttpResponse<byte[]> created = send("PUT", "", Map.of(), body);
+        if (created.statusCode() != 200 && !errorBody(created).contains("BucketAlreadyOwnedByYou")) {
+            throw failure("create bucket " + bucket, created);
+        }
+    }
+
+    public String putObject(String key, byte[] data) throws IOException {
+        HttpResponse<byte[]> response = send("PUT", key, Map.of(), data);
+        if (response.statusCode() != 200) throw failure("PUT " + key, response);
+        return response.headers().firstValue("ETag").orElse(null);
+    }
+
+    public String createMultipartUpload(String key) throws IOException {
+        HttpResponse<byte[]> response = send("POST", key, Map.of("uploads", ""), null);
+        if (response.statusCode() != 200) throw failure("initiate upload of " + key, response);
+        String uploadId = xmlValue(new String(response.body(), StandardCharsets.UTF_8), "UploadId");
+        if (uploadId == null) throw new IOException("No UploadId in response for " + key);
+        return uploadId;
+    }
+
+    /**
+     * Upload one part (1-based) and return its ETag.
+     */
+    public String uploadPart(String key, String uploadId, int partNumber, byte[] data) throws IOException {
+        HttpResponse<byte[]> response = send("PUT", key,
+                Map.of("partNumber", String.valueOf(partNumber), "uploadId", uploadId), data);
+        if (response.statusCode() != 200) throw failure("upload part " + partNumber + " of " + key, response);
+        return response.headers().firstValue("ETag")
+                .orElseThrow(() -> new IOException("No ETag for part " + partNumber + " of " + key));
+    }
+
+    /**
+     * @param etags ETags of parts 1..n in order
+     */
+    public void completeMultipartUpload(String key, String uploadId, List<String> etags) throws IOException {
+        StringBuilder body = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < etags.size(); i++) {
+            body.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                    .append(escape(etags.get(i))).append("</ETag></Part>");
+        }
+        body.append("</CompleteMultipartUpload>");
+        HttpResponse<byte[]> response = send("POST", key, Map.of("uploadId", uploadId),
+                body.toString().getBytes(StandardCharsets.UTF_8));
+        // The server may answer 200 and still report an error in the body
+        if (response.statusCode() != 200 || errorBody(response).contains("<Error>")) {
+            throw failure("complete upload of " + key, response);
+        }
+    }
+
+    public void abortMultipartUpload(String key, String uploadId) {
+        try {
+            send("DELETE", key, Map.of("uploadId", uploadId), null);
+        } catch (IOException e) {
+            System.err.println("Could not abort upload of " + key + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Size of an object, or -1 if it does not exist.
+     */
+    public long headObject(String key) throws IOException {
+        HttpResponse<byte[]> response = send("HEAD", key, Map.of(), null);
+        if (response.statusCode() == 404) return -1;
+        if (response.statusCode() != 200) throw failure("HEAD " + key, response);
+        return response.headers().firstValueAsLong("Content-Length").orElse(0);
+    }
+
+    /**
+     * Streams the object body; the caller closes it.
+     */
+    public InputStream getObject(String key) throws IOException {
+        HttpRequest request = sign("GET", key, Map.of(), null);
+        try {
+            HttpResponse<InputStream> response = http.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                byte[] body;
+                try (InputStream in = response.body()) {
+                    body = in.readAllBytes();
+                }
+                throw new IOException("GET " + key + " failed: HTTP " + response.statusCode() + " " + errorCode(body));
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + key, e);
+        }
+    }
+
+    public void deleteObject(String key) throws IOException {
+        HttpResponse<byte[]> response = send("DELETE", key, Map.of(), null);
+        if (response.statusCode() != 204 && response.statusCode() != 200 && response.statusCode() != 404) {
+            throw failure("DELETE " + key, response);
+        }
+    }
+
+    /**
+     * All objects under a prefix, or with a delimiter the keys directly under it plus
+     * the common prefixes ("sub-directories").
+     */
+    public Listing list(String prefix, String delimiter) throws IOException {
+        List<ObjectInfo> objects = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        String continuation = null;
+        do {
+            Map<String, String> query = new TreeMap<>(Map.of("list-type", "2", "prefix", prefix));
+            if (delimiter != null) query.put("delimiter", delimiter);
+            if (continuation != null) query.put("continuation-token", continuation);
+            HttpResponse<byte[]> response = send("GET", "", query, null);
+            if (response.statusCode() != 200) throw failure("list " + prefix, response);
+            String xml = new String(response.body(), StandardCharsets.UTF_8);
+
+            Matcher contents = Pattern.compile("<Contents>(.*?)</Contents>", Pattern.DOTALL).matcher(xml);
+            while (contents.find()) {
+                String entry = contents.group(1);
+                String size = xmlValue(entry, "Size");
+                objects.add(new ObjectInfo(xmlValue(entry, "Key"), size != null ? Long.parseLong(size) : 0, xmlValue(entry, "ETag")));
+            }
+            Matcher common = Pattern.compile("<CommonPrefixes>(.*?)</CommonPrefixes>", Pattern.DOTALL).matcher(xml);
+            while (common.find()) {
+                prefixes.add(xmlValue(common.group(1), "Prefix"));
+            }
+            continuation = "true".equals(xmlValue(xml, "IsTruncated")) ? xmlValue(xml, "NextContinuationToken") : null;
+        } while (continuation != null);
+        return new Listing(objects, prefixes);
+    }
+
+    private HttpResponse<byte[]> send(String method, String key, Map<String, String> query, byte[] body) throws IOException {
+        try {
+            return http.send(sign(method, key, query, body), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during " + method + " " + key, e);
+        }
+    }
+
+    private HttpRequest sign(String method, String key, Map<String, String> query, byte[] body) {
+        String path = pathStyle ? "/" + bucket + (key.isEmpty() ? "/" : "/" + encodePath(key)) : "/" + encodePath(key);
+        String host = pathStyle ? endpoint.getHost() : bucket + "." + endpoint.getHost();
+        String authority = endpoint.getPort() > 0 ? host + ":" + endpoint.getPort() : host;
+
+        StringBuilder canonicalQuery = new StringBuilder();
+        new TreeMap<>(query).forEach((name, value) -> {
+            if (!canonicalQuery.isEmpty()) canonicalQuery.append('&');
+            canonicalQuery.append(encode(name)).append('=').append(encode(value));
+        });
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String amzDate = AMZ_DATE.format(now);
+        String date = amzDate.substring(0, 8);
+        String payloadHash = body != null ? sha256Hex(body) : EMPTY_SHA256;
+
+        String canonicalRequest = method + "\n" + path + "\n" + canonicalQuery + "\n"
+                + "host:" + authority + "\n"
+                + "x-amz-content-sha256:" + payloadHash + "\n"
+                + "x-amz-date:" + amzDate + "\n\n"
+                + "host;x-amz-content-sha256;x-amz-date\n"
+                + payloadHash;
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+        URI uri = URI.create(endpoint.getScheme() + "://" + authority + path
+                + (canonicalQuery.isEmpty() ? "" : "?" + canonicalQuery));
+        return HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMinutes(10))
+                .header("x-amz-date", amzDate)
+                .header("x-amz-content-sha256", payloadHash)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=host;x-amz-content-sha256;x-amz-date, Signature=" + signature)
+                .method(method, body != null ? HttpRequest.BodyPublishers.ofByteArray(body) : HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    // RFC 3986 encoding as SigV4 expects: only unreserved characters stay as they are
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8)
+                .replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+
+    private static String encodePath(String key) {
+        return encode(key).replace("%2F", "/");
+    }
+
+    public static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String xmlValue(String xml, String element) {
+        Matcher matcher = Pattern.compile("<" + element + ">(.*?)</" + element + ">", Pattern.DOTALL).matcher(xml);
+        return matcher.find() ? unescape(matcher.group(1)) : null;
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&quot;", "\"").replace("&apos;", "'").replace("&lt;", "<")
+                .replace("&gt;", ">").replace("&#34;", "\"").replace("&amp;", "&");
+    }
+
+    private static String errorBody(HttpResponse<byte[]> response) {
+        return response.body() != null ? new String(response.body(), StandardCharsets.UTF_8) : "";
+    }
+
+    private static String errorCode(byte[] body) {
+        Matcher matcher = ERROR_CODE.matcher(body != null ? new String(body, StandardCharsets.UTF_8) : "");
+        return matcher.find() ? matcher.group(1) : "";
+    }
+
+    private static IOException failure(String operation, HttpResponse<byte[]> response) {
+        return new IOException(operation + " failed: HTTP " + response.statusCode() + " " + errorCode(response.body()));
+    }
+}
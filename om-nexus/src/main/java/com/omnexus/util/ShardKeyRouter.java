@@ -0,0 +1,191 @@
+package com.omnexus.util;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonNull;
+import org.bson.BsonNumber;
+import org.bson.BsonType;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the shard owning a document from a ranged shard key and a chunk map,
+ * using MongoDB's BSON comparison order. Hashed keys cannot be routed here
+ * (the hash is computed by the server) and must go through mongos.
+ */
+public class ShardKeyRouter {
+    private final List<String> fields;
+    private final BsonDocument[] mins; // ascending chunk lower bounds
+    private final String[] shards;
+
+    /**
+     * @param key    shard key pattern, e.g. {"region": 1, "customerId": 1}
+     * @param chunks lower bound and owning shard of every chunk
+     */
+    public ShardKeyRouter(BsonDocument key, List<Map.Entry<BsonDocument, String>> chunks) {
+        if (key.values().stream().anyMatch(v -> v.isString() && "hashed".equals(v.asString().getValue()))) {
+            throw new IllegalArgumentException("hashed shard keys are routed by mongos");
+        }
+        this.fields = new ArrayList<>(key.keySet());
+        List<Map.Entry<BsonDocument, String>> sorted = new ArrayList<>(chunks);
+        sorted.sort(Map.Entry.comparingByKey(ShardKeyRouter::compareDocuments));
+        this.mins = sorted.stream().map(Map.Entry::getKey).toArray(BsonDocument[]::new);
+        this.shards = sorted.stream().map(Map.Entry::getValue).toArray(String[]::new);
+    }
+
+    /**
+     * Shard of the chunk whose range contains the document's shard key.
+     */
+    public String route(BsonDocument document) {
+        BsonDocument shardKey = new BsonDocument();
+        for (String field : fields) {
+            BsonValue value = lookup(document, field);
+            shardKey.append(field, value != null ? value : BsonNull.VALUE);
+        }
+        // Last chunk whose lower bound is <= the key
+        int low = 0;
+        int high = mins.length - 1;
+        int found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareDocuments(mins[mid], shardKey) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return shards[found];
+    }
+
+    private static BsonValue lookup(BsonDocument document, String path) {
+        BsonValue current = document;
+        for (String part : path.split("\\.")) {
+            if (current == null || !current.isDocument()) return null;
+            current = current.asDocument().get(part);
+        }
+        return current;
+    }
+
+    static int compareDocuments(BsonDocument a, BsonDocument b) {
+        var left = a.entrySet().iterator();
+        var right = b.entrySet().iterator();
+        while (left.hasNext() && right.hasNext()) {
+            var x = left.next();
+            var y = right.next();
+            int byType = Integer.compare(typeOrder(x.getValue()), typeOrder(y.getValue()));
+            if (byType != 0) return byType;
+            int byName = x.getKey().compareTo(y.getKey());
+            if (byName != 0) return byName;
+            int byValue = compare(x.getValue(), y.getValue());
+            if (byValue != 0) return byValue;
+        }
+        return Boolean.compare(left.hasNext(), right.hasNext());
+    }
+
+    /**
+     * MongoDB's cross-type comparison order (simple collation).
+     */
+    public static int compare(BsonValue a, BsonValue b) {
+        int byType = Integer.compare(typeOrder(a), typeOrder(b));
+        if (byType != 0) return byType;
+        return switch (a.getBsonType()) {
+            case MIN_KEY, MAX_KEY, NULL, UNDEFINED -> 0;
+            case INT32, INT64, DOUBLE, DECIMAL128 -> compareNumbers((BsonNumber) a, (BsonNumber) b);
+            case STRING, SYMBOL -> compareStrings(stringOf(a), stringOf(b));
+            case DOCUMENT -> compareDocuments(a.asDocument(), b.asDocument());
+            case ARRAY -> compareArrays(a.asArray(), b.asArray());
+            case BINARY -> compareBinary(a.asBinary(), b.asBinary());
+            case OBJECT_ID -> a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+            case BOOLEAN -> Boolean.compare(a.asBoolean().getValue(), b.asBoolean().getValue());
+            case DATE_TIME -> Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+            case TIMESTAMP -> a.asTimestamp().compareTo(b.asTimestamp());
+            case REGULAR_EXPRESSION -> compareStrings(a.asRegularExpression().getPattern() + "/" + a.asRegularExpression().getOptions(),
+                    b.asRegularExpression().getPattern() + "/" + b.asRegularExpression().getOptions());
+            default -> compareStrings(a.toString(), b.toString());
+        };
+    }
+
+    private static int typeOrder(BsonValue value) {
+        BsonType type = value.getBsonType();
+        return switch (type) {
+            case MIN_KEY -> 1;
+            case NULL, UNDEFINED -> 2;
+            case INT32, INT64, DOUBLE, DECIMAL128 -> 3;
+            case STRING, SYMBOL -> 4;
+            case DOCUMENT -> 5;
+            case ARRAY -> 6;
+            case BINARY -> 7;
+            case OBJECT_ID -> 8;
+            case BOOLEAN -> 9;
+            case DATE_TIME -> 10;
+            case TIMESTAMP -> 11;
+            case REGULAR_EXPRESSION -> 12;
+            case MAX_KEY -> 100;
+            default -> 50;
+        };
+    }
+
+    private static int compareNumbers(BsonNumber a, BsonNumber b) {
+        if (a.getBsonType() == BsonType.INT64 && b.getBsonType() == BsonType.INT64) {
+            return Long.compare(a.longValue(), b.longValue());
+        }
+        if (a.getBsonType() == BsonType.DECIMAL128 || b.getBsonType() == BsonType.DECIMAL128) {
+            BigDecimal left = exactValue(a);
+            BigDecimal right = exactValue(b);
+            if (left != null && right != null) return left.compareTo(right);
+        }
+        return Double.compare(a.doubleValue(), b.doubleValue());
+    }
+
+    // Most doubles have no exact Decimal128 form, so compare both as BigDecimal; null for NaN and infinities
+    private static BigDecimal exactValue(BsonNumber number) {
+        return switch (number.getBsonType()) {
+            case INT32, INT64 -> BigDecimal.valueOf(number.longValue());
+            case DOUBLE -> Double.isFinite(number.doubleValue()) ? new BigDecimal(number.doubleValue()) : null;
+            default -> decimalValue(number.decimal128Value());
+        };
+    }
+
+    private static BigDecimal decimalValue(Decimal128 value) {
+        if (value.isNaN() || value.isInfinite()) return null;
+        try {
+            return value.bigDecimalValue();
+        } catch (ArithmeticException e) {
+            return BigDecimal.ZERO; // negative zero
+        }
+    }
+
+    private static String stringOf(BsonValue value) {
+        return value.isString() ? value.asString().getValue() : value.asSymbol().getSymbol();
+    }
+
+    // Simple collation compares UTF-8 bytes, which matches code point order
+    private static int compareStrings(String a, String b) {
+        return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int compareArrays(BsonArray a, BsonArray b) {
+        for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+            int result = compare(a.get(i), b.get(i));
+            if (result != 0) return result;
+        }
+        return Integer.compare(a.size(), b.size());
+    }
+
+    static int compareBinary(BsonBinary a, BsonBinary b) {
+        int byLength = Integer.compare(a.getData().length, b.getData().length);
+        if (byLength != 0) return byLength;
+        int bySubtype = Byte.compare(a.getType(), b.getType());
+        if (bySubtype != 0) return bySubtype;
+        return Arrays.compareUnsigned(a.getData(), b.getData());
+    }
+}
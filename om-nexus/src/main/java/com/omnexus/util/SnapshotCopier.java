@@ -0,0 +1,161 @@
+package com.omnexus.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Copies a mongod dbPath for a physical backup. On Linux the tree is first cloned
+ * with reflinks (copy-on-write, near instant on btrfs/XFS); when the filesystem
+ * cannot do that, files are copied in parallel through FileChannels and hashed
+ * on the way. Hard links are never used: WiredTiger keeps writing into the same
+ * files after the lock is released, which would change the "copy" too.
+ */
+public final class SnapshotCopier {
+    private static final int COPY_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * digests holds the SHA-256 of each copied file by '/' separated relative path;
+     * it is empty after a reflink clone, which never reads the data.
+     */
+    public record CopyResult(String method, long files, long bytes, Map<String, BsonIntegrity.FileDigest> digests) {}
+
+    private SnapshotCopier() {
+    }
+
+    public static CopyResult copyTree(Path source, Path target, int parallelism, Predicate<Path> include) throws IOException {
+        Files.createDirectories(target);
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(source)) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> include.test(source.relativize(file)))
+                    .toList();
+        }
+        long bytes = 0;
+        for (Path file : files) {
+            bytes += Files.size(file);
+        }
+
+        if (reflinkClone(source, target, include)) {
+            return new CopyResult("reflink", files.size(), bytes, Map.of());
+        }
+
+        Map<String, BsonIntegrity.FileDigest> digests = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(pool.submit(() -> {
+                    String relative = source.relativize(file).toString().replace('\\', '/');
+                    digests.put(relative, copyFile(file, target.resolve(source.relativize(file))));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying " + source, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to copy " + source + ": " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return new CopyResult("copy", files.size(), bytes, digests);
+    }
+
+    private static BsonIntegrity.FileDigest copyFile(Path source, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        MessageDigest digest = BsonIntegrity.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        long size = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+                size += read;
+            }
+            out.force(false);
+        }
+        return new BsonIntegrity.FileDigest(size, BsonIntegrity.hex(digest.digest()), -1, -1, null);
+    }
+
+    // cp --reflink=always fails instead of silently copying when the filesystem has no reflinks
+    private static boolean reflinkClone(Path source, Path target, Predicate<Path> include) {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux")) {
+            return false;
+        }
+        List<String> cmd = new ArrayList<>(List.of("cp", "-R", "--reflink=always"));
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(source)) {
+            for (Path entry : entries) {
+                if (include.test(source.relativize(entry))) {
+                    cmd.add(entry.toAbsolutePath().toString());
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        if (cmd.size() == 3) {
+            return true; // nothing to copy
+        }
+        cmd.add(target.toAbsolutePath().toString() + "/");
+
+        try {
+            Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes());
+            if (process.waitFor() == 0) {
+                removeExcluded(target, include);
+                return true;
+            }
+            System.out.println("Reflink clone not available, falling back to parallel copy: " + output.trim());
+        } catch (IOException e) {
+            System.out.println("Reflink clone not available: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Clear any partial clone before copying
+        try {
+            ProcessManager.deleteDirectory(target.toFile());
+            Files.createDirectories(target);
+        } catch (IOException e) {
+            System.err.println("Failed to clear partial clone in " + target + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    // Top-level entries are filtered before cloning; this drops excluded files found deeper in the tree
+    private static void removeExcluded(Path target, Predicate<Path> include) throws IOException {
+        List<Path> excluded;
+        try (Stream<Path> walk = Files.walk(target)) {
+            excluded = walk.filter(Files::isRegularFile)
+                    .filter(file -> !include.test(target.relativize(file)))
+                    .toList();
+        }
+        for (Path file : excluded) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
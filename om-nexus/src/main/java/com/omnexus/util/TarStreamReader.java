@@ -0,0 +1,169 @@
+package com.omnexus.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential tar reader for archives made by TarStreamWriter or GNU/BSD tar
+ * (ustar, GNU long names and base-256 sizes, pax path/size records). Entry
+ * contents are read straight from the underlying stream, so a .tar.gz can be
+ * consumed while it is being decompressed.
+ */
+public class TarStreamReader {
+    private static final int BLOCK = 512;
+
+    private final InputStream in;
+    private long remaining; // unread bytes of the current entry
+    private long padding; // bytes up to the next block boundary after the current entry
+
+    public record Entry(String name, long size, boolean regularFile) {}
+
+    public TarStreamReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Advance to the next entry, skipping whatever is left of the current one; null at the end.
+     */
+    public Entry next() throws IOException {
+        skipFully(remaining + padding);
+        remaining = 0;
+        padding = 0;
+
+        String longName = null;
+        Long paxSize = null;
+        while (true) {
+            byte[] header = in.readNBytes(BLOCK);
+            if (header.length < BLOCK || isZero(header)) {
+                return null;
+            }
+
+            String name = string(header, 0, 100);
+            String prefix = string(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+            long size = size(header);
+            char type = (char) header[156];
+
+            if (type == 'L') {
+                // GNU long name: the data is the name of the following entry
+                longName = trimNul(new String(readData(size), StandardCharsets.UTF_8));
+                continue;
+            }
+            if (type == 'x') {
+                String pax = new String(readData(size), StandardCharsets.UTF_8);
+                for (String record : pax.split("\n")) {
+                    int space = record.indexOf(' ');
+                    int equals = record.indexOf('=');
+                    if (space < 0 || equals < space) continue;
+                    String key = record.substring(space + 1, equals);
+                    String value = record.substring(equals + 1);
+                    if (key.equals("path")) longName = value;
+                    if (key.equals("size")) paxSize = Long.parseLong(value);
+                }
+                continue;
+            }
+            if (type == 'g') {
+                readData(size);
+                continue;
+            }
+
+            if (longName != null) name = longName;
+            if (paxSize != null) size = paxSize;
+            remaining = size;
+            padding = (BLOCK - size % BLOCK) % BLOCK;
+            return new Entry(name, size, type == '0' || type == 0);
+        }
+    }
+
+    /**
+     * Contents of the current entry. Closing it does not close the archive.
+     */
+    public InputStream entryStream() {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) return -1;
+                int b = in.read();
+                if (b >= 0) remaining--;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) return -1;
+                int read = in.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0) remaining -= read;
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = in.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(in.available(), remaining);
+            }
+
+            @Override
+            public void close() {
+                // The archive stays open for the next entry
+            }
+        };
+    }
+
+    private byte[] readData(long size) throws IOException {
+        byte[] data = in.readNBytes((int) size);
+        skipFully((BLOCK - size % BLOCK) % BLOCK);
+        return data;
+    }
+
+    private void skipFully(long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new IOException("Unexpected end of tar archive");
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static long size(byte[] header) {
+        if ((header[124] & 0x80) != 0) {
+            // GNU base-256
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = string(header, 124, 12).trim();
+        return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+    }
+
+    private static String string(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) end++;
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String trimNul(String value) {
+        int nul = value.indexOf('\0');
+        return nul >= 0 ? value.substring(0, nul) : value;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,166 @@
+package com.omnexus.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Minimal ustar writer that streams file contents from FileChannels into the
+ * output channel, so a dump directory can be served as a tar archive without
+ * staging it on disk or in memory. transferTo avoids copies only when the
+ * output is a file or socket channel; over a servlet stream wrapped with
+ * Channels.newChannel the JDK copies through a small heap buffer instead.
+ */
+public class TarStreamWriter {
+    private static final int BLOCK = 512;
+    private static final int COPY_BUFFER = 64 * 1024;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+
+    private final WritableByteChannel out;
+
+    public TarStreamWriter(WritableByteChannel out) {
+        this.out = out;
+    }
+
+    /**
+     * Size of an entry in the archive: header block plus contents padded to a block.
+     */
+    public static long entrySize(long fileSize) {
+        return BLOCK + (fileSize + BLOCK - 1) / BLOCK * BLOCK;
+    }
+
+    /**
+     * Size of the end-of-archive marker.
+     */
+    public static long trailerSize() {
+        return 2L * BLOCK;
+    }
+
+    /**
+     * Write one regular file whose contents are the concatenation of the given sources.
+     */
+    public void putFile(String name, long size, long modifiedMillis, List<Path> sources) throws IOException {
+        writeFully(header(name, size, modifiedMillis));
+
+        long written = 0;
+        for (Path source : sources) {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                long length = in.size();
+                long position = 0;
+                while (position < length) {
+                    long transferred = in.transferTo(position, length - position, out);
+                    if (transferred <= 0) {
+                        // transferTo may return 0 without an error (e.g. a non-blocking target); never spin on it
+                        position = copy(in, position, length, source);
+                        break;
+                    }
+                    position += transferred;
+                }
+                written += length;
+            }
+        }
+        if (written != size) {
+            throw new IOException("Size of " + name + " changed while streaming (" + written + " != " + size + ")");
+        }
+
+        int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+        if (padding > 0) {
+            writeFully(ByteBuffer.allocate(padding));
+        }
+    }
+
+    // Buffered copy of [position, length) that fails instead of looping when the file stops yielding bytes
+    private long copy(FileChannel in, long position, long length, Path source) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(COPY_BUFFER, length - position));
+        while (position < length) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), length - position));
+            int read = in.read(buffer, position);
+            if (read <= 0) {
+                throw new IOException("Transfer of " + source + " stalled at " + position + " of " + length);
+            }
+            buffer.flip();
+            writeFully(buffer);
+            position += read;
+        }
+        return position;
+    }
+
+    public void finish() throws IOException {
+        writeFully(ByteBuffer.allocate((int) trailerSize()));
+    }
+
+    private ByteBuffer header(String name, long size, long modifiedMillis) throws IOException {
+        byte[] header = new byte[BLOCK];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length <= 100) {
+            System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        } else {
+            // Split long paths into ustar prefix + name at a directory separator
+            int split = name.lastIndexOf('/', 155);
+            byte[] prefix = split > 0 ? name.substring(0, split).getBytes(StandardCharsets.UTF_8) : null;
+            byte[] rest = split > 0 ? name.substring(split + 1).getBytes(StandardCharsets.UTF_8) : null;
+            if (prefix == null || prefix.length > 155 || rest.length > 100) {
+                throw new IOException("Path too long for tar entry: " + name);
+            }
+            System.arraycopy(rest, 0, header, 0, rest.length);
+            System.arraycopy(prefix, 0, header, 345, prefix.length);
+        }
+
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        if (size <= MAX_OCTAL_SIZE) {
+            octal(header, 124, 12, size);
+        } else {
+            // GNU base-256 encoding for entries of 8 GiB and more
+            header[124] = (byte) 0x80;
+            for (int i = 0; i < 8; i++) {
+                header[135 - i] = (byte) (size >>> (8 * i));
+            }
+        }
+        octal(header, 136, 12, modifiedMillis / 1000);
+        header[156] = '0';
+        System.arraycopy("ustar\0".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 6);
+        header[263] = '0';
+        header[264] = '0';
+
+        // Checksum is computed with the checksum field filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        header[155] = ' ';
+        return ByteBuffer.wrap(header);
+    }
+
+    // Zero-padded octal digits followed by a NUL terminator
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int width = length - 1;
+        StringBuilder padded = new StringBuilder();
+        for (int i = digits.length(); i < width; i++) {
+            padded.append('0');
+        }
+        padded.append(digits);
+        byte[] bytes = padded.toString().getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, width);
+        header[offset + width] = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (out.write(buffer) <= 0 && buffer.hasRemaining()) {
+                throw new IOException("Output channel accepted no bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.omnexus.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class BackupDownloadServiceTest {
+
+	@Test
+	void closedRangesAreClampedToTheFile() {
+		assertArrayEquals(new long[]{0, 99}, BackupDownloadService.parseRange("0-99", 1000));
+		assertArrayEquals(new long[]{500, 999}, BackupDownloadService.parseRange("500-5000", 1000));
+		assertArrayEquals(new long[]{999, 999}, BackupDownloadService.parseRange(" 999 - 999 ", 1000));
+	}
+
+	@Test
+	void openAndSuffixRanges() {
+		assertArrayEquals(new long[]{100, 999}, BackupDownloadService.parseRange("100-", 1000));
+		assertArrayEquals(new long[]{900, 999}, BackupDownloadService.parseRange("-100", 1000));
+		assertArrayEquals(new long[]{0, 999}, BackupDownloadService.parseRange("-5000", 1000));
+	}
+
+	@Test
+	void unsatisfiableRangesAreNull() {
+		assertNull(BackupDownloadService.parseRange("1000-", 1000));
+		assertNull(BackupDownloadService.parseRange("500-100", 1000));
+		assertNull(BackupDownloadService.parseRange("-0", 1000));
+		assertNull(BackupDownloadService.parseRange("0-0", 0));
+		assertNull(BackupDownloadService.parseRange("abc", 1000));
+		assertNull(BackupDownloadService.parseRange("1-x", 1000));
+	}
+}
@@ -0,0 +1,65 @@
+package com.omnexus.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortAllocatorServiceTest {
+
+	private static BitSet taken(int... offsets) {
+		BitSet bits = new BitSet();
+		for (int offset : offsets) bits.set(offset);
+		return bits;
+	}
+
+	@Test
+	void picksTheFirstContiguousRun() {
+		assertEquals(List.of(28000, 28001, 28002), PortAllocatorService.pick(new BitSet(), 28000, 28999, 3));
+		// 28001 and 28004 are taken: the first gap of three starts at 28005
+		assertEquals(List.of(28005, 28006, 28007), PortAllocatorService.pick(taken(1, 4), 28000, 28999, 3));
+		assertEquals(List.of(28002, 28003), PortAllocatorService.pick(taken(0, 1, 4), 28000, 28999, 2));
+	}
+
+	@Test
+	void fallsBackToScatteredPortsWithoutARun() {
+		// Range of six with every other port taken
+		assertEquals(List.of(28001, 28003, 28005), PortAllocatorService.pick(taken(0, 2, 4), 28000, 28005, 3));
+	}
+
+	@Test
+	void returnsFewerPortsWhenTheRangeIsFull() {
+		assertEquals(List.of(28002), PortAllocatorService.pick(taken(0, 1, 3), 28000, 28003, 2));
+		assertTrue(PortAllocatorService.pick(taken(0, 1), 28000, 28001, 1).isEmpty());
+	}
+
+	@Test
+	void runAtTheEndOfTheRangeIsUsed() {
+		assertEquals(List.of(28003, 28004), PortAllocatorService.pick(taken(0, 1, 2), 28000, 28004, 2));
+	}
+
+	@Test
+	void parsesRangesAndSinglePorts() {
+		assertEquals(new TreeSet<>(List.of(28000, 28001, 28002, 28010)), PortAllocatorService.parse("28000-28002, 28010"));
+		assertTrue(PortAllocatorService.parse(null).isEmpty());
+		assertTrue(PortAllocatorService.parse(" ").isEmpty());
+	}
+
+	@Test
+	void formatsRunsCompactly() {
+		assertEquals("28000-28002,28010", PortAllocatorService.format(List.of(28010, 28001, 28000, 28002)));
+		assertEquals("28005", PortAllocatorService.format(List.of(28005, 28005)));
+		assertEquals("", PortAllocatorService.format(List.of()));
+	}
+
+	@Test
+	void formatAndParseRoundTrip() {
+		TreeSet<Integer> ports = new TreeSet<>(List.of(1, 2, 3, 7, 9, 10, 65535));
+		assertEquals("1-3,7,9-10,65535", PortAllocatorService.format(ports));
+		assertEquals(ports, PortAllocatorService.parse(PortAllocatorService.format(ports)));
+	}
+}
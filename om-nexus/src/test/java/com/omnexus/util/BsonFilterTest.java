@@ -0,0 +1,80 @@
+package com.omnexus.util;
+
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BsonFilterTest {
+
+	private static boolean matches(String filter, String document) {
+		return BsonFilter.parse(filter).test(BsonDocument.parse(document));
+	}
+
+	@Test
+	void blankFilterMatchesEverything() {
+		assertTrue(BsonFilter.parse(null).isEmpty());
+		assertTrue(matches("  ", "{a: 1}"));
+	}
+
+	@Test
+	void equalityComparesNumbersByValueAndMatchesArrayElements() {
+		assertTrue(matches("{a: 1}", "{a: 1.0}"));
+		assertTrue(matches("{a: 2}", "{a: [1, 2, 3]}"));
+		assertTrue(matches("{'b.c': 'x'}", "{b: {c: 'x'}}"));
+		assertTrue(matches("{'b.1': 5}", "{b: [4, 5]}"));
+		assertFalse(matches("{a: '1'}", "{a: 1}"));
+	}
+
+	@Test
+	void nullMatchesMissingFields() {
+		assertTrue(matches("{a: null}", "{b: 1}"));
+		assertTrue(matches("{a: null}", "{a: null}"));
+		assertFalse(matches("{a: null}", "{a: 0}"));
+		assertTrue(matches("{a: {$eq: null}}", "{}"));
+		assertFalse(matches("{a: {$ne: null}}", "{}"));
+		assertTrue(matches("{a: {$ne: null}}", "{a: 1}"));
+		assertTrue(matches("{a: {$in: [null, 1]}}", "{}"));
+		assertFalse(matches("{a: {$nin: [null]}}", "{}"));
+	}
+
+	@Test
+	void rangesOnlyCompareSameKindOfValue() {
+		assertTrue(matches("{a: {$gt: 1, $lte: 3}}", "{a: 3}"));
+		assertFalse(matches("{a: {$gt: 1}}", "{a: 'z'}"));
+		assertTrue(matches("{d: {$lt: {$date: '2026-01-01T00:00:00Z'}}}", "{d: {$date: '2025-06-01T00:00:00Z'}}"));
+		assertFalse(matches("{a: {$lt: 5}}", "{}"));
+	}
+
+	@Test
+	void existsAcceptsBooleansAndNumbers() {
+		assertTrue(matches("{a: {$exists: true}}", "{a: null}"));
+		assertTrue(matches("{a: {$exists: 1}}", "{a: 2}"));
+		assertTrue(matches("{a: {$exists: 0}}", "{b: 2}"));
+		assertFalse(matches("{a: {$exists: false}}", "{a: 2}"));
+	}
+
+	@Test
+	void logicalOperatorsCombineClauses() {
+		assertTrue(matches("{$or: [{a: 1}, {b: 2}]}", "{b: 2}"));
+		assertFalse(matches("{$and: [{a: 1}, {b: 2}]}", "{a: 1}"));
+		assertTrue(matches("{$and: [{a: 1}, {$or: [{b: 2}, {c: 3}]}]}", "{a: 1, c: 3}"));
+	}
+
+	@Test
+	void invalidFiltersAreRejectedWhenParsed() {
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{a: "));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{a: {$regex: 'x'}}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{$nor: [{a: 1}]}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{$and: {a: 1}}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{$or: []}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{$or: [{b: {$foo: 1}}]}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{a: {$in: 1}}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{a: {$exists: 'yes'}}"));
+		assertThrows(IllegalArgumentException.class, () -> BsonFilter.parse("{a: {$gt: 1, b: 2}}"));
+		assertDoesNotThrow(() -> BsonFilter.parse("{a: {b: 2}}"));
+	}
+}
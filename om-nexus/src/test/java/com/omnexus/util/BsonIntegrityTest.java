@@ -0,0 +1,112 @@
+package com.omnexus.util;
+
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BsonIntegrityTest {
+
+	@TempDir
+	Path dir;
+
+	private static byte[] bson(String json) {
+		RawBsonDocument document = RawBsonDocument.parse(json);
+		return Arrays.copyOf(document.getByteBuffer().array(), document.getByteBuffer().remaining());
+	}
+
+	private static byte[] concat(List<byte[]> parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		parts.forEach(out::writeBytes);
+		return out.toByteArray();
+	}
+
+	private BsonIntegrity.FileDigest scanFile(byte[] content) throws IOException {
+		return BsonIntegrity.scan(Files.write(dir.resolve("f.bson"), content), true);
+	}
+
+	@Test
+	void plainFilesGetOnlyTheirSha256() throws IOException {
+		byte[] content = "not bson".getBytes(StandardCharsets.UTF_8);
+		String expected = BsonIntegrity.hex(BsonIntegrity.newDigest().digest(content));
+		BsonIntegrity.FileDigest fromFile = BsonIntegrity.scan(Files.write(dir.resolve("f.json"), content), false);
+		assertEquals(new BsonIntegrity.FileDigest(content.length, expected, -1, -1, null), fromFile);
+		assertEquals(fromFile, BsonIntegrity.scan(new ByteArrayInputStream(content), false));
+	}
+
+	@Test
+	void bsonFilesCountDocumentsAndSumTheirHashes() throws IOException {
+		List<byte[]> documents = List.of(bson("{_id: 1, a: 'x'}"), bson("{_id: 2, b: [1, 2]}"), bson("{_id: 3}"));
+		byte[] content = concat(documents);
+		BsonIntegrity.FileDigest digest = scanFile(content);
+
+		assertTrue(digest.isValid());
+		assertEquals(content.length, digest.size());
+		assertEquals(3, digest.documents());
+		long sum = documents.stream().mapToLong(d -> BsonIntegrity.documentHash(ByteBuffer.wrap(d))).sum();
+		assertEquals(sum, digest.contentHash());
+		assertEquals(BsonIntegrity.hex(BsonIntegrity.newDigest().digest(content)), digest.sha256());
+		assertEquals(digest, BsonIntegrity.scan(new ByteArrayInputStream(content), true));
+	}
+
+	@Test
+	void contentHashIgnoresDocumentOrder() throws IOException {
+		byte[] a = bson("{_id: 1}");
+		byte[] b = bson("{_id: 2}");
+		BsonIntegrity.FileDigest forward = scanFile(concat(List.of(a, b)));
+		BsonIntegrity.FileDigest reversed = scanFile(concat(List.of(b, a)));
+		assertEquals(forward.contentHash(), reversed.contentHash());
+		assertNotEquals(forward.sha256(), reversed.sha256());
+		// Unlike XOR, a sum does not cancel out duplicates
+		assertNotEquals(0, scanFile(concat(List.of(a, a))).contentHash());
+	}
+
+	@Test
+	void documentHashLeavesThePositionAlone() {
+		ByteBuffer buffer = ByteBuffer.wrap(bson("{x: 1}"));
+		long hash = BsonIntegrity.documentHash(buffer);
+		assertEquals(0, buffer.position());
+		assertEquals(hash, BsonIntegrity.documentHash(buffer));
+		assertNotEquals(hash, BsonIntegrity.documentHash(ByteBuffer.wrap(bson("{x: 2}"))));
+	}
+
+	@Test
+	void emptyBsonFileIsValid() throws IOException {
+		BsonIntegrity.FileDigest digest = BsonIntegrity.scan(new ByteArrayInputStream(new byte[0]), true);
+		assertTrue(digest.isValid());
+		assertEquals(0, digest.documents());
+		assertEquals(0, digest.contentHash());
+	}
+
+	@Test
+	void brokenFramingIsReported() throws IOException {
+		byte[] document = bson("{_id: 1, pad: 'abcdefgh'}");
+		byte[] truncated = Arrays.copyOf(concat(List.of(document, document)), document.length * 2 - 3);
+		for (BsonIntegrity.FileDigest digest : List.of(scanFile(truncated), BsonIntegrity.scan(new ByteArrayInputStream(truncated), true))) {
+			assertFalse(digest.isValid());
+			assertNull(digest.sha256());
+			assertEquals(1, digest.documents());
+			assertTrue(digest.error().startsWith("truncated document at offset " + document.length), digest.error());
+		}
+
+		byte[] badLength = {2, 0, 0, 0, 0};
+		BsonIntegrity.FileDigest digest = scanFile(badLength);
+		assertEquals("invalid document length 2 at offset 0", digest.error());
+		assertEquals(digest.error(), BsonIntegrity.scan(new ByteArrayInputStream(badLength), true).error());
+	}
+}
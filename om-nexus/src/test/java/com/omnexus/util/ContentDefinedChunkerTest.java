@@ -0,0 +1,111 @@
+package com.omnexus.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentDefinedChunkerTest {
+
+	private static byte[] random(int size, long seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	private static List<byte[]> chunks(InputStream in) throws IOException {
+		ContentDefinedChunker chunker = new ContentDefinedChunker(in);
+		List<byte[]> chunks = new ArrayList<>();
+		for (byte[] chunk = chunker.nextChunk(); chunk != null; chunk = chunker.nextChunk()) {
+			chunks.add(chunk);
+		}
+		return chunks;
+	}
+
+	private static List<byte[]> chunks(byte[] data) throws IOException {
+		return chunks(new ByteArrayInputStream(data));
+	}
+
+	private static List<Integer> sizes(List<byte[]> chunks) {
+		return chunks.stream().map(chunk -> chunk.length).toList();
+	}
+
+	@Test
+	void emptyStreamHasNoChunks() throws IOException {
+		assertNull(new ContentDefinedChunker(new ByteArrayInputStream(new byte[0])).nextChunk());
+	}
+
+	@Test
+	void inputUpToMinSizeIsOneChunk() throws IOException {
+		byte[] data = random(ContentDefinedChunker.MIN_SIZE, 1);
+		List<byte[]> chunks = chunks(data);
+		assertEquals(1, chunks.size());
+		assertArrayEquals(data, chunks.get(0));
+	}
+
+	@Test
+	void chunksStayWithinBoundsAndReassemble() throws IOException {
+		byte[] data = random(16 * 1024 * 1024, 2);
+		List<byte[]> chunks = chunks(data);
+		ByteArrayOutputStream joined = new ByteArrayOutputStream();
+		for (int i = 0; i < chunks.size(); i++) {
+			int size = chunks.get(i).length;
+			assertTrue(size <= ContentDefinedChunker.MAX_SIZE, "chunk " + i + " is " + size + " bytes");
+			if (i < chunks.size() - 1) {
+				assertTrue(size > ContentDefinedChunker.MIN_SIZE, "chunk " + i + " is " + size + " bytes");
+			}
+			joined.writeBytes(chunks.get(i));
+		}
+		assertArrayEquals(data, joined.toByteArray());
+		assertTrue(chunks.size() > 3, "16 MB of random data should cut near the average size");
+	}
+
+	@Test
+	void uniformInputIsCutAtMaxSize() throws IOException {
+		// A constant byte never satisfies the mask, so only the size limit cuts
+		byte[] data = new byte[ContentDefinedChunker.MAX_SIZE * 2 + 10];
+		assertEquals(List.of(ContentDefinedChunker.MAX_SIZE, ContentDefinedChunker.MAX_SIZE, 10), sizes(chunks(data)));
+	}
+
+	@Test
+	void boundariesDoNotDependOnReadSizes() throws IOException {
+		byte[] data = random(6 * 1024 * 1024, 3);
+		InputStream trickle = new ByteArrayInputStream(data) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 4093));
+			}
+		};
+		assertEquals(sizes(chunks(data)), sizes(chunks(trickle)));
+	}
+
+	@Test
+	void insertLeavesLaterChunksUnchanged() throws IOException {
+		byte[] data = random(12 * 1024 * 1024, 4);
+		int at = 300 * 1024;
+		byte[] edited = new byte[data.length + 100];
+		System.arraycopy(data, 0, edited, 0, at);
+		System.arraycopy(data, at, edited, at + 100, data.length - at);
+
+		List<byte[]> before = chunks(data);
+		List<byte[]> after = chunks(edited);
+		// Boundaries resynchronize after the edit: the tails of both chunk lists match
+		int matching = 0;
+		while (matching < Math.min(before.size(), after.size())
+				&& Arrays.equals(before.get(before.size() - 1 - matching), after.get(after.size() - 1 - matching))) {
+			matching++;
+		}
+		assertTrue(matching >= before.size() - 2, matching + " of " + before.size() + " chunks unchanged");
+	}
+}
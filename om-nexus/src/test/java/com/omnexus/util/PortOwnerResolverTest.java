@@ -0,0 +1,73 @@
+package com.omnexus.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortOwnerResolverTest {
+
+	private static final String TCP_HEADER =
+			"  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n";
+
+	@TempDir
+	Path proc;
+
+	// 0x6D60 = 28000, 0x6D61 = 28001, 0x6D62 = 28002; state 0A is LISTEN, 01 ESTABLISHED
+	@BeforeEach
+	void writeSocketTables() throws IOException {
+		Files.createDirectories(proc.resolve("net"));
+		Files.writeString(proc.resolve("net/tcp"), TCP_HEADER
+				+ "   0: 0100007F:6D60 00000000:0000 0A 00000000:00000000 00:00000000 00000000  1000        0 1111 1 0000000000000000 100 0 0 10 0\n"
+				+ "   1: 0100007F:6D61 0100007F:D431 01 00000000:00000000 00:00000000 00000000  1000        0 2222 1 0000000000000000 20 4 4 28 -1\n"
+				+ "   2: 00000000:6D62 00000000:0000 0A 00000000:00000000 00:00000000 00000000     0        0 0 1 0000000000000000 100 0 0 10 0\n");
+		Files.writeString(proc.resolve("net/tcp6"), TCP_HEADER
+				+ "   0: 00000000000000000000000001000000:6D61 00000000000000000000000000000000:0000 0A 00000000:00000000 00:00000000 00000000  1000        0 3333 1 0000000000000000 100 0 0 10 0\n");
+	}
+
+	private void process(long pid, String... links) throws IOException {
+		Path fd = Files.createDirectories(proc.resolve(pid + "/fd"));
+		for (int i = 0; i < links.length; i++) {
+			Files.createSymbolicLink(fd.resolve(String.valueOf(i)), Paths.get(links[i]));
+		}
+	}
+
+	@Test
+	void listeningPortsReadsBothTablesAndOnlyListenState() throws IOException {
+		assertEquals(Set.of(28000, 28001, 28002), PortOwnerResolver.listeningPorts(proc));
+	}
+
+	@Test
+	void listeningPidsFollowsSocketInodesToProcesses() throws IOException {
+		process(100, "/dev/null", "socket:[1111]", "pipe:[9]");
+		process(200, "socket:[3333]", "socket:[2222]");
+		process(300, "socket:[1111]"); // a forked child sharing the listening socket
+		Files.createDirectories(proc.resolve("self/fd"));
+
+		Map<Integer, Set<Long>> owners = PortOwnerResolver.listeningPids(proc, List.of(28000, 28001, 28002, 28003));
+		assertEquals(Map.of(28000, Set.of(100L, 300L), 28001, Set.of(200L)), owners);
+	}
+
+	@Test
+	void onlyRequestedPortsAreResolved() throws IOException {
+		process(100, "socket:[1111]");
+		assertTrue(PortOwnerResolver.listeningPids(proc, List.of(28001)).isEmpty());
+	}
+
+	@Test
+	void unreadableProcessesAreSkipped() throws IOException {
+		Files.createDirectories(proc.resolve("400")); // exited: no fd directory left
+		process(500, "socket:[1111]");
+		assertEquals(Map.of(28000, Set.of(500L)), PortOwnerResolver.listeningPids(proc, List.of(28000)));
+	}
+}
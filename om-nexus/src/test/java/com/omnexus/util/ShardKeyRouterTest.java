@@ -0,0 +1,119 @@
+package com.omnexus.util;
+
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonBoolean;
+import org.bson.BsonDateTime;
+import org.bson.BsonDecimal128;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonMaxKey;
+import org.bson.BsonMinKey;
+import org.bson.BsonNull;
+import org.bson.BsonObjectId;
+import org.bson.BsonRegularExpression;
+import org.bson.BsonString;
+import org.bson.BsonSymbol;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardKeyRouterTest {
+
+	private static void assertOrdered(BsonValue lower, BsonValue higher) {
+		assertTrue(ShardKeyRouter.compare(lower, higher) < 0, lower + " < " + higher);
+		assertTrue(ShardKeyRouter.compare(higher, lower) > 0, higher + " > " + lower);
+	}
+
+	@Test
+	void typeBracketsFollowMongoOrder() {
+		List<BsonValue> ascending = List.of(
+				new BsonMinKey(),
+				BsonNull.VALUE,
+				new BsonInt32(Integer.MAX_VALUE),
+				new BsonString(""),
+				new BsonDocument(),
+				new BsonArray(),
+				new BsonBinary(new byte[0]),
+				new BsonObjectId(new ObjectId("000000000000000000000000")),
+				BsonBoolean.FALSE,
+				new BsonDateTime(Long.MIN_VALUE),
+				new BsonTimestamp(0, 0),
+				new BsonRegularExpression(""),
+				new BsonMaxKey());
+		for (int i = 0; i + 1 < ascending.size(); i++) {
+			assertOrdered(ascending.get(i), ascending.get(i + 1));
+		}
+	}
+
+	@Test
+	void minKeyAndMaxKeyBoundEveryValue() {
+		assertEquals(0, ShardKeyRouter.compare(new BsonMinKey(), new BsonMinKey()));
+		assertEquals(0, ShardKeyRouter.compare(new BsonMaxKey(), new BsonMaxKey()));
+		for (BsonValue value : List.of(BsonNull.VALUE, new BsonDouble(Double.NEGATIVE_INFINITY),
+				new BsonDouble(Double.POSITIVE_INFINITY), new BsonString("￿"), new BsonTimestamp(Integer.MAX_VALUE, 1))) {
+			assertOrdered(new BsonMinKey(), value);
+			assertOrdered(value, new BsonMaxKey());
+		}
+	}
+
+	@Test
+	void numbersCompareByValueAcrossTypes() {
+		assertEquals(0, ShardKeyRouter.compare(new BsonInt32(1), new BsonDouble(1.0)));
+		assertEquals(0, ShardKeyRouter.compare(new BsonInt64(2), new BsonDecimal128(Decimal128.parse("2.00"))));
+		assertOrdered(new BsonInt64(Long.MAX_VALUE - 1), new BsonInt64(Long.MAX_VALUE));
+		assertOrdered(new BsonDouble(1.5), new BsonInt32(2));
+		assertOrdered(new BsonDecimal128(Decimal128.parse("0.1")), new BsonDouble(0.2));
+	}
+
+	@Test
+	void stringsCompareByUtf8Bytes() {
+		assertEquals(0, ShardKeyRouter.compare(new BsonString("a"), new BsonSymbol("a")));
+		assertOrdered(new BsonString("Z"), new BsonString("a"));
+		assertOrdered(new BsonString("ab"), new BsonString("abc"));
+		// U+FF61 sorts before U+1F600 by code point, but after its high surrogate by UTF-16 unit
+		assertOrdered(new BsonString("｡"), new BsonString("😀"));
+	}
+
+	@Test
+	void documentsCompareFieldByField() {
+		assertEquals(0, ShardKeyRouter.compareDocuments(BsonDocument.parse("{a: 1}"), BsonDocument.parse("{a: 1.0}")));
+		assertTrue(ShardKeyRouter.compareDocuments(BsonDocument.parse("{a: 1}"), BsonDocument.parse("{a: 2}")) < 0);
+		assertTrue(ShardKeyRouter.compareDocuments(BsonDocument.parse("{a: 1}"), BsonDocument.parse("{b: 0}")) < 0);
+		assertTrue(ShardKeyRouter.compareDocuments(BsonDocument.parse("{a: 1}"), BsonDocument.parse("{a: 1, b: 0}")) < 0);
+		// The field's type is compared before its name
+		assertTrue(ShardKeyRouter.compareDocuments(BsonDocument.parse("{b: 1}"), BsonDocument.parse("{a: 'x'}")) < 0);
+	}
+
+	@Test
+	void arraysCompareElementWise() {
+		assertOrdered(BsonArray.parse("[1, 2]"), BsonArray.parse("[1, 3]"));
+		assertOrdered(BsonArray.parse("[1]"), BsonArray.parse("[1, 0]"));
+	}
+
+	@Test
+	void binaryComparesLengthThenSubtypeThenBytes() {
+		assertTrue(ShardKeyRouter.compareBinary(new BsonBinary(new byte[]{(byte) 0xff}), new BsonBinary(new byte[]{0, 0})) < 0);
+		assertTrue(ShardKeyRouter.compareBinary(new BsonBinary((byte) 0, new byte[]{9}), new BsonBinary((byte) 4, new byte[]{1})) < 0);
+		assertTrue(ShardKeyRouter.compareBinary(new BsonBinary(new byte[]{0x7f}), new BsonBinary(new byte[]{(byte) 0x80})) < 0);
+		assertEquals(0, ShardKeyRouter.compareBinary(new BsonBinary(new byte[]{1, 2}), new BsonBinary(new byte[]{1, 2})));
+	}
+
+	@Test
+	void remainingBracketsCompareByValue() {
+		assertOrdered(new BsonObjectId(new ObjectId("000000000000000000000001")), new BsonObjectId(new ObjectId("000000000000000000000002")));
+		assertOrdered(BsonBoolean.FALSE, BsonBoolean.TRUE);
+		assertOrdered(new BsonDateTime(-1), new BsonDateTime(0));
+		assertOrdered(new BsonTimestamp(1, 5), new BsonTimestamp(2, 0));
+		assertOrdered(new BsonRegularExpression("a", "i"), new BsonRegularExpression("b"));
+	}
+}
@@ -0,0 +1,119 @@
+package com.omnexus.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TarStreamWriterTest {
+
+	@TempDir
+	Path dir;
+
+	private Path file(String name, byte[] content) throws IOException {
+		return Files.write(dir.resolve(name), content);
+	}
+
+	private static String field(byte[] header, int offset, int length) {
+		String value = new String(header, offset, length, StandardCharsets.US_ASCII);
+		int nul = value.indexOf('\0');
+		return nul >= 0 ? value.substring(0, nul) : value;
+	}
+
+	@Test
+	void headerFollowsUstar() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TarStreamWriter writer = new TarStreamWriter(Channels.newChannel(out));
+		writer.putFile("dump/shop/orders.bson", 5, 1_700_000_000_123L, List.of(file("a", "hello".getBytes(StandardCharsets.US_ASCII))));
+		byte[] header = Arrays.copyOf(out.toByteArray(), 512);
+
+		assertEquals("dump/shop/orders.bson", field(header, 0, 100));
+		assertEquals("0000644", field(header, 100, 8));
+		assertEquals("00000000005", field(header, 124, 12));
+		assertEquals(Long.toOctalString(1_700_000_000L), field(header, 136, 12).replaceFirst("^0+", ""));
+		assertEquals('0', header[156]);
+		assertEquals("ustar", field(header, 257, 6));
+		assertEquals("00", field(header, 263, 2));
+
+		long sum = 0;
+		for (int i = 0; i < header.length; i++) {
+			sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+		}
+		assertEquals(sum, Long.parseLong(field(header, 148, 7), 8));
+	}
+
+	@Test
+	void longNamesUseThePrefixField() throws IOException {
+		String directory = "dump/" + "d".repeat(120);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new TarStreamWriter(Channels.newChannel(out)).putFile(directory + "/c.bson", 0, 0, List.of());
+		byte[] header = out.toByteArray();
+		assertEquals("c.bson", field(header, 0, 100));
+		assertEquals(directory, field(header, 345, 155));
+
+		TarStreamWriter writer = new TarStreamWriter(Channels.newChannel(new ByteArrayOutputStream()));
+		assertThrows(IOException.class, () -> writer.putFile("x".repeat(101), 0, 0, List.of()));
+	}
+
+	@Test
+	void archiveSizeMatchesEntrySizes() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TarStreamWriter writer = new TarStreamWriter(Channels.newChannel(out));
+		writer.putFile("empty", 0, 0, List.of());
+		writer.putFile("block", 512, 0, List.of(file("b", new byte[512])));
+		writer.putFile("odd", 513, 0, List.of(file("c", new byte[513])));
+		writer.finish();
+		assertEquals(TarStreamWriter.entrySize(0) + TarStreamWriter.entrySize(512) + TarStreamWriter.entrySize(513)
+				+ TarStreamWriter.trailerSize(), out.size());
+		assertEquals(512 + 2 * 512, TarStreamWriter.entrySize(513));
+	}
+
+	@Test
+	void roundTripsThroughTheReader() throws IOException {
+		byte[] first = "first part,".getBytes(StandardCharsets.UTF_8);
+		byte[] second = new byte[70_000];
+		Arrays.fill(second, (byte) 7);
+		byte[] joined = new byte[first.length + second.length];
+		System.arraycopy(first, 0, joined, 0, first.length);
+		System.arraycopy(second, 0, joined, first.length, second.length);
+		String longName = "dump/" + "n".repeat(110) + "/chunked.bson";
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		TarStreamWriter writer = new TarStreamWriter(Channels.newChannel(out));
+		writer.putFile("metadata.json", 2, 0, List.of(file("m", "{}".getBytes(StandardCharsets.UTF_8))));
+		writer.putFile(longName, joined.length, 0, List.of(file("p1", first), file("p2", second)));
+		writer.finish();
+
+		TarStreamReader reader = new TarStreamReader(new ByteArrayInputStream(out.toByteArray()));
+		TarStreamReader.Entry entry = reader.next();
+		assertEquals("metadata.json", entry.name());
+		assertTrue(entry.regularFile());
+		assertArrayEquals("{}".getBytes(StandardCharsets.UTF_8), reader.entryStream().readAllBytes());
+		entry = reader.next();
+		assertEquals(longName, entry.name());
+		assertEquals(joined.length, entry.size());
+		assertArrayEquals(joined, reader.entryStream().readAllBytes());
+		assertNull(reader.next());
+	}
+
+	@Test
+	void sizeChangedWhileStreamingFails() throws IOException {
+		Path source = file("grown", new byte[10]);
+		TarStreamWriter writer = new TarStreamWriter(Channels.newChannel(new ByteArrayOutputStream()));
+		assertThrows(IOException.class, () -> writer.putFile("grown", 8, 0, List.of(source)));
+	}
+}